@@ -0,0 +1,316 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package comm.udp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request/reply round trips between two packet handlers on loopback, reporting replies/sec and
+ * the bytes allocated per round trip (all threads, so both handlers' send and receive paths).
+ * The first run sends immediately, the second goes through the paced send queue with the given
+ * send delay, reporting how close the achieved rate comes to the 1000/delay target.
+ * <p>
+ * Usage: PRUDPPacketHandlerBenchmark [requests in flight] [seconds] [send delay] [port]
+ */
+
+public class
+PRUDPPacketHandlerBenchmark
+{
+	private static final int	ACT_BENCH_REQUEST	= 0x7ff0;
+	private static final int	ACT_BENCH_REPLY		= 0x7ff1;
+
+	private static final int	PAYLOAD				= 64;
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int	in_flight	= args.length>0?Integer.parseInt( args[0] ):64;
+		int	seconds		= args.length>1?Integer.parseInt( args[1] ):10;
+		int	send_delay	= args.length>2?Integer.parseInt( args[2] ):2;
+		int	port		= args.length>3?Integer.parseInt( args[3] ):16990;
+
+		registerCodecs();
+
+		final PRUDPPacketHandler[]	server = { null };
+
+		server[0] =
+			PRUDPPacketHandlerFactory.getHandler(
+				port,
+				new PRUDPRequestHandler()
+				{
+					public void
+					process(
+						PRUDPPacketRequest	request )
+					{
+						try{
+							server[0].send( new benchReply( request.getTransactionId()), request.getAddress());
+
+						}catch( Throwable e ){
+						}
+					}
+				});
+
+		PRUDPPacketHandler	client = PRUDPPacketHandlerFactory.getHandler( port+1 );
+
+		InetSocketAddress	target = new InetSocketAddress( InetAddress.getByName( "127.0.0.1" ), port );
+
+		for ( int loop=0; loop<2; loop++ ){
+
+			run( client, target, in_flight, seconds, 0, "immediate" );
+		}
+
+		client.setDelays( send_delay, 0, 30000 );
+
+		run( client, target, Math.min( in_flight, 8 ), seconds, send_delay, "paced (delay=" + send_delay + "ms, target=" + ( 1000/send_delay ) + "/sec)" );
+	}
+
+	private static void
+	run(
+		final PRUDPPacketHandler	client,
+		final InetSocketAddress		target,
+		int							in_flight,
+		int							seconds,
+		int							send_delay,
+		String						name )
+
+		throws Exception
+	{
+		final AtomicLong	replies		= new AtomicLong();
+		final AtomicLong	errors		= new AtomicLong();
+
+		final long	end = System.currentTimeMillis() + seconds*1000L;
+
+		final int	priority = send_delay==0?PRUDPPacketHandler.PRIORITY_IMMEDIATE:PRUDPPacketHandler.PRIORITY_MEDIUM;
+
+		PRUDPPacketReceiver	receiver =
+			new PRUDPPacketReceiver()
+			{
+				public void
+				packetReceived(
+					PRUDPPacketHandlerRequest	request,
+					PRUDPPacket					packet,
+					InetSocketAddress			from_address )
+				{
+					replies.incrementAndGet();
+
+					next();
+				}
+
+				public void
+				error(
+					PRUDPPacketHandlerException	e )
+				{
+					errors.incrementAndGet();
+
+					next();
+				}
+
+				private void
+				next()
+				{
+					if ( System.currentTimeMillis() < end ){
+
+						try{
+							client.sendAndReceive( new benchRequest(), target, this, 5000, priority );
+
+						}catch( Throwable e ){
+
+							errors.incrementAndGet();
+						}
+					}
+				}
+			};
+
+		long	alloc_start = allocatedBytes();
+		long	start		= System.currentTimeMillis();
+
+		for ( int i=0; i<in_flight; i++ ){
+
+			client.sendAndReceive( new benchRequest(), target, receiver, 5000, priority );
+		}
+
+		while( System.currentTimeMillis() < end ){
+
+			Thread.sleep( 100 );
+		}
+
+		long	elapsed	= System.currentTimeMillis() - start;
+		long	alloc	= allocatedBytes() - alloc_start;
+		long	count	= replies.get();
+
+			// let the remaining round trips drain before the next run
+
+		Thread.sleep( 1000 + send_delay*in_flight );
+
+		System.out.println(
+			name + ": in flight=" + in_flight + ", " + ( count*1000/elapsed ) + " replies/sec, " +
+			( count==0?0:alloc/count ) + " bytes allocated/round trip, errors=" + errors.get());
+	}
+
+	private static long
+	allocatedBytes()
+	{
+		com.sun.management.ThreadMXBean	bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+		long	total = 0;
+
+		for ( long id: bean.getAllThreadIds()){
+
+			long	bytes = bean.getThreadAllocatedBytes( id );
+
+			if ( bytes > 0 ){
+
+				total += bytes;
+			}
+		}
+
+		return( total );
+	}
+
+	private static void
+	registerCodecs()
+	{
+		Map	request_decoders = new HashMap();
+
+		request_decoders.put(
+			new Integer( ACT_BENCH_REQUEST ),
+			new PRUDPPacketRequestDecoder()
+			{
+				public PRUDPPacketRequest
+				decode(
+					PRUDPPacketHandler	handler,
+					DataInputStream		is,
+					long				connection_id,
+					int					action,
+					int					transaction_id )
+
+					throws IOException
+				{
+					return( new benchRequest( is, connection_id, transaction_id ));
+				}
+			});
+
+		PRUDPPacketRequest.registerDecoders( request_decoders );
+
+		Map	reply_decoders = new HashMap();
+
+		reply_decoders.put(
+			new Integer( ACT_BENCH_REPLY ),
+			new PRUDPPacketReplyDecoder()
+			{
+				public PRUDPPacketReply
+				decode(
+					PRUDPPacketHandler	handler,
+					InetSocketAddress	originator,
+					DataInputStream		is,
+					int					action,
+					int					transaction_id )
+
+					throws IOException
+				{
+					return( new benchReply( is, transaction_id ));
+				}
+			});
+
+		PRUDPPacketReply.registerDecoders( reply_decoders );
+	}
+
+	private static class
+	benchRequest
+		extends PRUDPPacketRequest
+	{
+		private
+		benchRequest()
+		{
+				// requests are told apart from replies by the connection id's top bit
+
+			super( ACT_BENCH_REQUEST, 0x8000000000000000L | System.nanoTime());
+		}
+
+		private
+		benchRequest(
+			DataInputStream		is,
+			long				con_id,
+			int					trans_id )
+
+			throws IOException
+		{
+			super( ACT_BENCH_REQUEST, con_id, trans_id );
+
+			is.readFully( new byte[PAYLOAD] );
+		}
+
+		public void
+		serialise(
+			DataOutputStream	os )
+
+			throws IOException
+		{
+			super.serialise( os );
+
+			os.write( new byte[PAYLOAD] );
+		}
+	}
+
+	private static class
+	benchReply
+		extends PRUDPPacketReply
+	{
+		private
+		benchReply(
+			int		trans_id )
+		{
+			super( ACT_BENCH_REPLY, trans_id );
+		}
+
+		private
+		benchReply(
+			DataInputStream		is,
+			int					trans_id )
+
+			throws IOException
+		{
+			super( ACT_BENCH_REPLY, trans_id );
+
+			is.readFully( new byte[PAYLOAD] );
+		}
+
+		public void
+		serialise(
+			DataOutputStream	os )
+
+			throws IOException
+		{
+			super.serialise( os );
+
+			os.write( new byte[PAYLOAD] );
+		}
+	}
+}
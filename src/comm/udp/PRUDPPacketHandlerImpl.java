@@ -55,6 +55,10 @@ import java.io.*;
 import java.net.*;
 import java.nio.channels.UnsupportedAddressTypeException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import stdlib.math.formats.Base64;
 import controller.config.COConfigurationManager;
@@ -93,6 +97,35 @@ PRUDPPacketHandlerImpl
 			});
 	}
 
+	private static int	destination_send_gap;
+
+	static{
+		COConfigurationManager.addAndFireParameterListener(
+			"network.udp.send.destination.gap",
+			new ParameterListener()
+			{
+				public void
+				parameterChanged(
+					String parameter_name )
+				{
+					destination_send_gap = COConfigurationManager.getIntParameter( parameter_name );
+				}
+			});
+	}
+
+		// serialisation buffers are per thread and reused, packets that are queued get a copy
+		// of exactly the serialised length rather than a buffer of MAX_PACKET_SIZE each
+
+	private static final ThreadLocal<MyByteArrayOutputStream>	send_buffers =
+		new ThreadLocal<MyByteArrayOutputStream>()
+		{
+			protected MyByteArrayOutputStream
+			initialValue()
+			{
+				return( new MyByteArrayOutputStream( MAX_PACKET_SIZE ));
+			}
+		};
+
 	private static final long	MAX_SEND_QUEUE_DATA_SIZE	= 2*1024*1024;
 	private static final long	MAX_RECV_QUEUE_DATA_SIZE	= 1*1024*1024;
 
@@ -132,11 +165,16 @@ PRUDPPacketHandlerImpl
 	private AEMonitor2	requests_mon	= new AEMonitor2( "PRUDPPH:req" );
 
 
-	private AEMonitor2		send_queue_mon	= new AEMonitor2( "PRUDPPH:sd" );
-	private long			send_queue_data_size;
-	private final List[]	send_queues		= new List[]{ new LinkedList(),new LinkedList(),new LinkedList()};
-	private AESemaphore		send_queue_sem	= new AESemaphore( "PRUDPPH:sq" );
-	private AEThread		send_thread;
+		// send queues are lock-free, many threads queueing and the single sender thread
+		// draining. the sender parks when they're all empty and is unparked on each add
+
+	private final ConcurrentLinkedQueue[]	send_queues			= new ConcurrentLinkedQueue[]{ new ConcurrentLinkedQueue(),new ConcurrentLinkedQueue(),new ConcurrentLinkedQueue()};
+	private final AtomicInteger[]			send_queue_sizes	= new AtomicInteger[]{ new AtomicInteger(), new AtomicInteger(), new AtomicInteger()};
+	private final AtomicInteger				send_queue_count	= new AtomicInteger();
+	private final AtomicLong				send_queue_data_size	= new AtomicLong();
+	private volatile int					send_deferred_count;
+	private AEMonitor2						send_overflow_mon	= new AEMonitor2( "PRUDPPH:sd" );
+	private volatile AEThread				send_thread;
 
 	private AEMonitor	recv_queue_mon	= new AEMonitor( "PRUDPPH:rq" );
 	private long		recv_queue_data_size;
@@ -630,7 +668,8 @@ PRUDPPacketHandlerImpl
 					Logger.log(new LogEvent(LOGID,
 							"PRUDPPacketReceiver: receiver established on port " + port + (current_bind_ip==null?"":(", bound to " + current_bind_ip ))));
 
-				byte[] buffer = null;
+				byte[] 			buffer = null;
+				DatagramPacket	packet = null;
 
 				long	successful_accepts 	= 0;
 				long	failed_accepts		= 0;
@@ -647,9 +686,15 @@ PRUDPPacketHandlerImpl
 						if ( buffer == null ){
 
 							buffer = new byte[MAX_PACKET_SIZE];
-						}
 
-						DatagramPacket packet = new DatagramPacket( buffer, buffer.length, address );
+							packet = new DatagramPacket( buffer, buffer.length, address );
+
+						}else{
+
+								// re-used across receives, a transformer may have swapped the data
+
+							packet.setData( buffer, 0, buffer.length );
+						}
 
 						receiveFromSocket( packet );
 
@@ -851,6 +896,11 @@ PRUDPPacketHandlerImpl
 		}
 	}
 
+		// only used by the receive thread
+
+	private final reusableInputStream	recv_bais	= new reusableInputStream();
+	private final DataInputStream		recv_dis	= new DataInputStream( recv_bais );
+
 	protected void
 	process(
 		DatagramPacket	dg_packet,
@@ -876,22 +926,19 @@ PRUDPPacketHandlerImpl
 
 			InetSocketAddress originator = (InetSocketAddress)dg_packet.getSocketAddress();
 
+			recv_bais.reset( packet_data, packet_len );
+
 			if ( ( packet_data[0]&0x80 ) == 0 ){
 
 				request_packet	= false;
 
-				packet = PRUDPPacketReply.deserialiseReply(
-					this, originator,
-					new DataInputStream(new ByteArrayInputStream( packet_data, 0, packet_len)));
+				packet = PRUDPPacketReply.deserialiseReply( this, originator, recv_dis );
 
 			}else{
 
 				request_packet	= true;
 
-				packet = PRUDPPacketRequest.deserialiseRequest(
-						this,
-						new DataInputStream(new ByteArrayInputStream( packet_data, 0, packet_len)));
-
+				packet = PRUDPPacketRequest.deserialiseRequest( this, recv_dis );
 			}
 
 			packet.setSerialisedSize( packet_len );
@@ -1201,7 +1248,9 @@ PRUDPPacketHandlerImpl
 		}
 
 		try{
-			MyByteArrayOutputStream	baos = new MyByteArrayOutputStream( MAX_PACKET_SIZE );
+			MyByteArrayOutputStream	baos = send_buffers.get();
+
+			baos.reset();
 
 			DataOutputStream os = new DataOutputStream( baos );
 
@@ -1279,10 +1328,10 @@ PRUDPPacketHandlerImpl
 
 				if ( send_delay > 0 && priority != PRUDPPacketHandler.PRIORITY_IMMEDIATE ){
 
-					try{
-						send_queue_mon.enter();
+					if ( send_queue_data_size.get() > MAX_SEND_QUEUE_DATA_SIZE ){
 
-						if ( send_queue_data_size > MAX_SEND_QUEUE_DATA_SIZE ){
+						try{
+							send_overflow_mon.enter();
 
 							request.sent();
 
@@ -1301,202 +1350,321 @@ PRUDPPacketHandlerImpl
 
 							Thread.sleep( send_delay * 4 );
 
-						}else{
+						}finally{
+
+							send_overflow_mon.exit();
+						}
+					}else{
 
-							send_queue_data_size	+= dg_packet.getLength();
+							// the serialisation buffer is re-used so the queued packet gets its own copy
 
-							send_queues[priority].add( new Object[]{ dg_packet, request });
+						dg_packet.setData( Arrays.copyOf( _buffer, _length ));
 
-							if ( TRACE_REQUESTS ){
+						queueSend( new sendEntry( dg_packet, request, priority ), priority );
+					}
+				}else{
 
-								String	str = "";
+					request.sent();
 
-								for (int i=0;i<send_queues.length;i++){
-									str += (i==0?"":",") + send_queues[i].size();
-								}
-								System.out.println( "send queue sizes: " + str );
-							}
+					if ( dg_packet == null ){
 
-							send_queue_sem.release();
+						throw new NullPointerException("dg_packet is null");
+					}
 
-							if ( send_thread == null ){
+					sendToSocket( dg_packet );
 
-								send_thread =
-									new AEThread( "PRUDPPacketHandler:sender" )
-									{
-										public void
-										runSupport()
-										{
-											int[]		consecutive_sends = new int[send_queues.length];
+					// System.out.println( "sent:" + buffer.length );
 
-											while( true ){
+					stats.packetSent( _length );
 
-												try{
-													send_queue_sem.reserve();
+					if ( TRACE_REQUESTS ){
+						Logger.log(new LogEvent(LOGID, "PRUDPPacketHandler: "
+								+ "request packet sent to " + destination_address + ": "
+								+ request_packet.getString()));
+					}
+				}
+					// if the send is ok then the request will be removed from the queue
+					// either when a reply comes back or when it gets timed-out
 
-													Object[]	data;
-													int			selected_priority	= 0;
+				return( request );
 
-													try{
-														send_queue_mon.enter();
+			}catch( Throwable e ){
+
+					// never got sent, remove it immediately
 
-															// invariant: at least one queue must have an entry
+				try{
+					requests_mon.enter();
 
-														for (int i=0;i<send_queues.length;i++){
+					requests.remove( new Integer( request_packet.getTransactionId()));
 
-															List	queue = send_queues[i];
+				}finally{
 
-															int	queue_size = queue.size();
+					requests_mon.exit();
+				}
 
-															if ( queue_size > 0 ){
+				throw( e );
+			}
+		}catch( Throwable e ){
 
-																selected_priority	= i;
+			// AMC: I've seen this in debug logs - just wonder where it's
+			// coming from.
+
+			if ( e instanceof NullPointerException ){
 
-																if ( 	consecutive_sends[i] >= 4 ||
-																		(	i < send_queues.length - 1 &&
-																			send_queues[i+1].size() - queue_size > 500 )){
+				Debug.out(e);
+			}
+
+			String msg = Debug.getNestedExceptionMessage(e);
 
-																		// too many consecutive or too imbalanced, see if there are
-																		// lower priority queues with entries
+			Logger.log(new LogEvent(LOGID,LogEvent.LT_ERROR,
+					"PRUDPPacketHandler: sendAndReceive to " + destination_address + " failed: " + msg ));
 
-																	consecutive_sends[i]	= 0;
+			if ( msg.indexOf( "Invalid data length" ) != -1 ){
 
-																}else{
+				Debug.out( "packet=" + request_packet.getString() + ",auth=" + auth );
 
-																	consecutive_sends[i]++;
+				Debug.out( e );
+			}
 
-																	break;
-																}
-															}else{
+			throw( new PRUDPPacketHandlerException( "PRUDPPacketHandler:sendAndReceive failed", e ));
+		}
+	}
 
-																consecutive_sends[i]	= 0;
-															}
-														}
+	private void
+	queueSend(
+		sendEntry		entry,
+		int				priority )
+	{
+		send_queue_data_size.addAndGet( entry.getLength());
 
-														data = (Object[])send_queues[selected_priority].remove(0);
+		send_queues[priority].add( entry );
 
-														DatagramPacket				p	= (DatagramPacket)data[0];
+		send_queue_sizes[priority].incrementAndGet();
 
-															// mark as sent before sending in case send fails
-															// and we then rely on timeout to pick this up
+		send_queue_count.incrementAndGet();
 
-														send_queue_data_size	-= p.getLength();
+		if ( TRACE_REQUESTS ){
 
-													}finally{
+			String	str = "";
 
-														send_queue_mon.exit();
-													}
+			for (int i=0;i<send_queues.length;i++){
+				str += (i==0?"":",") + send_queue_sizes[i].get();
+			}
+			System.out.println( "send queue sizes: " + str );
+		}
 
-													DatagramPacket					p	= (DatagramPacket)data[0];
-													PRUDPPacketHandlerRequestImpl	r	= (PRUDPPacketHandlerRequestImpl)data[1];
+		AEThread	thread = send_thread;
 
-													r.sent();
+		if ( thread == null ){
 
-													sendToSocket( p );
+			synchronized( send_queues ){
 
-													stats.packetSent( p.getLength() );
+				thread = send_thread;
 
-													if ( TRACE_REQUESTS ){
-														Logger.log(new LogEvent(LOGID,
-															"PRUDPPacketHandler: request packet sent to "
-																	+ p.getAddress()));
-													}
+				if ( thread == null ){
 
-													long	delay = send_delay;
+					thread =
+						new AEThread( "PRUDPPacketHandler:sender" )
+						{
+							public void
+							runSupport()
+							{
+								sendLoop();
+							}
+						};
 
-													if ( selected_priority == PRIORITY_HIGH ){
+					thread.setDaemon( true );
 
-														delay	= delay/2;
-													}
+					send_thread = thread;
 
-													Thread.sleep( delay );
+					thread.start();
+				}
+			}
+		}
 
-												}catch( Throwable e ){
-													// get occasional send fails, not very interesting
-													Logger.log(
-														new LogEvent(
-															LOGID,
-															LogEvent.LT_WARNING,
-															"PRUDPPacketHandler: send failed: " + Debug.getNestedExceptionMessage(e)));
-												}
-											}
-										}
-									};
+		LockSupport.unpark( thread );
+	}
+
+		/**
+		 * drains the send queues, pacing sends at send_delay (halved for high priority). pacing
+		 * is against a running deadline rather than sleeping send_delay after each packet, so sleep
+		 * overshoot is made up by sending the next packets back to back (up to a small burst)
+		 * instead of lowering the rate. Optionally also paces sends to any one destination, see
+		 * network.udp.send.destination.gap - packets for a destination that isn't due yet are set
+		 * aside until it is rather than holding up the packets for everyone else
+		 */
+
+	private void
+	sendLoop()
+	{
+		int[]		consecutive_sends = new int[send_queues.length];
+
+		long		next_send	= 0;
+
+			// next time each recent destination may be sent to, high precision counter (ns) as
+			// the monotonous time is too coarse for gaps of a few ms
+
+		Map<InetSocketAddress,Long>	destination_times =
+			new LinkedHashMap<InetSocketAddress,Long>(64,0.75f,true)
+			{
+				protected boolean
+				removeEldestEntry(
+					Map.Entry<InetSocketAddress,Long> eldest )
+				{
+					return( size() > 1024 );
+				}
+			};
+
+			// entries taken off the queues before their destination was due, in queue order
+
+		List<sendEntry>	deferred = new LinkedList<sendEntry>();
+
+		while( true ){
+
+			try{
+				long	now = SystemTime.getHighPrecisionCounter();
+
+				sendEntry	entry = null;
+
+				if ( deferred.size() > 0 ){
+
+					entry = getDeferred( deferred, destination_times, now );
+				}
+
+				if ( entry == null ){
 
-									send_thread.setDaemon( true );
+					if ( send_queue_count.get() == 0 ){
 
-									send_thread.start();
+						if ( deferred.size() == 0 ){
+
+							LockSupport.park( this );
+
+						}else{
+
+							long	earliest = Long.MAX_VALUE;
+
+							for ( sendEntry e: deferred ){
+
+								earliest = Math.min( earliest, e.getEligible());
 							}
+
+							LockSupport.parkNanos( this, Math.max( 1, earliest - now ));
 						}
-					}finally{
 
-						send_queue_mon.exit();
+						continue;
 					}
-				}else{
 
-					request.sent();
+					int	selected_priority	= 0;
 
-					if ( dg_packet == null ){
+						// invariant: at least one queue must have an entry
 
-						throw new NullPointerException("dg_packet is null");
+					for (int i=0;i<send_queues.length;i++){
+
+						int	queue_size = send_queue_sizes[i].get();
+
+						if ( queue_size > 0 ){
+
+							selected_priority	= i;
+
+							if ( 	consecutive_sends[i] >= 4 ||
+									(	i < send_queues.length - 1 &&
+										send_queue_sizes[i+1].get() - queue_size > 500 )){
+
+									// too many consecutive or too imbalanced, see if there are
+									// lower priority queues with entries
+
+								consecutive_sends[i]	= 0;
+
+							}else{
+
+								consecutive_sends[i]++;
+
+								break;
+							}
+						}else{
+
+							consecutive_sends[i]	= 0;
+						}
 					}
 
-					sendToSocket( dg_packet );
+					entry = (sendEntry)send_queues[selected_priority].poll();
 
-					// System.out.println( "sent:" + buffer.length );
+					send_queue_sizes[selected_priority].decrementAndGet();
 
-					stats.packetSent( _length );
+					send_queue_count.decrementAndGet();
 
-					if ( TRACE_REQUESTS ){
-						Logger.log(new LogEvent(LOGID, "PRUDPPacketHandler: "
-								+ "request packet sent to " + destination_address + ": "
-								+ request_packet.getString()));
+					if ( destination_send_gap > 0 ){
+
+						Long	next = destination_times.get( entry.getPacket().getSocketAddress());
+
+						if ( next != null && next.longValue() > now ){
+
+							entry.setEligible( next.longValue());
+
+							deferred.add( entry );
+
+							send_deferred_count = deferred.size();
+
+							continue;
+						}
 					}
 				}
-					// if the send is ok then the request will be removed from the queue
-					// either when a reply comes back or when it gets timed-out
 
-				return( request );
+				send_queue_data_size.addAndGet( -entry.getLength());
 
-			}catch( Throwable e ){
+				DatagramPacket					p	= entry.getPacket();
+				PRUDPPacketHandlerRequestImpl	r	= entry.getRequest();
 
-					// never got sent, remove it immediately
+				int	gap = destination_send_gap;
 
-				try{
-					requests_mon.enter();
+				if ( gap > 0 ){
 
-					requests.remove( new Integer( request_packet.getTransactionId()));
+					destination_times.put((InetSocketAddress)p.getSocketAddress(), new Long( now + gap*1000000L ));
+				}
 
-				}finally{
+					// mark as sent before sending in case send fails
+					// and we then rely on timeout to pick this up
 
-					requests_mon.exit();
+				r.sent();
+
+				sendToSocket( p );
+
+				stats.packetSent( p.getLength() );
+
+				if ( TRACE_REQUESTS ){
+					Logger.log(new LogEvent(LOGID,
+						"PRUDPPacketHandler: request packet sent to "
+								+ p.getAddress()));
 				}
 
-				throw( e );
-			}
-		}catch( Throwable e ){
+				long	delay = send_delay*1000000L;
 
-			// AMC: I've seen this in debug logs - just wonder where it's
-			// coming from.
+				if ( entry.getPriority() == PRIORITY_HIGH ){
 
-			if ( e instanceof NullPointerException ){
+					delay	= delay/2;
+				}
 
-				Debug.out(e);
-			}
+				long	counter = SystemTime.getHighPrecisionCounter();
 
-			String msg = Debug.getNestedExceptionMessage(e);
+					// allow a burst of at most 4 delays to catch up after oversleeping or idling
 
-			Logger.log(new LogEvent(LOGID,LogEvent.LT_ERROR,
-					"PRUDPPacketHandler: sendAndReceive to " + destination_address + " failed: " + msg ));
+				next_send = Math.max( next_send, counter - delay*4 ) + delay;
 
-			if ( msg.indexOf( "Invalid data length" ) != -1 ){
+				long	sleep = ( next_send - counter )/1000000L;
 
-				Debug.out( "packet=" + request_packet.getString() + ",auth=" + auth );
+				if ( sleep > 0 ){
 
-				Debug.out( e );
-			}
+					Thread.sleep( sleep );
+				}
 
-			throw( new PRUDPPacketHandlerException( "PRUDPPacketHandler:sendAndReceive failed", e ));
+			}catch( Throwable e ){
+				// get occasional send fails, not very interesting
+				Logger.log(
+					new LogEvent(
+						LOGID,
+						LogEvent.LT_WARNING,
+						"PRUDPPacketHandler: send failed: " + Debug.getNestedExceptionMessage(e)));
+			}
 		}
 	}
 
@@ -1530,7 +1698,9 @@ PRUDPPacketHandlerImpl
 
 		try{
 
-			MyByteArrayOutputStream	baos = new MyByteArrayOutputStream( MAX_PACKET_SIZE );
+			MyByteArrayOutputStream	baos = send_buffers.get();
+
+			baos.reset();
 
 			DataOutputStream os = new DataOutputStream( baos );
 
@@ -1618,10 +1788,7 @@ PRUDPPacketHandlerImpl
 	public long
 	getSendQueueLength()
 	{
-		int	res = 0;
-		for (int i=0;i<send_queues.length;i++){
-			res += send_queues[i].size();
-		}
+		int	res = send_queue_count.get() + send_deferred_count;
 
 		PRUDPPacketHandlerImpl delegate = altProtocolDelegate;
 
@@ -1770,6 +1937,48 @@ PRUDPPacketHandlerImpl
 	{
 	}
 
+		/**
+		 * removes and returns the first deferred entry whose destination is now due, if any
+		 */
+
+	private sendEntry
+	getDeferred(
+		List<sendEntry>					deferred,
+		Map<InetSocketAddress,Long>		destination_times,
+		long							now )
+	{
+		Iterator<sendEntry>	it = deferred.iterator();
+
+		while( it.hasNext()){
+
+			sendEntry	entry = it.next();
+
+			if ( entry.getEligible() > now ){
+
+				continue;
+			}
+
+				// an earlier entry for the same destination may have gone since it was deferred
+
+			Long	next = destination_times.get( entry.getPacket().getSocketAddress());
+
+			if ( next != null && next.longValue() > now ){
+
+				entry.setEligible( next.longValue());
+
+				continue;
+			}
+
+			it.remove();
+
+			send_deferred_count = deferred.size();
+
+			return( entry );
+		}
+
+		return( null );
+	}
+
 	private static class
 	MyByteArrayOutputStream
 		extends ByteArrayOutputStream
@@ -1788,6 +1997,86 @@ PRUDPPacketHandlerImpl
 		}
 	}
 
+	private static class
+	reusableInputStream
+		extends ByteArrayInputStream
+	{
+		private
+		reusableInputStream()
+		{
+			super( new byte[0] );
+		}
+
+		private void
+		reset(
+			byte[]		_buf,
+			int			_len )
+		{
+			buf		= _buf;
+			pos		= 0;
+			mark	= 0;
+			count	= _len;
+		}
+	}
+
+	private static class
+	sendEntry
+	{
+		private final DatagramPacket					packet;
+		private final PRUDPPacketHandlerRequestImpl		request;
+		private final int								priority;
+
+		private long	eligible;
+
+		private
+		sendEntry(
+			DatagramPacket					_packet,
+			PRUDPPacketHandlerRequestImpl	_request,
+			int								_priority )
+		{
+			packet		= _packet;
+			request		= _request;
+			priority	= _priority;
+		}
+
+		private DatagramPacket
+		getPacket()
+		{
+			return( packet );
+		}
+
+		private PRUDPPacketHandlerRequestImpl
+		getRequest()
+		{
+			return( request );
+		}
+
+		private int
+		getLength()
+		{
+			return( packet.getLength());
+		}
+
+		private int
+		getPriority()
+		{
+			return( priority );
+		}
+
+		private long
+		getEligible()
+		{
+			return( eligible );
+		}
+
+		private void
+		setEligible(
+			long	_eligible )
+		{
+			eligible	= _eligible;
+		}
+	}
+
 	protected interface
 	PacketTransformer
 	{
@@ -1293,6 +1293,10 @@ DiskManagerCheckRequestListener, IPFilterListener
 
 				req.setAdHoc( false );
 
+					// get streaming pieces verified ahead of any rechecks
+
+				req.setHighPriority( isRTA());
+
 				disk_mgr.enqueueCheckRequest(  req, this );
 			}
 		}
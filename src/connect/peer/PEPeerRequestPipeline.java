@@ -0,0 +1,354 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package connect.peer;
+
+import java.util.*;
+
+import torrentlib.disk.DiskManager;
+import torrentlib.disk.DiskManagerReadRequest;
+import connect.peermanager.PeerControlScheduler;
+
+/**
+ * Outstanding block requests for a single peer connection together with the data needed to size
+ * the request queue from the connection's bandwidth-delay product.
+ * 
+ * Requests are held in insertion order in a linked hash map so add/lookup/remove are constant time
+ * (the old ArrayList needed a scan for each of these and a piece message does two of them). 
+ * 
+ * The target depth is GAIN x (max delivery rate) x (min request->block time + refill interval) in blocks.
+ * The min time approximates the round trip with an empty peer-side queue, the max rate what the path can
+ * deliver, so the target grows while the pipe isn't full and stops once further requests would just queue
+ * at the peer. The refill interval covers the gap between piece picker runs, and GAIN the picker only
+ * topping up once 3/5 of the queue has drained.
+ * 
+ * The min time is kept for the life of the connection (a la Vegas' base RTT). Expiring it doesn't work
+ * as once the queue is full every sample includes time queued at the peer, and a larger target then
+ * inflates the next min - the target runs away to the maximum.
+ * 
+ * Not thread safe - callers synchronise (PEPeerTransportProtocol uses its requested_mon)
+ */
+
+class
+PEPeerRequestPipeline
+{
+	public static final int	MIN_DEPTH		= 2;
+	public static final int	MAX_DEPTH		= 256;
+
+	private static final int	GAIN			= 2;
+
+	private static final long	NANOS_PER_MS		= 1000*1000L;
+
+	private static final long	REFILL_INTERVAL		= PeerControlScheduler.SCHEDULE_PERIOD_MILLIS*NANOS_PER_MS;
+	private static final long	RATE_INTERVAL		= 500*NANOS_PER_MS;
+	private static final int	RATE_SAMPLES		= 20;
+	private static final long	STALL_MIN			= 1000*NANOS_PER_MS;
+
+	private final LinkedHashMap<DiskManagerReadRequest,outstanding>	requests = new LinkedHashMap<DiskManagerReadRequest,outstanding>();
+
+	private long	next_seq;
+
+	private long	min_rtt		= -1;
+	private long	smoothed_rtt	= -1;
+
+	private long	interval_start;
+	private long	interval_bytes;
+
+	private final long[]	rate_samples	= new long[RATE_SAMPLES];
+	private int		rate_pos;
+	private long	max_rate;
+
+		// time of the last block completion, or of the queue becoming non-empty
+
+	private long	last_progress;
+
+	private int		stalls;
+	private long	stall_time;
+	private int		drains;
+	private int		peak_depth;
+
+	protected int
+	size()
+	{
+		return( requests.size());
+	}
+
+	protected boolean
+	add(
+		DiskManagerReadRequest	request,
+		long					now )
+	{
+		if ( requests.containsKey( request )){
+
+			return( false );
+		}
+
+		if ( requests.isEmpty()){
+
+			last_progress = now;
+
+			if ( interval_bytes == 0 ){
+
+					// don't let idle time dilute the next rate sample
+
+				interval_start = now;
+			}
+		}
+
+		requests.put( request, new outstanding( next_seq++, now ));
+
+		int	depth = requests.size();
+
+		if ( depth > peak_depth ){
+
+			peak_depth = depth;
+		}
+
+		return( true );
+	}
+
+	protected boolean
+	contains(
+		DiskManagerReadRequest	request )
+	{
+		return( requests.containsKey( request ));
+	}
+
+		/**
+		 * position of the request in send order - exact while blocks arrive in the order requested,
+		 * which is the usual case, and only used for eta estimation otherwise
+		 * @return -1 if not present
+		 */
+
+	protected int
+	indexOf(
+		DiskManagerReadRequest	request )
+	{
+		outstanding	o = requests.get( request );
+
+		if ( o == null ){
+
+			return( -1 );
+		}
+
+		long	first_seq = requests.values().iterator().next().seq;
+
+		return((int)Math.min( o.seq - first_seq, requests.size() - 1 ));
+	}
+
+	protected boolean
+	remove(
+		DiskManagerReadRequest	request )
+	{
+		return( requests.remove( request ) != null );
+	}
+
+		/**
+		 * remove a request as the result of receiving its block and feed the rtt/rate estimators
+		 */
+
+	protected boolean
+	complete(
+		DiskManagerReadRequest	request,
+		long					now )
+	{
+		outstanding	o = requests.remove( request );
+
+		if ( o == null ){
+
+			return( false );
+		}
+
+		long	rtt = now - o.sent;
+
+		if ( rtt < 0 ){
+
+			rtt = 0;
+		}
+
+		if ( min_rtt < 0 || rtt < min_rtt ){
+
+			min_rtt	= rtt;
+		}
+
+		if ( smoothed_rtt < 0 ){
+
+			smoothed_rtt = rtt;
+
+		}else{
+
+			smoothed_rtt += ( rtt - smoothed_rtt ) / 8;
+		}
+
+		long	gap = now - last_progress;
+
+		if ( gap > Math.max( STALL_MIN, 4*min_rtt )){
+
+			stalls++;
+
+			stall_time += gap;
+		}
+
+		last_progress = now;
+
+		if ( requests.isEmpty()){
+
+			drains++;
+		}
+
+		interval_bytes += request.getLength();
+
+		long	elapsed = now - interval_start;
+
+		if ( elapsed >= RATE_INTERVAL ){
+
+			rate_samples[ rate_pos++ % RATE_SAMPLES ] = interval_bytes * 1000*NANOS_PER_MS / elapsed;
+
+			long	max = 0;
+
+			for ( long r: rate_samples ){
+
+				if ( r > max ){
+
+					max = r;
+				}
+			}
+
+			max_rate = max;
+
+			interval_start	= now;
+			interval_bytes	= 0;
+		}
+
+		return( true );
+	}
+
+	protected List<DiskManagerReadRequest>
+	getRequests()
+	{
+		return( new ArrayList<DiskManagerReadRequest>( requests.keySet()));
+	}
+
+	protected Iterator<DiskManagerReadRequest>
+	iterator()
+	{
+		return( requests.keySet().iterator());
+	}
+
+	protected void
+	clear()
+	{
+		requests.clear();
+	}
+
+		/**
+		 * @return target number of outstanding requests or -1 if there aren't enough samples yet
+		 */
+
+	protected int
+	getTarget()
+	{
+		if ( min_rtt < 0 || max_rate <= 0 ){
+
+			return( -1 );
+		}
+
+		long	bdp = GAIN * max_rate * ( min_rtt + REFILL_INTERVAL ) / ( 1000*NANOS_PER_MS );
+
+		long	target = ( bdp + DiskManager.BLOCK_SIZE - 1 ) / DiskManager.BLOCK_SIZE + 1;
+
+		return((int)Math.max( MIN_DEPTH, Math.min( MAX_DEPTH, target )));
+	}
+
+		/**
+		 * checks for a stall in progress so a peer that has stopped sending altogether shows up
+		 */
+
+	protected boolean
+	isStalled(
+		long		now )
+	{
+		return( !requests.isEmpty() && now - last_progress > Math.max( STALL_MIN, 4*min_rtt ));
+	}
+
+	protected long
+	getMinRTT()
+	{
+		return( min_rtt<0?-1:min_rtt/NANOS_PER_MS );
+	}
+
+	protected long
+	getSmoothedRTT()
+	{
+		return( smoothed_rtt<0?-1:smoothed_rtt/NANOS_PER_MS );
+	}
+
+	protected long
+	getMaxDeliveryRate()
+	{
+		return( max_rate );
+	}
+
+	protected int
+	getStallCount()
+	{
+		return( stalls );
+	}
+
+	protected long
+	getStallTime()
+	{
+		return( stall_time/NANOS_PER_MS );
+	}
+
+	protected int
+	getDrainCount()
+	{
+		return( drains );
+	}
+
+	protected int
+	getPeakDepth()
+	{
+		return( peak_depth );
+	}
+
+	protected String
+	getString()
+	{
+		return( "curr=" + requests.size() + ",peak=" + peak_depth + ",target=" + getTarget() +
+				",rtt=" + getMinRTT() + "/" + getSmoothedRTT() + ",rate=" + max_rate +
+				",stalls=" + stalls + "/" + getStallTime() + ",drains=" + drains );
+	}
+
+	private static class
+	outstanding
+	{
+		final long	seq;
+		final long	sent;
+
+		private
+		outstanding(
+			long	_seq,
+			long	_sent )
+		{
+			seq		= _seq;
+			sent	= _sent;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package connect.peer;
+
+import java.util.*;
+
+import torrentlib.disk.DiskManager;
+import torrentlib.disk.DiskManagerReadRequest;
+import torrentlib.disk.impl.access.impl.DiskManagerReadRequestImpl;
+
+/**
+ * Simulates a single peer link (bandwidth, round trip time) with the peer serving block requests
+ * in order and compares the piece picker's rate based queue sizing (min + 10s average rate/4K,
+ * refilled at 3/5 empty on a 100ms tick) with the bandwidth-delay target from PEPeerRequestPipeline.
+ * Reports the data delivered in the first 5s and over the whole run, the average number of
+ * outstanding requests and how long requests sat queued at the peer.
+ * <p>
+ * Usage: PEPeerRequestPipelineBenchmark [seconds]
+ */
+
+public class
+PEPeerRequestPipelineBenchmark
+{
+	private static final long	MS			= 1000*1000L;
+	private static final long	TICK		= 100*MS;
+	private static final int	BLOCK		= DiskManager.BLOCK_SIZE;
+
+	private static final int	REQUESTS_MIN_MIN	= 2;
+	private static final int	REQUESTS_MIN_MAX	= 8;
+	private static final int	REQUESTS_MAX		= 256;
+	private static final int	SLOPE_REQUESTS		= 4*1024;
+
+	public static void
+	main(
+		String[]	args )
+	{
+		int	seconds = args.length>0?Integer.parseInt( args[0] ):30;
+
+			// mbit/s, rtt ms
+
+		int[][]	links = {
+			{ 10, 	50 },
+			{ 100,	50 },
+			{ 100,	200 },
+			{ 100,	600 },
+			{ 400,	300 },
+		};
+
+		for ( int[] link: links ){
+
+			for ( boolean adaptive: new boolean[]{ false, true }){
+
+				run( link[0], link[1], seconds, adaptive );
+			}
+		}
+	}
+
+	private static void
+	run(
+		int			mbit,
+		int			rtt_ms,
+		int			seconds,
+		boolean		adaptive )
+	{
+		final long	bytes_per_sec	= mbit*1000L*1000/8;
+		final long	one_way			= rtt_ms*MS/2;
+		final long	block_time		= BLOCK*1000*MS/bytes_per_sec;
+		final long	end				= seconds*1000*MS;
+
+		PEPeerRequestPipeline	pipeline = new PEPeerRequestPipeline();
+
+			// events: [time, type, request id] - type 0 = tick, 1 = request reaches peer, 2 = block reaches us
+
+		PriorityQueue<long[]>	events =
+			new PriorityQueue<long[]>(
+				1024,
+				new Comparator<long[]>()
+				{
+					public int
+					compare(
+						long[]	e1,
+						long[]	e2 )
+					{
+						return( Long.compare( e1[0], e2[0] ));
+					}
+				});
+
+		Map<Long,DiskManagerReadRequest>	requests 	= new HashMap<Long,DiskManagerReadRequest>();
+		Map<Long,Long>						sent_times	= new HashMap<Long,Long>();
+
+		long	next_id			= 0;
+		long	peer_busy_until	= 0;
+
+		long[]	second_bytes	= new long[seconds+1];
+
+		long	delivered		= 0;
+		long	delivered_5s	= 0;
+		long	depth_sum		= 0;
+		long	depth_samples	= 0;
+		long	queued_sum		= 0;
+		long	completed		= 0;
+
+		events.add( new long[]{ 0, 0, -1 });
+
+		while( !events.isEmpty()){
+
+			long[]	event	= events.poll();
+			long	now		= event[0];
+
+			if ( now > end ){
+
+				break;
+			}
+
+			if ( event[1] == 0 ){
+
+				int	second = (int)( now/(1000*MS));
+
+					// Average.getInstance( 1000, 10 ) - sum of the last 10 full seconds / 10
+
+				long	sum = 0;
+
+				for ( int i=Math.max( 0, second-10 ); i<second; i++ ){
+
+					sum += second_bytes[i];
+				}
+
+				long	rate = sum/10;
+
+				int	max_requests = -1;
+
+				if ( adaptive ){
+
+					max_requests = pipeline.getTarget();
+				}
+
+				if ( max_requests == -1 ){
+
+					max_requests = ( now < 10*1000*MS?REQUESTS_MIN_MAX:REQUESTS_MIN_MIN ) + (int)( rate/SLOPE_REQUESTS );
+
+					if ( max_requests > REQUESTS_MAX ){
+
+						max_requests = REQUESTS_MAX;
+					}
+				}
+
+				if ( pipeline.size() <= ( max_requests*3 )/5 ){
+
+					while( pipeline.size() < max_requests ){
+
+						long	id = next_id++;
+
+						DiskManagerReadRequest	request = new DiskManagerReadRequestImpl((int)( id/16 ), (int)( id%16 )*BLOCK, BLOCK );
+
+						requests.put( id, request );
+						sent_times.put( id, now );
+
+						pipeline.add( request, now );
+
+						events.add( new long[]{ now + one_way, 1, id });
+					}
+				}
+
+				depth_sum += pipeline.size();
+				depth_samples++;
+
+				events.add( new long[]{ now + TICK, 0, -1 });
+
+			}else if ( event[1] == 1 ){
+
+				long	start = Math.max( now, peer_busy_until );
+
+				queued_sum += start - now;
+
+				peer_busy_until = start + block_time;
+
+				events.add( new long[]{ peer_busy_until + one_way, 2, event[2] });
+
+			}else{
+
+				DiskManagerReadRequest	request = requests.remove( event[2] );
+
+				sent_times.remove( event[2] );
+
+				pipeline.complete( request, now );
+
+				delivered += BLOCK;
+
+				if ( now < 5*1000*MS ){
+
+					delivered_5s += BLOCK;
+				}
+
+				second_bytes[(int)( now/(1000*MS))] += BLOCK;
+
+				completed++;
+			}
+		}
+
+		System.out.println(
+			(adaptive?"adaptive ":"heuristic") + " " + mbit + "Mbit/" + rtt_ms + "ms" +
+			": first 5s=" + ( delivered_5s*8/(5*1000*1000)) + "Mbit/s" +
+			", overall=" + ( delivered*8/((long)seconds*1000*1000)) + "Mbit/s" +
+			", avg depth=" + ( depth_sum/Math.max( 1, depth_samples )) +
+			", peer queue wait=" + ( queued_sum/Math.max( 1, completed )/MS ) + "ms" +
+			", stalls=" + pipeline.getStallCount() +
+			", final target=" + pipeline.getTarget());
+	}
+}
@@ -189,7 +189,7 @@ implements PEPeerTransport
 
 	protected PEPeerStats peer_stats;
 
-	private final ArrayList requested = new ArrayList();
+	private final PEPeerRequestPipeline requested = new PEPeerRequestPipeline();
 	private final AEMonitor	requested_mon = new AEMonitor( "PEPeerTransportProtocol:Req" );
 
 	private Map data;
@@ -408,6 +408,8 @@ implements PEPeerTransport
 
 	private static boolean enable_upload_bias;
 
+	private static boolean adaptive_request_pipeline;
+
 	static {
 		rnd.setSeed(SystemTime.getHighPrecisionCounter());
 		sessionSecret = new byte[20];
@@ -417,7 +419,8 @@ implements PEPeerTransport
 				new String[]{
 					"Use Lazy Bitfield",
 					"Peer.Fast.Initial.Unchoke.Enabled",
-					"Bias Upload Enable" },
+					"Bias Upload Enable",
+					"Peer.Request.Pipeline.Adaptive" },
 				new ParameterListener()
 				{
 					public final void
@@ -433,6 +436,8 @@ implements PEPeerTransport
 						fast_unchoke_new_peers 		= COConfigurationManager.getBooleanParameter( "Peer.Fast.Initial.Unchoke.Enabled" );
 
 						enable_upload_bias 			= COConfigurationManager.getBooleanParameter( "Bias Upload Enable" );
+
+						adaptive_request_pipeline	= COConfigurationManager.getBooleanParameter( "Peer.Request.Pipeline.Adaptive" );
 					}
 				});
 	}
@@ -1487,12 +1492,7 @@ implements PEPeerTransport
 		try{
 			requested_mon.enter();
 
-			if (!requested.contains(request)){
-
-				requested.add(request);
-
-				added = true;
-			}
+			added = requested.add( request, SystemTime.getHighPrecisionCounter());
 		}finally{
 
 			requested_mon.exit();
@@ -2155,9 +2155,10 @@ implements PEPeerTransport
 					if (timeSinceGoodData ==-1 ||timeSinceGoodData >60 *1000)
 						setSnubbed(true);
 				}
-				for (int i = requested.size() - 1; i >= 0; i--) {
-					final DiskManagerReadRequest request =(DiskManagerReadRequest) requested.remove(i);
-					manager.requestCanceled(request);
+				final List<DiskManagerReadRequest> requests = requested.getRequests();
+				requested.clear();
+				for (int i = requests.size() - 1; i >= 0; i--) {
+					manager.requestCanceled(requests.get(i));
 				}
 			}finally{
 
@@ -2169,7 +2170,91 @@ implements PEPeerTransport
 	public int
 	getMaxNbRequests()
 	{
-		return( -1 );
+			// -1 leaves the piece picker's rate based heuristic in charge. snubbed and end-game
+			// peers are deliberately kept to a couple of requests by the picker so leave them alone
+
+		if ( !adaptive_request_pipeline || isSnubbed() || manager.isInEndGameMode()){
+
+			return( -1 );
+		}
+
+		try{
+			requested_mon.enter();
+
+			return( requested.getTarget());
+
+		}finally{
+
+			requested_mon.exit();
+		}
+	}
+
+	private String
+	getRequestPipelineString()
+	{
+		try{
+			requested_mon.enter();
+
+			return( requested.getString());
+
+		}finally{
+
+			requested_mon.exit();
+		}
+	}
+
+		/**
+		 * @return current bandwidth-delay based request queue target, -1 if not yet known
+		 */
+
+	public int
+	getRequestQueueTarget()
+	{
+		try{
+			requested_mon.enter();
+
+			return( requested.getTarget());
+
+		}finally{
+
+			requested_mon.exit();
+		}
+	}
+
+		/**
+		 * @return number of times block delivery stalled with requests outstanding
+		 */
+
+	public int
+	getRequestStallCount()
+	{
+		try{
+			requested_mon.enter();
+
+			return( requested.getStallCount() + ( requested.isStalled( SystemTime.getHighPrecisionCounter())?1:0 ));
+
+		}finally{
+
+			requested_mon.exit();
+		}
+	}
+
+		/**
+		 * @return total millis spent in completed stalls
+		 */
+
+	public long
+	getRequestStallTime()
+	{
+		try{
+			requested_mon.enter();
+
+			return( requested.getStallTime());
+
+		}finally{
+
+			requested_mon.exit();
+		}
 	}
 
 	public int
@@ -2186,14 +2271,15 @@ implements PEPeerTransport
 	getExpiredRequests() {
 		List result = null;
 
-		// this is frequently called, hence we operate without a monitor and
-		// take the hit of possible exceptions due to concurrent list
-		// modification (only out-of-bounds can occur)
+		// the request map can't be iterated safely while being modified so take the
+		// monitor - it's only held for the scan which is cheap
 
 		try{
-			for (int i =requested.size() -1; i >=0; i--)
+			requested_mon.enter();
+
+			for (Iterator<DiskManagerReadRequest> it = requested.iterator(); it.hasNext();)
 			{
-				final DiskManagerReadRequest request = (DiskManagerReadRequest) requested.get(i);
+				final DiskManagerReadRequest request = it.next();
 
 				if (request.isExpired()){
 
@@ -2208,9 +2294,9 @@ implements PEPeerTransport
 
 			return( result );
 
-		}catch(Throwable e ){
+		}finally{
 
-			return result;
+			requested_mon.exit();
 		}
 	}
 
@@ -2226,11 +2312,26 @@ implements PEPeerTransport
 	protected void
 	removeRequest(
 			DiskManagerReadRequest	request )
+	{
+		removeRequest( request, false );
+	}
+
+	private void
+	removeRequest(
+			DiskManagerReadRequest	request,
+			boolean					completed )
 	{
 		try{
 			requested_mon.enter();
 
-			requested.remove(request);
+			if ( completed ){
+
+				requested.complete( request, SystemTime.getHighPrecisionCounter());
+
+			}else{
+
+				requested.remove( request );
+			}
 		}finally{
 
 			requested_mon.exit();
@@ -2246,12 +2347,9 @@ implements PEPeerTransport
 		try{
 			requested_mon.enter();
 
-			final int requestedSize =requested.size();
-			for (int i =0; i <requestedSize; i++)
+			for (Iterator<DiskManagerReadRequest> it = requested.iterator(); it.hasNext();)
 			{
-				final DiskManagerReadRequest request =(DiskManagerReadRequest) requested.get(i);
-				if (request != null)
-					request.resetTime(now);
+				it.next().resetTime(now);
 			}
 		}finally{
 
@@ -3740,7 +3838,7 @@ implements PEPeerTransport
 		boolean piece_error = true;
 
 		if( hasBeenRequested( request ) ) {  //from active request
-			removeRequest( request );
+			removeRequest( request, true );
 			final long now =SystemTime.getCurrentTime();
 			resetRequestsTime(now);
 
@@ -5274,15 +5372,10 @@ implements PEPeerTransport
 			final int[] pieceNumbers = new int[requested.size()];
 			int pos = 0;
 
-			for (int i = 0; i < requested.size(); i++) {
-				DiskManagerReadRequest request = null;
-				try {
-					request = (DiskManagerReadRequest) requested.get(i);
-				} catch (Exception e) {
-					Debug.printStackTrace(e);
-				}
+			for (Iterator<DiskManagerReadRequest> it = requested.iterator(); it.hasNext();) {
+				final DiskManagerReadRequest request = it.next();
 
-				if (request != null && iLastNumber != request.getPieceNumber()) {
+				if (iLastNumber != request.getPieceNumber()) {
 					iLastNumber = request.getPieceNumber();
 					pieceNumbers[pos++] = iLastNumber;
 				}
@@ -5574,6 +5667,7 @@ implements PEPeerTransport
 				",last_recv=" + last_message_received_time + "/" + last_data_message_received_time + "/" + last_good_data_time );
 		writer.println( "    conn_at=" + connection_established_time + ",cons_no_reqs=" + consecutive_no_request_count +
 				",discard=" + requests_discarded + "/" + requests_discarded_endgame + ",recov=" + requests_recovered + ",comp=" + requests_completed + ",curr=" + requested.size());
+		writer.println( "    pipeline=" + getRequestPipelineString() + (adaptive_request_pipeline?"":" (inactive)"));
 
 	}
 
@@ -32,13 +32,35 @@ public class BTAllowedFast implements BTMessage {
   private byte	version;
   private String description = null;
   
-  private final int piece_number;
+  private int piece_number;
+
+  private boolean			flyweight;
+  private volatile boolean	flyweight_free;
   
   
   public BTAllowedFast( int piece_number, byte version ) {
     this.piece_number = piece_number;
     this.version = version;
   }
+
+  /**
+   * Decoder-owned instance, re-initialised in place by reuse() once its consumer has destroyed it.
+   * @see BTMessageFlyweights
+   */
+  BTAllowedFast( byte version ) {
+    this.version = version;
+    this.flyweight = true;
+    this.flyweight_free = true;
+  }
+  
+  boolean reuse( int piece_number ) {
+    if( !flyweight_free )  return false;
+    flyweight_free = false;
+    this.piece_number = piece_number;
+    description = null;
+    buffer = null;
+    return true;
+  }
   
   
   
@@ -98,5 +120,9 @@ public class BTAllowedFast implements BTMessage {
   
   public void destroy() {
     if( buffer != null )  buffer.returnToPool();
+    if( flyweight ) {
+      buffer = null;
+      flyweight_free = true;
+    }
   }
 }
@@ -35,9 +35,12 @@ public class BTCancel implements BTMessage {
   private byte	version;
   private String description = null;
   
-  private final int piece_number;
-  private final int piece_offset;
-  private final int length;
+  private int piece_number;
+  private int piece_offset;
+  private int length;
+
+  private boolean			flyweight;
+  private volatile boolean	flyweight_free;
   
   
   public BTCancel( int piece_number, int piece_offset, int length, byte version ) {
@@ -46,6 +49,27 @@ public class BTCancel implements BTMessage {
     this.length = length;
     this.version = version;
   }
+
+  /**
+   * Decoder-owned instance, re-initialised in place by reuse() once its consumer has destroyed it.
+   * @see BTMessageFlyweights
+   */
+  BTCancel( byte version ) {
+    this.version = version;
+    this.flyweight = true;
+    this.flyweight_free = true;
+  }
+  
+  boolean reuse( int piece_number, int piece_offset, int length ) {
+    if( !flyweight_free )  return false;
+    flyweight_free = false;
+    this.piece_number = piece_number;
+    this.piece_offset = piece_offset;
+    this.length = length;
+    description = null;
+    buffer = null;
+    return true;
+  }
   
   
   
@@ -122,5 +146,9 @@ public class BTCancel implements BTMessage {
   
   public void destroy() {
     if( buffer != null )  buffer.returnToPool();
+    if( flyweight ) {
+      buffer = null;
+      flyweight_free = true;
+    }
   }
 }
@@ -34,13 +34,35 @@ public class BTHave implements BTMessage {
   private DirectByteBuffer buffer = null;
   private String description = null;
   
-  private final int piece_number;
+  private int piece_number;
+
+  private boolean			flyweight;
+  private volatile boolean	flyweight_free;
 
   
   public BTHave( int piece_number, byte version ) {
     this.piece_number = piece_number;
     this.version = version;
   }
+
+  /**
+   * Decoder-owned instance, re-initialised in place by reuse() once its consumer has destroyed it.
+   * @see BTMessageFlyweights
+   */
+  BTHave( byte version ) {
+    this.version = version;
+    this.flyweight = true;
+    this.flyweight_free = true;
+  }
+  
+  boolean reuse( int piece_number ) {
+    if( !flyweight_free )  return false;
+    flyweight_free = false;
+    this.piece_number = piece_number;
+    description = null;
+    buffer = null;
+    return true;
+  }
   
   
   public int getPieceNumber() {  return piece_number;  }
@@ -100,6 +122,10 @@ public class BTHave implements BTMessage {
   
   public void destroy() {
     if( buffer != null )  buffer.returnToPool();
+    if( flyweight ) {
+      buffer = null;
+      flyweight_free = true;
+    }
   }
   
 }
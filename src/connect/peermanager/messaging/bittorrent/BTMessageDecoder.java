@@ -19,6 +19,7 @@
 
 package connect.peermanager.messaging.bittorrent;
 
+import controller.config.COConfigurationManager;
 import torrentlib.Debug;
 import torrentlib.DirectByteBufferPool;
 import torrentlib.DirectByteBuffer;
@@ -45,7 +46,13 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 
   private static final byte SS = DirectByteBuffer.SS_MSG;
   
+  	// fixed-size messages (have, request etc) are read into a decoder-owned buffer and parsed
+  	// in place into reusable messages rather than drawing a pooled buffer and a new message each
+  private static final boolean FLYWEIGHT = COConfigurationManager.getBooleanParameter( "network.bt.decoder.flyweight", false );
+  
   private DirectByteBuffer payload_buffer = null;
+  private final DirectByteBuffer fixed_buffer;
+  private final BTMessageFlyweights flyweights;
   private final DirectByteBuffer length_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG, 4 );
   private final ByteBuffer[] decode_array = new ByteBuffer[] { null, length_buffer.getBuffer( SS ) };
   
@@ -69,7 +76,19 @@ public class BTMessageDecoder implements MessageStreamDecoder {
   
   
   public BTMessageDecoder() {
-    /* nothing */
+    this( FLYWEIGHT );
+  }
+  
+  
+  BTMessageDecoder( boolean flyweight ) {
+    if( flyweight ) {
+      flyweights = new BTMessageFlyweights();
+      fixed_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG, BTMessageFlyweights.MAX_LENGTH );
+    }
+    else {
+      flyweights = null;
+      fixed_buffer = null;
+    }
   }
   
   
@@ -154,6 +173,8 @@ public class BTMessageDecoder implements MessageStreamDecoder {
     
   
 
+  BTMessageFlyweights getFlyweights() {  return flyweights;  }
+  
   public int getProtocolBytesDecoded() {  return protocol_bytes_last_read;  }  
   public int getDataBytesDecoded() {  return data_bytes_last_read;  }
     
@@ -206,9 +227,15 @@ public class BTMessageDecoder implements MessageStreamDecoder {
     length_buffer.returnToPool();
     
     if( plb != null ) {
-    	plb.returnToPool();
+    	if( plb != fixed_buffer ) {
+    		plb.returnToPool();
+    	}
     	payload_buffer = null;
     }
+    
+    if( fixed_buffer != null ) {
+    	fixed_buffer.returnToPool();
+    }
  
     try{
 	    for( int i=0; i < messages_last_read.size(); i++ ) {
@@ -330,10 +357,28 @@ public class BTMessageDecoder implements MessageStreamDecoder {
         }
         else {  //decode normal message
           try {
-            messages_last_read.add(createMessage(ref_buff));
+            if( ref_buff == fixed_buffer ) {
+              Message msg = flyweights.decode( fixed_buffer, message_length );
+              
+              if( msg != null ) {
+                messages_last_read.add( msg );
+                ref_buff = null;
+              }
+              else {  //not one of the fixed-size types, so hand the normal path a pooled copy
+                ref_buff = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_PAYLOAD, message_length );
+                ref_buff.put( SS, fixed_buffer );
+                ref_buff.flip( SS );
+              }
+            }
+            
+            if( ref_buff != null ) {
+              messages_last_read.add(createMessage(ref_buff));
+            }
           }
           catch( Throwable e ) {
-            ref_buff.returnToPoolIfNotFree();
+            if( ref_buff != null && ref_buff != fixed_buffer ) {
+              ref_buff.returnToPoolIfNotFree();
+            }
             
         	// maintain unexpected errors as such so they get logged later
             
@@ -388,6 +433,11 @@ public class BTMessageDecoder implements MessageStreamDecoder {
         else if( message_length < MIN_MESSAGE_LENGTH || message_length > MAX_MESSAGE_LENGTH ) {
           throw new IOException( "Invalid message length given for BT message decode: " + message_length );
         }
+        else if( fixed_buffer != null && message_length <= BTMessageFlyweights.MAX_LENGTH ) {
+          fixed_buffer.position( SS, 0 );
+          fixed_buffer.limit( SS, message_length );
+          payload_buffer = fixed_buffer;
+        }
         else {  //normal message
           payload_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_PAYLOAD, message_length );
         }
@@ -0,0 +1,259 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package connect.peermanager.messaging.bittorrent;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import controller.networkmanager.Transport;
+import controller.networkmanager.TransportEndpoint;
+import connect.peer.messaging.Message;
+
+/**
+ * Feeds a synthetic inbound stream from many peers through BTMessageDecoder, consuming each
+ * message the way PEPeerTransportProtocol does (read the fields, then destroy), and reports heap
+ * bytes allocated per message with and without the flyweight decode mode.
+ * <p>
+ * Usage: BTMessageDecoderBenchmark [peers] [rounds]
+ */
+
+public class 
+BTMessageDecoderBenchmark 
+{
+	public static void
+	main(
+		String[]	args )
+	
+		throws Exception
+	{
+		int	peers	= args.length>0?Integer.parseInt( args[0] ):1000;
+		int	rounds	= args.length>1?Integer.parseInt( args[1] ):2000;
+		
+		BTMessageFactory.init();
+		
+		byte[]	stream = buildStream( 256*1024 );
+		
+		for ( boolean flyweight: new boolean[]{ false, true, false, true }){
+			
+			run( flyweight, stream, peers, rounds );
+		}
+	}
+	
+	private static void
+	run(
+		boolean		flyweight,
+		byte[]		stream,
+		int			num_peers,
+		int			rounds )
+	
+		throws IOException
+	{
+		BTMessageDecoder[]	decoders 	= new BTMessageDecoder[num_peers];
+		streamTransport[]	transports	= new streamTransport[num_peers];
+		
+		for (int i=0;i<num_peers;i++){
+			
+			decoders[i] 	= new BTMessageDecoder( flyweight );
+			transports[i]	= new streamTransport( stream );
+		}
+		
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		
+		long	thread_id	= Thread.currentThread().getId();
+		long	alloc_start	= mx.getThreadAllocatedBytes( thread_id );
+		long	time_start	= System.nanoTime();
+		
+		long	messages	= 0;
+		long	checksum	= 0;
+		
+		for (int r=0;r<rounds;r++){
+			
+			for (int i=0;i<num_peers;i++){
+				
+				BTMessageDecoder decoder = decoders[i];
+				
+					// MultiPeerDownloader2 reads at most an MSS per connection per pass
+				
+				decoder.performStreamDecode( transports[i], 1460 );
+				
+				Message[]	msgs = decoder.removeDecodedMessages();
+				
+				if ( msgs == null ){
+					
+					continue;
+				}
+				
+				for ( Message msg: msgs ){
+					
+					if ( msg instanceof BTHave ){
+						
+						checksum += ((BTHave)msg).getPieceNumber();
+						
+					}else if ( msg instanceof BTRequest ){
+						
+						checksum += ((BTRequest)msg).getPieceOffset();
+						
+					}else if ( msg instanceof BTCancel ){
+						
+						checksum += ((BTCancel)msg).getLength();
+					}
+					
+					msg.destroy();
+					
+					messages++;
+				}
+			}
+		}
+		
+		long	elapsed = System.nanoTime() - time_start;
+		long	alloc	= mx.getThreadAllocatedBytes( thread_id ) - alloc_start;
+		
+		long	reused		= 0;
+		long	allocated	= 0;
+		
+		for ( BTMessageDecoder decoder: decoders ){
+			
+			BTMessageFlyweights	fw = decoder.getFlyweights();
+			
+			if ( fw != null ){
+				
+				reused 		+= fw.getReusedCount();
+				allocated	+= fw.getAllocatedCount();
+			}
+			
+			decoder.destroy();
+		}
+		
+		System.out.println( 
+			( flyweight?"flyweight":"standard " ) + 
+			": messages=" + messages + 
+			", alloc=" + ( alloc/(1024*1024)) + "MB" +
+			", bytes/msg=" + ( messages==0?0:alloc/messages ) + 
+			", msgs/sec=" + ( messages*1000000000L/Math.max( 1, elapsed )) +
+			( flyweight?( ", reused=" + reused + ", allocated=" + allocated ):"" ) +
+			" [" + checksum + "]" );
+	}
+	
+	private static byte[]
+	buildStream(
+		int		target )
+	{
+		ByteBuffer	bb = ByteBuffer.allocate( target + 32*1024 );
+		
+		Random	random = new Random( 0 );
+		
+		while( bb.position() < target ){
+			
+			int	type = random.nextInt( 100 );
+			
+			if ( type < 60 ){
+				
+				bb.putInt( 5 ).put((byte)4 ).putInt( random.nextInt( 5000 ));
+				
+			}else if ( type < 85 ){
+				
+				bb.putInt( 13 ).put((byte)6 ).putInt( random.nextInt( 5000 )).putInt( random.nextInt( 16 )*16384 ).putInt( 16384 );
+				
+			}else if ( type < 90 ){
+				
+				bb.putInt( 13 ).put((byte)8 ).putInt( random.nextInt( 5000 )).putInt( random.nextInt( 16 )*16384 ).putInt( 16384 );
+				
+			}else{
+				
+				bb.putInt( 9 + 16384 ).put((byte)7 ).putInt( random.nextInt( 5000 )).putInt( 0 );
+				
+				bb.position( bb.position() + 16384 );
+			}
+		}
+		
+		byte[]	result = new byte[bb.position()];
+		
+		bb.flip();
+		
+		bb.get( result );
+		
+		return( result );
+	}
+	
+		/**
+		 * Endless loop over the message stream, always ready to read.
+		 */
+	
+	private static class
+	streamTransport
+		extends Transport
+	{
+		private final byte[]	stream;
+		private int				position;
+		
+		private
+		streamTransport(
+			byte[]		_stream )
+		{
+			stream		= _stream;
+		}
+		
+		public long
+		read(
+			ByteBuffer[] 	buffers,
+			int 			array_offset,
+			int 			length )
+		{
+			long	total = 0;
+			
+			for (int i=array_offset;i<array_offset+length;i++){
+				
+				ByteBuffer	bb = buffers[i];
+				
+				while( bb.hasRemaining()){
+					
+					int	chunk = Math.min( bb.remaining(), stream.length - position );
+					
+					bb.put( stream, position, chunk );
+					
+					position += chunk;
+					total	 += chunk;
+					
+					if ( position == stream.length ){
+						
+						position = 0;
+					}
+				}
+			}
+			
+			return( total );
+		}
+		
+		public int getMssSize(){ return( 1460 ); }
+		
+		public String getDescription(){ return( "benchmark" ); }
+		
+		public boolean isTCP(){ return( true ); }
+		
+		public TransportEndpoint getTransportEndpoint(){ return( null ); }
+		
+		public void setTransportMode( int mode ){}
+		
+		public int getTransportMode(){ return( TRANSPORT_MODE_NORMAL ); }
+		
+		public void close( String reason ){}
+	}
+}
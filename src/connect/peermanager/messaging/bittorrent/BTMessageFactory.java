@@ -75,6 +75,7 @@ public class BTMessageFactory {
   
   
   private static final String[] id_to_name = new String[21];  
+  private static final byte[][] id_to_name_bytes = new byte[21][];	// lazily encoded, getMessageType is on the read path
   private static final HashMap legacy_data = new HashMap();
   static {
     legacy_data.put( BTMessage.ID_BT_CHOKE, new LegacyData( RawMessage.PRIORITY_HIGH, true, new Message[]{new BTUnchoke((byte)0), new BTPiece( -1, -1, null,(byte)0 )}, (byte)0 ) );
@@ -208,11 +209,21 @@ public class BTMessageFactory {
   	byte id = stream_payload.get( DirectByteBuffer.SS_MSG, 0 );
   	if( id == 84 )  return Message.TYPE_PROTOCOL_PAYLOAD;  //handshake message byte in position 4
   	if ( id >= 0 && id < id_to_name.length ){
- 		String name = id_to_name[ id ];
+ 		byte[] name_bytes = id_to_name_bytes[ id ];
  		
- 		if ( name != null ){
+ 		if ( name_bytes == null ){
+ 			
+ 			String name = id_to_name[ id ];
+ 			
+ 			if ( name != null ){
+ 				
+ 				name_bytes = id_to_name_bytes[ id ] = name.getBytes();
+ 			}
+ 		}
+ 		
+ 		if ( name_bytes != null ){
   		
- 			Message message = MessageManager.getSingleton().lookupMessage( name );
+ 			Message message = MessageManager.getSingleton().lookupMessage( name_bytes );
  			
  			if ( message != null ){
  				
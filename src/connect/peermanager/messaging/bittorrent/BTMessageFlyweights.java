@@ -0,0 +1,299 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package connect.peermanager.messaging.bittorrent;
+
+import java.util.Arrays;
+
+import torrentlib.DirectByteBuffer;
+
+import connect.peer.messaging.Message;
+import connect.peer.messaging.MessageException;
+
+/**
+ * Per-decoder set of reusable have, request, cancel, reject and allowed-fast messages. These are
+ * parsed in place from the decoder's fixed message buffer. A slot is only handed out again once
+ * the previous message in it has been destroyed by its consumer, so queued or retained messages
+ * are never overwritten. Slots are taken in rotation: as consumers destroy in delivery order the
+ * slot under the cursor is the one most likely to be free, so only that one is checked. When it
+ * is busy the set grows (up to MAX_SLOTS) to cover the largest batch seen, beyond that a new
+ * message is allocated as before.
+ */
+
+class 
+BTMessageFlyweights 
+{
+		// largest fixed-size message we handle: id + piece + offset + length
+	
+	static final int	MAX_LENGTH	= 13;
+	
+	private static final int	MAX_SLOTS	= 256;
+	
+	private static final byte	SS = DirectByteBuffer.SS_MSG;
+	
+	private final slotSet	haves		= new slotSet();
+	private final slotSet	requests	= new slotSet();
+	private final slotSet	cancels		= new slotSet();
+	private final slotSet	rejects		= new slotSet();
+	private final slotSet	allowed		= new slotSet();
+	
+	private long	reused;
+	private long	allocated;
+	
+	/**
+	 * Decode a complete message held in the given buffer, which is left untouched.
+	 * @return the message or null if it isn't one of the fixed-size types handled here
+	 */
+	
+	Message
+	decode(
+		DirectByteBuffer	buffer,
+		int					length )
+	
+		throws MessageException
+	{
+		byte	id = buffer.get( SS, 0 );
+		
+		switch( id ){
+		
+			case 4:{
+				
+				int	number = getPieceNumber( buffer, length, BTMessage.ID_BT_HAVE );
+				
+				BTHave	m = (BTHave)haves.current();
+				
+				if ( m != null && m.reuse( number )){
+					
+					return( haves.taken( m ));
+				}
+				
+				allocated++;
+				
+				if ( haves.canGrow()){
+					
+					m = new BTHave((byte)1 );
+					
+					m.reuse( number );
+					
+					return( haves.add( m ));
+				}
+				
+				return( new BTHave( number, (byte)1 ));
+			}
+			case 17:{
+				
+				int	number = getPieceNumber( buffer, length, BTMessage.ID_BT_ALLOWED_FAST );
+				
+				BTAllowedFast	m = (BTAllowedFast)allowed.current();
+				
+				if ( m != null && m.reuse( number )){
+					
+					return( allowed.taken( m ));
+				}
+				
+				allocated++;
+				
+				if ( allowed.canGrow()){
+					
+					m = new BTAllowedFast((byte)1 );
+					
+					m.reuse( number );
+					
+					return( allowed.add( m ));
+				}
+				
+				return( new BTAllowedFast( number, (byte)1 ));
+			}
+			case 6:
+			case 8:
+			case 16:{
+				
+				String	name = id==6?BTMessage.ID_BT_REQUEST:(id==8?BTMessage.ID_BT_CANCEL:BTMessage.ID_BT_REJECT_REQUEST);
+				
+				if ( length != 13 ){
+					
+					throw( new MessageException( "[" + name + "] decode error: payload.remaining[" + (length-1) + "] != 12" ));
+				}
+				
+				int	number	= buffer.getInt( SS, 1 );
+				int	offset	= buffer.getInt( SS, 5 );
+				int	len		= buffer.getInt( SS, 9 );
+				
+				if ( number < 0 || offset < 0 || len < 0 ){
+					
+					throw( new MessageException( "[" + name + "] decode error: negative field" ));
+				}
+				
+				if ( id == 6 ){
+					
+					BTRequest	m = (BTRequest)requests.current();
+					
+					if ( m != null && m.reuse( number, offset, len )){
+						
+						return( requests.taken( m ));
+					}
+					
+					allocated++;
+					
+					if ( requests.canGrow()){
+						
+						m = new BTRequest((byte)1 );
+						
+						m.reuse( number, offset, len );
+						
+						return( requests.add( m ));
+					}
+					
+					return( new BTRequest( number, offset, len, (byte)1 ));
+					
+				}else if ( id == 8 ){
+					
+					BTCancel	m = (BTCancel)cancels.current();
+					
+					if ( m != null && m.reuse( number, offset, len )){
+						
+						return( cancels.taken( m ));
+					}
+					
+					allocated++;
+					
+					if ( cancels.canGrow()){
+						
+						m = new BTCancel((byte)1 );
+						
+						m.reuse( number, offset, len );
+						
+						return( cancels.add( m ));
+					}
+					
+					return( new BTCancel( number, offset, len, (byte)1 ));
+					
+				}else{
+					
+					BTRejectRequest	m = (BTRejectRequest)rejects.current();
+					
+					if ( m != null && m.reuse( number, offset, len )){
+						
+						return( rejects.taken( m ));
+					}
+					
+					allocated++;
+					
+					if ( rejects.canGrow()){
+						
+						m = new BTRejectRequest((byte)1 );
+						
+						m.reuse( number, offset, len );
+						
+						return( rejects.add( m ));
+					}
+					
+					return( new BTRejectRequest( number, offset, len, (byte)1 ));
+				}
+			}
+			default:{
+				
+				return( null );
+			}
+		}
+	}
+	
+	private int
+	getPieceNumber(
+		DirectByteBuffer	buffer,
+		int					length,
+		String				name )
+	
+		throws MessageException
+	{
+		if ( length != 5 ){
+			
+			throw( new MessageException( "[" + name + "] decode error: payload.remaining[" + (length-1) + "] != 4" ));
+		}
+		
+		int	number = buffer.getInt( SS, 1 );
+		
+		if ( number < 0 ){
+			
+			throw( new MessageException( "[" + name + "] decode error: number < 0" ));
+		}
+		
+		return( number );
+	}
+	
+	long
+	getReusedCount()
+	{
+		return( reused );
+	}
+	
+	long
+	getAllocatedCount()
+	{
+		return( allocated );
+	}
+	
+	private class
+	slotSet
+	{
+		private Message[]	slots	= new Message[0];
+		private int			count;
+		private int			cursor;
+		
+		private Message
+		current()
+		{
+			return( count==0?null:slots[cursor] );
+		}
+		
+		private Message
+		taken(
+			Message		m )
+		{
+			reused++;
+			
+			cursor = ( cursor + 1 ) % count;
+			
+			return( m );
+		}
+		
+		private boolean
+		canGrow()
+		{
+			return( count < MAX_SLOTS );
+		}
+		
+		private Message
+		add(
+			Message		m )
+		{
+			if ( count == slots.length ){
+				
+				slots = Arrays.copyOf( slots, Math.max( 8, count*2 ));
+			}
+			
+			slots[count++] = m;
+			
+				// everything before us is busy in this batch, next batch starts from the oldest
+			
+			cursor = 0;
+			
+			return( m );
+		}
+	}
+}
@@ -35,10 +35,13 @@ public class BTRejectRequest implements BTMessage {
   private DirectByteBuffer buffer = null;
   private String description = null;
   
-  private final int piece_number;
-  private final int piece_offset;
-  private final int length;
-  private final int hashcode;
+  private int piece_number;
+  private int piece_offset;
+  private int length;
+  private int hashcode;
+
+  private boolean			flyweight;
+  private volatile boolean	flyweight_free;
   
   
   public BTRejectRequest( int piece_number, int piece_offset, int length, byte version ) {
@@ -49,6 +52,28 @@ public class BTRejectRequest implements BTMessage {
     this.hashcode = piece_number + piece_offset + length;
   }
 
+  /**
+   * Decoder-owned instance, re-initialised in place by reuse() once its consumer has destroyed it.
+   * @see BTMessageFlyweights
+   */
+  BTRejectRequest( byte version ) {
+    this.version = version;
+    this.flyweight = true;
+    this.flyweight_free = true;
+  }
+  
+  boolean reuse( int piece_number, int piece_offset, int length ) {
+    if( !flyweight_free )  return false;
+    flyweight_free = false;
+    this.piece_number = piece_number;
+    this.piece_offset = piece_offset;
+    this.length = length;
+    this.hashcode = piece_number + piece_offset + length;
+    description = null;
+    buffer = null;
+    return true;
+  }
+
   
   public int getPieceNumber() {  return piece_number;  }
   
@@ -123,6 +148,10 @@ public class BTRejectRequest implements BTMessage {
   
   public void destroy() {
     if( buffer != null )  buffer.returnToPool();
+    if( flyweight ) {
+      buffer = null;
+      flyweight_free = true;
+    }
   } 
   
   
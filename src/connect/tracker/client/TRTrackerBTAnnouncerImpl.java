@@ -131,6 +131,12 @@ TRTrackerBTAnnouncerImpl
 	 
 	protected static Timer	tracker_timer = new Timer( "Tracker Timer", 32);
 	
+	static{
+			// announces spend their time blocked on tracker I/O
+		
+		tracker_timer.setVirtualThreads();
+	}
+	
 	public static String 	UDP_REALM = "UDP Tracker";
 	
 	private static int userMinInterval = 0;
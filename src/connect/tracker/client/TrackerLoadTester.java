@@ -20,55 +20,229 @@
  */
 package connect.tracker.client;
 
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import controller.config.COConfigurationManager;
+import connect.tracker.server.TRTrackerServer;
+import connect.tracker.server.TRTrackerServerFactory;
 import torrentlib.Constants;
 
 /**
  * @author Olivier Chalouhi
  *
+ * Multi-threaded announce load generator. Each client first announces "started" once, then
+ * the worker threads re-announce random clients for the run time and the announce rate and
+ * latency percentiles are reported.
+ * 
+ * Usage: TrackerLoadTester torrents clients_per_torrent [threads] [seconds] [tracker url|embedded[:port]]
+ * 
+ * "embedded" starts a tracker in-process (NAT checking off) with the torrents pre-authorised.
  */
 public class TrackerLoadTester {
   
   private static final String trackerUrl = "http://localhost:6969/announce";
   
+  private final String url;
+  private final int nbTorrents;
+  private final int nbClientsPerTorrent;
+  
+  private final AtomicLong errors = new AtomicLong();
+  
   public TrackerLoadTester(int nbTorrents,int nbClientsPerTorrent) {
+    this(trackerUrl,nbTorrents,nbClientsPerTorrent);
+    
     for(int i = 0 ; i < nbTorrents ; i++) {
-      byte[] hash = generate20BytesHash(i);
-      //System.out.println("Adding torrent " + hash);
       for(int j = 0 ; j < nbClientsPerTorrent ; j++) {
-        byte[] peerId = generate20BytesHash(j);
-        announce(trackerUrl,hash,peerId,6881+j);
+        announce(i,j,"started");
       }
     }
   }
+  
+  public TrackerLoadTester(String url,int nbTorrents,int nbClientsPerTorrent) {
+    this.url = url;
+    this.nbTorrents = nbTorrents;
+    this.nbClientsPerTorrent = nbClientsPerTorrent;
+  }
      
-  public static void main(String args[]) {
+  public static void main(String args[]) throws Exception {
     if(args.length < 2) return;
     int nbTorrents = Integer.parseInt(args[0]);
     int nbClientsPerTorrent = Integer.parseInt(args[1]);
-    new TrackerLoadTester(nbTorrents,nbClientsPerTorrent);
+    
+    if(args.length == 2) {
+      new TrackerLoadTester(nbTorrents,nbClientsPerTorrent);
+      return;
+    }
+    
+    int threads = Integer.parseInt(args[2]);
+    int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+    String target = args.length > 4 ? args[4] : trackerUrl;
+    
+    TRTrackerServer server = null;
+    
+    if(target.startsWith("embedded")) {
+      int port = target.indexOf(':') == -1 ? 6969 : Integer.parseInt(target.substring(target.indexOf(':')+1));
+      
+      COConfigurationManager.setParameter("Tracker NAT Check Enable",false);
+      
+      server = TRTrackerServerFactory.create(TRTrackerServerFactory.PR_TCP,port,false,false);
+      
+      for(int i = 0 ; i < nbTorrents ; i++) {
+        server.permit("",generate20BytesHash(i),true);
+      }
+      
+      target = "http://127.0.0.1:" + port + "/announce";
+    }
+    
+    TrackerLoadTester tester = new TrackerLoadTester(target,nbTorrents,nbClientsPerTorrent);
+    
+    tester.populate(threads);
+    
+    tester.run(threads,seconds);
+    
+    if(server != null) {
+      server.close();
+    }
+  }
+  
+  /**
+   * announce every client once, spread across the threads
+   */
+  private void populate(int threads) throws InterruptedException {
+    final AtomicInteger next = new AtomicInteger();
+    final int total = nbTorrents * nbClientsPerTorrent;
+    
+    long start = System.nanoTime();
+    
+    Thread[] workers = new Thread[threads];
+    for(int t = 0 ; t < threads ; t++) {
+      workers[t] = new Thread("TrackerLoadTester:populate") {
+        public void run() {
+          int n;
+          while((n = next.getAndIncrement()) < total) {
+            announce(n / nbClientsPerTorrent,n % nbClientsPerTorrent,"started");
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for(Thread t : workers) {
+      t.join();
+    }
+    
+    long elapsed = System.nanoTime() - start;
+    
+    System.out.println("populated " + total + " clients in " + (elapsed/1000000) + "ms (" + (total*1000000000L/Math.max(1,elapsed)) + "/sec), errors=" + errors.get());
+  }
+  
+  private void run(int threads,final int seconds) throws InterruptedException {
+    final long[][] latencies = new long[threads][];
+    final int[] counts = new int[threads];
+    final CountDownLatch done = new CountDownLatch(threads);
+    
+    errors.set(0);
+    
+    final long start = System.nanoTime();
+    final long end = start + seconds*1000000000L;
+    
+    for(int t = 0 ; t < threads ; t++) {
+      final int index = t;
+      new Thread("TrackerLoadTester:run") {
+        public void run() {
+          Random random = new Random(index);
+          long[] lat = new long[1024];
+          int count = 0;
+          try {
+            while(true) {
+              long before = System.nanoTime();
+              if(before >= end) break;
+              announce(random.nextInt(nbTorrents),random.nextInt(nbClientsPerTorrent),null);
+              if(count == lat.length) lat = Arrays.copyOf(lat,count*2);
+              lat[count++] = System.nanoTime() - before;
+            }
+          } finally {
+            latencies[index] = lat;
+            counts[index] = count;
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+    
+    done.await();
+    
+    long elapsed = System.nanoTime() - start;
+    
+    int total = 0;
+    for(int c : counts) total += c;
+    
+    long[] all = new long[total];
+    int pos = 0;
+    for(int t = 0 ; t < threads ; t++) {
+      System.arraycopy(latencies[t],0,all,pos,counts[t]);
+      pos += counts[t];
+    }
+    Arrays.sort(all);
+    
+    System.out.println(
+        "threads=" + threads + ", torrents=" + nbTorrents + ", clients/torrent=" + nbClientsPerTorrent +
+        ": " + (total*1000000000L/Math.max(1,elapsed)) + " announces/sec" +
+        ", p50=" + percentile(all,50) + "us, p99=" + percentile(all,99) + "us, max=" + (total==0?0:all[total-1]/1000) + "us" +
+        ", errors=" + errors.get());
   }
   
-  private void announce(String trackerURL,byte[] hash,byte[] peerId,int port) {
+  private static long percentile(long[] sorted,int pct) {
+    if(sorted.length == 0) return 0;
+    return sorted[Math.min(sorted.length-1,(int)((long)sorted.length*pct/100))] / 1000;
+  }
+  
+  private void announce(int torrent,int client,String event) {
+    byte[] hash = generate20BytesHash(torrent);
+    byte[] peerId = generate20BytesHash(client+1);
+    int port = 1024 + client % 64000;
+    
+    announce(url,hash,peerId,port,event);
+  }
+  
+  private void announce(String trackerURL,byte[] hash,byte[] peerId,int port,String event) {
     try {
       String strUrl = trackerURL 
       	+ "?info_hash=" + URLEncoder.encode(new String(hash, Constants.BYTE_ENCODING), Constants.BYTE_ENCODING).replaceAll("\\+", "%20")
       	+ "&peer_id="   + URLEncoder.encode(new String(peerId, Constants.BYTE_ENCODING), Constants.BYTE_ENCODING).replaceAll("\\+", "%20")
       	+ "&port=" + port
-      	+ "&uploaded=0&downloaded=0&left=0&numwant=50&no_peer_id=1&compact=1";
+      	+ "&uploaded=0&downloaded=0&left=" + (port%4==0?0:1000) + "&numwant=50&no_peer_id=1&compact=1"
+      	+ (event==null?"":"&event=" + event);
       //System.out.println(strUrl);
       URL url = new URL(strUrl);
-      URLConnection con = url.openConnection();
+      HttpURLConnection con = (HttpURLConnection)url.openConnection();
       con.connect();
-      con.getContent();
+      
+      	// read the reply fully so the connection can be reused
+      
+      InputStream is = con.getInputStream();
+      byte[] buffer = new byte[4096];
+      while(is.read(buffer) != -1);
+      is.close();
+      
+      if(con.getResponseCode() != 200) {
+        errors.incrementAndGet();
+      }
     } catch(Exception e) {
-      e.printStackTrace();
+      if(errors.incrementAndGet() == 1) {
+        e.printStackTrace();
+      }
     }    
   }
   
-  private byte[] generate20BytesHash(int iter) {
+  private static byte[] generate20BytesHash(int iter) {
     byte[] result = new byte[20];
     int pos = 0;
     while(iter > 0) {
@@ -139,6 +139,10 @@ public class TrackerStatus {
 	private static List				logged_invalid_urls				= new ArrayList();
 	private static ThreadPool		thread_pool						= new ThreadPool("TrackerStatus", 10, true);	// queue when full rather than block
 	
+	static{
+		thread_pool.setVirtualThreads();
+	}
+	
 	private final URL				tracker_url;
 	private boolean					az_tracker;
 	private boolean					enable_sni_hack;
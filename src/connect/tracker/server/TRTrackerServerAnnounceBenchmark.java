@@ -0,0 +1,128 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package connect.tracker.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import controller.config.COConfigurationManager;
+
+import torrentlib.BEncoder;
+import torrentlib.HashWrapper;
+
+/**
+ * Times building and encoding announce replies for a single torrent on an in-process tracker,
+ * reporting the cost per reply and the bytes allocated per reply. The announce cache is
+ * disabled so every reply is built.
+ * <p>
+ * Usage: TRTrackerServerAnnounceBenchmark [peers] [num_want] [port]
+ */
+
+public class
+TRTrackerServerAnnounceBenchmark
+{
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int	num_peers	= args.length>0?Integer.parseInt( args[0] ):10000;
+		int	num_want	= args.length>1?Integer.parseInt( args[1] ):50;
+		int	port		= args.length>2?Integer.parseInt( args[2] ):16970;
+
+		COConfigurationManager.setParameter( "Tracker NAT Check Enable", false );
+		COConfigurationManager.setParameter( "Tracker Announce Cache", 0 );
+
+		TRTrackerServer	server = TRTrackerServerFactory.create( TRTrackerServerFactory.PR_TCP, port, false, false );
+
+		byte[]	hash = new byte[20];
+
+		new Random( 0 ).nextBytes( hash );
+
+		TRTrackerServerTorrentImpl	torrent = (TRTrackerServerTorrentImpl)server.permit( "", hash, true );
+
+		Random	random = new Random( 1 );
+
+		for ( int i=0; i<num_peers; i++ ){
+
+			byte[]	peer_id = new byte[20];
+
+			random.nextBytes( peer_id );
+
+			String	ip = "10." + ((i>>16)&0xff) + "." + ((i>>8)&0xff) + "." + (i&0xff);
+
+			torrent.peerContact(
+				"", "started", new HashWrapper( peer_id ), 6881 + (i%1000), 0, 0,
+				TRTrackerServerPeer.CRYPTO_NONE, (byte)0, ip, ip, false, false, null,
+				0, 0, i%4==0?0:1000, 1800, 0, null );
+		}
+
+			// addresses resolve asynchronously, give them a moment
+
+		Thread.sleep( 2000 );
+
+		for ( int loop=0; loop<3; loop++ ){
+
+			run( torrent, num_want, TRTrackerServerTorrentImpl.COMPACT_MODE_NORMAL, "compact" );
+			run( torrent, num_want, TRTrackerServerTorrentImpl.COMPACT_MODE_NONE, "dictionary" );
+		}
+
+		server.close();
+	}
+
+	private static void
+	run(
+		TRTrackerServerTorrentImpl	torrent,
+		int							num_want,
+		byte						compact_mode,
+		String						name )
+
+		throws Exception
+	{
+		com.sun.management.ThreadMXBean	bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+		long	thread_id = Thread.currentThread().getId();
+
+		int		replies	= 100000;
+		long	bytes	= 0;
+
+		long	alloc_start = bean.getThreadAllocatedBytes( thread_id );
+		long	start		= System.nanoTime();
+
+		for ( int i=0; i<replies; i++ ){
+
+			Map	root =
+				torrent.exportAnnounceToMap(
+					"192.168.0.1", new HashMap(), null, true, num_want, 1800, 60, true,
+					compact_mode, TRTrackerServerPeer.CRYPTO_NONE, null );
+
+			bytes += BEncoder.encode( root ).length;
+		}
+
+		long	elapsed = System.nanoTime() - start;
+		long	alloc	= bean.getThreadAllocatedBytes( thread_id ) - alloc_start;
+
+		System.out.println(
+			name + ": " + ( elapsed/replies/1000.0 ) + "us/reply, " + ( alloc/replies ) +
+			" bytes allocated/reply, reply size=" + ( bytes/replies ));
+	}
+}
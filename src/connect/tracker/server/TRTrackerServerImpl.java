@@ -50,6 +50,7 @@ import comm.ipfilter.IpFilter;
 import controller.config.COConfigurationListener;
 import controller.config.COConfigurationManager;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.net.InetSocketAddress;
 import java.net.URL;
 import java.net.URLDecoder;
@@ -85,11 +86,12 @@ TRTrackerServerImpl
 
 	public static List<String>	banned_clients = new ArrayList<String>();
 
-		// torrent map is static across all protocol servers
+		// torrent map is static across all protocol servers. concurrent as it is hit on every
+		// announce/scrape and the per-server class_mon below doesn't actually exclude other servers
 
-	private static Map		torrent_map = new HashMap();
+	private static final ConcurrentHashMap<HashWrapper,TRTrackerServerTorrentImpl>	torrent_map = new ConcurrentHashMap<HashWrapper,TRTrackerServerTorrentImpl>();
 
-	private static Map		link_map	= new HashMap();
+	private static final ConcurrentHashMap<String,TRTrackerServerTorrent>			link_map	= new ConcurrentHashMap<String,TRTrackerServerTorrent>();
 
 	protected AEMonitor class_mon 	= new AEMonitor( "TRTrackerServer:class" );
 
@@ -403,15 +405,7 @@ TRTrackerServerImpl
 		String					link,
 		TRTrackerServerTorrent	target )
 	{
-		try{
-			class_mon.enter();
-
-			return((TRTrackerServerTorrent)link_map.put( link, target ));
-
-		}finally{
-
-			class_mon.exit();
-		}
+		return( link_map.put( link, target ));
 	}
 
 	public void
@@ -419,15 +413,7 @@ TRTrackerServerImpl
 		String					link,
 		TRTrackerServerTorrent	target )
 	{
-		try{
-			class_mon.enter();
-
-			link_map.remove( link );
-
-		}finally{
-
-			class_mon.exit();
-		}
+		link_map.remove( link );
 	}
 
 	public void
@@ -455,11 +441,11 @@ TRTrackerServerImpl
 
 			biased_peers = new HashSet( peers );
 
-			Iterator	tit = torrent_map.values().iterator();
+			Iterator<TRTrackerServerTorrentImpl>	tit = torrent_map.values().iterator();
 
 			while(tit.hasNext()){
 
-				TRTrackerServerTorrentImpl	this_torrent = (TRTrackerServerTorrentImpl)tit.next();
+				TRTrackerServerTorrentImpl	this_torrent = tit.next();
 
 				this_torrent.updateBiasedPeers( biased_peers );
 			}
@@ -677,40 +663,32 @@ TRTrackerServerImpl
 
 			if ( num < 256 ){
 
-				try{
-					class_mon.enter();
-
-
-					if ( num > 0 ){
+				if ( num > 0 ){
 
-						// full scrape or error - spread the reported bytes across the torrents
+					// full scrape or error - spread the reported bytes across the torrents
 
-						int	ave_in	= bytes_in/num;
-						int	ave_out	= bytes_out/num;
+					int	ave_in	= bytes_in/num;
+					int	ave_out	= bytes_out/num;
 
-						int	rem_in 	= bytes_in-(ave_in*num);
-						int rem_out	= bytes_out-(ave_out*num);
+					int	rem_in 	= bytes_in-(ave_in*num);
+					int rem_out	= bytes_out-(ave_out*num);
 
-						Iterator	it = torrent_map.values().iterator();
+					Iterator<TRTrackerServerTorrentImpl>	it = torrent_map.values().iterator();
 
-						while(it.hasNext()){
+					while(it.hasNext()){
 
-							TRTrackerServerTorrentImpl	this_torrent = (TRTrackerServerTorrentImpl)it.next();
+						TRTrackerServerTorrentImpl	this_torrent = it.next();
 
-							if ( it.hasNext()){
+						if ( it.hasNext()){
 
-								this_torrent.updateXferStats( ave_in, ave_out );
+							this_torrent.updateXferStats( ave_in, ave_out );
 
-							}else{
+						}else{
 
-								this_torrent.updateXferStats( ave_in+rem_in, ave_out+rem_out );
+							this_torrent.updateXferStats( ave_in+rem_in, ave_out+rem_out );
 
-							}
 						}
 					}
-				}finally{
-
-					class_mon.exit();
 				}
 			}
 		}
@@ -757,20 +735,9 @@ TRTrackerServerImpl
 
 				int	clients = 0;
 
-				try{
-					class_mon.enter();
-
-					Iterator	it = torrent_map.values().iterator();
-
-					while(it.hasNext()){
-
-						TRTrackerServerTorrentImpl	t = (TRTrackerServerTorrentImpl)it.next();
+				for ( TRTrackerServerTorrentImpl t: torrent_map.values()){
 
-						clients += t.getPeerCount();
-					}
-				}finally{
-
-					class_mon.exit();
+					clients += t.getPeerCount();
 				}
 
 				if ( inc_by > 0 && inc_per > 0 ){
@@ -800,20 +767,9 @@ TRTrackerServerImpl
 
 					time_to_go = TIMEOUT_CHECK;
 
-					try{
-						class_mon.enter();
-
-						Iterator	it = torrent_map.values().iterator();
+					for ( TRTrackerServerTorrentImpl t: torrent_map.values()){
 
-						while(it.hasNext()){
-
-							TRTrackerServerTorrentImpl	t = (TRTrackerServerTorrentImpl)it.next();
-
-							t.checkTimeouts();
-						}
-					}finally{
-
-						class_mon.exit();
+						t.checkTimeouts();
 					}
 				}
 
@@ -851,17 +807,7 @@ TRTrackerServerImpl
 
 			// don't invoke listeners when synched, deadlock possible
 
-		TRTrackerServerTorrentImpl	entry;
-
-		try{
-			class_mon.enter();
-
-			entry = (TRTrackerServerTorrentImpl)torrent_map.get( hash );
-
-		}finally{
-
-			class_mon.exit();
-		}
+		TRTrackerServerTorrentImpl	entry = torrent_map.get( hash );
 
 		if ( entry == null ){
 
@@ -875,22 +821,15 @@ TRTrackerServerImpl
 				}
 			}
 
-			try{
-				class_mon.enter();
-
-					// double check in-case added in parallel
+				// may have been added in parallel, the first one in wins
 
-				entry = (TRTrackerServerTorrentImpl)torrent_map.get( hash );
+			TRTrackerServerTorrentImpl	new_entry = new TRTrackerServerTorrentImpl( this, hash, _enabled );
 
-				if ( entry == null ){
+			entry = torrent_map.putIfAbsent( hash, new_entry );
 
-					entry = new TRTrackerServerTorrentImpl( this, hash, _enabled );
+			if ( entry == null ){
 
-					torrent_map.put( hash, entry );
-				}
-			}finally{
-
-				class_mon.exit();
+				entry = new_entry;
 			}
 		}
 
@@ -918,21 +857,11 @@ TRTrackerServerImpl
 			}
 		}
 
-		try{
-			class_mon.enter();
+		TRTrackerServerTorrentImpl	entry = torrent_map.remove( hash );
 
-			TRTrackerServerTorrentImpl	entry = (TRTrackerServerTorrentImpl)torrent_map.get( hash );
+		if ( entry != null ){
 
-			if ( entry != null ){
-
-				entry.delete();
-			}
-
-			torrent_map.remove( hash );
-
-		}finally{
-
-			class_mon.exit();
+			entry.delete();
 		}
 	}
 
@@ -940,47 +869,20 @@ TRTrackerServerImpl
 	getTorrent(
 		byte[]		hash )
 	{
-		try{
-			class_mon.enter();
-
-			return((TRTrackerServerTorrentImpl)torrent_map.get(new HashWrapper(hash)));
-
-		}finally{
-
-			class_mon.exit();
-		}
+		return( torrent_map.get( new HashWrapper( hash )));
 	}
 
 	public TRTrackerServerTorrentImpl
 	getTorrent(
 		String		link )
 	{
-		try{
-			class_mon.enter();
-
-			return((TRTrackerServerTorrentImpl)link_map.get( link ));
-
-		}finally{
-
-			class_mon.exit();
-		}
+		return((TRTrackerServerTorrentImpl)link_map.get( link ));
 	}
 
 	public TRTrackerServerTorrentImpl[]
 	getTorrents()
 	{
-		try{
-			class_mon.enter();
-
-			TRTrackerServerTorrentImpl[]	res = new TRTrackerServerTorrentImpl[torrent_map.size()];
-
-			torrent_map.values().toArray( res );
-
-			return( res );
-		}finally{
-
-			class_mon.exit();
-		}
+		return( torrent_map.values().toArray( new TRTrackerServerTorrentImpl[0] ));
 	}
 
 	public int
@@ -67,6 +67,10 @@ TRTrackerServerPeerImpl
 	
 	private DHTNetworkPosition	network_position;
 	private Object				user_data;
+
+		// slot in the owning torrent's TRTrackerServerPeerTable, -1 if not in one
+
+	int							table_slot	= -1;
 	
 	protected
 	TRTrackerServerPeerImpl(
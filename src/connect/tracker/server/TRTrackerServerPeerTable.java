@@ -0,0 +1,793 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package connect.tracker.server;
+
+import java.util.Arrays;
+
+import torrentlib.HashWrapper;
+
+/**
+ * Peer store for a tracked torrent, laid out as parallel primitive arrays rather than the
+ * HashMap/HashMap/ArrayList trio previously used. Slots are dense (removal moves the last
+ * slot into the hole) so a uniformly random peer is a single array access and there is no
+ * hole compaction. Peers are located by peer id and by address (ip:port, what used to be the
+ * "reuse key") through two open-addressed int indexes holding slot+1.
+ * 
+ * The hot fields the announce reply selection filters on (timeout, port, seed/biased/crypto
+ * flags) are mirrored into the arrays so most rejected candidates never touch the peer object.
+ * The mirror is refreshed by the torrent whenever it changes them on the peer (see refresh).
+ * <p>
+ * Each slot also carries the peer's compact (BEP 23) encoding - 6 bytes for IPv4, 18 for IPv6 -
+ * so a compact announce reply is assembled by copying those slices (see appendCompact) rather
+ * than building a Map per peer. Addresses resolve asynchronously so the encoding is filled in on
+ * first use once the peer's address bytes are known and discarded when its address changes.
+ * 
+ * Not thread safe - the owning torrent's monitor must be held
+ */
+
+class
+TRTrackerServerPeerTable
+{
+	protected static final byte	FLAG_SEED				= 0x01;
+	protected static final byte	FLAG_BIASED				= 0x02;
+	protected static final byte	FLAG_CRYPTO_REQUIRED	= 0x04;
+
+	private static final byte	FLAG_COMPACT_V4			= 0x08;
+	private static final byte	FLAG_COMPACT_V6			= 0x10;
+
+	private static final byte	FLAGS_COMPACT			= FLAG_COMPACT_V4 | FLAG_COMPACT_V6;
+
+	private static final int	COMPACT_V4_LENGTH	= 6;
+	private static final int	COMPACT_V6_LENGTH	= 18;
+
+	private static final int	MIN_CAPACITY	= 8;
+
+	private TRTrackerServerPeerImpl[]	peers		= new TRTrackerServerPeerImpl[MIN_CAPACITY];
+	private long[]						timeouts	= new long[MIN_CAPACITY];
+	private int[]						addr_hashes	= new int[MIN_CAPACITY];
+	private char[]						ports		= new char[MIN_CAPACITY];
+	private byte[]						flags		= new byte[MIN_CAPACITY];
+
+	private byte[]						compact_v4	= new byte[MIN_CAPACITY*COMPACT_V4_LENGTH];
+	private byte[]						compact_v6;		// allocated once an IPv6 peer is seen
+
+	private int			size;
+
+		// index entries are slot+1, 0 = empty. capacity is a power of 2 and kept at least twice size
+
+	private int[]		id_index		= new int[MIN_CAPACITY*2];
+	private int[]		addr_index		= new int[MIN_CAPACITY*2];
+
+	protected int
+	size()
+	{
+		return( size );
+	}
+
+	protected TRTrackerServerPeerImpl
+	get(
+		int		slot )
+	{
+		return( peers[slot] );
+	}
+
+	protected long
+	getTimeout(
+		int		slot )
+	{
+		return( timeouts[slot] );
+	}
+
+	protected int
+	getTCPPort(
+		int		slot )
+	{
+		return( ports[slot] );
+	}
+
+	protected byte
+	getFlags(
+		int		slot )
+	{
+		return( flags[slot] );
+	}
+
+	protected TRTrackerServerPeerImpl
+	getByPeerID(
+		HashWrapper		peer_id )
+	{
+		int	mask	= id_index.length - 1;
+		int	pos		= mix( peer_id.hashCode()) & mask;
+
+		while( true ){
+
+			int	entry = id_index[pos];
+
+			if ( entry == 0 ){
+
+				return( null );
+			}
+
+			TRTrackerServerPeerImpl	peer = peers[entry-1];
+
+			if ( peer.getPeerId().equals( peer_id )){
+
+				return( peer );
+			}
+
+			pos = ( pos + 1 ) & mask;
+		}
+	}
+
+	protected TRTrackerServerPeerImpl
+	getByAddress(
+		byte[]		ip,
+		int			port )
+	{
+		int	hash	= addressHash( ip, port );
+		int	mask	= addr_index.length - 1;
+		int	pos		= mix( hash ) & mask;
+
+		while( true ){
+
+			int	entry = addr_index[pos];
+
+			if ( entry == 0 ){
+
+				return( null );
+			}
+
+			int	slot = entry-1;
+
+			if ( addr_hashes[slot] == hash && ports[slot] == (char)port && Arrays.equals( peers[slot].getIPAsRead(), ip )){
+
+				return( peers[slot] );
+			}
+
+			pos = ( pos + 1 ) & mask;
+		}
+	}
+
+		/**
+		 * @return false if a peer with the same id is already present
+		 */
+
+	protected boolean
+	add(
+		TRTrackerServerPeerImpl		peer )
+	{
+		if ( getByPeerID( peer.getPeerId()) != null ){
+
+			return( false );
+		}
+
+		if ( size == peers.length ){
+
+			resize( size*2 );
+		}
+
+		if (( size + 1 )*2 > id_index.length ){
+
+			rebuildIndexes( id_index.length*2 );
+		}
+
+		int	slot = size++;
+
+		peers[slot]			= peer;
+		addr_hashes[slot]	= addressHash( peer.getIPAsRead(), peer.getTCPPort());
+		flags[slot]			= 0;
+
+		peer.table_slot	= slot;
+
+		refresh( peer );
+
+		insert( id_index, mix( peer.getPeerId().hashCode()), slot );
+
+			// an existing peer with the same address (only possible on import) is dropped from
+			// the address index so that lookups find the new one
+
+		removeAddressEntryFor( peer.getIPAsRead(), peer.getTCPPort());
+
+		insert( addr_index, mix( addr_hashes[slot] ), slot );
+
+		return( true );
+	}
+
+		/**
+		 * @return false if the peer isn't in the table
+		 */
+
+	protected boolean
+	remove(
+		TRTrackerServerPeerImpl		peer )
+	{
+		int	slot = peer.table_slot;
+
+		if ( slot < 0 || slot >= size || peers[slot] != peer ){
+
+			return( false );
+		}
+
+		delete( id_index, slot, true );
+		delete( addr_index, slot, false );
+
+		int	last = --size;
+
+		if ( slot != last ){
+
+				// move the last slot into the hole and repoint its index entries
+
+			TRTrackerServerPeerImpl	moved = peers[last];
+
+			peers[slot]			= moved;
+			timeouts[slot]		= timeouts[last];
+			addr_hashes[slot]	= addr_hashes[last];
+			ports[slot]			= ports[last];
+			flags[slot]			= flags[last];
+
+			System.arraycopy( compact_v4, last*COMPACT_V4_LENGTH, compact_v4, slot*COMPACT_V4_LENGTH, COMPACT_V4_LENGTH );
+
+			if ( compact_v6 != null ){
+
+				System.arraycopy( compact_v6, last*COMPACT_V6_LENGTH, compact_v6, slot*COMPACT_V6_LENGTH, COMPACT_V6_LENGTH );
+			}
+
+			moved.table_slot	= slot;
+
+			repoint( id_index, mix( moved.getPeerId().hashCode()), last, slot );
+			repoint( addr_index, mix( addr_hashes[slot] ), last, slot );
+		}
+
+		peers[last]	= null;
+
+		peer.table_slot	= -1;
+
+		if ( peers.length > MIN_CAPACITY && size < peers.length/4 ){
+
+			resize( Math.max( MIN_CAPACITY, peers.length/2 ));
+
+			rebuildIndexes( Math.max( MIN_CAPACITY*2, Integer.highestOneBit( size + 1 )*4 ));
+		}
+
+		return( true );
+	}
+
+		/**
+		 * re-index a peer whose ip or tcp port has changed
+		 */
+
+	protected void
+	addressChanged(
+		TRTrackerServerPeerImpl		peer )
+	{
+		int	slot = peer.table_slot;
+
+		if ( slot < 0 || peers[slot] != peer ){
+
+			return;
+		}
+
+		delete( addr_index, slot, false );
+
+		addr_hashes[slot]	= addressHash( peer.getIPAsRead(), peer.getTCPPort());
+
+		removeAddressEntryFor( peer.getIPAsRead(), peer.getTCPPort());
+
+		insert( addr_index, mix( addr_hashes[slot] ), slot );
+
+			// the address bytes are re-resolved so the compact encoding is rebuilt on next use
+
+		flags[slot] &= ~FLAGS_COMPACT;
+
+		refresh( peer );
+	}
+
+		/**
+		 * copy the mirrored fields from the peer
+		 */
+
+	protected void
+	refresh(
+		TRTrackerServerPeerImpl		peer )
+	{
+		int	slot = peer.table_slot;
+
+		if ( slot < 0 || peers[slot] != peer ){
+
+			return;
+		}
+
+		timeouts[slot]	= peer.getTimeout();
+		ports[slot]		= (char)peer.getTCPPort();
+
+		byte	f = (byte)( flags[slot] & FLAGS_COMPACT );
+
+		if ( peer.isSeed()){
+
+			f |= FLAG_SEED;
+		}
+
+		if ( peer.isBiased()){
+
+			f |= FLAG_BIASED;
+		}
+
+		if ( peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED ){
+
+			f |= FLAG_CRYPTO_REQUIRED;
+		}
+
+		flags[slot] = f;
+	}
+
+		/**
+		 * adds the peer's compact encoding to the reply, encoding it into its slot first if this
+		 * is the first use since it was added or its address changed
+		 * @return false if the peer's address hasn't been resolved yet, nothing is added
+		 */
+
+	protected boolean
+	appendCompact(
+		TRTrackerServerPeerImpl		peer,
+		compactReply				reply,
+		boolean						first )
+	{
+		int	slot = peer.table_slot;
+
+		if ( slot < 0 || slot >= size || peers[slot] != peer ){
+
+				// not (or no longer) in the table, encode directly
+
+			return( reply.add( peer.getIPAddressBytes(), peer.getTCPPort(), peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED, first ));
+		}
+
+		byte	f = flags[slot];
+
+		if (( f & FLAGS_COMPACT ) == 0 ){
+
+			byte[]	ip = peer.getIPAddressBytes();
+
+			if ( ip == null ){
+
+				return( false );
+			}
+
+			int	port = ports[slot];
+
+			if ( ip.length == 4 ){
+
+				encode( ip, port, compact_v4, slot*COMPACT_V4_LENGTH );
+
+				f |= FLAG_COMPACT_V4;
+
+			}else{
+
+				if ( compact_v6 == null ){
+
+					compact_v6 = new byte[peers.length*COMPACT_V6_LENGTH];
+				}
+
+				encode( ip, port, compact_v6, slot*COMPACT_V6_LENGTH );
+
+				f |= FLAG_COMPACT_V6;
+			}
+
+			flags[slot] = f;
+		}
+
+		boolean	crypto_required = ( f & FLAG_CRYPTO_REQUIRED ) != 0;
+
+		if (( f & FLAG_COMPACT_V4 ) != 0 ){
+
+			reply.getSection( first ).addV4( compact_v4, slot*COMPACT_V4_LENGTH, crypto_required );
+
+		}else{
+
+			reply.getSection( first ).addV6( compact_v6, slot*COMPACT_V6_LENGTH, crypto_required );
+		}
+
+		return( true );
+	}
+
+	protected TRTrackerServerPeerImpl[]
+	getPeers()
+	{
+		TRTrackerServerPeerImpl[]	res = new TRTrackerServerPeerImpl[size];
+
+		System.arraycopy( peers, 0, res, 0, size );
+
+		return( res );
+	}
+
+	private void
+	removeAddressEntryFor(
+		byte[]		ip,
+		int			port )
+	{
+		TRTrackerServerPeerImpl	existing = getByAddress( ip, port );
+
+		if ( existing != null ){
+
+			delete( addr_index, existing.table_slot, false );
+		}
+	}
+
+	private void
+	resize(
+		int		capacity )
+	{
+		peers		= Arrays.copyOf( peers, capacity );
+		timeouts	= Arrays.copyOf( timeouts, capacity );
+		addr_hashes	= Arrays.copyOf( addr_hashes, capacity );
+		ports		= Arrays.copyOf( ports, capacity );
+		flags		= Arrays.copyOf( flags, capacity );
+		compact_v4	= Arrays.copyOf( compact_v4, capacity*COMPACT_V4_LENGTH );
+
+		if ( compact_v6 != null ){
+
+			compact_v6	= Arrays.copyOf( compact_v6, capacity*COMPACT_V6_LENGTH );
+		}
+	}
+
+	private void
+	rebuildIndexes(
+		int		capacity )
+	{
+		id_index	= new int[capacity];
+		addr_index	= new int[capacity];
+
+		for ( int slot=0; slot<size; slot++ ){
+
+			insert( id_index, mix( peers[slot].getPeerId().hashCode()), slot );
+		}
+
+			// as with add, only one of any duplicate address is indexed
+
+		for ( int slot=0; slot<size; slot++ ){
+
+			TRTrackerServerPeerImpl	peer = peers[slot];
+
+			if ( getByAddress( peer.getIPAsRead(), peer.getTCPPort()) == null ){
+
+				insert( addr_index, mix( addr_hashes[slot] ), slot );
+			}
+		}
+	}
+
+	private static void
+	insert(
+		int[]	index,
+		int		hash,
+		int		slot )
+	{
+		int	mask	= index.length - 1;
+		int	pos		= hash & mask;
+
+		while( index[pos] != 0 ){
+
+			pos = ( pos + 1 ) & mask;
+		}
+
+		index[pos] = slot + 1;
+	}
+
+	private static void
+	repoint(
+		int[]	index,
+		int		hash,
+		int		old_slot,
+		int		new_slot )
+	{
+		int	mask	= index.length - 1;
+		int	pos		= hash & mask;
+
+		while( index[pos] != 0 ){
+
+			if ( index[pos] == old_slot + 1 ){
+
+				index[pos] = new_slot + 1;
+
+				return;
+			}
+
+			pos = ( pos + 1 ) & mask;
+		}
+	}
+
+		/**
+		 * removes the entry for the slot, if indexed, and closes the gap by shifting back any
+		 * following entries in the probe run that would otherwise become unreachable
+		 */
+
+	private void
+	delete(
+		int[]		index,
+		int			slot,
+		boolean		is_id_index )
+	{
+		int	mask	= index.length - 1;
+		int	pos		= indexHash( slot, is_id_index ) & mask;
+
+		while( true ){
+
+			int	entry = index[pos];
+
+			if ( entry == 0 ){
+
+				return;
+			}
+
+			if ( entry == slot + 1 ){
+
+				break;
+			}
+
+			pos = ( pos + 1 ) & mask;
+		}
+
+		int	hole = pos;
+
+		pos = ( pos + 1 ) & mask;
+
+		while( true ){
+
+			int	entry = index[pos];
+
+			if ( entry == 0 ){
+
+				break;
+			}
+
+			int	home = indexHash( entry - 1, is_id_index ) & mask;
+
+				// entry can move into the hole if its home isn't cyclically in (hole, pos]
+
+			if ((( pos - home ) & mask ) >= (( pos - hole ) & mask )){
+
+				index[hole] = entry;
+
+				hole = pos;
+			}
+
+			pos = ( pos + 1 ) & mask;
+		}
+
+		index[hole] = 0;
+	}
+
+	private int
+	indexHash(
+		int			slot,
+		boolean		is_id_index )
+	{
+		return( mix( is_id_index?peers[slot].getPeerId().hashCode():addr_hashes[slot] ));
+	}
+
+	private static void
+	encode(
+		byte[]		ip,
+		int			port,
+		byte[]		buffer,
+		int			pos )
+	{
+		System.arraycopy( ip, 0, buffer, pos, ip.length );
+
+		pos += ip.length;
+
+		buffer[pos++] = (byte)(port>>8);
+		buffer[pos]   = (byte)(port&0xff);
+	}
+
+	private static int
+	addressHash(
+		byte[]		ip,
+		int			port )
+	{
+		int	hash = port & 0xffff;
+
+		for ( byte b: ip ){
+
+			hash = 31*hash + b;
+		}
+
+		return( hash );
+	}
+
+	private static int
+	mix(
+		int		hash )
+	{
+			// HashWrapper's hash is a plain polynomial, spread it for linear probing
+
+		int	h = hash * 0x9E3779B9;
+
+		return( h ^ ( h >>> 16 ));
+	}
+
+		/**
+		 * Compact announce reply under construction. Entries added as "first" (biased peers)
+		 * precede the rest in the result, as they did when they were added to the front of the
+		 * reply's peer list. IPv4 and IPv6 entries go to "peers" and "peers6" respectively, with
+		 * the crypto flags in the same order, IPv4 then IPv6.
+		 */
+
+	protected static class
+	compactReply
+	{
+		private final section	first	= new section();
+		private final section	rest	= new section();
+
+		private section
+		getSection(
+			boolean		_first )
+		{
+			return( _first?first:rest );
+		}
+
+		protected boolean
+		add(
+			byte[]		ip,
+			int			port,
+			boolean		crypto_required,
+			boolean		_first )
+		{
+			if ( ip == null ){
+
+				return( false );
+			}
+
+			byte[]	buffer = new byte[ip.length+2];
+
+			encode( ip, port, buffer, 0 );
+
+			if ( ip.length == 4 ){
+
+				getSection( _first ).addV4( buffer, 0, crypto_required );
+
+			}else{
+
+				getSection( _first ).addV6( buffer, 0, crypto_required );
+			}
+
+			return( true );
+		}
+
+		protected int
+		size()
+		{
+			return( first.num_v4 + first.num_v6 + rest.num_v4 + rest.num_v6 );
+		}
+
+		protected int
+		getV6Count()
+		{
+			return( first.num_v6 + rest.num_v6 );
+		}
+
+		protected byte[]
+		getPeers()
+		{
+			byte[]	res = new byte[( first.num_v4 + rest.num_v4 )*COMPACT_V4_LENGTH];
+
+			System.arraycopy( first.v4, 0, res, 0, first.num_v4*COMPACT_V4_LENGTH );
+			System.arraycopy( rest.v4, 0, res, first.num_v4*COMPACT_V4_LENGTH, rest.num_v4*COMPACT_V4_LENGTH );
+
+			return( res );
+		}
+
+		protected byte[]
+		getPeers6()
+		{
+			byte[]	res = new byte[( first.num_v6 + rest.num_v6 )*COMPACT_V6_LENGTH];
+
+			if ( first.num_v6 > 0 ){
+
+				System.arraycopy( first.v6, 0, res, 0, first.num_v6*COMPACT_V6_LENGTH );
+			}
+
+			if ( rest.num_v6 > 0 ){
+
+				System.arraycopy( rest.v6, 0, res, first.num_v6*COMPACT_V6_LENGTH, rest.num_v6*COMPACT_V6_LENGTH );
+			}
+
+			return( res );
+		}
+
+		protected byte[]
+		getCryptoFlags()
+		{
+			byte[]	res = new byte[size()];
+
+			int	pos = 0;
+
+			System.arraycopy( first.crypto_v4, 0, res, pos, first.num_v4 );
+
+			pos += first.num_v4;
+
+			System.arraycopy( rest.crypto_v4, 0, res, pos, rest.num_v4 );
+
+			pos += rest.num_v4;
+
+			if ( first.num_v6 > 0 ){
+
+				System.arraycopy( first.crypto_v6, 0, res, pos, first.num_v6 );
+
+				pos += first.num_v6;
+			}
+
+			if ( rest.num_v6 > 0 ){
+
+				System.arraycopy( rest.crypto_v6, 0, res, pos, rest.num_v6 );
+			}
+
+			return( res );
+		}
+	}
+
+	private static class
+	section
+	{
+		private byte[]	v4			= new byte[16*COMPACT_V4_LENGTH];
+		private byte[]	crypto_v4	= new byte[16];
+		private int		num_v4;
+
+		private byte[]	v6;
+		private byte[]	crypto_v6;
+		private int		num_v6;
+
+		private void
+		addV4(
+			byte[]		src,
+			int			pos,
+			boolean		crypto_required )
+		{
+			if ( num_v4 == crypto_v4.length ){
+
+				v4			= Arrays.copyOf( v4, v4.length*2 );
+				crypto_v4	= Arrays.copyOf( crypto_v4, crypto_v4.length*2 );
+			}
+
+			System.arraycopy( src, pos, v4, num_v4*COMPACT_V4_LENGTH, COMPACT_V4_LENGTH );
+
+			crypto_v4[num_v4++] = (byte)(crypto_required?1:0);
+		}
+
+		private void
+		addV6(
+			byte[]		src,
+			int			pos,
+			boolean		crypto_required )
+		{
+			if ( v6 == null ){
+
+				v6			= new byte[4*COMPACT_V6_LENGTH];
+				crypto_v6	= new byte[4];
+
+			}else if ( num_v6 == crypto_v6.length ){
+
+				v6			= Arrays.copyOf( v6, v6.length*2 );
+				crypto_v6	= Arrays.copyOf( crypto_v6, crypto_v6.length*2 );
+			}
+
+			System.arraycopy( src, pos, v6, num_v6*COMPACT_V6_LENGTH, COMPACT_V6_LENGTH );
+
+			crypto_v6[num_v6++] = (byte)(crypto_required?1:0);
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package connect.tracker.server;
+
+import java.util.*;
+
+import torrentlib.Constants;
+import torrentlib.HashWrapper;
+
+/**
+ * Measures the heap cost per peer of the per-torrent peer store, comparing the previous
+ * peer_map/peer_reuse_map/peer_list layout with TRTrackerServerPeerTable. The peer objects are
+ * created up front and excluded so the figures are the cost of the store itself, the peer
+ * object size is reported separately. Also times peer-id lookups and random peer sampling.
+ * <p>
+ * Run with a heap large enough for the peer count, e.g. -Xmx4g
+ * <p>
+ * Usage: TRTrackerServerPeerTableBenchmark [peers]
+ */
+
+public class
+TRTrackerServerPeerTableBenchmark
+{
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int	num_peers = args.length>0?Integer.parseInt( args[0] ):1000000;
+
+		long	base = usedMemory();
+
+		TRTrackerServerPeerImpl[]	peers = new TRTrackerServerPeerImpl[num_peers];
+
+		Random	random = new Random( 0 );
+
+		for ( int i=0; i<num_peers; i++ ){
+
+			byte[]	peer_id = new byte[20];
+
+			random.nextBytes( peer_id );
+
+			byte[]	ip = ( "10." + ((i>>16)&0xff) + "." + ((i>>8)&0xff) + "." + (i&0xff)).getBytes( Constants.BYTE_ENCODING );
+
+			peers[i] =
+				new TRTrackerServerPeerImpl(
+					new HashWrapper( peer_id ), 0, ip, false, (short)( 6881 + (i%1000)), (short)0, (short)0,
+					TRTrackerServerPeer.CRYPTO_NONE, (byte)0, null, null, TRTrackerServerPeer.NAT_CHECK_UNKNOWN,
+					Long.MAX_VALUE, 0, 0, i%4==0?0:1000, 0, false, false, (short)0 );
+		}
+
+		long	peers_size = usedMemory() - base;
+
+		System.out.println( num_peers + " peers, peer objects: " + ( peers_size/num_peers ) + " bytes/peer" );
+
+		for ( int loop=0; loop<2; loop++ ){
+
+			measureMaps( peers );
+
+			measureTable( peers );
+		}
+	}
+
+	private static void
+	measureMaps(
+		TRTrackerServerPeerImpl[]	peers )
+
+		throws Exception
+	{
+		long	base = usedMemory();
+
+		Map<HashWrapper,TRTrackerServerPeerImpl>	peer_map 		= new HashMap<HashWrapper,TRTrackerServerPeerImpl>();
+		Map<String,TRTrackerServerPeerImpl>			peer_reuse_map	= new HashMap<String,TRTrackerServerPeerImpl>();
+		List<TRTrackerServerPeerImpl>				peer_list		= new ArrayList<TRTrackerServerPeerImpl>();
+
+		for ( TRTrackerServerPeerImpl peer: peers ){
+
+			peer_map.put( peer.getPeerId(), peer );
+			peer_list.add( peer );
+			peer_reuse_map.put( new String( peer.getIPAsRead(), Constants.BYTE_ENCODING ) + ":" + peer.getTCPPort(), peer );
+		}
+
+		long	size = usedMemory() - base;
+
+		long	lookup = timeLookups( peers, peer_map, null );
+		long	sample = timeSampling( peer_list, null );
+
+		System.out.println( "    maps:  " + ( size/peers.length ) + " bytes/peer, lookup=" + lookup + "ns, 50 peer sample=" + sample + "ns" );
+
+		if ( peer_reuse_map.size() != peers.length ){
+
+			System.out.println( "reuse map size mismatch" );
+		}
+	}
+
+	private static void
+	measureTable(
+		TRTrackerServerPeerImpl[]	peers )
+
+		throws Exception
+	{
+		long	base = usedMemory();
+
+		TRTrackerServerPeerTable	table = new TRTrackerServerPeerTable();
+
+		for ( TRTrackerServerPeerImpl peer: peers ){
+
+			table.add( peer );
+		}
+
+		long	size = usedMemory() - base;
+
+		long	lookup = timeLookups( peers, null, table );
+		long	sample = timeSampling( null, table );
+
+		System.out.println( "    table: " + ( size/peers.length ) + " bytes/peer, lookup=" + lookup + "ns, 50 peer sample=" + sample + "ns" );
+
+		for ( TRTrackerServerPeerImpl peer: peers ){
+
+			table.remove( peer );
+		}
+	}
+
+	private static long
+	timeLookups(
+		TRTrackerServerPeerImpl[]					peers,
+		Map<HashWrapper,TRTrackerServerPeerImpl>	map,
+		TRTrackerServerPeerTable					table )
+	{
+		Random	random = new Random( 1 );
+
+		int		ops		= 2000000;
+		int		found	= 0;
+
+		long	start = System.nanoTime();
+
+		for ( int i=0; i<ops; i++ ){
+
+			HashWrapper	peer_id = peers[random.nextInt( peers.length )].getPeerId();
+
+			if (( map==null?table.getByPeerID( peer_id ):map.get( peer_id )) != null ){
+
+				found++;
+			}
+		}
+
+		long	elapsed = System.nanoTime() - start;
+
+		if ( found != ops ){
+
+			System.out.println( "lookup failed" );
+		}
+
+		return( elapsed/ops );
+	}
+
+		/**
+		 * the announce reply loop - pick random peers, skip timed out/portless/biased ones, 50 per reply
+		 */
+
+	private static long
+	timeSampling(
+		List<TRTrackerServerPeerImpl>	list,
+		TRTrackerServerPeerTable		table )
+	{
+		Random	random = new Random( 2 );
+
+		int		replies	= 200000;
+		long	total	= 0;
+
+		long	start = System.nanoTime();
+
+		for ( int r=0; r<replies; r++ ){
+
+			int	added = 0;
+
+			while( added < 50 ){
+
+				if ( list != null ){
+
+					TRTrackerServerPeerImpl	peer = list.get( random.nextInt( list.size()));
+
+					if ( peer != null && !peer.isBiased() && peer.getTimeout() > 0 && peer.getTCPPort() != 0 ){
+
+						total += peer.getTCPPort();
+
+						added++;
+					}
+				}else{
+
+					int	slot = random.nextInt( table.size());
+
+					if (( table.getFlags( slot ) & TRTrackerServerPeerTable.FLAG_BIASED ) == 0 && table.getTimeout( slot ) > 0 && table.getTCPPort( slot ) != 0 ){
+
+						total += table.getTCPPort( slot );
+
+						added++;
+					}
+				}
+			}
+		}
+
+		long	elapsed = System.nanoTime() - start;
+
+		if ( total == 0 ){
+
+			System.out.println( "sampling failed" );
+		}
+
+		return( elapsed/replies );
+	}
+
+	private static long
+	usedMemory()
+
+		throws Exception
+	{
+		Runtime	rt = Runtime.getRuntime();
+
+		for ( int i=0; i<4; i++ ){
+
+			System.gc();
+
+			Thread.sleep( 100 );
+		}
+
+		return( rt.totalMemory() - rt.freeMemory());
+	}
+}
@@ -62,6 +62,7 @@ import java.util.*;
 
 
 import comm.udp.PRUDPPacket;
+import comm.udp.PRUDPPacketReply;
 import comm.udp.PRUDPPacketRequest;
 
 public class 
@@ -99,6 +100,18 @@ TRTrackerServerProcessorUDP
 		request_dg		= _packet;
 	}
 	
+		/**
+		 * for a receive thread that processes its packets inline with processPacket, the one
+		 * processor being reused for each
+		 */
+	
+	protected
+	TRTrackerServerProcessorUDP(
+		TRTrackerServerUDP		_server )
+	{
+		server			= _server;
+	}
+	
 	public void
 	runSupport()
 	{				
@@ -106,7 +119,38 @@ TRTrackerServerProcessorUDP
 		
 		System.arraycopy( request_dg.getData(), 0, input_buffer, 0, input_buffer.length );
 		
-		int	packet_data_length = input_buffer.length;
+		try{
+			replyBuffer	reply_buffer = new replyBuffer();
+			
+			int	reply_length = processPacket( input_buffer, input_buffer.length, request_dg.getAddress(), reply_buffer );
+			
+			if ( reply_length > 0 ){
+				
+				DatagramPacket reply_packet = new DatagramPacket( reply_buffer.getBuffer(), reply_length, request_dg.getAddress(), request_dg.getPort());
+				
+				socket.send( reply_packet );
+			}
+		}catch( Throwable e ){
+			
+			Logger.log(new LogEvent(LOGID,
+					"TRTrackerServerProcessorUDP: processing fails", e)); 
+		}
+	}
+	
+		/**
+		 * decodes and processes a request, serialising the reply (if any) into the supplied buffer
+		 * which is reset first
+		 * @return length of the reply or -1 if there isn't one
+		 */
+	
+	protected int
+	processPacket(
+		byte[]			input_buffer,
+		int				input_length,
+		InetAddress		address,
+		replyBuffer		reply_buffer )
+	{
+		int	packet_data_length = input_length;
 		
 		String	auth_user			= null;
 		byte[] 	auth_user_bytes		= null;
@@ -118,13 +162,13 @@ TRTrackerServerProcessorUDP
 				// auth detail should be attached to the packet. Auth details are 16
 				// bytes
 			
-			if ( input_buffer.length < 17 ){
+			if ( input_length < 17 ){
 				
 				Logger.log(new LogEvent(LOGID, LogEvent.LT_WARNING,
 						"TRTrackerServerProcessorUDP: "
 								+ "packet received but authorisation missing")); 
 
-				return;
+				return( -1 );
 			}
 			
 			packet_data_length -= 16;
@@ -150,7 +194,7 @@ TRTrackerServerProcessorUDP
 		DataInputStream is = new DataInputStream(new ByteArrayInputStream(input_buffer, 0, packet_data_length ));
 		
 		try{
-			String	client_ip_address = request_dg.getAddress().getHostAddress();
+			String	client_ip_address = address.getHostAddress();
 			
 			PRUDPPacketRequest	request = PRUDPPacketRequest.deserialiseRequest( null, is );
 			
@@ -294,27 +338,30 @@ TRTrackerServerProcessorUDP
 			
 			if ( reply != null ){
 				
-				InetAddress address = request_dg.getAddress();
-				
-				ByteArrayOutputStream	baos = new ByteArrayOutputStream();
+				reply_buffer.reset();
 				
-				DataOutputStream os = new DataOutputStream( baos );
+				DataOutputStream os = new DataOutputStream( reply_buffer );
 										
 				reply.serialise(os);
 				
-				byte[]	output_buffer = baos.toByteArray();
+				os.flush();
 				
-				DatagramPacket reply_packet = new DatagramPacket(output_buffer, output_buffer.length,address,request_dg.getPort());
-							
-				socket.send( reply_packet );
-			
-				server.updateStats( request_type, torrent, input_buffer.length, output_buffer.length );
+				int	reply_length = reply_buffer.size();
+				
+				server.updateStats( request_type, torrent, input_length, reply_length );
+				
+				return( reply_length );
 			}
 			
+			return( -1 );
+			
 		}catch( Throwable e ){
 			
 			Logger.log(new LogEvent(LOGID,
 					"TRTrackerServerProcessorUDP: processing fails", e)); 
+			
+			return( -1 );
+			
 		}finally{
 			
 			try{
@@ -608,7 +655,10 @@ TRTrackerServerProcessorUDP
 				server, "", root_out, peer_out, 
 				request_type,
 				(byte[][])hashbytes.toArray(new byte[0][0]), null, null,
-				peer_id, false, TRTrackerServerTorrentImpl.COMPACT_MODE_NONE, key, // currently no "no_peer_id" / "compact" in the packet and anyway they aren't returned / key
+				peer_id, false, 
+					// the channel mode asks for the compact encoding, which is exactly the ipv4 address + port
+					// the reply carries. otherwise currently no "no_peer_id" / "compact" in the packet and anyway they aren't returned / key
+				server.isChannelMode()?TRTrackerServerTorrentImpl.COMPACT_MODE_NORMAL:TRTrackerServerTorrentImpl.COMPACT_MODE_NONE, key,
 				event, false,
 				port,
 				0, 0,
@@ -629,21 +679,7 @@ TRTrackerServerProcessorUDP
 				
 				reply.setInterval(((Long)root.get("interval")).intValue());
 				
-				List	peers = (List)root.get("peers");
-				
-				int[]	addresses 	= new int[peers.size()];
-				short[]	ports		= new short[addresses.length];
-				
-				for (int i=0;i<addresses.length;i++){
-					
-					Map	peer = (Map)peers.get(i);
-					
-					addresses[i] 	= PRHelpers.addressToInt(new String((byte[])peer.get("ip")));
-					
-					ports[i]		= (short)((Long)peer.get("port")).shortValue();
-				}
-				
-				reply.setPeers( addresses, ports );
+				setPeers( reply, root.get("peers"));
 				
 				return( new Object[]{ reply, torrent });
 				
@@ -662,21 +698,7 @@ TRTrackerServerProcessorUDP
 
 				reply.setLeechersSeeders(leechers,seeders);
 				
-				List	peers = (List)root.get("peers");
-				
-				int[]	addresses 	= new int[peers.size()];
-				short[]	ports		= new short[addresses.length];
-				
-				for (int i=0;i<addresses.length;i++){
-					
-					Map	peer = (Map)peers.get(i);
-					
-					addresses[i] 	= PRHelpers.addressToInt(new String((byte[])peer.get("ip")));
-					
-					ports[i]		= (short)((Long)peer.get("port")).shortValue();
-				}
-				
-				reply.setPeers( addresses, ports );
+				setPeers( reply, root.get("peers"));
 				
 				return( new Object[]{ reply, torrent });
 			}
@@ -769,6 +791,88 @@ TRTrackerServerProcessorUDP
 		}
 	}
 	
+		/**
+		 * peers are either the list of peer maps or, in channel mode, the compact ipv4 peers
+		 * (4 byte address, 2 byte port, network order)
+		 */
+	
+	protected void
+	setPeers(
+		PRUDPPacketReply	reply,
+		Object				peers )
+	
+		throws UnknownHostException
+	{
+		int[]	addresses;
+		short[]	ports;
+		
+		if ( peers instanceof List ){
+			
+			List	peer_list = (List)peers;
+			
+			addresses 	= new int[peer_list.size()];
+			ports		= new short[addresses.length];
+			
+			for (int i=0;i<addresses.length;i++){
+				
+				Map	peer = (Map)peer_list.get(i);
+				
+				addresses[i] 	= PRHelpers.addressToInt(new String((byte[])peer.get("ip")));
+				
+				ports[i]		= (short)((Long)peer.get("port")).shortValue();
+			}
+		}else{
+			
+			byte[]	compact_peers = (byte[])peers;
+			
+			int		num = compact_peers==null?0:compact_peers.length/6;
+			
+			addresses 	= new int[num];
+			ports		= new short[num];
+			
+			for (int i=0;i<num;i++){
+				
+				int	pos = i*6;
+				
+				addresses[i] = 	((compact_peers[pos]&0xff)<<24) | ((compact_peers[pos+1]&0xff)<<16) |
+								((compact_peers[pos+2]&0xff)<<8) | (compact_peers[pos+3]&0xff);
+				
+				ports[i]	= (short)(((compact_peers[pos+4]&0xff)<<8) | (compact_peers[pos+5]&0xff));
+			}
+		}
+		
+		if ( reply instanceof PRUDPPacketReplyAnnounce ){
+			
+			((PRUDPPacketReplyAnnounce)reply).setPeers( addresses, ports );
+			
+		}else{
+			
+			((PRUDPPacketReplyAnnounce2)reply).setPeers( addresses, ports );
+		}
+	}
+	
+		/**
+		 * reply serialisation target that is reset and reused rather than reallocated, exposing
+		 * its buffer so the bytes can be sent without a copy
+		 */
+	
+	protected static class
+	replyBuffer
+		extends ByteArrayOutputStream
+	{
+		protected
+		replyBuffer()
+		{
+			super( PRUDPPacket.MAX_PACKET_SIZE );
+		}
+		
+		protected byte[]
+		getBuffer()
+		{
+			return( buf );
+		}
+	}
+	
 	protected static class
 	connectionData
 	{
@@ -84,14 +84,7 @@ TRTrackerServerTorrentImpl
 	private TRTrackerServerImpl	server;
 	private HashWrapper			hash;
 
-	private Map<HashWrapper,TRTrackerServerPeerImpl>		peer_map 		= new HashMap<HashWrapper,TRTrackerServerPeerImpl>();
-
-	private Map<String,TRTrackerServerPeerImpl>				peer_reuse_map	= new HashMap<String,TRTrackerServerPeerImpl>();
-
-	private List<TRTrackerServerPeerImpl>					peer_list		= new ArrayList<TRTrackerServerPeerImpl>();
-
-	private int				peer_list_hole_count;
-	private boolean			peer_list_compaction_suspended;
+	private TRTrackerServerPeerTable	peer_table	= new TRTrackerServerPeerTable();
 
 	private List			biased_peers			= null;
 	private int				min_biased_peers		= 0;
@@ -99,7 +92,6 @@ TRTrackerServerTorrentImpl
 	private Map				lightweight_seed_map	= new HashMap();
 
 	private int				seed_count;
-	private int				removed_count;
 
 	private int				ip_override_count;
 
@@ -109,6 +101,7 @@ TRTrackerServerTorrentImpl
 
 	private long			last_scrape_calc_time;
 	private Map				last_scrape;
+	private long[]			last_scrape_values	= new long[3];
 
 	private LinkedHashMap		announce_cache	= new LinkedHashMap();
 
@@ -119,7 +112,6 @@ TRTrackerServerTorrentImpl
 	private boolean			deleted;
 	private boolean			enabled;
 
-	private boolean			map_size_diff_reported;
 	private boolean			ip_override_limit_exceeded_reported;
 
 	private byte			duplicate_peer_checker_index	= 0;
@@ -179,7 +171,7 @@ TRTrackerServerTorrentImpl
 
 				// only currently support import when torrent "empty"
 
-			if ( peer_map.size() > 0 ){
+			if ( peer_table.size() > 0 ){
 
 				System.out.println( "TRTrackerServerTorrent: ignoring peer import as torrent already active" );
 
@@ -190,32 +182,21 @@ TRTrackerServerTorrentImpl
 
 				TRTrackerServerPeerImpl peer = TRTrackerServerPeerImpl.importPeer((Map)peers.get(i));
 
-				if ( peer != null ){
+				if ( peer != null && peer_table.add( peer )){
 
-					try{
-						String	reuse_key = new String( peer.getIPAsRead(), Constants.BYTE_ENCODING ) + ":" + peer.getTCPPort();
+					if ( peer.isSeed()){
 
-						peer_map.put( peer.getPeerId(), peer );
-
-						peer_list.add( peer );
+						seed_count++;
+					}
 
-						peer_reuse_map.put( reuse_key, peer );
+					if ( peer.isBiased()){
 
-						if ( peer.isSeed()){
+						if ( biased_peers == null ){
 
-							seed_count++;
+							biased_peers = new ArrayList();
 						}
 
-						if ( peer.isBiased()){
-
-							if ( biased_peers == null ){
-
-								biased_peers = new ArrayList();
-							}
-
-							biased_peers.add( peer );
-						}
-					}catch( Throwable e ){
+						biased_peers.add( peer );
 					}
 				}
 			}
@@ -300,7 +281,7 @@ TRTrackerServerTorrentImpl
 
 			int		tracker_key_hash_code	= tracker_key==null?0:tracker_key.hashCode();
 
-			TRTrackerServerPeerImpl	peer = (TRTrackerServerPeerImpl)peer_map.get( peer_id );
+			TRTrackerServerPeerImpl	peer = peer_table.getByPeerID( peer_id );
 
 			boolean		new_peer 				= false;
 			boolean		peer_already_removed	= false;
@@ -316,8 +297,6 @@ TRTrackerServerTorrentImpl
 
 			if ( peer == null ){
 
-				String	reuse_key = new String( ip_address_bytes, Constants.BYTE_ENCODING ) + ":" + tcp_port;
-
 				byte	last_NAT_status	= loopback?TRTrackerServerPeer.NAT_CHECK_OK:TRTrackerServerPeer.NAT_CHECK_UNKNOWN;
 
 				new_peer	= true;
@@ -329,7 +308,7 @@ TRTrackerServerTorrentImpl
 				//System.out.println( "new peer" );
 
 
-				TRTrackerServerPeerImpl old_peer	= (TRTrackerServerPeerImpl)peer_reuse_map.get( reuse_key );
+				TRTrackerServerPeerImpl old_peer	= peer_table.getByAddress( ip_address_bytes, tcp_port );
 
 				if ( old_peer != null ){
 
@@ -339,7 +318,7 @@ TRTrackerServerTorrentImpl
 
 					if ( ip_override && !old_peer.isIPOverride()){
 
-						throw( new TRTrackerServerException( "IP Override denied (existing '" + reuse_key + "' is not override)" ));
+						throw( new TRTrackerServerException( "IP Override denied (existing '" + ip_address + ":" + tcp_port + "' is not override)" ));
 					}
 
 					last_contact_time	= old_peer.getLastContactTime();
@@ -428,11 +407,7 @@ TRTrackerServerTorrentImpl
 						ip_override_count++;
 					}
 
-					peer_map.put( peer_id, peer );
-
-					peer_list.add( peer );
-
-					peer_reuse_map.put( reuse_key, peer );
+					peer_table.add( peer );
 
 					if ( biased ){
 
@@ -448,7 +423,7 @@ TRTrackerServerTorrentImpl
 
 					if ( queued_peers != null ){
 
-						if ( peer_map.size() > QUEUED_PEERS_MAX_SWARM_SIZE ){
+						if ( peer_table.size() > QUEUED_PEERS_MAX_SWARM_SIZE ){
 
 							queued_peers = null;
 
@@ -528,37 +503,23 @@ TRTrackerServerTorrentImpl
 						// or indeed some hacked versions could do it on purpose. If this is the case then all we
 						// will see here is address/port changes as each peer announces
 
-					byte[]	old_ip 		= peer.getIPAsRead();
-					int		old_port	= peer.getTCPPort();
-
 					if ( peer.update( ip_address_bytes, tcp_port, udp_port, http_port, crypto_level, az_ver, up_speed, network_position )){
 
-							// same peer id so same port
-
-						String 	old_key = new String( old_ip, Constants.BYTE_ENCODING ) + ":" + old_port;
-
-						String	new_key = new String( ip_address_bytes, Constants.BYTE_ENCODING ) + ":" + tcp_port;
-
 							// it is possible, on address change, that the target address already exists and is
 							// (was) being used by another peer. Given that this peer has taken over its address
 							// the assumption is that the other peer has also had an address change and has yet
 							// to report it. The only action here is to delete the other peer
 
-						TRTrackerServerPeerImpl old_peer = (TRTrackerServerPeerImpl)peer_reuse_map.get( new_key );
+						TRTrackerServerPeerImpl old_peer = peer_table.getByAddress( ip_address_bytes, tcp_port );
 
-						if ( old_peer != null ){
+						if ( old_peer != null && old_peer != peer ){
 
 							removePeer( old_peer, TRTrackerServerTorrentPeerListener.ET_REPLACED, null );
 						}
 
-							// now swap the keys
-
-						if ( peer_reuse_map.remove( old_key ) == null ){
-
-							Debug.out( "TRTrackerServerTorrent: IP address change: '" + old_key + "' -> '" + new_key + "': old key not found" );
-						}
+							// now re-index under the new address
 
-						peer_reuse_map.put( new_key, peer );
+						peer_table.addressChanged( peer );
 					}
 				}
 			}
@@ -625,6 +586,8 @@ TRTrackerServerTorrentImpl
 
 				peer.setStats( uploaded, downloaded, left );
 
+				peer_table.refresh( peer );
+
 				boolean	is_seed		= peer.isSeed();
 
 				if (!(event_type == TRTrackerServerTorrentPeerListener.ET_STOPPED || was_seed || !is_seed )){
@@ -684,56 +647,48 @@ TRTrackerServerTorrentImpl
 
 					int	to_remove = (seed_retention/20)+1;
 
-					try{
-						peer_list_compaction_suspended	= true;
+						// remove bad NAT ones in preference to others. iterate down as removal moves the
+						// last peer into the vacated slot
 
-							// remove bad NAT ones in preference to others
+					for (int bad_nat_loop=TRTrackerServerNATChecker.getSingleton().isEnabled()?0:1;bad_nat_loop<2;bad_nat_loop++){
 
-						for (int bad_nat_loop=TRTrackerServerNATChecker.getSingleton().isEnabled()?0:1;bad_nat_loop<2;bad_nat_loop++){
+						for (int i=peer_table.size()-1;i>=0;i--){
 
-							for (int i=0;i<peer_list.size();i++){
+							if (( peer_table.getFlags( i ) & ( TRTrackerServerPeerTable.FLAG_SEED | TRTrackerServerPeerTable.FLAG_BIASED )) == TRTrackerServerPeerTable.FLAG_SEED ){
 
-								TRTrackerServerPeerImpl	this_peer = (TRTrackerServerPeerImpl)peer_list.get(i);
+								TRTrackerServerPeerImpl	this_peer = peer_table.get( i );
 
-								if ( this_peer != null && this_peer.isSeed() && !this_peer.isBiased()){
+								boolean	bad_nat = this_peer.isNATStatusBad();
 
-									boolean	bad_nat = this_peer.isNATStatusBad();
+								if ( 	( bad_nat_loop == 0 && bad_nat ) ||
+										( bad_nat_loop == 1 )){
 
-									if ( 	( bad_nat_loop == 0 && bad_nat ) ||
-											( bad_nat_loop == 1 )){
-
-										if ( USE_LIGHTWEIGHT_SEEDS ){
+									if ( USE_LIGHTWEIGHT_SEEDS ){
 
-											lightweight_seed_map.put(
-													this_peer.getPeerId(),
-													new lightweightSeed(
-															now,
-															new_timeout,
-															this_peer.getUploaded(),
-															this_peer.getNATStatus()));
-										}
+										lightweight_seed_map.put(
+												this_peer.getPeerId(),
+												new lightweightSeed(
+														now,
+														new_timeout,
+														this_peer.getUploaded(),
+														this_peer.getNATStatus()));
+									}
 
-										removePeer( this_peer, i, TRTrackerServerTorrentPeerListener.ET_TOO_MANY_PEERS, null );
+									removePeer( this_peer, TRTrackerServerTorrentPeerListener.ET_TOO_MANY_PEERS, null );
 
-										if ( --to_remove == 0 ){
+									if ( --to_remove == 0 ){
 
-											break;
-										}
+										break;
 									}
 								}
 							}
+						}
 
-							if ( to_remove == 0 ){
+						if ( to_remove == 0 ){
 
-								break;
-							}
+							break;
 						}
-					}finally{
-
-						peer_list_compaction_suspended	= false;
 					}
-
-					checkForPeerListCompaction( false );
 				}
 			}
 
@@ -774,7 +729,7 @@ TRTrackerServerTorrentImpl
 	{
 		// System.out.println( "peerQueued: " + ip + "/" + tcp_port + "/" + udp_port + "/" + crypto_level );
 
-		if ( peer_map.size() >= QUEUED_PEERS_MAX_SWARM_SIZE || tcp_port == 0 ){
+		if ( peer_table.size() >= QUEUED_PEERS_MAX_SWARM_SIZE || tcp_port == 0 ){
 
 			return;
 		}
@@ -790,11 +745,9 @@ TRTrackerServerTorrentImpl
 				new QueuedPeer( ip, tcp_port, udp_port, http_port, crypto_level,
 						az_ver, (int)timeout_secs, seed, biased );
 
-			String	reuse_key = new_qp.getIP() + ":" + tcp_port;
-
 				// if still active then drop it
 
-			if ( peer_reuse_map.containsKey( reuse_key )){
+			if ( new_qp.getIPAsRead() == null || peer_table.getByAddress( new_qp.getIPAsRead(), tcp_port ) != null ){
 
 				return;
 			}
@@ -885,14 +838,9 @@ TRTrackerServerTorrentImpl
 
 				TRTrackerServerPeerImpl	pi = (TRTrackerServerPeerImpl)peer;
 
-				if ( peer_map.containsKey( pi.getPeerId())){
+				if ( peer_table.getByPeerID( pi.getPeerId()) == pi ){
 
-					int	index = peer_list.indexOf( pi );
-
-					if ( index != -1 ){
-
-						removePeer( pi, index, TRTrackerServerTorrentPeerListener.ET_FAILED, null );
-					}
+					removePeer( pi, TRTrackerServerTorrentPeerListener.ET_FAILED, null );
 				}
 			}else{
 
@@ -916,16 +864,6 @@ TRTrackerServerTorrentImpl
 		TRTrackerServerPeerImpl	peer,
 		int						reason,
 		String					url_parameters )
-	{
-		removePeer( peer, -1, reason, url_parameters );
-	}
-
-	protected void
-	removePeer(
-		TRTrackerServerPeerImpl	peer,
-		int						peer_list_index,
-		int						reason,
-		String					url_parameters )	// -1 if not known
 	{
 		try{
 			this_mon.enter();
@@ -937,70 +875,18 @@ TRTrackerServerTorrentImpl
 
 			stats.removeLeft( peer.getAmountLeft());
 
-			if ( peer_map.size() != peer_reuse_map.size()){
-
-				if ( !map_size_diff_reported ){
-
-					map_size_diff_reported	= true;
-
-					Debug.out( "TRTrackerServerTorrent::removePeer: maps size different ( " + peer_map.size() + "/" + peer_reuse_map.size() +")");
-				}
-			}
-
-			{
-				Object o = peer_map.remove( peer.getPeerId());
+			if ( !peer_table.remove( peer )){
 
-				if ( o == null ){
+				Debug.out(" TRTrackerServerTorrent::removePeer: peer_table doesn't contain peer");
 
-					Debug.out(" TRTrackerServerTorrent::removePeer: peer_map doesn't contain peer");
-				}else{
-
-					try{
-						peerEvent( peer, reason, url_parameters );
-
-					}catch( TRTrackerServerException e ){
-						// ignore during peer removal
-					}
-				}
-			}
-
-			if ( peer_list_index == -1 ){
-
-				int	peer_index = peer_list.indexOf( peer );
-
-				if ( peer_index == -1){
-
-					Debug.out(" TRTrackerServerTorrent::removePeer: peer_list doesn't contain peer");
-				}else{
-
-					peer_list.set( peer_index, null );
-				}
 			}else{
 
-				if ( peer_list.get( peer_list_index ) == peer ){
-
-					peer_list.set( peer_list_index, null );
-
-				}else{
-
-					Debug.out(" TRTrackerServerTorrent::removePeer: peer_list doesn't contain peer at index");
-
-				}
-			}
-
-			peer_list_hole_count++;
-
-			checkForPeerListCompaction( false );
-
-			try{
-				Object o = peer_reuse_map.remove( new String( peer.getIPAsRead(), Constants.BYTE_ENCODING ) + ":" + peer.getTCPPort());
-
-				if ( o == null ){
+				try{
+					peerEvent( peer, reason, url_parameters );
 
-					Debug.out(" TRTrackerServerTorrent::removePeer: peer_reuse_map doesn't contain peer");
+				}catch( TRTrackerServerException e ){
+					// ignore during peer removal
 				}
-
-			}catch( UnsupportedEncodingException e ){
 			}
 
 			if ( biased_peers != null ){
@@ -1013,8 +899,6 @@ TRTrackerServerTorrentImpl
 				seed_count--;
 			}
 
-			removed_count++;
-
 		}finally{
 
 			this_mon.exit();
@@ -1028,39 +912,36 @@ TRTrackerServerTorrentImpl
 		try{
 			this_mon.enter();
 
-			Iterator it = peer_list.iterator();
-
-			if ( it.hasNext() && biased_peers == null ){
+			if ( peer_table.size() > 0 && biased_peers == null ){
 
 				biased_peers = new ArrayList();
 			}
 
-			while( it.hasNext()){
+			for (int i=0;i<peer_table.size();i++){
 
-				TRTrackerServerPeerImpl	this_peer = (TRTrackerServerPeerImpl)it.next();
+				TRTrackerServerPeerImpl	this_peer = peer_table.get( i );
 
-				if ( this_peer != null ){
+				boolean	biased = biased_peers_set.contains( this_peer.getIPRaw());
 
-					 boolean	biased = biased_peers_set.contains( this_peer.getIPRaw());
+				this_peer.setBiased( biased );
 
-					 this_peer.setBiased( biased );
+				peer_table.refresh( this_peer );
 
-					 if ( biased ){
+				if ( biased ){
 
-						 if ( !biased_peers.contains( this_peer )){
+					if ( !biased_peers.contains( this_peer )){
 
-							 biased_peers.add( this_peer );
-						 }
-					 }else{
+						biased_peers.add( this_peer );
+					}
+				}else{
 
-						 biased_peers.remove( this_peer );
-					 }
+					biased_peers.remove( this_peer );
 				}
 			}
 
 			if ( queued_peers != null ){
 
-				it = queued_peers.iterator();
+				Iterator it = queued_peers.iterator();
 
 				while( it.hasNext()){
 
@@ -1103,6 +984,8 @@ TRTrackerServerTorrentImpl
 		byte						crypto_level,
 		DHTNetworkPosition			network_position )
 	{
+		boolean	locked = true;
+
 		try{
 			this_mon.enter();
 
@@ -1113,7 +996,7 @@ TRTrackerServerTorrentImpl
 
 			boolean	nat_warning = requesting_peer != null && requesting_peer.getNATStatus() == TRTrackerServerPeerImpl.NAT_CHECK_FAILED;
 
-			int		total_peers			= peer_map.size();
+			int		total_peers			= peer_table.size();
 			int		cache_millis	 	= TRTrackerServerImpl.getAnnounceCachePeriod();
 
 			boolean	send_peer_ids 		= TRTrackerServerImpl.getSendPeerIds();
@@ -1178,9 +1061,7 @@ TRTrackerServerTorrentImpl
 										String	ip 		= (String)peer_map.get("ip");
 										int		port 	= ((Long)peer_map.get( "port")).intValue();
 
-										String	reuse_key = ip + ":" + port;
-
-										TRTrackerServerPeerImpl peer	= (TRTrackerServerPeerImpl)peer_reuse_map.get( reuse_key );
+										TRTrackerServerPeerImpl peer	= getPeerByAddress( ip, port );
 
 										if ( peer != null && !explicit_limited_peers.contains( peer )){
 
@@ -1205,9 +1086,7 @@ TRTrackerServerTorrentImpl
 										String	ip 		= (String)peer_map.get("ip");
 										int		port 	= ((Long)peer_map.get( "port")).intValue();
 
-										String	reuse_key = ip + ":" + port;
-
-										TRTrackerServerSimplePeer peer	= peer_reuse_map.get( reuse_key );
+										TRTrackerServerSimplePeer peer	= getPeerByAddress( ip, port );
 
 										if ( peer == null ){
 
@@ -1315,7 +1194,14 @@ TRTrackerServerTorrentImpl
 			}
 
 
-			LinkedList	rep_peers = new LinkedList();
+				// peers are selected under the monitor and their reply entries built once it has been
+				// released (see below). plain compact replies are the exception, the peers' pre-encoded
+				// entries are copied straight out of the peer table as they are selected
+
+			List<TRTrackerServerSimplePeer>	selected_peers 		= new ArrayList<TRTrackerServerSimplePeer>();
+			List<Map>						queued_rep_peers	= null;
+
+			TRTrackerServerPeerTable.compactReply	compact_reply = compact_mode == COMPACT_MODE_NORMAL?new TRTrackerServerPeerTable.compactReply():null;
 
 
 			// System.out.println( "exportPeersToMap: num_want = " + num_want + ", max = " + max_peers );
@@ -1326,25 +1212,26 @@ TRTrackerServerTorrentImpl
 
 				if ( num_want >= total_peers){
 
-						// if they want them all simply give them the set
+						// if they want them all simply give them the set. iterate down as removal moves
+						// the last peer into the vacated slot
 
-					for (int i=0;i<peer_list.size();i++){
+					for (int i=peer_table.size()-1;i>=0;i--){
 
-						TRTrackerServerPeerImpl	peer = (TRTrackerServerPeerImpl)peer_list.get(i);
+						TRTrackerServerPeerImpl	peer = peer_table.get( i );
 
-						if ( peer == null || peer == requesting_peer ){
+						if ( peer == requesting_peer ){
 
-						}else if ( now > peer.getTimeout()){
+						}else if ( now > peer_table.getTimeout( i )){
 
 								// System.out.println( "removing timed out client '" + peer.getString());
 
-							removePeer( peer, i, TRTrackerServerTorrentPeerListener.ET_TIMEOUT, null );
+							removePeer( peer, TRTrackerServerTorrentPeerListener.ET_TIMEOUT, null );
 
-						}else if ( peer.getTCPPort() == 0 ){
+						}else if ( peer_table.getTCPPort( i ) == 0 ){
 
 							// a port of 0 means that the peer definitely can't accept incoming connections
 
-						}else if ( crypto_level == TRTrackerServerPeer.CRYPTO_NONE && peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED ){
+						}else if ( crypto_level == TRTrackerServerPeer.CRYPTO_NONE && ( peer_table.getFlags( i ) & TRTrackerServerPeerTable.FLAG_CRYPTO_REQUIRED ) != 0 ){
 
 							// don't return "crypto required" peers to those that can't correctly connect to them
 
@@ -1361,84 +1248,19 @@ TRTrackerServerTorrentImpl
 
 						}else if ( include_seeds || !peer.isSeed()){
 
-							Map rep_peer = new HashMap(3);
-
-							if ( send_peer_ids ){
-
-								rep_peer.put( "peer id", peer.getPeerId().getHash());
-							}
-
-							if ( compact_mode != COMPACT_MODE_NONE ){
-
-								byte[]	peer_bytes = peer.getIPAddressBytes();
-
-								if ( peer_bytes == null ){
-
-									continue;
-								}
-
-								rep_peer.put( "ip", peer_bytes );
-
-								if ( compact_mode >= COMPACT_MODE_AZ ){
-
-									rep_peer.put( "azver", new Long( peer.getAZVer()));
-
-									rep_peer.put( "azudp", new Long( peer.getUDPPort()));
-
-									if ( peer.isSeed()){
-
-										rep_peer.put( "azhttp", new Long( peer.getHTTPPort()));
-									}
-
-									if ( compact_mode >= COMPACT_MODE_XML ){
-
-										rep_peer.put( "ip", peer.getIPAsRead() );
-
-									}else{
-
-										rep_peer.put( "azup", new Long( peer.getUpSpeed()));
-
-										if ( peer.isBiased()){
+							if ( compact_reply != null ){
 
-											rep_peer.put( "azbiased", "" );
-										}
-
-										if ( network_position != null ){
-
-											DHTNetworkPosition	peer_pos = peer.getNetworkPosition();
-
-											if ( peer_pos != null && network_position.getPositionType() == peer_pos.getPositionType()){
+								peer_table.appendCompact( peer, compact_reply, peer.isBiased());
 
-												rep_peer.put( "azrtt", new Long( (long)peer_pos.estimateRTT(network_position )));
-											}
-										}
-									}
-								}
 							}else{
 
-								rep_peer.put( "ip", peer.getIPAsRead() );
-							}
-
-							rep_peer.put( "port", new Long( peer.getTCPPort()));
-
-							if ( crypto_level != TRTrackerServerPeer.CRYPTO_NONE ){
-
-								rep_peer.put( "crypto_flag", new Long( peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED?1:0));
-							}
-
-							if ( peer.isBiased()){
-
-								rep_peers.addFirst( rep_peer );
-
-							}else{
-
-								rep_peers.addLast( rep_peer );
+								selected_peers.add( peer );
 							}
 						}
 					}
 				}else{
 
-					int	peer_list_size	= peer_list.size();
+					int	peer_list_size	= peer_table.size();
 
 						// to avoid returning duplicates when doing the two-loop check
 						// for nat selection we maintain an array of markers
@@ -1467,13 +1289,12 @@ TRTrackerServerTorrentImpl
 						}
 					}
 
-					boolean	peer_removed	= false;
+						// removal moves peers between slots so timed out peers are removed once
+						// selection is complete
 
-					try{
-							// got to suspend peer list compaction as we rely on the
-							// list staying the same size during processing below
+					List<TRTrackerServerPeerImpl>	timed_out = null;
 
-						peer_list_compaction_suspended	= true;
+					try{
 
 							// too costly to randomise as below. use more efficient but slightly less accurate
 							// approach
@@ -1527,20 +1348,30 @@ TRTrackerServerTorrentImpl
 
 									peer_index = random.nextInt(peer_list_size);
 
-									peer = (TRTrackerServerPeerImpl)peer_list.get(peer_index);
-
-									if ( peer == null || peer.isBiased()){
+									if (( peer_table.getFlags( peer_index ) & TRTrackerServerPeerTable.FLAG_BIASED ) != 0 ){
 
 										continue;
 									}
+
+									peer = peer_table.get( peer_index );
 								}
 
 								if ( now > peer.getTimeout()){
 
-									removePeer( peer, TRTrackerServerTorrentPeerListener.ET_TIMEOUT, null );
+									if ( peer_index == -1 || duplicate_peer_checker[peer_index] != duplicate_peer_checker_index ){
+
+										if ( peer_index != -1 ){
 
-									peer_removed	= true;
+											duplicate_peer_checker[peer_index] = duplicate_peer_checker_index;
+										}
 
+										if ( timed_out == null ){
+
+											timed_out = new ArrayList<TRTrackerServerPeerImpl>();
+										}
+
+										timed_out.add( peer );
+									}
 								}else if ( requesting_peer == peer || peer.getTCPPort() == 0 ){
 
 										// a port of 0 means that the peer definitely can't accept incoming connections
@@ -1574,78 +1405,13 @@ TRTrackerServerTorrentImpl
 
 											added++;
 
-											Map rep_peer = new HashMap(3);
-
-											if ( send_peer_ids ){
+											if ( compact_reply != null ){
 
-												rep_peer.put( "peer id", peer.getPeerId().getHash());
-											}
-
-											if ( compact_mode != COMPACT_MODE_NONE ){
-
-												byte[]	peer_bytes = peer.getIPAddressBytes();
-
-												if ( peer_bytes == null ){
-
-													continue;
-												}
-
-												rep_peer.put( "ip", peer_bytes );
-
-												if ( compact_mode >= COMPACT_MODE_AZ ){
-
-													rep_peer.put( "azver", new Long( peer.getAZVer()));
-
-													rep_peer.put( "azudp", new Long( peer.getUDPPort()));
-
-													if ( peer.isSeed()){
-
-														rep_peer.put( "azhttp", new Long( peer.getHTTPPort()));
-													}
-
-													if ( compact_mode >= COMPACT_MODE_XML ){
-
-														rep_peer.put( "ip", peer.getIPAsRead() );
-
-													}else{
-
-														rep_peer.put( "azup", new Long( peer.getUpSpeed()));
-
-														if ( peer.isBiased()){
-
-															rep_peer.put( "azbiased", "" );
-														}
-
-														if ( network_position != null ){
-
-															DHTNetworkPosition	peer_pos = peer.getNetworkPosition();
-
-															if ( peer_pos != null && network_position.getPositionType() == peer_pos.getPositionType()){
-
-																rep_peer.put( "azrtt", new Long( (long)peer_pos.estimateRTT(network_position )));
-															}
-														}
-													}
-												}
-											}else{
-
-												rep_peer.put( "ip", peer.getIPAsRead() );
-											}
-
-											rep_peer.put( "port", new Long( peer.getTCPPort()));
-
-											if ( crypto_level != TRTrackerServerPeer.CRYPTO_NONE ){
-
-												rep_peer.put( "crypto_flag", new Long( peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED?1:0));
-											}
-
-											if ( peer.isBiased()){
-
-												rep_peers.addFirst( rep_peer );
+												peer_table.appendCompact( peer, compact_reply, peer.isBiased());
 
 											}else{
 
-												rep_peers.addLast( rep_peer );
+												selected_peers.add( peer );
 											}
 										}
 									}
@@ -1657,11 +1423,12 @@ TRTrackerServerTorrentImpl
 
 					}finally{
 
-						peer_list_compaction_suspended	= false;
+						if ( timed_out != null ){
 
-						if ( peer_removed ){
+							for ( TRTrackerServerPeerImpl peer: timed_out ){
 
-							checkForPeerListCompaction( false );
+								removePeer( peer, TRTrackerServerTorrentPeerListener.ET_TIMEOUT, null );
+							}
 						}
 					}
 				/*
@@ -1754,7 +1521,11 @@ TRTrackerServerTorrentImpl
 
 				List	added = new ArrayList( QUEUED_PEERS_ADD_MAX );
 
-				while( it.hasNext() && num_want > rep_peers.size() && added.size() < QUEUED_PEERS_ADD_MAX ){
+				queued_rep_peers = new ArrayList<Map>( QUEUED_PEERS_ADD_MAX );
+
+				int	num_selected = compact_reply==null?selected_peers.size():compact_reply.size();
+
+				while( it.hasNext() && num_want > num_selected + queued_rep_peers.size() && added.size() < QUEUED_PEERS_ADD_MAX ){
 
 					QueuedPeer	peer = (QueuedPeer)it.next();
 
@@ -1816,7 +1587,7 @@ TRTrackerServerTorrentImpl
 
 						// System.out.println( "added queued peer " + peer.getString());
 
-						rep_peers.addLast( rep_peer );
+						queued_rep_peers.add( rep_peer );
 
 						added.add( peer );
 
@@ -1832,36 +1603,7 @@ TRTrackerServerTorrentImpl
 				}
 			}
 
-			Map	root = new TreeMap();	// user TreeMap to pre-sort so encoding quicker
-
-			if ( preprocess_map.size() > 0 ){
-
-				root.putAll( preprocess_map );
-			}
-
-			if ( explicit_limited_peers != null ){
-
-				for (int i=0;i<explicit_limited_peers.size();i++){
-
-					num_want--;
-
-					TRTrackerServerSimplePeer  peer = explicit_limited_peers.get(i);
-
-					exportPeer(rep_peers, peer, send_peer_ids, compact_mode, crypto_level, network_position);
-				}
-			}
-
-			if ( explicit_biased_peers != null ){
-
-				for (int i=0;i<explicit_biased_peers.size();i++){
-
-					num_want--;
-
-					TRTrackerServerSimplePeer peer = explicit_biased_peers.get(i);
-
-					exportPeer(rep_peers, peer, send_peer_ids, compact_mode, crypto_level, network_position);
-				}
-			}
+			Map	manual_rep_peer = null;
 
 			if ( explicit_manual_biased_peers != null ){
 
@@ -1874,7 +1616,7 @@ TRTrackerServerTorrentImpl
 						explicit_next_peer = 0;
 					}
 
-					Map rep_peer = new HashMap(3);
+					Map rep_peer = manual_rep_peer = new HashMap(3);
 
 					if ( send_peer_ids ){
 
@@ -1912,12 +1654,107 @@ TRTrackerServerTorrentImpl
 
 						rep_peer.put( "crypto_flag", new Long( 0 ));
 					}
+				}
+			}
+
+			if ( nat_warning ){
+
+				requesting_peer.setNATStatus( TRTrackerServerPeerImpl.NAT_CHECK_FAILED_AND_REPORTED );
+			}
+
+			long	scrape_complete		= getSeedCountForScrape( requester_is_biased );
+			long	scrape_incomplete	= getLeecherCount();
+			long	scrape_downloaded	= stats.getCompletedCount();
 
-					rep_peers.addFirst( rep_peer );
+				// everything from here on works on the selection and the peers' own fields so the
+				// monitor is released - building the reply (maps, rtt estimates, encoding) was the
+				// bulk of the time spent holding it. peer fields may be updated by a concurrent
+				// announce while we read them, which at worst gives a reply with that peer's
+				// previous address
+
+			this_mon.exit();
+
+			locked	= false;
+
+			LinkedList	rep_peers = new LinkedList();
+
+			for ( TRTrackerServerSimplePeer peer: selected_peers ){
+
+				exportPeer( rep_peers, peer, send_peer_ids, compact_mode, crypto_level, network_position );
+			}
+
+			if ( queued_rep_peers != null ){
+
+				if ( compact_reply != null ){
+
+					for ( Map rep_peer: queued_rep_peers ){
+
+						addCompact( compact_reply, rep_peer, false );
+					}
+				}else{
+
+					rep_peers.addAll( queued_rep_peers );
 				}
 			}
 
-			int			num_peers_returned	= rep_peers.size();
+			Map	root = new TreeMap();	// user TreeMap to pre-sort so encoding quicker
+
+			if ( preprocess_map.size() > 0 ){
+
+				root.putAll( preprocess_map );
+			}
+
+			if ( explicit_limited_peers != null ){
+
+				for (int i=0;i<explicit_limited_peers.size();i++){
+
+					num_want--;
+
+					TRTrackerServerSimplePeer  peer = explicit_limited_peers.get(i);
+
+					if ( compact_reply != null ){
+
+						compact_reply.add( peer.getIPAddressBytes(), peer.getTCPPort(), peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED, peer.isBiased());
+
+					}else{
+
+						exportPeer(rep_peers, peer, send_peer_ids, compact_mode, crypto_level, network_position);
+					}
+				}
+			}
+
+			if ( explicit_biased_peers != null ){
+
+				for (int i=0;i<explicit_biased_peers.size();i++){
+
+					num_want--;
+
+					TRTrackerServerSimplePeer peer = explicit_biased_peers.get(i);
+
+					if ( compact_reply != null ){
+
+						compact_reply.add( peer.getIPAddressBytes(), peer.getTCPPort(), peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED, peer.isBiased());
+
+					}else{
+
+						exportPeer(rep_peers, peer, send_peer_ids, compact_mode, crypto_level, network_position);
+					}
+				}
+			}
+
+			if ( manual_rep_peer != null ){
+
+				if ( compact_reply != null ){
+
+					addCompact( compact_reply, manual_rep_peer, true );
+
+				}else{
+
+					rep_peers.addFirst( manual_rep_peer );
+				}
+			}
+
+			int			num_peers_returned	= compact_reply==null?rep_peers.size():compact_reply.size();
 			Iterator	it					= rep_peers.iterator();
 
 			if ( compact_mode == COMPACT_MODE_AZ ){
@@ -2090,114 +1927,27 @@ TRTrackerServerTorrentImpl
 
 				if ( compact_mode == COMPACT_MODE_NORMAL ){
 
-					byte[]	compact_peers = new byte[num_peers_returned*6];
-
-					int	index = 0;
-
-					int	num_ipv4 = 0;
-					int num_ipv6 = 0;
-
-					while( it.hasNext()){
-
-						Map	rep_peer = (Map)it.next();
-
-						byte[] 	ip 		= (byte[])rep_peer.get( "ip" );
-
-						if ( ip.length > 4 ){
-
-							num_ipv6++;
-
-								// continue and fill in crypto return
-
-						}else{
-
-							num_ipv4++;
-
-							if ( num_ipv6 == 0 ){
-
-								int		port	= ((Long)rep_peer.get( "port" )).intValue();
-
-								int	pos = index*6;
-
-								System.arraycopy( ip, 0, compact_peers, pos, 4 );
-
-								pos += 4;
-
-								compact_peers[pos++] = (byte)(port>>8);
-								compact_peers[pos++] = (byte)(port&0xff);
-							}
-						}
-
-						if ( crypto_flags != null ){
-
-							Long	crypto_flag = (Long)rep_peer.remove( "crypto_flag" );
-
-							crypto_flags[index] = crypto_flag.byteValue();
-						}
-
-						index++;
-					}
-
-						// inefficient hack to support ipv6 compact for the moment
+						// entries were copied from the peer table's pre-encoded blocks during selection
 
-					if ( num_ipv6 > 0 ){
+					if ( compact_reply.getV6Count() > 0 ){
 
-						byte[]	compact_peers_v4 = new byte[num_ipv4*6];
-						byte[]	compact_peers_v6 = new byte[num_ipv6*18];
-
-						it	= rep_peers.iterator();
-
-						int	v4_index	= 0;
-						int v6_index	= 0;
-
-						while( it.hasNext()){
-
-							Map	rep_peer = (Map)it.next();
-
-							byte[] 	ip 		= (byte[])rep_peer.get( "ip" );
-
-							int		port	= ((Long)rep_peer.get( "port" )).intValue();
-
-							if ( ip.length > 4 ){
-
-								int	pos = v6_index*18;
-
-								System.arraycopy( ip, 0, compact_peers_v6, pos, 16 );
-
-								pos += 16;
-
-								compact_peers_v6[pos++] = (byte)(port>>8);
-								compact_peers_v6[pos++] = (byte)(port&0xff);
-
-								v6_index++;
-
-							}else{
-
-								int	pos = v4_index*6;
-
-								System.arraycopy( ip, 0, compact_peers_v4, pos, 4 );
-
-								pos += 4;
-
-								compact_peers_v4[pos++] = (byte)(port>>8);
-								compact_peers_v4[pos++] = (byte)(port&0xff);
-
-								v4_index++;
-							}
-						}
+						byte[]	compact_peers_v4 = compact_reply.getPeers();
 
 						if ( compact_peers_v4.length > 0 ){
 
 							root.put( "peers", compact_peers_v4 );
 						}
 
-						if ( compact_peers_v6.length > 0 ){
+						root.put( "peers6", compact_reply.getPeers6());
 
-							root.put( "peers6", compact_peers_v6 );
-						}
 					}else{
 
-						root.put( "peers", compact_peers );
+						root.put( "peers", compact_reply.getPeers());
+					}
+
+					if ( crypto_flags != null ){
+
+						crypto_flags = compact_reply.getCryptoFlags();
 					}
 				}else{
 
@@ -2232,8 +1982,6 @@ TRTrackerServerTorrentImpl
 
 			if ( nat_warning ){
 
-				requesting_peer.setNATStatus( TRTrackerServerPeerImpl.NAT_CHECK_FAILED_AND_REPORTED );
-
 				root.put(
 						"warning message",
 						("Unable to connect to your incoming data port (" + requesting_peer.getIP() + ":" + requesting_peer.getTCPPort() +"). " +
@@ -2242,24 +1990,50 @@ TRTrackerServerTorrentImpl
 
 				// also include scrape details
 
-			root.put( "complete", new Long( getSeedCountForScrape( requester_is_biased )));
-			root.put( "incomplete", new Long( getLeecherCount() ));
-			root.put( "downloaded", new Long(stats.getCompletedCount()));
+			root.put( "complete", new Long( scrape_complete ));
+			root.put( "incomplete", new Long( scrape_incomplete ));
+			root.put( "downloaded", new Long( scrape_downloaded ));
 
 			if ( add_to_cache ){
 
-				announce_cache.put( new Integer((num_peers_returned+9)/10), new announceCacheEntry( root, send_peer_ids, compact_mode ));
+				try{
+					this_mon.enter();
+
+					announce_cache.put( new Integer((num_peers_returned+9)/10), new announceCacheEntry( root, send_peer_ids, compact_mode ));
+
+				}finally{
+
+					this_mon.exit();
+				}
 			}
 
 			return( root );
 
 		}finally{
 
-			this_mon.exit();
+			if ( locked ){
+
+				this_mon.exit();
+			}
 		}
 	}
 
 
+	private void
+	addCompact(
+		TRTrackerServerPeerTable.compactReply	compact_reply,
+		Map										rep_peer,
+		boolean									first )
+	{
+		Long	crypto_flag = (Long)rep_peer.get( "crypto_flag" );
+
+		compact_reply.add(
+			(byte[])rep_peer.get( "ip" ),
+			((Long)rep_peer.get( "port" )).intValue(),
+			crypto_flag != null && crypto_flag.longValue() == 1,
+			first );
+	}
+
 	private void
 	exportPeer(
 		LinkedList					rep_peers,
@@ -2368,9 +2142,6 @@ TRTrackerServerTorrentImpl
 			  return( last_scrape );
 			}
 
-			last_scrape 			= new TreeMap();
-			last_scrape_calc_time	= now;
-
 			boolean requester_is_biased;
 
 			Set bp = server.getBiasedPeers();
@@ -2384,9 +2155,32 @@ TRTrackerServerTorrentImpl
 				requester_is_biased = bp.contains( ip_address );
 			}
 
-			last_scrape.put( "complete", new Long( getSeedCountForScrape( requester_is_biased )));
-			last_scrape.put( "incomplete", new Long( getLeecherCount()));
-			last_scrape.put( "downloaded", new Long(stats.getCompletedCount()));
+			long	complete	= getSeedCountForScrape( requester_is_biased );
+			long	incomplete	= getLeecherCount();
+			long	downloaded	= stats.getCompletedCount();
+
+				// the counts of a busy torrent rarely move between recalculations so the previous
+				// result is kept, keyed on them, and only replaced when one changes
+
+			if ( 	last_scrape == null ||
+					last_scrape_values[0] != complete ||
+					last_scrape_values[1] != incomplete ||
+					last_scrape_values[2] != downloaded ){
+
+				Map	scrape = new TreeMap();
+
+				scrape.put( "complete", new Long( complete ));
+				scrape.put( "incomplete", new Long( incomplete ));
+				scrape.put( "downloaded", new Long( downloaded ));
+
+				last_scrape_values[0]	= complete;
+				last_scrape_values[1]	= incomplete;
+				last_scrape_values[2]	= downloaded;
+
+				last_scrape	= scrape;
+			}
+
+			last_scrape_calc_time	= now;
 
 			return( last_scrape );
 
@@ -2411,62 +2205,33 @@ TRTrackerServerTorrentImpl
 
 			int new_seed_count 	= 0;
 
-			try{
-				peer_list_compaction_suspended	= true;
-
-				for (int i=0;i<peer_list.size();i++){
+				// iterate down as removal moves the last peer into the vacated slot
 
-					TRTrackerServerPeerImpl	peer = (TRTrackerServerPeerImpl)peer_list.get(i);
+			for (int i=peer_table.size()-1;i>=0;i--){
 
-					if ( peer == null ){
+				TRTrackerServerPeerImpl	peer = peer_table.get( i );
 
-						continue;
-					}
-
-					if ( now > peer.getTimeout()){
+				if ( now > peer_table.getTimeout( i )){
 
-						removePeer( peer, i, TRTrackerServerTorrentPeerListener.ET_TIMEOUT, null );
+					removePeer( peer, TRTrackerServerTorrentPeerListener.ET_TIMEOUT, null );
 
-					}else{
+				}else{
 
-						if ( peer.isSeed()){
+					if (( peer_table.getFlags( i ) & TRTrackerServerPeerTable.FLAG_SEED ) != 0 ){
 
-							new_seed_count++;
-						}
+						new_seed_count++;
+					}
 
-						if ( peer.isNATStatusBad()){
+					if ( peer.isNATStatusBad()){
 
-							new_bad_NAT_count++;
-						}
+						new_bad_NAT_count++;
 					}
 				}
-			}finally{
-
-				peer_list_compaction_suspended	= false;
 			}
 
 			bad_NAT_count	= new_bad_NAT_count;
 			seed_count		= new_seed_count;
 
-			if ( removed_count > 1000 ){
-
-				removed_count = 0;
-
-				checkForPeerListCompaction( true );
-
-					// rehash
-
-				HashMap	new_peer_map 		= new HashMap(peer_map);
-				HashMap	new_peer_reuse_map	= new HashMap(peer_reuse_map);
-
-				peer_map 		= new_peer_map;
-				peer_reuse_map	= new_peer_reuse_map;
-
-			}else{
-
-				checkForPeerListCompaction( false );
-			}
-
 			Iterator	it = lightweight_seed_map.values().iterator();
 
 			while( it.hasNext()){
@@ -2484,43 +2249,6 @@ TRTrackerServerTorrentImpl
 		}
 	}
 
-	protected void
-	checkForPeerListCompaction(
-		boolean	force )
-	{
-		if ( peer_list_hole_count > 0 && !peer_list_compaction_suspended ){
-
-			if ( force || peer_list_hole_count > peer_map.size()/10 ){
-
-				ArrayList	new_peer_list = new ArrayList( peer_list.size() - (peer_list_hole_count/2));
-
-				int	holes_found = 0;
-
-				for (int i=0;i<peer_list.size();i++){
-
-					Object	obj = peer_list.get(i);
-
-					if ( obj == null ){
-
-						holes_found++;
-					}else{
-
-						new_peer_list.add( obj );
-					}
-				}
-
-				if( holes_found != peer_list_hole_count ){
-
-					Debug.out( "TRTrackerTorrent:compactHoles: count mismatch" );
-				}
-
-				peer_list	= new_peer_list;
-
-				peer_list_hole_count	= 0;
-			}
-		}
-	}
-
 	protected void
 	updateXferStats(
 		int		bytes_in,
@@ -2538,7 +2266,7 @@ TRTrackerServerTorrentImpl
 	protected int
 	getPeerCount()
 	{
-		return( peer_map.size() + lightweight_seed_map.size());
+		return( peer_table.size() + lightweight_seed_map.size());
 	}
 
 	protected int
@@ -2606,7 +2334,7 @@ TRTrackerServerTorrentImpl
 	{
 			// this isn't synchronised so could possible end up negative
 
-		int	res = peer_map.size() - seed_count;
+		int	res = peer_table.size() - seed_count;
 
 		return( res<0?0:res );
 	}
@@ -2617,11 +2345,7 @@ TRTrackerServerTorrentImpl
 		try{
 			this_mon.enter();
 
-			TRTrackerServerPeer[]	res = new TRTrackerServerPeer[peer_map.size()];
-
-			peer_map.values().toArray( res );
-
-			return( res );
+			return( peer_table.getPeers());
 
 		}finally{
 
@@ -2629,6 +2353,20 @@ TRTrackerServerTorrentImpl
 		}
 	}
 
+	private TRTrackerServerPeerImpl
+	getPeerByAddress(
+		String		ip,
+		int			port )
+	{
+		try{
+			return( peer_table.getByAddress( ip.getBytes( Constants.BYTE_ENCODING ), port ));
+
+		}catch( UnsupportedEncodingException e ){
+
+			return( null );
+		}
+	}
+
 	protected int
 	getQueuedCount()
 	{
@@ -37,6 +37,10 @@ import connect.tracker.server.TRTrackerServerImpl;
 import connect.tracker.server.TRTrackerServerRequestListener;
 import controller.config.COConfigurationManager;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 
 import controller.networkmanager.admin.NetworkAdmin;
@@ -57,6 +61,8 @@ TRTrackerServerUDP
 	
 	private DatagramSocket	dg_socket;
 	
+	private volatile List<DatagramChannel>	dg_channels;
+	
 	private volatile boolean	closed;
 
 	public
@@ -69,6 +75,23 @@ TRTrackerServerUDP
 		
 		port		= _port;
 		
+		if ( COConfigurationManager.getBooleanParameter( "Tracker Port UDP NIO Enable" )){
+			
+			int	receivers = COConfigurationManager.getIntParameter( "Tracker Port UDP NIO Receivers" );
+			
+			if ( receivers <= 0 ){
+				
+				receivers = Runtime.getRuntime().availableProcessors();
+			}
+			
+				// on failure fall back to the socket and thread pool
+			
+			if ( startChannels( receivers )){
+			
+				return;
+			}
+		}
+		
 		thread_pool = new ThreadPool( "TrackerServer:UDP:"+port, THREAD_POOL_SIZE );
 		
 		try{
@@ -123,6 +146,200 @@ TRTrackerServerUDP
 		}
 	}
 	
+		/**
+		 * BEP 15 server mode: a number of receive threads, each on its own DatagramChannel bound
+		 * to the port with SO_REUSEPORT so the kernel spreads clients across them, each processing
+		 * and replying inline with its own buffers and processor instead of copying the packet
+		 * and handing it to the thread pool. Where SO_REUSEPORT isn't available (it is exposed from
+		 * Java 9, and not on Windows) there is a single channel and receive thread.
+		 * @return false if the channels couldn't be set up
+		 */
+	
+	private boolean
+	startChannels(
+		int		receivers )
+	{
+		List<DatagramChannel>	channels = new ArrayList<DatagramChannel>();
+		
+		try{
+			InetAddress bind_ip = NetworkAdmin.getSingleton().getSingleHomedServiceBindAddress();
+			
+			InetSocketAddress	address;
+			
+			if ( bind_ip == null ){
+				
+				address = new InetSocketAddress( port );
+				
+			}else{
+				
+				current_bind_ip = bind_ip;
+				
+				address = new InetSocketAddress( bind_ip, port );
+			}
+			
+			for (int i=0;i<receivers;i++){
+				
+				DatagramChannel	channel = DatagramChannel.open();
+				
+				channels.add( channel );
+				
+				channel.setOption( StandardSocketOptions.SO_REUSEADDR, true );
+				
+				boolean	reuse_port = setReusePort( channel );
+				
+				channel.bind( address );
+				
+				if ( !reuse_port ){
+					
+					break;
+				}
+			}
+			
+			dg_channels = channels;
+			
+			for (int i=0;i<channels.size();i++){
+				
+				final DatagramChannel	channel = channels.get( i );
+				
+				Thread recv_thread = 
+					new AEThread("TRTrackerServerUDP:recv.loop:" + i )
+					{
+						public void
+						runSupport()
+						{
+							recvLoop( channel );
+						}
+					};
+				
+				recv_thread.setDaemon( true );
+				
+				recv_thread.start();
+			}
+			
+			Logger.log(new LogEvent(LOGID,
+					"TRTrackerServerUDP: recv established on port " + port + ", channels=" + channels.size())); 
+			
+			return( true );
+			
+		}catch( Throwable e ){
+			
+			Logger.log(new LogEvent(LOGID, "TRTrackerServerUDP: "
+					+ "DatagramChannel bind failed on port " + port + ", falling back to DatagramSocket", e)); 
+			
+			dg_channels = null;
+			
+			for ( DatagramChannel channel: channels ){
+				
+				try{
+					channel.close();
+					
+				}catch( Throwable f ){
+				}
+			}
+			
+			return( false );
+		}
+	}
+	
+	protected boolean
+	isChannelMode()
+	{
+		return( dg_channels != null );
+	}
+	
+	private static boolean
+	setReusePort(
+		DatagramChannel		channel )
+	{
+			// looked up by name as StandardSocketOptions.SO_REUSEPORT is Java 9+
+		
+		try{
+			for ( SocketOption<?> option: channel.supportedOptions()){
+				
+				if ( option.name().equals( "SO_REUSEPORT" ) && option.type() == Boolean.class ){
+					
+					channel.setOption((SocketOption<Boolean>)option, true );
+					
+					return( true );
+				}
+			}
+		}catch( Throwable e ){
+		}
+		
+		return( false );
+	}
+	
+	protected void
+	recvLoop(
+		DatagramChannel		channel )
+	{
+		ByteBuffer	recv_buffer	= ByteBuffer.allocateDirect( PRUDPPacket.MAX_PACKET_SIZE );
+		ByteBuffer	send_buffer	= ByteBuffer.allocateDirect( PRUDPPacket.MAX_PACKET_SIZE );
+		
+		byte[]		input_buffer	= new byte[PRUDPPacket.MAX_PACKET_SIZE];
+		
+		TRTrackerServerProcessorUDP				processor		= new TRTrackerServerProcessorUDP( this );
+		TRTrackerServerProcessorUDP.replyBuffer	reply_buffer	= new TRTrackerServerProcessorUDP.replyBuffer();
+		
+		long	successful_accepts 	= 0;
+		long	failed_accepts		= 0;
+		
+		while( !closed ){
+			
+			try{
+				recv_buffer.clear();
+				
+				InetSocketAddress	originator = (InetSocketAddress)channel.receive( recv_buffer );
+				
+				successful_accepts++;
+				
+				failed_accepts	= 0;
+				
+				recv_buffer.flip();
+				
+				int	length = recv_buffer.remaining();
+				
+				recv_buffer.get( input_buffer, 0, length );
+				
+				InetAddress	originator_address = originator.getAddress();
+				
+				if ( !ip_filter.isInRange( originator_address.getHostAddress(), "Tracker", null )){
+					
+					int	reply_length = processor.processPacket( input_buffer, length, originator_address, reply_buffer );
+					
+					if ( reply_length > 0 ){
+						
+						send_buffer.clear();
+						
+						send_buffer.put( reply_buffer.getBuffer(), 0, reply_length );
+						
+						send_buffer.flip();
+						
+						channel.send( send_buffer, originator );
+					}
+				}
+			}catch( Throwable e ){
+				
+				if ( !closed ){
+					
+					failed_accepts++;
+					
+					Logger.log(new LogEvent(LOGID,
+							"TRTrackerServer: receive failed on port " + port, e)); 
+					
+					if (( failed_accepts > 100 && successful_accepts == 0 ) || failed_accepts > 1000 ){
+						
+						Logger.logTextResource(new LogAlert(LogAlert.UNREPEATABLE,
+								LogAlert.AT_ERROR, "Network.alert.acceptfail"), new String[] {
+								"" + port, "UDP" });
+								
+						break;
+					}
+				}
+			}
+		}
+	}
+	
 	public InetAddress 
 	getBindIP()
 	{
@@ -217,11 +434,24 @@ TRTrackerServerUDP
 	{
 		closed = true;
 		
-		try{
-			dg_socket.close();
+		if ( dg_channels != null ){
 			
-		}catch( Throwable e ){
+			for ( DatagramChannel channel: dg_channels ){
+				
+				try{
+					channel.close();
+					
+				}catch( Throwable e ){
+				}
+			}
+		}else{
 			
+			try{
+				dg_socket.close();
+				
+			}catch( Throwable e ){
+				
+			}
 		}
 		
 		destroySupport();
@@ -0,0 +1,276 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package connect.tracker.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import comm.udp.PRUDPPacket;
+import comm.udp.PRUDPPacketRequest;
+import connect.tracker.protocol.udp.PRUDPPacketRequestAnnounce2;
+import connect.tracker.protocol.udp.PRUDPPacketRequestConnect;
+import connect.tracker.protocol.udp.PRUDPPacketTracker;
+import controller.config.COConfigurationManager;
+
+/**
+ * Drives an in-process UDP tracker with BEP 15 connect + announce traffic from a number of
+ * client threads, first with the thread pool server and then with the DatagramChannel one,
+ * reporting announces/sec and p50/p99 round trip times for each.
+ * <p>
+ * Usage: TRTrackerServerUDPBenchmark [client threads] [peers] [seconds] [receivers] [port]
+ */
+
+public class
+TRTrackerServerUDPBenchmark
+{
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int	threads		= args.length>0?Integer.parseInt( args[0] ):8;
+		int	peers		= args.length>1?Integer.parseInt( args[1] ):5000;
+		int	seconds		= args.length>2?Integer.parseInt( args[2] ):10;
+		int	receivers	= args.length>3?Integer.parseInt( args[3] ):0;
+		int	port		= args.length>4?Integer.parseInt( args[4] ):16980;
+
+		COConfigurationManager.setParameter( "Tracker NAT Check Enable", false );
+		COConfigurationManager.setParameter( "Tracker Port UDP NIO Receivers", receivers );
+
+		for ( int mode=0; mode<2; mode++ ){
+
+			boolean	nio = mode == 1;
+
+			COConfigurationManager.setParameter( "Tracker Port UDP NIO Enable", nio );
+
+			TRTrackerServer	server = TRTrackerServerFactory.create( TRTrackerServerFactory.PR_UDP, port+mode, false, false );
+
+			byte[]	hash = new byte[20];
+
+			new Random( 0 ).nextBytes( hash );
+
+			server.permit( "", hash, true );
+
+			run( nio?"channel":"thread pool", hash, port+mode, threads, peers, seconds );
+
+			server.close();
+		}
+	}
+
+	private static void
+	run(
+		String		name,
+		byte[]		hash,
+		int			port,
+		int			threads,
+		int			peers,
+		int			seconds )
+
+		throws Exception
+	{
+		final InetAddress	address = InetAddress.getByName( "127.0.0.1" );
+
+		final AtomicLong	announces	= new AtomicLong();
+		final AtomicLong	errors		= new AtomicLong();
+
+		final int[][]		latencies	= new int[threads][];
+		final int[]			counts		= new int[threads];
+
+		final long	end = System.currentTimeMillis() + seconds*1000L;
+
+		Thread[]	workers = new Thread[threads];
+
+		for ( int t=0; t<threads; t++ ){
+
+			final int	thread_num	= t;
+			final int	thread_peers	= Math.max( 1, peers/threads );
+
+			workers[t] =
+				new Thread()
+				{
+					public void
+					run()
+					{
+						int[]	lat = new int[1024*1024];
+
+						latencies[thread_num] = lat;
+
+						try{
+							DatagramSocket	socket = new DatagramSocket();
+
+							socket.setSoTimeout( 1000 );
+
+							byte[]	recv = new byte[PRUDPPacket.MAX_PACKET_SIZE];
+
+							long	connection_id	= -1;
+							int		peer			= 0;
+
+							while( System.currentTimeMillis() < end ){
+
+								try{
+									if ( connection_id == -1 ){
+
+										byte[]	reply = send( socket, address, port, new PRUDPPacketRequestConnect(), recv );
+
+										connection_id = readLong( reply, 8 );
+
+										continue;
+									}
+
+									PRUDPPacketRequestAnnounce2	announce = new PRUDPPacketRequestAnnounce2( connection_id );
+
+									byte[]	peer_id = new byte[20];
+
+									peer_id[0] = (byte)thread_num;
+									peer_id[1] = (byte)(peer>>8);
+									peer_id[2] = (byte)peer;
+
+									announce.setDetails(
+										hash, peer_id, 0, PRUDPPacketRequestAnnounce2.EV_UPDATE,
+										( 10<<24 ) | ( thread_num<<16 ) | peer, 0, 50, 1000, (short)( 6881 + peer%1000 ), 0 );
+
+									peer = ( peer + 1 ) % thread_peers;
+
+									long	start = System.nanoTime();
+
+									byte[]	reply = send( socket, address, port, announce, recv );
+
+									int	elapsed = (int)(( System.nanoTime() - start )/1000 );
+
+									if ( readInt( reply, 0 ) == PRUDPPacketTracker.ACT_REPLY_ANNOUNCE ){
+
+										if ( counts[thread_num] < lat.length ){
+
+											lat[counts[thread_num]++] = elapsed;
+										}
+
+										announces.incrementAndGet();
+
+									}else{
+
+											// error reply, most likely an expired connection id
+
+										errors.incrementAndGet();
+
+										connection_id = -1;
+									}
+								}catch( SocketTimeoutException e ){
+
+									errors.incrementAndGet();
+								}
+							}
+
+							socket.close();
+
+						}catch( Throwable e ){
+
+							e.printStackTrace();
+						}
+					}
+				};
+
+			workers[t].start();
+		}
+
+		for ( Thread worker: workers ){
+
+			worker.join();
+		}
+
+		int	total = 0;
+
+		for ( int c: counts ){
+
+			total += c;
+		}
+
+		int[]	all = new int[total];
+		int		pos	= 0;
+
+		for ( int t=0; t<threads; t++ ){
+
+			System.arraycopy( latencies[t], 0, all, pos, counts[t] );
+
+			pos += counts[t];
+		}
+
+		Arrays.sort( all );
+
+		System.out.println(
+			name + ": threads=" + threads + ", " + ( announces.get()/seconds ) + " announces/sec, p50=" +
+			( total==0?0:all[total/2] ) + "us, p99=" + ( total==0?0:all[(int)( total*0.99 )] ) + "us, errors=" + errors.get());
+	}
+
+	private static byte[]
+	send(
+		DatagramSocket		socket,
+		InetAddress			address,
+		int					port,
+		PRUDPPacketRequest	request,
+		byte[]				recv )
+
+		throws Exception
+	{
+		ByteArrayOutputStream	baos = new ByteArrayOutputStream();
+
+		request.serialise( new DataOutputStream( baos ));
+
+		byte[]	bytes = baos.toByteArray();
+
+		socket.send( new DatagramPacket( bytes, bytes.length, address, port ));
+
+		while( true ){
+
+			DatagramPacket	packet = new DatagramPacket( recv, recv.length );
+
+			socket.receive( packet );
+
+				// skip late replies to requests that previously timed out
+
+			if ( readInt( recv, 4 ) == request.getTransactionId()){
+
+				return( Arrays.copyOf( recv, packet.getLength()));
+			}
+		}
+	}
+
+	private static int
+	readInt(
+		byte[]	b,
+		int		pos )
+	{
+		return((( b[pos]&0xff )<<24 ) | (( b[pos+1]&0xff )<<16 ) | (( b[pos+2]&0xff )<<8 ) | ( b[pos+3]&0xff ));
+	}
+
+	private static long
+	readLong(
+		byte[]	b,
+		int		pos )
+	{
+		return(((long)readInt( b, pos )<<32 ) | ( readInt( b, pos+4 )&0xffffffffL ));
+	}
+}
@@ -171,6 +171,7 @@ public class ConfigurationDefaults {
     def.put("Non-Public Peer Extra Connections Per Torrent", 4 );
 
     def.put( "Peer.Fast.Initial.Unchoke.Enabled", FALSE );
+    def.put( "Peer.Request.Pipeline.Adaptive", FALSE );
 
     def.put( "File Max Open", new Long(50));
     def.put( "Use Config File Backups", TRUE);
@@ -362,6 +363,8 @@ public class ConfigurationDefaults {
     def.put( "Use Lazy Bitfield", FALSE );
     def.put( "Zero New", FALSE );
     def.put( "XFS Allocation", FALSE );
+    def.put( "diskmanager.alloc.strategy", "" );			// "", "sparse", "extend" or "zero"
+    def.put( "diskmanager.alloc.device.concurrency", new Long(2));
     def.put( "Copy And Delete Data Rather Than Move", FALSE);
     def.put( "Move If On Same Drive", FALSE);
     def.put( "File.save.peers.enable", TRUE );
@@ -436,6 +439,8 @@ public class ConfigurationDefaults {
 
     def.put( "Tracker Port UDP Enable", FALSE );
     def.put( "Tracker Port UDP Version", new Long(2) );
+    def.put( "Tracker Port UDP NIO Enable", FALSE );
+    def.put( "Tracker Port UDP NIO Receivers", new Long(0) );			// 0 -> one per processor
     def.put( "Tracker Send Peer IDs", TRUE );
     def.put( "Tracker Max Peers Returned", new Long(100) );
     def.put( "Tracker Scrape Cache", new Long( TRTrackerServer.DEFAULT_SCRAPE_CACHE_PERIOD ) );
@@ -519,6 +524,8 @@ public class ConfigurationDefaults {
     def.put( "Alert on close", FALSE );
     def.put( "diskmanager.friendly.hashchecking", FALSE );
     def.put( "diskmanager.hashchecking.smallestfirst", TRUE );
+    def.put( "diskmanager.hashchecking.incremental", FALSE );
+    def.put( "diskmanager.hashchecking.readahead.mb", new Long(16));
     def.put( "Default Start Torrents Stopped", FALSE);
     def.put( "Default Start Torrents Stopped Auto Pause", FALSE );
     def.put( "Server Enable UDP", TRUE); // this actually means the UDP tracker client
@@ -536,6 +543,9 @@ public class ConfigurationDefaults {
     def.put( "diskmanager.perf.write.maxmb", new Long(5));
     def.put( "diskmanager.perf.cache.trace", FALSE);
     def.put( "diskmanager.perf.cache.flushpieces", TRUE);
+    def.put( "diskmanager.perf.cache.write.coalesce", FALSE);
+    def.put( "diskmanager.perf.cache.write.coalesce.min", new Long(1024));	// 1024 K
+    def.put( "diskmanager.perf.cache.eviction", "lru" );		// "lru" or "2q"
     def.put( "diskmanager.perf.read.aggregate.enable", FALSE );
     def.put( "diskmanager.perf.read.aggregate.request.limit", ZERO );
     def.put( "diskmanager.perf.read.aggregate.byte.limit", ZERO );
@@ -545,6 +555,9 @@ public class ConfigurationDefaults {
     def.put( "diskmanager.perf.checking.read.priority", FALSE );
     def.put( "diskmanager.perf.checking.fully.async", FALSE );
     def.put( "diskmanager.perf.queue.torrent.bias", TRUE );
+    def.put( "diskmanager.perf.queue.elevator", FALSE );
+    def.put( "diskmanager.perf.queue.elevator.batch.requests", new Long(64) );
+    def.put( "diskmanager.perf.queue.elevator.merge.bytes", new Long(1024*1024) );
 
     	// Peer control
 
@@ -570,6 +583,7 @@ public class ConfigurationDefaults {
     def.put( "network.tcp.connect.outbound.enable", TRUE );
     def.put( "network.tcp.mtu.size", new Long(1500) );
     def.put( "network.udp.mtu.size", new Long(1500) );
+    def.put( "network.udp.send.destination.gap", new Long(0) );		// min millis between queued sends to one address, 0 = off
     def.put( "network.udp.poll.time", new Long( 100 ));
     def.put( "network.tcp.socket.SO_SNDBUF", ZERO );
     def.put( "network.tcp.socket.SO_RCVBUF", ZERO );
@@ -580,15 +594,20 @@ public class ConfigurationDefaults {
     def.put( "network.tcp.write.select.min.time", ZERO );
     def.put( "network.tcp.connect.select.time", new Long( 100 ));
     def.put( "network.tcp.connect.select.min.time", ZERO );
+    def.put( "network.tcp.connect.adaptive", FALSE );
+    def.put( "network.tcp.connect.adaptive.max", new Long( 64 ));
 
     def.put( "network.tracker.tcp.select.time", new Long( 100 ));
 
     def.put( "network.control.write.idle.time", new Long(50));
     def.put( "network.control.write.aggressive", FALSE );
+    def.put( "network.control.write.batch", FALSE );
     def.put( "network.control.read.idle.time", new Long(50));
     def.put( "network.control.read.aggressive", FALSE );
     def.put( "network.control.read.processor.count", new Long(1));
     def.put( "network.control.write.processor.count", new Long(1));
+    def.put( "network.control.shard.count", ZERO );		// -1 = one per core (max 8)
+    def.put( "network.control.ratelimit.lockfree", FALSE );
     def.put( "peermanager.schedule.time", new Long(100));
     def.put( "enable_small_osx_fonts", TRUE );
     def.put( "Play Download Finished Announcement", FALSE);
@@ -604,9 +623,11 @@ public class ConfigurationDefaults {
     def.put( "BT Request Max Block Size", new Long(65536));
     def.put( "network.tcp.enable_safe_selector_mode", FALSE );
     def.put( "network.tcp.safe_selector_mode.chunk_size", SIXTY );
+    def.put( "network.tcp.selector.edge", FALSE );
 
     def.put( "network.transport.encrypted.require", FALSE );
     def.put( "network.transport.encrypted.min_level", "RC4" );
+    def.put( "network.transport.encrypted.aes", FALSE );
     def.put( "network.transport.encrypted.fallback.outgoing", FALSE );
     def.put( "network.transport.encrypted.fallback.incoming", FALSE );
     def.put( "network.transport.encrypted.use.crypto.port", FALSE );
@@ -0,0 +1,178 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package controller.networkmanager;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the shared byte buckets the way the controller shards do: a global limit, a set of
+ * group (tag/download) limits and a per-peer limit, each write attempt taking the minimum
+ * allowance across the chain and then charging every level. Reports write attempts per second
+ * and how closely the achieved rate tracks the global limit.
+ * <p>
+ * Usage: ByteBucketBenchmark [threads] [entities] [seconds] [global KB/s]
+ */
+
+public class 
+ByteBucketBenchmark 
+{
+	private static final int	GROUPS		= 100;
+	private static final int	CHUNK		= 1460;
+	
+	public static void
+	main(
+		String[]	args )
+	
+		throws Exception
+	{
+		int	threads		= args.length>0?Integer.parseInt( args[0] ):Runtime.getRuntime().availableProcessors();
+		int	entities	= args.length>1?Integer.parseInt( args[1] ):10000;
+		int	seconds		= args.length>2?Integer.parseInt( args[2] ):5;
+		int	global_rate	= 1024*(args.length>3?Integer.parseInt( args[3] ):50*1024);
+		
+		System.out.println( "threads=" + threads + ", entities=" + entities + ", global=" + (global_rate/1024) + "KB/s" );
+		
+		for ( String type: new String[]{ "mt", "cas", "mt", "cas" }){
+			
+			run( type, threads, entities, seconds, global_rate );
+		}
+	}
+	
+	private static ByteBucket
+	create(
+		String		type,
+		int			rate )
+	{
+		return( type.equals( "cas" )?new ByteBucketCAS( rate ):new ByteBucketMT( rate ));
+	}
+	
+	private static void
+	run(
+		String				type,
+		int					threads,
+		final int			entities,
+		final int			seconds,
+		int					global_rate )
+	
+		throws Exception
+	{
+		final ByteBucket	global = create( type, global_rate );
+		
+		final ByteBucket[]	groups = new ByteBucket[GROUPS];
+		
+		for (int i=0;i<GROUPS;i++){
+			
+				// group limits sum to twice the global so the global level is the binding one
+			
+			groups[i] = create( type, 2*global_rate/GROUPS );
+		}
+		
+		final ByteBucket[]	peers = new ByteBucket[entities];
+		
+		for (int i=0;i<entities;i++){
+			
+			peers[i] = create( type, 64*1024 );
+		}
+		
+		final AtomicLong	attempts 	= new AtomicLong();
+		final AtomicLong	bytes		= new AtomicLong();
+		
+		final long	end = System.currentTimeMillis() + seconds*1000L;
+		
+		final CountDownLatch	done = new CountDownLatch( threads );
+		
+		for (int t=0;t<threads;t++){
+			
+			final int	shard = t;
+			final int	shards = threads;
+			
+			Thread thread = 
+				new Thread( "ByteBucketBenchmark:" + t )
+				{
+					public void
+					run()
+					{
+						Random	random = new Random( shard );
+						
+						long	my_attempts = 0;
+						long	my_bytes	= 0;
+						
+						try{
+							while( System.currentTimeMillis() < end ){
+								
+								for (int i=0;i<1000;i++){
+									
+										// each shard owns a slice of the entities, as the controller shards do
+									
+									int	entity = shard + shards*random.nextInt( Math.max( 1, entities/shards ));
+									
+									if ( entity >= entities ){
+										
+										entity = shard;
+									}
+									
+									ByteBucket	peer 	= peers[entity];
+									ByteBucket	group	= groups[entity%GROUPS];
+									
+									int	allowed = global.getAvailableByteCount();
+									
+									allowed = Math.min( allowed, group.getAvailableByteCount());
+									allowed = Math.min( allowed, peer.getAvailableByteCount());
+									
+									my_attempts++;
+									
+									if ( allowed > 0 ){
+										
+										int	used = Math.min( allowed, CHUNK );
+										
+										peer.setBytesUsed( used );
+										group.setBytesUsed( used );
+										global.setBytesUsed( used );
+										
+										my_bytes += used;
+									}
+								}
+							}
+						}finally{
+							
+							attempts.addAndGet( my_attempts );
+							bytes.addAndGet( my_bytes );
+							
+							done.countDown();
+						}
+					}
+				};
+				
+			thread.setDaemon( true );
+			
+			thread.start();
+		}
+		
+		done.await();
+		
+		long	achieved = bytes.get()/seconds;
+		
+		System.out.println( 
+			type + ": attempts/sec=" + ( attempts.get()/seconds ) + 
+			", achieved=" + ( achieved/1024 ) + "KB/s" +
+			" (" + ( achieved*100/global_rate ) + "% of limit)" );
+	}
+}
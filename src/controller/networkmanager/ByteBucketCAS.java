@@ -0,0 +1,223 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package controller.networkmanager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import torrentlib.Debug;
+import torrentlib.SystemTime;
+
+import controller.networkmanager.NetworkManager;
+
+/**
+ * Lock-free token bucket. Byte usage is a single atomic add and refills are batched so that
+ * at most one caller per REFILL_MILLIS period does the time arithmetic, the rest just read the
+ * current token count. Safe to share between any number of controller threads.
+ */
+
+public class 
+ByteBucketCAS 
+	implements ByteBucket
+{
+	private static final int	REFILL_MILLIS	= 5;
+	
+	private volatile int 	rate;
+	private volatile int 	burst_rate;
+	
+	private final AtomicLong	avail_bytes		= new AtomicLong();
+	private final AtomicLong	last_refill		= new AtomicLong();
+	
+	private final AtomicInteger	frozen	= new AtomicInteger();
+	
+	/**
+	 * Create a new byte-bucket with the given byte fill (guaranteed) rate.
+	 * Burst rate is set to default 1.2X of given fill rate.
+	 * @param rate_bytes_per_sec fill rate
+	 */
+	public 
+	ByteBucketCAS( 
+		int rate_bytes_per_sec ) 
+	{
+		rate		= rate_bytes_per_sec;
+		burst_rate	= rate_bytes_per_sec + (rate_bytes_per_sec/5);
+		
+		last_refill.set( SystemTime.getMonotonousTime());	// start bucket empty
+		
+		ensureByteBucketMinBurstRate();
+	}
+	
+	public int 
+	getAvailableByteCount() 
+	{
+		long	avail = avail_bytes.get();
+		
+		if ( avail < NetworkManager.UNLIMITED_RATE ){
+			
+			avail = refill( avail );
+		}
+		
+		return( avail < 0?0:(int)avail );
+	}
+	
+	public void 
+	setBytesUsed( 
+		int bytes_used ) 
+	{
+		if ( avail_bytes.get() >= NetworkManager.UNLIMITED_RATE ){
+			
+			return;
+		}
+		
+		avail_bytes.addAndGet( -bytes_used );
+	}
+	
+	public int 
+	getRate() 
+	{  
+		return( rate );  
+	}
+	
+	public int 
+	getBurstRate() 
+	{  
+		return( burst_rate );  
+	}
+	
+	public void 
+	setRate( 
+		int rate_bytes_per_sec ) 
+	{
+		if ( rate_bytes_per_sec < 0 ){
+			
+			Debug.out("rate_bytes_per_sec [" +rate_bytes_per_sec+ "] < 0");
+			
+			rate_bytes_per_sec = 0;
+		}
+		
+		rate		= rate_bytes_per_sec;
+		burst_rate	= rate_bytes_per_sec + (rate_bytes_per_sec/5);
+		
+		ensureByteBucketMinBurstRate();
+		
+		clamp();
+	}
+	
+	public void
+	setFrozen(
+		boolean	f )
+	{
+			// nests, several controller shards can hold the bucket frozen at once
+		
+		if ( f ){
+			
+			frozen.incrementAndGet();
+			
+		}else{
+			
+			while( true ){
+				
+				int	current = frozen.get();
+				
+				if ( current == 0 || frozen.compareAndSet( current, current-1 )){
+					
+					break;
+				}
+			}
+		}
+	}
+	
+	private long
+	refill(
+		long	avail )
+	{
+		if ( frozen.get() > 0 ){
+			
+			return( avail );
+		}
+		
+		long	now 	= SystemTime.getMonotonousTime();
+		long	last	= last_refill.get();
+		
+		long	elapsed = now - last;
+		
+		if ( elapsed < REFILL_MILLIS ){
+			
+			return( avail );
+		}
+		
+			// only the thread that wins the time slot adds the tokens for it
+		
+		if ( !last_refill.compareAndSet( last, now )){
+			
+			return( avail_bytes.get());
+		}
+		
+		long	tokens	= ( elapsed * rate ) / 1000;
+		int		burst	= burst_rate;
+		
+		while( true ){
+			
+			long	current = avail_bytes.get();
+			
+			long	target	= current + tokens;
+			
+			if ( target > burst ){
+				
+				target = burst;
+			}
+			
+			if ( avail_bytes.compareAndSet( current, target )){
+				
+				return( target );
+			}
+		}
+	}
+	
+	private void
+	clamp()
+	{
+		int	burst = burst_rate;
+		
+		while( true ){
+			
+			long	current = avail_bytes.get();
+			
+			if ( current <= burst || avail_bytes.compareAndSet( current, burst )){
+				
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Make sure the bucket's burst rate is at least MSS-sized,
+	 * otherwise it will never allow a full packet's worth of data.
+	 */
+	private void 
+	ensureByteBucketMinBurstRate() 
+	{
+		int mss = NetworkManager.getMinMssSize();
+		
+		if ( burst_rate < mss ){
+			
+			burst_rate = mss;
+		}
+	}
+}
@@ -34,7 +34,9 @@ ByteBucketMT
 	  private volatile long avail_bytes;
 	  private volatile long prev_update_time;
 	  
-	  private volatile boolean frozen;
+	  	// freeze requests nest as several controller shards may hold the bucket frozen at once
+	  
+	  private volatile int frozen;
 	  
 	  /**
 	   * Create a new byte-bucket with the given byte fill (guaranteed) rate.
@@ -87,7 +89,9 @@ ByteBucketMT
 		  return;
 		}
 		  
-	    avail_bytes -= bytes_used;
+	    synchronized( this ){
+	    	avail_bytes -= bytes_used;
+	    }
 	    //if( avail_bytes < 0 ) Debug.out( "avail_bytes < 0: " + avail_bytes);
 	  }
 	  
@@ -118,7 +122,13 @@ ByteBucketMT
 	  setFrozen(
 			boolean	f )
 	  {
-		  frozen = f;
+		  synchronized( this ){
+			  if ( f ){
+				  frozen++;
+			  }else if ( frozen > 0 ){
+				  frozen--;
+			  }
+		  }
 	  }
 
 	  /**
@@ -145,7 +155,7 @@ ByteBucketMT
 	  
 	  
 	  private void update_avail_byte_count() {
-		  if ( frozen ){
+		  if ( frozen > 0 ){
 			  return;
 		  }
 		  synchronized( this ){
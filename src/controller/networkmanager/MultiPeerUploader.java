@@ -24,12 +24,16 @@ import torrentlib.Debug;
 import torrentlib.AEDiagnostics;
 import torrentlib.AEMonitor;
 import connect.peer.messaging.Message;
+import controller.config.COConfigurationManager;
 import controller.networkmanager.NetworkConnectionBase;
 import controller.networkmanager.EventWaiter;
 import controller.networkmanager.RateHandler;
 import controller.networkmanager.OutgoingMessageQueue;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 
@@ -39,22 +43,35 @@ import java.util.*;
  * A rate-controlled write entity backed by multiple peer connections, with an
  * emphasis on transmitting packets with full payloads, i.e. it writes to the
  * transport in mss-sized chunks if at all possible. It also employs fair,
- * round-robin write scheduling, where connections each take turns writing a
- * single full packet per round.
+ * round-robin write scheduling, where connections each take turns writing
+ * per round. In batched mode ("network.control.write.batch", off by default)
+ * a connection's turn flushes as much of its queue as its share of the current
+ * allowance permits with a single gathering write, otherwise a turn is a
+ * single full packet.
  */
 public class MultiPeerUploader implements RateControlledEntity {
   private static final int FLUSH_CHECK_LOOP_TIME = 500;  //500ms
   private static final int FLUSH_WAIT_TIME = 3*1000;  //3sec no-new-data wait before forcing write flush
   private long last_flush_check_time = 0;
   
+  private static final boolean BATCH_WRITES = COConfigurationManager.getBooleanParameter( "network.control.write.batch" );
+  private static final int BATCH_MIN_PACKETS = 12;  //enough for a whole 16K block plus header
   
   private final RateHandler rate_handler;
+  private final boolean batch_writes;
   private boolean destroyed = false;
   
+  	// every connection currently managed, wherever it is - lets the ready queue be manipulated
+  	// without the lists lock, a connection re-queued after removal is spotted and dropped
+  
+  private final Map<NetworkConnectionBase,Boolean> managed_connections = new ConcurrentHashMap<NetworkConnectionBase,Boolean>();
+  
   private final HashMap waiting_connections = new HashMap();
-  private final LinkedList ready_connections = new LinkedList();
   private final AEMonitor lists_lock = new AEMonitor( "PacketFillingMultiPeerUploader:lists_lock" );
   
+  private final ConcurrentLinkedQueue<NetworkConnectionBase> ready_connections = new ConcurrentLinkedQueue<NetworkConnectionBase>();
+  private final AtomicInteger ready_count = new AtomicInteger();	// ConcurrentLinkedQueue.size() is O(n)
+  
   private volatile EventWaiter	waiter;
 
   /**
@@ -63,7 +80,12 @@ public class MultiPeerUploader implements RateControlledEntity {
    * @param rate_handler listener to handle upload rate limits
    */
   public MultiPeerUploader( RateHandler rate_handler ) {
+    this( rate_handler, BATCH_WRITES );
+  }
+  
+  MultiPeerUploader( RateHandler rate_handler, boolean batch_writes ) {
     this.rate_handler = rate_handler;
+    this.batch_writes = batch_writes;
   }
   
 	public RateHandler 
@@ -119,6 +141,8 @@ public class MultiPeerUploader implements RateControlledEntity {
   public void destroy() {
     destroyed = true;
     
+    managed_connections.clear();
+    
     try {
       lists_lock.enter();
       
@@ -133,6 +157,7 @@ public class MultiPeerUploader implements RateControlledEntity {
       
       //remove from ready list
       ready_connections.clear();
+      ready_count.set( 0 );
     }
     finally {
       lists_lock.exit();
@@ -147,6 +172,8 @@ public class MultiPeerUploader implements RateControlledEntity {
    * @param peer_connection to be write managed
    */
   public void addPeerConnection( NetworkConnectionBase peer_connection ) {
+    managed_connections.put( peer_connection, Boolean.TRUE );
+    
     int mss_size = peer_connection.getMssSize();
     boolean has_urgent_data = peer_connection.getOutgoingMessageQueue().hasUrgentMessage();
     int num_bytes_ready = peer_connection.getOutgoingMessageQueue().getTotalSize();
@@ -175,6 +202,10 @@ public class MultiPeerUploader implements RateControlledEntity {
    * @return true if the connection was found and removed, false if not removed
    */
   public boolean removePeerConnection( NetworkConnectionBase peer_connection ) {
+    if( managed_connections.remove( peer_connection ) == null ) {
+      return false;
+    }
+    
     try {
       lists_lock.enter();
       
@@ -184,17 +215,16 @@ public class MultiPeerUploader implements RateControlledEntity {
         peer_connection.getOutgoingMessageQueue().cancelQueueListener( peer_data.queue_listener );
         return true;
       }
-      
-      //look for the connection in the ready list
-      if( ready_connections.remove( peer_connection ) ) {
-        return true;
-      }
-      
-      return false;
     }
     finally {
       lists_lock.exit();
     }
+    
+    //look for the connection in the ready list, if it isn't there it is mid-write and
+    //will be dropped when the writer tries to re-queue it
+    removeFromReadyList( peer_connection );
+    
+    return true;
   }
   
   
@@ -272,6 +302,10 @@ public class MultiPeerUploader implements RateControlledEntity {
     try {
       lists_lock.enter();
       
+      if( !managed_connections.containsKey( conn ) ) {  //removed while being written
+        return;
+      }
+      
       waiting_connections.put( conn, peer_data ); //add to waiting list
       conn.getOutgoingMessageQueue().registerQueueListener( listener );  //listen for added data
     }
@@ -284,16 +318,30 @@ public class MultiPeerUploader implements RateControlledEntity {
   
   //connections ready to write
   private void addToReadyList( final NetworkConnectionBase conn ) {
-    try {
-      lists_lock.enter();
-      
-      ready_connections.addLast( conn );  //add to ready list
+    ready_connections.add( conn );  //add to ready list
+    ready_count.incrementAndGet();
+    
+    if( !managed_connections.containsKey( conn ) ) {  //lost a race with removePeerConnection
+      removeFromReadyList( conn );
     }
-    finally {
-      lists_lock.exit();
+  }
+  
+  private void removeFromReadyList( NetworkConnectionBase conn ) {
+    if( ready_connections.remove( conn ) ) {
+      ready_count.decrementAndGet();
     }
   }
   
+  private NetworkConnectionBase takeFromReadyList() {
+    NetworkConnectionBase conn = ready_connections.poll();
+    
+    if( conn != null ) {
+      ready_count.decrementAndGet();
+    }
+    
+    return conn;
+  }
+  
   
   
   private int write( EventWaiter waiter, int num_bytes_to_write ) {  //TODO: model this class after the simplicity of MultiPeerDownloader
@@ -307,92 +355,114 @@ public class MultiPeerUploader implements RateControlledEntity {
     
     int num_bytes_remaining = num_bytes_to_write;    
     
-    try {
-      lists_lock.enter();
+    //in batched mode each ready connection's turn is worth an even share of the allowance, but
+    //at least a block's worth of packets, so a connection with plenty queued gets it out in one
+    //gathering write rather than one packet-sized write per round. Turns rotate through the ready
+    //queue across calls so the larger minimum doesn't cost fairness.
+    int fair_share = batch_writes ? num_bytes_to_write / Math.max( 1, ready_count.get() ) : 0;
+    
+    int num_unusable_connections = 0;
+    
+    while( num_bytes_remaining > 0 && num_unusable_connections < ready_count.get() ) {
+      NetworkConnectionBase conn = takeFromReadyList();
       
-      int num_unusable_connections = 0;
-            
-      while( num_bytes_remaining > 0 && num_unusable_connections < ready_connections.size() ) {
-    	NetworkConnectionBase conn = (NetworkConnectionBase)ready_connections.removeFirst();
+      if( conn == null ) {
+        break;
+      }
+      
+      if( !conn.getTransportBase().isReadyForWrite( waiter ) ) {  //not yet ready for writing
+        addToReadyList( conn );  //re-add to end as currently unusable
+        num_unusable_connections++;
+        continue;  //move on to the next connection
+      }
+      
+      int total_size = conn.getOutgoingMessageQueue().getTotalSize();
+      
+      if( total_size < 1 ) {  //oops, all messages have been removed
+        addToWaitingList( conn );
+        continue;  //move on to the next connection
+      }
+      
+      int mss_size = conn.getMssSize();
+      int num_bytes_allowed;
+      int num_bytes_available;
+      
+      if( batch_writes ) {
+        num_bytes_allowed = Math.min( num_bytes_remaining, Math.max( mss_size * BATCH_MIN_PACKETS, fair_share ) );
         
-        if( !conn.getTransportBase().isReadyForWrite( waiter ) ) {  //not yet ready for writing
-          ready_connections.addLast( conn );  //re-add to end as currently unusable
-          num_unusable_connections++;
-          continue;  //move on to the next connection
+        if( num_bytes_allowed >= total_size ) {  //drain the lot
+          num_bytes_available = total_size;
         }
-        
-        int total_size = conn.getOutgoingMessageQueue().getTotalSize();
-        
-        if( total_size < 1 ) {  //oops, all messages have been removed
-          addToWaitingList( conn );
-          continue;  //move on to the next connection
+        else {  //whole packets only
+          num_bytes_available = ( num_bytes_allowed / mss_size ) * mss_size;
+          
+          if( num_bytes_available == 0 ) {
+            num_bytes_available = total_size;  //can't fill a packet, treat as not allowed enough below
+          }
         }
-        
-        int mss_size = conn.getMssSize();
-        int num_bytes_allowed = num_bytes_remaining > mss_size ? mss_size : num_bytes_remaining;  //allow a single full packet at most
-        int num_bytes_available = total_size > mss_size ? mss_size : total_size;  //allow a single full packet at most
-        
-        if( num_bytes_allowed >= num_bytes_available ) { //we're allowed enough (for either a full packet or to drain any remaining data)
-          int written = 0;
-          try {
-            written = conn.getOutgoingMessageQueue().deliverToTransport( num_bytes_available, true );
-                   
-            if( written > 0 ) {  
-              manual_notifications.add( conn );  //register it for manual listener notification
-            }
-            
-            boolean has_urgent_data = conn.getOutgoingMessageQueue().hasUrgentMessage();
-            int remaining = conn.getOutgoingMessageQueue().getTotalSize();
-            
-            if( remaining >= mss_size || has_urgent_data ) {  //still has a full packet's worth, or has urgent data
-              ready_connections.addLast( conn );  //re-add to end for further writing
-              num_unusable_connections = 0;  //reset the unusable count so that it has a chance to try this connection again in the loop
-            }
-            else {  //connection does not have enough for a full packet, so remove and place into waiting list
+      }
+      else {
+        num_bytes_allowed = num_bytes_remaining > mss_size ? mss_size : num_bytes_remaining;  //allow a single full packet at most
+        num_bytes_available = total_size > mss_size ? mss_size : total_size;  //allow a single full packet at most
+      }
+      
+      if( num_bytes_allowed >= num_bytes_available ) { //we're allowed enough (for either a full packet or to drain any remaining data)
+        int written = 0;
+        try {
+          written = conn.getOutgoingMessageQueue().deliverToTransport( num_bytes_available, true );
+                 
+          if( written > 0 ) {  
+            manual_notifications.add( conn );  //register it for manual listener notification
+          }
+          
+          boolean has_urgent_data = conn.getOutgoingMessageQueue().hasUrgentMessage();
+          int remaining = conn.getOutgoingMessageQueue().getTotalSize();
+          
+          if( remaining >= mss_size || has_urgent_data ) {  //still has a full packet's worth, or has urgent data
+            addToReadyList( conn );  //re-add to end for further writing
+            num_unusable_connections = 0;  //reset the unusable count so that it has a chance to try this connection again in the loop
+          }
+          else {  //connection does not have enough for a full packet, so remove and place into waiting list
  
-              addToWaitingList( conn );
-            }
+            addToWaitingList( conn );
           }
-          catch( Throwable e ) {  //write exception, so move to waiting list while it waits for removal
-            
-            if( AEDiagnostics.TRACE_CONNECTION_DROPS ) {
-              if( e.getMessage() == null ) {
-                Debug.out( "null write exception message: ", e );
-              }
-              else {
-                if( e.getMessage().indexOf( "An existing connection was forcibly closed by the remote host" ) == -1 &&
-                    e.getMessage().indexOf( "Connection reset by peer" ) == -1 &&
-                    e.getMessage().indexOf( "Broken pipe" ) == -1 &&
-                    e.getMessage().indexOf( "An established connection was aborted by the software in your host machine" ) == -1 ) {
-                  
-                  System.out.println( "MP: write exception [" +conn.getTransportBase().getDescription()+ "]: " +e.getMessage() );
-                }
-              }
+        }
+        catch( Throwable e ) {  //write exception, so move to waiting list while it waits for removal
+          
+          if( AEDiagnostics.TRACE_CONNECTION_DROPS ) {
+            if( e.getMessage() == null ) {
+              Debug.out( "null write exception message: ", e );
             }
-            
-            if (! (e instanceof IOException )){
-            	
-          	  Debug.printStackTrace(e);
+            else {
+              if( e.getMessage().indexOf( "An existing connection was forcibly closed by the remote host" ) == -1 &&
+                  e.getMessage().indexOf( "Connection reset by peer" ) == -1 &&
+                  e.getMessage().indexOf( "Broken pipe" ) == -1 &&
+                  e.getMessage().indexOf( "An established connection was aborted by the software in your host machine" ) == -1 ) {
+                
+                System.out.println( "MP: write exception [" +conn.getTransportBase().getDescription()+ "]: " +e.getMessage() );
+              }
             }
-            
-            connections_to_notify_of_exception.put( conn, e );  //do exception notification outside of sync'd block
-            addToWaitingList( conn );
           }
           
-          num_bytes_remaining -= written;
-        }
-        else {  //we're not allowed enough to maximize the packet payload
-          ready_connections.addLast( conn );  //re-add to end as currently unusable
-          num_unusable_connections++;
+          if (! (e instanceof IOException )){
+          	
+        	  Debug.printStackTrace(e);
+          }
           
-          continue;  //move on to the next connection
+          connections_to_notify_of_exception.put( conn, e );  //do exception notification outside of sync'd block
+          addToWaitingList( conn );
         }
+        
+        num_bytes_remaining -= written;
+      }
+      else {  //we're not allowed enough to maximize the packet payload
+        addToReadyList( conn );  //re-add to end as currently unusable
+        num_unusable_connections++;
+        
+        continue;  //move on to the next connection
       }
     }
-    finally {
-      lists_lock.exit();
-    }
-    
+  
     //manual queue listener notifications
     for( int i=0; i < manual_notifications.size(); i++ ) {
       NetworkConnectionBase conn = (NetworkConnectionBase)manual_notifications.get( i );
@@ -441,25 +511,9 @@ public class MultiPeerUploader implements RateControlledEntity {
   {
 	  long	total = 0;
 	  
-	  try {
-		  lists_lock.enter();
-
-		  for( Iterator i = waiting_connections.keySet().iterator(); i.hasNext(); ) {
-			 
-			  NetworkConnectionBase conn = (NetworkConnectionBase)i.next();
+	  for( NetworkConnectionBase conn: managed_connections.keySet()){
 			  
-			  total += conn.getOutgoingMessageQueue().getTotalSize();
-		  }
-		  
-		  for( Iterator i = ready_connections.iterator(); i.hasNext(); ) {
-				 
-			  NetworkConnectionBase conn = (NetworkConnectionBase)i.next();
-			  
-			  total += conn.getOutgoingMessageQueue().getTotalSize();
-		  }
-	  }finally{
-		  
-		  lists_lock.exit();
+		  total += conn.getOutgoingMessageQueue().getTotalSize();
 	  }
 	  
 	  return( total );
@@ -468,7 +522,7 @@ public class MultiPeerUploader implements RateControlledEntity {
   public int
   getConnectionCount( EventWaiter _waiter )
   {
-	  int	res = waiting_connections.size() + ready_connections.size();
+	  int	res = managed_connections.size();
 	  
 	  if ( res == 0 ){
 		  
@@ -484,31 +538,12 @@ public class MultiPeerUploader implements RateControlledEntity {
   {
 	  int	total = 0;
 	  
-	  try {
-		  lists_lock.enter();
-
-		  for( Iterator i = waiting_connections.keySet().iterator(); i.hasNext(); ) {
-			 
-			  NetworkConnectionBase conn = (NetworkConnectionBase)i.next();
+	  for( NetworkConnectionBase conn: managed_connections.keySet()){
 			  
-			  if ( conn.getTransportBase().isReadyForWrite(waiter)){
-				  
-				  total++;
-			  }
-		  }
-		  
-		  for( Iterator i = ready_connections.iterator(); i.hasNext(); ) {
-				 
-			  NetworkConnectionBase conn = (NetworkConnectionBase)i.next();
+		  if ( conn.getTransportBase().isReadyForWrite(waiter)){
 			  
-			  if ( conn.getTransportBase().isReadyForWrite(waiter)){
-				  
-				  total++;
-			  }
+			  total++;
 		  }
-	  }finally{
-		  
-		  lists_lock.exit();
 	  }
 	  
 	  return( total );
@@ -546,7 +581,7 @@ public class MultiPeerUploader implements RateControlledEntity {
   {
 	  StringBuffer	str = new StringBuffer(); 
 		  
-	  str.append( "MPU (" + waiting_connections.size() + "/" + ready_connections.size() + "): " );
+	  str.append( "MPU (" + waiting_connections.size() + "/" + ready_count.get() + "): " );
 	  
 	  str.append( "can_process=" + canProcess(null) + ",bytes_allowed=" + rate_handler.getCurrentNumBytesAllowed() + ", waiting=" );
   
@@ -0,0 +1,270 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package controller.networkmanager;
+
+import java.nio.ByteBuffer;
+
+import torrentlib.DirectByteBuffer;
+import torrentlib.DirectByteBufferPool;
+
+import connect.peermanager.messaging.bittorrent.BTMessageEncoder;
+import connect.peermanager.messaging.bittorrent.BTPiece;
+
+/**
+ * Drives a MultiPeerUploader serving piece data to many peers and reports transport write calls
+ * (i.e. socket write syscalls) per MB uploaded, for single-packet and batched turns. Each peer
+ * keeps a few 16K blocks queued and its socket accepts up to SOCKET_SPACE bytes per write.
+ * <p>
+ * Usage: MultiPeerUploaderBenchmark [peers] [MB]
+ */
+
+public class 
+MultiPeerUploaderBenchmark 
+{
+	private static final int	BLOCK_SIZE		= 16*1024;
+	private static final int	QUEUED_BLOCKS	= 4;
+	private static final int	SOCKET_SPACE	= 64*1024;
+	
+	public static void
+	main(
+		String[]	args )
+	
+		throws Exception
+	{
+		int	peers	= args.length>0?Integer.parseInt( args[0] ):200;
+		int	mb		= args.length>1?Integer.parseInt( args[1] ):2048;
+		
+			// allowance per pass: rate limited (~100MB/s in 5ms ticks) and effectively unlimited
+		
+		for ( int pass: new int[]{ 512*1024, 16*1024*1024 }){
+			
+			for ( boolean batch: new boolean[]{ false, true, false, true }){
+			
+				run( batch, peers, pass, ((long)mb)*1024*1024 );
+			}
+		}
+	}
+	
+	private static void
+	run(
+		boolean		batch,
+		int			num_peers,
+		final int	bytes_per_pass,
+		long		target )
+	{
+		MultiPeerUploader	uploader = 
+			new MultiPeerUploader(
+				new RateHandler()
+				{
+					public int 
+					getCurrentNumBytesAllowed()
+					{
+						return( bytes_per_pass );
+					}
+					
+					public void 
+					bytesProcessed(
+						int num_bytes_processed )
+					{
+					}
+				},
+				batch );
+		
+		benchConnection[]	connections = new benchConnection[num_peers];
+		
+		for (int i=0;i<num_peers;i++){
+			
+			connections[i] = new benchConnection();
+			
+			topUp( connections[i] );
+			
+			uploader.addPeerConnection( connections[i] );
+		}
+		
+		long	start	= System.nanoTime();
+		long	sent	= 0;
+		
+		while( sent < target ){
+			
+			for ( benchConnection c: connections ){
+				
+				c.transport.drained();
+				
+				topUp( c );
+			}
+			
+			sent += uploader.doProcessing( null, 0 );
+		}
+		
+		long	elapsed = System.nanoTime() - start;
+		
+		long	writes = 0;
+		
+		for ( benchConnection c: connections ){
+			
+			writes += c.transport.writes;
+			
+			uploader.removePeerConnection( c );
+			
+			c.queue.destroy();
+		}
+		
+		uploader.destroy();
+		
+		double	sent_mb = sent/(1024.0*1024.0);
+		
+		System.out.println( 
+			( batch?"batched":"single " ) + 
+			": pass=" + bytes_per_pass/1024 + "K" +
+			", MB=" + (long)sent_mb + 
+			", writes=" + writes + 
+			", writes/MB=" + String.format( "%.1f", writes/sent_mb ) +
+			", MB/sec=" + String.format( "%.0f", sent_mb*1000000000L/Math.max( 1, elapsed )));
+	}
+	
+	private static void
+	topUp(
+		benchConnection		c )
+	{
+		while( c.queue.getTotalSize() < QUEUED_BLOCKS*BLOCK_SIZE ){
+			
+			DirectByteBuffer	data = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_EXTERNAL, BLOCK_SIZE );
+			
+			c.queue.addMessage( new BTPiece( c.next_piece++, 0, data, (byte)1 ), false );
+		}
+	}
+	
+	private static class
+	benchConnection
+		implements NetworkConnectionBase
+	{
+		private final OutgoingMessageQueue	queue		= new OutgoingMessageQueueImpl( new BTMessageEncoder());
+		private final sinkTransport			transport	= new sinkTransport();
+		
+		private int		next_piece;
+		
+		private
+		benchConnection()
+		{
+			queue.setTransport( transport );
+		}
+		
+		public ConnectionEndpoint getEndpoint(){ return( null ); }
+		
+		public void notifyOfException( Throwable error ){ error.printStackTrace(); }
+		
+		public OutgoingMessageQueue getOutgoingMessageQueue(){ return( queue ); }
+		
+		public IncomingMessageQueue getIncomingMessageQueue(){ return( null ); }
+		
+		public TransportBase getTransportBase(){ return( transport ); }
+		
+		public int getMssSize(){ return( transport.getMssSize()); }
+		
+		public boolean isIncoming(){ return( false ); }
+		
+		public boolean isLANLocal(){ return( false ); }
+		
+		public void setUploadLimit( int limit ){}
+		
+		public int getUploadLimit(){ return( 0 ); }
+		
+		public void setDownloadLimit( int limit ){}
+		
+		public int getDownloadLimit(){ return( 0 ); }
+		
+		public LimitedRateGroup[] getRateLimiters( boolean upload ){ return( new LimitedRateGroup[0] ); }
+		
+		public void addRateLimiter( LimitedRateGroup limiter, boolean upload ){}
+		
+		public void removeRateLimiter( LimitedRateGroup limiter, boolean upload ){}
+		
+		public String getString(){ return( "benchmark" ); }
+	}
+	
+		/**
+		 * Counts write calls, each one consuming up to the remaining socket space. Like a real
+		 * socket it stops being write-ready once full, until drained() is called.
+		 */
+	
+	private static class
+	sinkTransport
+		extends Transport
+	{
+		private int		space;
+		private long	writes;
+		
+		private
+		sinkTransport()
+		{
+			readyForWrite( true );
+		}
+		
+		private void
+		drained()
+		{
+			space = SOCKET_SPACE;
+			
+			readyForWrite( true );
+		}
+		
+		public long
+		write(
+			ByteBuffer[] 	buffers,
+			int 			array_offset,
+			int 			length )
+		{
+			writes++;
+			
+			long	total = 0;
+			
+			for (int i=array_offset;i<array_offset+length && space > 0;i++){
+				
+				ByteBuffer	bb = buffers[i];
+				
+				int	chunk = Math.min( bb.remaining(), space );
+				
+				bb.position( bb.position() + chunk );
+				
+				space	-= chunk;
+				total	+= chunk;
+			}
+			
+			if ( space == 0 ){
+				
+				readyForWrite( false );
+			}
+			
+			return( total );
+		}
+		
+		public int getMssSize(){ return( 1460 ); }
+		
+		public String getDescription(){ return( "benchmark" ); }
+		
+		public boolean isTCP(){ return( true ); }
+		
+		public TransportEndpoint getTransportEndpoint(){ return( null ); }
+		
+		public void setTransportMode( int mode ){}
+		
+		public int getTransportMode(){ return( TRANSPORT_MODE_NORMAL ); }
+		
+		public void close( String reason ){}
+	}
+}
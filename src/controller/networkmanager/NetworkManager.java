@@ -23,7 +23,9 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import controller.config.COConfigurationManager;
 import controller.config.ParameterListener;
@@ -137,8 +139,19 @@ public class NetworkManager {
   private final List<WriteController> 	write_controllers;
   private final List<ReadController> 	read_controllers;
   
+  	// sharded mode: every controller (including the first) takes a share of the per-connection
+  	// entities, assigned to the least loaded shard, rather than the partition-id mapping below
+  	// which puts everything from a single peer-control partition onto the same controller
+  
+  private final int								controller_shards;
+  private final Map<RateControlledEntity,WriteController>	write_shards 	= new ConcurrentHashMap<RateControlledEntity,WriteController>();
+  private final Map<RateControlledEntity,ReadController>		read_shards 	= new ConcurrentHashMap<RateControlledEntity,ReadController>();
+  private int									next_shard;
+  
   {
-	 int	num_read = COConfigurationManager.getIntParameter( "network.control.read.processor.count" );
+	 controller_shards = getControllerShardCount();
+	 
+	 int	num_read = controller_shards > 0?controller_shards:COConfigurationManager.getIntParameter( "network.control.read.processor.count" );
 	 
 	 read_controllers = new ArrayList<ReadController>(num_read);
 	 
@@ -147,7 +160,7 @@ public class NetworkManager {
 		 read_controllers.add( new ReadController());
 	 }
 	 
-	 int	num_write = COConfigurationManager.getIntParameter( "network.control.write.processor.count" );
+	 int	num_write = controller_shards > 0?controller_shards:COConfigurationManager.getIntParameter( "network.control.write.processor.count" );
 	 
 	 write_controllers = new ArrayList<WriteController>(num_write);
 	 
@@ -440,7 +453,24 @@ public class NetworkManager {
    * @param entity to add
    */
   public void addWriteEntity( RateControlledEntity entity, int partition_id ) {
-	  if ( write_controllers.size() == 1 || partition_id < 0 ){
+	  if ( controller_shards > 1 ){
+		  
+		  WriteController controller;
+		  
+		  if ( partition_id < 0 ){
+			  
+			  controller = write_controllers.get(0);
+			  
+		  }else{
+			  
+			  controller = write_controllers.get( selectShard( write_controllers.size(), true ));
+		  }
+		  
+		  write_shards.put( entity, controller );
+		  
+		  controller.addWriteEntity( entity );
+		  
+	  }else if ( write_controllers.size() == 1 || partition_id < 0 ){
 		  
 		  write_controllers.get(0).addWriteEntity(entity);
 		  
@@ -458,7 +488,11 @@ public class NetworkManager {
    * @param entity to remove
    */
   public void removeWriteEntity( RateControlledEntity entity ) {
-	  if ( write_controllers.size() == 1 ){
+	  WriteController shard = controller_shards > 1?write_shards.remove( entity ):null;
+	  
+	  if ( shard != null ){
+		  shard.removeWriteEntity( entity );
+	  }else if ( write_controllers.size() == 1 ){
 		  write_controllers.get(0).removeWriteEntity( entity );
 	  }else{
 		  for (WriteController write_controller: write_controllers ){
@@ -473,7 +507,24 @@ public class NetworkManager {
    * @param entity to add
    */
   public void addReadEntity( RateControlledEntity entity, int partition_id ) {
-	  if ( read_controllers.size() == 1 || partition_id < 0 ){
+	  if ( controller_shards > 1 ){
+		  
+		  ReadController controller;
+		  
+		  if ( partition_id < 0 ){
+			  
+			  controller = read_controllers.get(0);
+			  
+		  }else{
+			  
+			  controller = read_controllers.get( selectShard( read_controllers.size(), false ));
+		  }
+		  
+		  read_shards.put( entity, controller );
+		  
+		  controller.addReadEntity( entity );
+		  
+	  }else if ( read_controllers.size() == 1 || partition_id < 0 ){
 		  
 		  read_controllers.get(0).addReadEntity(entity);
 		  
@@ -491,7 +542,11 @@ public class NetworkManager {
    * @param entity to remove
    */
   public void removeReadEntity( RateControlledEntity entity ) {
-	  if ( read_controllers.size() == 1 ){
+	  ReadController shard = controller_shards > 1?read_shards.remove( entity ):null;
+	  
+	  if ( shard != null ){
+		  shard.removeReadEntity( entity );
+	  }else if ( read_controllers.size() == 1 ){
 		  read_controllers.get(0).removeReadEntity( entity );
 	  }else{
 		  for (ReadController read_controller: read_controllers ){
@@ -500,6 +555,59 @@ public class NetworkManager {
 	  }
   }  
   
+  /**
+   * Pick the least loaded shard for a new per-connection entity. Ties are broken by
+   * rotating the start index so that a burst of upgrades spreads out evenly.
+   */
+  private int
+  selectShard(
+	int			num_shards,
+	boolean		write )
+  {
+	  int	start 	= ( next_shard++ & 0x7fffffff ) % num_shards;
+	  int	best	= start;
+	  int	best_count	= Integer.MAX_VALUE;
+	  
+	  for (int i=0;i<num_shards;i++){
+		  
+		  int	index = ( start + i ) % num_shards;
+		  
+		  int	count = write?write_controllers.get(index).getEntityCount():read_controllers.get(index).getEntityCount();
+		  
+		  	// the first shard also runs the global entities so bias against it slightly
+		  
+		  if ( index == 0 ){
+			  
+			  count++;
+		  }
+		  
+		  if ( count < best_count ){
+			  
+			  best		= index;
+			  best_count	= count;
+		  }
+	  }
+	  
+	  return( best );
+  }
+  
+  /**
+   * Number of controller shards configured, 0 if sharded mode is disabled.
+   * @return shard count
+   */
+  public static int
+  getControllerShardCount()
+  {
+	  int	shards = COConfigurationManager.getIntParameter( "network.control.shard.count" );
+	  
+	  if ( shards < 0 ){
+		  
+		  shards = Math.min( 8, Runtime.getRuntime().availableProcessors());
+	  }
+	  
+	  return( shards );
+  }
+  
   public Set<NetworkConnectionBase>
   getConnections()
   {
@@ -24,6 +24,7 @@ import torrentlib.AEMonitor;
 import torrentlib.TimeFormatter;
 import torrentlib.Debug;
 import torrentlib.DirectByteBuffer;
+import torrentlib.DirectByteBufferFileRegion;
 import connect.peer.messaging.Message;
 import connect.peer.messaging.MessageStreamEncoder;
 import java.io.IOException;
@@ -451,6 +452,53 @@ OutgoingMessageQueueImpl
   }
   
   
+  /**
+   * Write the buffers preceding the file region (i.e. message headers) and, if they went out
+   * completely, the region via transferTo. The region buffer's position is advanced by the
+   * bytes transferred so the caller's accounting is the same as for a normal write.
+   */
+  private void 
+  deliverTransfer( 
+	ByteBuffer[] 				raw_buffers, 
+	int 						buffer_count, 
+	DirectByteBufferFileRegion 	region ) 
+  
+  	throws IOException 
+  {
+	  int	region_index = buffer_count - 1;
+	  
+	  if ( region_index > 0 ){
+		  
+		  transport.write( raw_buffers, 0, region_index );
+		  
+		  if ( raw_buffers[region_index-1].hasRemaining()){
+			  
+			  return;
+		  }
+	  }
+	  
+	  ByteBuffer	bb = raw_buffers[region_index];
+	  	  
+	  try{
+		  long written = transport.transfer( region.getFileChannel(), region.getFileOffset( DirectByteBuffer.SS_NET ), bb.remaining());
+	  
+		  if ( written > 0 ){
+		  
+			  bb.position( bb.position() + (int)written );
+		  }
+	  }catch( IOException e ){
+		  
+		  if ( region.isTransferable()){
+			  
+			  throw( e );
+		  }
+		  
+		  	// file closed while the message was queued, the buffer's contents are still valid
+		  
+		  transport.write( raw_buffers, region_index, 1 );
+	  }
+  }
+  
   private WeakReference rawBufferCache = new WeakReference(null);
   private WeakReference origPositionsCache = new WeakReference(null);
   
@@ -516,6 +564,10 @@ OutgoingMessageQueueImpl
 			  
 			  int total_sofar = 0;
 
+			  boolean	transfer_supported = transport.isTransferSupported();
+			  
+			  DirectByteBufferFileRegion	transfer_region = null;
+			  
 outer:
 			  for( Iterator i = queue.iterator(); i.hasNext(); ){
 				  
@@ -533,6 +585,19 @@ outer:
 
 					  buffer_count++;
 					  
+					  if ( 	transfer_supported &&
+							payloads[x] instanceof DirectByteBufferFileRegion &&
+							buff.hasRemaining() &&
+							((DirectByteBufferFileRegion)payloads[x]).isTransferable()){
+						  
+							// file backed piece data, send what precedes it and then the
+							// data itself straight from the file
+						  
+						  transfer_region = (DirectByteBufferFileRegion)payloads[x];
+						  
+						  break outer;
+					  }
+					  
 					  if ( total_sofar >= max_bytes ){
 						
 						  break outer;
@@ -565,7 +630,14 @@ outer:
 				  last_buff.limit( orig_last_limit - (total_sofar - max_bytes) );
 			  }
 
-			  transport.write( raw_buffers, 0, buffer_count );
+			  if ( transfer_region == null ){
+				  
+				  transport.write( raw_buffers, 0, buffer_count );
+				  
+			  }else{
+				  
+				  deliverTransfer( raw_buffers, buffer_count, transfer_region );
+			  }
 
 			  last_buff.limit( orig_last_limit );
 
@@ -35,6 +35,7 @@ import javax.crypto.KeyAgreement;
 import javax.crypto.interfaces.DHPublicKey;
 import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.DHPublicKeySpec;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import controller.config.COConfigurationManager;
@@ -95,14 +96,17 @@ ProtocolDecoderPHE
 	
 	private static boolean	crypto_setup_done;
 	private static boolean	crypto_ok;
-	//private static boolean	aes_ok;
 	
-	/*
+		// AES-CTR is offered via the CRYPTO_AES bit of crypto_provide once the handshake itself has been done 
+		// with RC4 as usual. Standard MSE peers don't know the bit and ignore it so they stick with RC4, two 
+		// of us select AES which the JVM runs on the CPU's AES instructions
+	
 	private static final String		AES_STREAM_ALG				= "AES";
-	private static final String		AES_STREAM_CIPHER			= "AES/CFB8/NoPadding";
+	private static final String		AES_STREAM_CIPHER			= "AES/CTR/NoPadding";
 	private static final int		AES_STREAM_KEY_SIZE			= 128;
 	private static final int		AES_STREAM_KEY_SIZE_BYTES	= AES_STREAM_KEY_SIZE/8;
-   	*/
+	
+	private static final boolean	aes_ok	= aesSetup();
 	
 	//private static final byte[]		AES_STREAM_IV				= 
     //	{ 	(byte)0x15, (byte)0xE0, (byte)0x6B, (byte)0x7E, (byte)0x98, (byte)0x59, (byte)0xE4, (byte)0xA7, 
@@ -160,26 +164,6 @@ ProtocolDecoderPHE
 			         
 			    rc4_cipher = new TransportCipher( RC4_STREAM_CIPHER, Cipher.DECRYPT_MODE, rc4_test_secret_key_spec );
 		        
-			    /*
-				try{
-					byte[]	aes_test_secret = new byte[AES_STREAM_KEY_SIZE_BYTES];
-		        	 
-					SecretKeySpec	aes_test_secret_key_spec = new SecretKeySpec(aes_test_secret, 0, AES_STREAM_KEY_SIZE_BYTES, AES_STREAM_ALG );
-			        	        
-					AlgorithmParameterSpec	spec = 	new IvParameterSpec( aes_test_secret );
-			        
-			        TCPTransportCipher aes_cipher = new TCPTransportCipher( AES_STREAM_CIPHER, Cipher.ENCRYPT_MODE, aes_test_secret_key_spec, spec );
-			        
-			        aes_cipher = new TCPTransportCipher( AES_STREAM_CIPHER, Cipher.DECRYPT_MODE, aes_test_secret_key_spec, spec );
-			        
-			        aes_ok	= true;
-			        
-				}catch( Throwable e ){
-					
-					Logger.log(	new LogEvent(LOGID, "AES Unavailable", e ));
-				}
-		        */
-			    
 		        crypto_ok	= true;
 		        
 		     	if (Logger.isEnabled()){
@@ -211,6 +195,35 @@ ProtocolDecoderPHE
 		return( cryptoSetup());
 	}
 	
+	private static boolean
+	aesSetup()
+	{
+		if ( !COConfigurationManager.getBooleanParameter( "network.transport.encrypted.aes" )){
+			
+			return( false );
+		}
+		
+		try{
+			byte[]	aes_test_secret = new byte[AES_STREAM_KEY_SIZE_BYTES];
+       	 
+			SecretKeySpec	aes_test_secret_key_spec = new SecretKeySpec(aes_test_secret, 0, AES_STREAM_KEY_SIZE_BYTES, AES_STREAM_ALG );
+	        	        
+			IvParameterSpec	spec = 	new IvParameterSpec( aes_test_secret );
+	        
+	        new TransportCipher( AES_STREAM_CIPHER, Cipher.ENCRYPT_MODE, aes_test_secret_key_spec, spec );
+	        
+	        new TransportCipher( AES_STREAM_CIPHER, Cipher.DECRYPT_MODE, aes_test_secret_key_spec, spec );
+	        
+	        return( true );
+	        
+		}catch( Throwable e ){
+			
+			Logger.log(	new LogEvent(LOGID, "AES Unavailable", e ));
+			
+			return( false );
+		}
+	}
+	
 	public static void
 	addSecretsSupport(
 		byte[][]		secrets )
@@ -251,8 +264,7 @@ ProtocolDecoderPHE
 		}
 	}
 	
-	// private static final byte SUPPORTED_PROTOCOLS = (byte)((aes_ok?CRYPTO_AES:0) | CRYPTO_RC4 | CRYPTO_XOR | CRYPTO_PLAIN );
-	private static final byte SUPPORTED_PROTOCOLS = (byte)(CRYPTO_RC4 | CRYPTO_PLAIN );
+	private static final byte SUPPORTED_PROTOCOLS = (byte)((aes_ok?CRYPTO_AES:0) | CRYPTO_RC4 | CRYPTO_PLAIN );
 
 	
 	private static byte 	MIN_CRYPTO;
@@ -307,6 +319,8 @@ ProtocolDecoderPHE
 
 	public static final byte[]	KEYA_IV	= "keyA".getBytes();
 	public static final byte[]	KEYB_IV	= "keyB".getBytes();
+	public static final byte[]	AESA_IV	= "aesA".getBytes();
+	public static final byte[]	AESB_IV	= "aesB".getBytes();
 	public static final byte[]	REQ1_IV	= "req1".getBytes();
 	public static final byte[]	REQ2_IV	= "req2".getBytes();
 	public static final byte[]	REQ3_IV	= "req3".getBytes();
@@ -651,20 +665,40 @@ ProtocolDecoderPHE
 						read_cipher,
 						write_cipher );
 
-			/*
 		}else if ( selected_protocol == CRYPTO_AES ){
 			
+				// fresh keys per direction, "HASH('aesA', S, SKEY)" and "HASH('aesB', S, SKEY)". As they're 
+				// unique to this connection the counter can start at zero
+			
 			try{
-		        SecretKeySpec	secret_key_spec = new SecretKeySpec( secret_bytes, 32, AES_STREAM_KEY_SIZE_BYTES, AES_STREAM_ALG );
+			    SHA1Hasher	hasher = new SHA1Hasher();
+			    
+			    hasher.update( AESA_IV );
+			    hasher.update( secret_bytes );
+			    hasher.update( shared_secret );
+			    	
+			    byte[]	a_key = hasher.getDigest();
+			    
+			    hasher = new SHA1Hasher();
+			    
+			    hasher.update( AESB_IV );
+			    hasher.update( secret_bytes );
+			    hasher.update( shared_secret );
+			    	
+			    byte[]	b_key = hasher.getDigest();
+
+		        SecretKeySpec	secret_key_spec_a = new SecretKeySpec( a_key, 0, AES_STREAM_KEY_SIZE_BYTES, AES_STREAM_ALG );
+		        
+		        SecretKeySpec	secret_key_spec_b = new SecretKeySpec( b_key, 0, AES_STREAM_KEY_SIZE_BYTES, AES_STREAM_ALG );
 			        		        
-		        AlgorithmParameterSpec	spec = 	new IvParameterSpec( secret_bytes, 48, AES_STREAM_KEY_SIZE_BYTES );
+		        IvParameterSpec	spec = 	new IvParameterSpec( new byte[AES_STREAM_KEY_SIZE_BYTES] );
 		        
-		        write_cipher 	= new TCPTransportCipher( AES_STREAM_CIPHER, Cipher.ENCRYPT_MODE, secret_key_spec, spec );
+		        write_cipher 	= new TransportCipher( AES_STREAM_CIPHER, Cipher.ENCRYPT_MODE, outbound?secret_key_spec_a:secret_key_spec_b, spec );
 				    
-		        read_cipher 	= new TCPTransportCipher( AES_STREAM_CIPHER, Cipher.DECRYPT_MODE, secret_key_spec, spec );
+		        read_cipher 	= new TransportCipher( AES_STREAM_CIPHER, Cipher.DECRYPT_MODE, outbound?secret_key_spec_b:secret_key_spec_a, spec );
 		        
-				filter = new TCPTransportHelperFilterStreamCipher( 
-						helper,
+				filter = new TransportHelperFilterStreamCipher( 
+						transport,
 						read_cipher,
 						write_cipher );
 				
@@ -672,9 +706,6 @@ ProtocolDecoderPHE
 				
 				throw( new IOException( "AES crypto init failed: " + Debug.getNestedExceptionMessage(e)));
 			}
-		*/
-		
-		
 		}else{
 			
 			throw( new IOException( "Invalid selected protocol '" + selected_protocol + "'" ));
@@ -1045,14 +1076,14 @@ ProtocolDecoderPHE
 								
 								selected_protocol = CRYPTO_XOR;
 								
-							}else if (( common_protocols & CRYPTO_RC4 )!= 0 ){
-								
-								selected_protocol = CRYPTO_RC4;
-								
 							}else if (( common_protocols & CRYPTO_AES )!= 0 ){
 								
 								selected_protocol = CRYPTO_AES;
 								
+							}else if (( common_protocols & CRYPTO_RC4 )!= 0 ){
+								
+								selected_protocol = CRYPTO_RC4;
+								
 							}else{
 								
 								throw( new IOException( 
@@ -1611,14 +1642,14 @@ ProtocolDecoderPHE
 								
 								selected_protocol = CRYPTO_XOR;
 								
-							}else if (( common_protocols & CRYPTO_RC4 )!= 0 ){
-								
-								selected_protocol = CRYPTO_RC4;
-								
 							}else if (( common_protocols & CRYPTO_AES )!= 0 ){
 								
 								selected_protocol = CRYPTO_AES;
 								
+							}else if (( common_protocols & CRYPTO_RC4 )!= 0 ){
+								
+								selected_protocol = CRYPTO_RC4;
+								
 							}else{
 								
 								throw( new IOException( 
@@ -21,6 +21,7 @@ package controller.networkmanager;
 
 import java.util.*;
 
+import controller.config.COConfigurationManager;
 import torrentlib.AEMonitor;
 import torrentlib.Debug;
 
@@ -60,6 +61,7 @@ public class TransferProcessor {
   private final AEMonitor connections_mon;
 
   private final boolean	multi_threaded;
+  private final boolean	lock_free;
   
   /**
    * Create new transfer processor for the given read/write type, limited to the given max rate.
@@ -69,6 +71,7 @@ public class TransferProcessor {
   public TransferProcessor( int processor_type, LimitedRateGroup max_rate_limit, boolean multi_threaded ) {
     this.max_rate 		= max_rate_limit;
     this.multi_threaded	= multi_threaded;
+    this.lock_free		= COConfigurationManager.getBooleanParameter( "network.control.ratelimit.lockfree" );
     
     connections_mon = new AEMonitor( "TransferProcessor:" +processor_type );
 
@@ -547,7 +550,11 @@ public class TransferProcessor {
   createBucket(
 	int	bytes_per_sec )
   {
-	  if ( multi_threaded ){
+	  if ( lock_free ){
+		  
+		  return( new ByteBucketCAS( bytes_per_sec ));
+		  
+	  }else if ( multi_threaded ){
 		  
 		  return( new ByteBucketMT( bytes_per_sec ));
 		  
@@ -21,6 +21,7 @@ package controller.networkmanager;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import torrentlib.AEDiagnostics;
 import torrentlib.Debug;
@@ -304,6 +305,63 @@ Transport implements TransportBase
 	  	return written;
 	}
 
+	  /**
+	   * Is the transport able to send file data directly, i.e. via FileChannel.transferTo,
+	   * without the bytes passing through user space.
+	   * @return true if transfer() can currently be used
+	   */
+
+	public boolean
+	isTransferSupported()
+	{
+		return( false );
+	}
+
+	  /**
+	   * Write data to the transport directly from the given file region.
+	   * NOTE: Works like FileChannel.transferTo, the file's position is not changed.
+	   * @param channel from which bytes are to be retrieved
+	   * @param position within the file of the first byte to be sent
+	   * @param count maximum number of bytes to be sent
+	   * @return number of bytes written
+	   * @throws IOException on write error
+	   */
+
+	public long
+	transfer(
+		FileChannel	channel,
+		long		position,
+		long		count )
+
+		throws IOException
+	{
+	  	if ( write_select_failure != null ){
+
+	  		throw new IOException( "write_select_failure: " + write_select_failure.getMessage() );
+	  	}
+
+	  	if ( filter == null )  return 0;
+
+	  	long written = transferSupport( channel, position, count );
+
+	  	if ( stats != null )  stats.bytesWritten( (int)written );
+
+	  	if ( written < 1 )  requestWriteSelect();
+
+	  	return written;
+	}
+
+	protected long
+	transferSupport(
+		FileChannel	channel,
+		long		position,
+		long		count )
+
+		throws IOException
+	{
+		throw( new IOException( "transfer not supported" ));
+	}
+
 	  /**
 	   * Read data from the transport into the given buffers.
 	   * NOTE: Works like ScatteringByteChannel.
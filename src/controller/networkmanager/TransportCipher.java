@@ -144,8 +144,15 @@ TransportCipher
 		throws IOException
 	{
 		try{
-			// TODO: 1.5 supports update( ByteBuffer, ByteBuffer )
-
+			if ( cipher != null ){
+				
+					// no intermediate arrays, JCE works on the buffers directly (heap or direct)
+				
+				cipher.update( source_buffer, target_buffer );
+				
+				return;
+			}
+			
 			byte[]	source_bytes;
 			int		offset;
 			int		length	= source_buffer.remaining();
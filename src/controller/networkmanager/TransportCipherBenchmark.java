@@ -0,0 +1,98 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package controller.networkmanager;
+
+import java.nio.ByteBuffer;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Single threaded (i.e. per core) encrypt throughput of the transport ciphers as used by
+ * TransportHelperFilterStreamCipher: the internal RC4Engine, JCE RC4 and JCE AES-CTR, over 
+ * 16K heap and direct buffers.
+ * <p>
+ * Usage: TransportCipherBenchmark [MB]
+ */
+
+public class 
+TransportCipherBenchmark 
+{
+	private static final int	BUFFER_SIZE	= 16*1024;
+	
+	public static void
+	main(
+		String[]	args )
+	
+		throws Exception
+	{
+		int	mb	= args.length>0?Integer.parseInt( args[0] ):1024;
+		
+		byte[]	key = new byte[20];
+		
+		for (int i=0;i<key.length;i++){
+			
+			key[i] = (byte)i;
+		}
+		
+		for ( int pass=0;pass<2;pass++){
+			
+			for ( boolean direct: new boolean[]{ false, true }){
+				
+				run( "RC4Engine", new TransportCipher( "RC4", Cipher.ENCRYPT_MODE, new SecretKeySpec( key, "RC4" )), direct, mb );
+				
+				run( "JCE RC4  ", new TransportCipher( "RC4", Cipher.ENCRYPT_MODE, new SecretKeySpec( key, "RC4" ), null ), direct, mb );
+				
+				run( "AES-CTR  ", new TransportCipher( "AES/CTR/NoPadding", Cipher.ENCRYPT_MODE, new SecretKeySpec( key, 0, 16, "AES" ), new IvParameterSpec( new byte[16] )), direct, mb );
+			}
+		}
+	}
+	
+	private static void
+	run(
+		String				name,
+		TransportCipher		cipher,
+		boolean				direct,
+		int					mb )
+	
+		throws Exception
+	{
+		ByteBuffer	source = direct?ByteBuffer.allocateDirect( BUFFER_SIZE ):ByteBuffer.allocate( BUFFER_SIZE );
+		ByteBuffer	target = direct?ByteBuffer.allocateDirect( BUFFER_SIZE ):ByteBuffer.allocate( BUFFER_SIZE );
+		
+		long	iterations = ((long)mb)*1024*1024/BUFFER_SIZE;
+		
+		long	start = System.nanoTime();
+		
+		for (long i=0;i<iterations;i++){
+			
+			source.clear();
+			target.clear();
+			
+			cipher.update( source, target );
+		}
+		
+		long	elapsed = System.nanoTime() - start;
+		
+		System.out.println( 
+			name + " " + ( direct?"direct":"heap  " ) + 
+			": " + String.format( "%.0f", (iterations*BUFFER_SIZE/(1024.0*1024.0))*1000000000L/Math.max( 1, elapsed )) + " MB/sec" +
+			" [" + target.get( 0 ) + "]" );
+	}
+}
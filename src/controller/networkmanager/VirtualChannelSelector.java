@@ -31,6 +31,7 @@ import torrentlib.AEMonitor;
 import torrentlib.Debug;
 
 
+import controller.networkmanager.tcp.VirtualChannelSelectorEdgeImpl;
 import controller.networkmanager.tcp.VirtualChannelSelectorImpl;
 
 
@@ -79,7 +80,12 @@ public class VirtualChannelSelector {
       initSafeMode();
     }
     else {
-      selector_impl = new VirtualChannelSelectorImpl( this, op, pause, randomise_keys );
+      if( COConfigurationManager.getBooleanParameter( "network.tcp.selector.edge" ) ) {
+        selector_impl = new VirtualChannelSelectorEdgeImpl( this, op, pause, randomise_keys );
+      }
+      else {
+        selector_impl = new VirtualChannelSelectorImpl( this, op, pause, randomise_keys );
+      }
       selectors = null;
       selectors_keyset_cow	= null;
       selectors_mon = null;
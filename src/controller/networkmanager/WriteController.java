@@ -460,6 +460,8 @@ public class WriteController implements AzureusCoreStatsProvider{
 
 	  final int boosted_size = boosted_ref.size();
 	
+	  boolean	frozen = false;
+	  
 	  try{
 		  if ( boosted_size > 0 ){
 			  			  
@@ -577,6 +579,8 @@ public class WriteController implements AzureusCoreStatsProvider{
 			  	// more from being allocated while doing so to prevent them from grabbing more than they should
 			  
 			  net_man.getUploadProcessor().setRateLimiterFreezeState( true );
+			  
+			  frozen = true;
 
 		  }else{
 			  
@@ -610,7 +614,9 @@ public class WriteController implements AzureusCoreStatsProvider{
 		  
 	  }finally{
 		  
-		  if ( boosted_size > 0 ){
+		  	// freezes nest across controller shards so only release one we actually took
+		  
+		  if ( frozen ){
 			  
 			  net_man.getUploadProcessor().setRateLimiterFreezeState( false );
 		  }
@@ -0,0 +1,447 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package controller.networkmanager.tcp;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import controller.config.COConfigurationManager;
+import torrentlib.AEDiagnostics;
+import torrentlib.AEDiagnosticsEvidenceGenerator;
+import torrentlib.AEMonitor;
+import torrentlib.IndentWriter;
+import torrentlib.SystemTime;
+
+/**
+ * Book-keeping for the adaptive outbound connect mode of TCPConnectionManager. Sizes the number of
+ * in-flight connect attempts from the observed success rate and connect latency (grow while there
+ * is a backlog and latency holds, back off when latency inflates or the success rate collapses),
+ * remembers recently dead addresses so queued requests for them can be failed without burning an
+ * attempt slot, and keeps connect-latency and time-to-first-byte histograms.
+ */
+
+class 
+TCPConnectScheduler 
+{
+	private static final int	UPDATE_PERIOD		= 1000;
+	private static final int	MIN_SAMPLES			= 8;
+	
+	private static final int	FAILURE_CACHE_MAX	= 4096;
+	private static final int	FAILURE_TTL_BASE	= 30*1000;
+	private static final int	FAILURE_TTL_MAX		= 10*60*1000;
+	
+	private static final int	TTFB_EXPIRY			= 60*1000;
+	
+	private final int		max_target;
+	
+	private volatile int	target;
+	
+	private long	last_update	= SystemTime.getMonotonousTime();
+	
+	private int		interval_ok;
+	private int		interval_failed;
+	private int		success_ewma	= -1;		// percent
+	
+	private long	rtt_short;					// ms, gain 1/8
+	private long	rtt_base;					// ms, gain 1/64
+	
+	private long	total_ok;
+	private long	total_failed;
+	private long	total_fast_failed;
+	
+	private final Map<InetSocketAddress,failure>	failures =
+		new LinkedHashMap<InetSocketAddress,failure>( FAILURE_CACHE_MAX, 0.75f, false )
+		{
+			protected boolean 
+			removeEldestEntry(
+				Map.Entry<InetSocketAddress,failure> eldest ) 
+			{
+				return( size() > FAILURE_CACHE_MAX );
+			}
+		};
+		
+	private final Map<SocketChannel,Long>	awaiting_first_byte = new ConcurrentHashMap<SocketChannel,Long>();
+	
+	private final latencyHistogram	connect_latency	= new latencyHistogram();
+	private final latencyHistogram	ttfb			= new latencyHistogram();
+	
+	private final AEMonitor	this_mon	= new AEMonitor( "TCPConnectScheduler" );
+	
+	protected
+	TCPConnectScheduler(
+		int		initial_target )
+	{
+		max_target	= Math.max( initial_target, COConfigurationManager.getIntParameter( "network.tcp.connect.adaptive.max" ));
+		
+		target		= initial_target;
+		
+		AEDiagnostics.addEvidenceGenerator(
+			new AEDiagnosticsEvidenceGenerator()
+			{
+				public void
+				generate(
+					IndentWriter		writer )
+				{
+					generateEvidence( writer );
+				}
+			});
+	}
+	
+	protected int
+	getTarget(
+		int		min_target )
+	{
+		return( Math.max( min_target, target ));
+	}
+	
+		/**
+		 * Called periodically by the connect thread
+		 * @param min_target	current configured minimum attempt count
+		 * @param queued		number of requests waiting for an attempt slot
+		 * @param pending		number of attempts in progress
+		 */
+	
+	protected void
+	update(
+		int		min_target,
+		int		queued,
+		int		pending )
+	{
+		long	now = SystemTime.getMonotonousTime();
+		
+		if ( now - last_update < UPDATE_PERIOD ){
+			
+			return;
+		}
+		
+		last_update = now;
+		
+		try{
+			this_mon.enter();
+			
+			int	done = interval_ok + interval_failed;
+			
+			boolean	collapsing = false;
+			
+			if ( done >= MIN_SAMPLES ){
+				
+				int	rate = ( interval_ok * 100 ) / done;
+				
+				if ( success_ewma < 0 ){
+					
+					success_ewma = rate;
+					
+				}else{
+					
+					collapsing = rate * 2 < success_ewma;
+					
+					success_ewma = ( success_ewma * 7 + rate ) / 8;
+				}
+				
+				interval_ok		= 0;
+				interval_failed	= 0;
+			}
+			
+			boolean	congested = rtt_base > 0 && rtt_short > 2*rtt_base;
+			
+			int	t = Math.max( min_target, target );
+			
+			if ( congested || collapsing ){
+				
+				t = Math.max( min_target, ( t * 3 ) / 4 );
+				
+			}else if ( queued > 0 && pending >= t - 1 ){
+				
+					// only grow when the slots we have are actually in use
+				
+				t = Math.min( max_target, t + Math.max( 1, t/4 ));
+			}
+			
+			target = t;
+			
+		}finally{
+			
+			this_mon.exit();
+		}
+		
+		if ( awaiting_first_byte.size() > 0 ){
+			
+			Iterator<Long>	it = awaiting_first_byte.values().iterator();
+			
+			while( it.hasNext()){
+				
+				if ( now - it.next() > TTFB_EXPIRY ){
+					
+					it.remove();
+				}
+			}
+		}
+	}
+	
+		/**
+		 * @return true if the address failed recently enough that another attempt isn't worth a slot
+		 */
+	
+	protected boolean
+	isRecentlyFailed(
+		InetSocketAddress	address )
+	{
+		if ( address.isUnresolved()){
+			
+			return( false );
+		}
+		
+		try{
+			this_mon.enter();
+			
+			failure f = failures.get( address );
+			
+			if ( f == null ){
+				
+				return( false );
+			}
+			
+			long	ttl = Math.min( FAILURE_TTL_MAX, ((long)FAILURE_TTL_BASE) << Math.min( f.count - 1, 8 ));
+			
+			if ( SystemTime.getMonotonousTime() - f.last < ttl ){
+				
+				total_fast_failed++;
+				
+				return( true );
+			}
+			
+				// expired, let it through but keep the count so a repeat failure backs off further
+			
+			return( false );
+			
+		}finally{
+			
+			this_mon.exit();
+		}
+	}
+	
+	protected void
+	connectSucceeded(
+		InetSocketAddress	address,
+		SocketChannel		channel,
+		long				connect_time )
+	{
+		long	now = SystemTime.getMonotonousTime();
+		
+		try{
+			this_mon.enter();
+			
+			interval_ok++;
+			total_ok++;
+			
+			if ( rtt_base == 0 ){
+				
+				rtt_base 	= connect_time;
+				rtt_short	= connect_time;
+				
+			}else{
+				
+				rtt_short	= ( rtt_short * 7 + connect_time ) / 8;
+				rtt_base	= ( rtt_base * 63 + connect_time ) / 64;
+			}
+			
+			failures.remove( address );
+			
+		}finally{
+			
+			this_mon.exit();
+		}
+		
+		connect_latency.record( connect_time );
+		
+		awaiting_first_byte.put( channel, new Long( now ));
+	}
+	
+	protected void
+	connectFailed(
+		InetSocketAddress	address,
+		Throwable			cause )
+	{
+		try{
+			this_mon.enter();
+			
+			interval_failed++;
+			total_failed++;
+			
+				// only remember failures that say something about the remote end, local 
+				// problems (bind failures, unsupported address family...) shouldn't poison the cache
+			
+			if ( 	!address.isUnresolved() &&
+					( 	cause instanceof ConnectException || 
+						cause instanceof NoRouteToHostException || 
+						cause instanceof SocketTimeoutException )){
+				
+				failure f = failures.get( address );
+				
+				if ( f == null ){
+					
+					f = new failure();
+					
+					failures.put( address, f );
+				}
+				
+				f.count++;
+				f.last = SystemTime.getMonotonousTime();
+			}
+		}finally{
+			
+			this_mon.exit();
+		}
+	}
+	
+	protected void
+	firstByteReceived(
+		SocketChannel		channel )
+	{
+		Long	connected = awaiting_first_byte.remove( channel );
+		
+		if ( connected != null ){
+			
+			ttfb.record( SystemTime.getMonotonousTime() - connected.longValue());
+		}
+	}
+	
+	protected void
+	generateEvidence(
+		IndentWriter		writer )
+	{
+		writer.println( "TCP Connect Scheduler" );
+		
+		try{
+			writer.indent();
+			
+			try{
+				this_mon.enter();
+
+				writer.println( 
+					"target=" + target + "/" + max_target + 
+					", ok=" + total_ok + ", failed=" + total_failed + ", fast_failed=" + total_fast_failed + 
+					", success=" + success_ewma + "%, rtt=" + rtt_short + "/" + rtt_base + 
+					", failure_cache=" + failures.size() + ", awaiting_first_byte=" + awaiting_first_byte.size());
+				
+			}finally{
+				
+				this_mon.exit();
+			}
+			
+			writer.println( "connect: " + connect_latency.getString());
+			writer.println( "ttfb: " + ttfb.getString());
+			
+		}finally{
+			
+			writer.exdent();
+		}
+	}
+	
+	private static class
+	failure
+	{
+		private int		count;
+		private long	last;
+	}
+	
+		/**
+		 * log2 buckets, bucket i covers [2^(i-1),2^i) ms, last one is everything above
+		 */
+	
+	private static class
+	latencyHistogram
+	{
+		private static final int	BUCKETS	= 17;
+		
+		private final long[]	counts = new long[BUCKETS];
+		
+		private long	total;
+		private long	sum;
+		
+		private synchronized void
+		record(
+			long	millis )
+		{
+			if ( millis < 0 ){
+				
+				millis = 0;
+			}
+			
+			int	bucket = 64 - Long.numberOfLeadingZeros( millis );
+			
+			counts[ Math.min( bucket, BUCKETS-1 )]++;
+			
+			total++;
+			sum += millis;
+		}
+		
+		private synchronized long
+		getPercentile(
+			int		percent )
+		{
+			long	wanted = ( total * percent + 99 ) / 100;
+			
+			long	seen = 0;
+			
+			for ( int i=0;i<BUCKETS;i++){
+				
+				seen += counts[i];
+				
+				if ( seen >= wanted ){
+					
+					return( 1L << i );
+				}
+			}
+			
+			return( 1L << BUCKETS );
+		}
+		
+		private synchronized String
+		getString()
+		{
+			if ( total == 0 ){
+				
+				return( "no samples" );
+			}
+			
+			StringBuilder	sb = new StringBuilder( 256 );
+			
+			sb.append( "n=" ).append( total ).append( ", avg=" ).append( sum/total );
+			sb.append( "ms, p50<" ).append( getPercentile( 50 ));
+			sb.append( "ms, p90<" ).append( getPercentile( 90 ));
+			sb.append( "ms, p99<" ).append( getPercentile( 99 )).append( "ms [" );
+			
+			for ( int i=0;i<BUCKETS;i++){
+				
+				sb.append( i==0?"":"," ).append( counts[i] );
+			}
+			
+			sb.append( "]" );
+			
+			return( sb.toString());
+		}
+	}
+}
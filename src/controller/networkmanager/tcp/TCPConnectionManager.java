@@ -33,8 +33,12 @@ import torrentlib.util.logging.Logger;
 import torrentlib.AEMonitor;
 import torrentlib.AEThread2;
 import torrentlib.Debug;
+import torrentlib.HostNameToIPResolver;
 import torrentlib.RandomUtils;
+import torrentlib.SimpleTimer;
 import torrentlib.SystemTime;
+import torrentlib.TimerEvent;
+import torrentlib.TimerEventPerformer;
 
 import controller.networkmanager.ProtocolEndpoint;
 import controller.networkmanager.VirtualChannelSelector;
@@ -148,6 +152,18 @@ public class TCPConnectionManager {
   private static final int CONNECT_ATTEMPT_STALL_TIME = 3*1000;  //3sec
   private static final boolean SHOW_CONNECT_STATS = false;
   
+  	// adaptive mode: attempt count follows TCPConnectScheduler, shorter select loop so completed 
+  	// attempts are replaced promptly, unresolved hosts race their resolved addresses
+  
+  private static final int ADAPTIVE_SELECT_LOOP_TIME	= 25;
+  private static final int HAPPY_EYEBALLS_DELAY		= 250;
+  private static final int MAX_RACE_CANDIDATES		= 4;
+  
+  private final TCPConnectScheduler	scheduler = 
+	  COConfigurationManager.getBooleanParameter( "network.tcp.connect.adaptive" )?new TCPConnectScheduler( MIN_SIMULTANIOUS_CONNECT_ATTEMPTS ):null;
+  
+  private final Map<ConnectListener,addressRace>	races = new HashMap<ConnectListener,addressRace>();
+  
   private final VirtualChannelSelector connect_selector = new VirtualChannelSelector( "Connect/Disconnect Manager", VirtualChannelSelector.OP_CONNECT, true );
   
   private long connection_request_id_next;
@@ -294,7 +310,9 @@ public class TCPConnectionManager {
   private void 
   addNewOutboundRequests() 
   {    
-	  while( pending_attempts.size() < MIN_SIMULTANIOUS_CONNECT_ATTEMPTS ){
+	  int	target = scheduler==null?MIN_SIMULTANIOUS_CONNECT_ATTEMPTS:scheduler.getTarget( MIN_SIMULTANIOUS_CONNECT_ATTEMPTS );
+	  
+	  while( pending_attempts.size() < target ){
 
 		  ConnectionRequest cr = null;
 
@@ -327,6 +345,21 @@ public class TCPConnectionManager {
   addNewRequest( 
 	final ConnectionRequest request ) 
   {
+	  if ( scheduler != null && scheduler.isRecentlyFailed( request.address )){
+		  
+		  	// don't burn an attempt slot on an address that has just refused/timed out
+		  
+		  try{
+			  request.listener.connectFailure( new ConnectException( "Connection to " + request.address + " abandoned: recently failed" ));
+			  
+		  }catch( Throwable e ){
+			  
+			  Debug.printStackTrace( e );
+		  }
+		  
+		  return;
+	  }
+	  
 	  request.setConnectTimeout( request.listener.connectAttemptStarted( request.getConnectTimeout()));
 
 
@@ -482,7 +515,7 @@ public class TCPConnectionManager {
 
 							  closeConnection( request.channel );
 
-							  request.listener.connectFailure( msg );
+							  connectFailed( request, msg );
 						  }
 					  }, null );
 		  }
@@ -529,7 +562,7 @@ public class TCPConnectionManager {
 			  closeConnection( request.channel );
 		  }
 		  
-		  request.listener.connectFailure( t );
+		  connectFailed( request, t );
 	  }
   }
   
@@ -574,6 +607,11 @@ public class TCPConnectionManager {
 				  
 				  connect_selector.cancel( request.channel );
 				  
+				  if ( scheduler != null ){
+					  
+					  scheduler.connectSucceeded( request.address, request.channel, SystemTime.getMonotonousTime() - request.connect_start_time );
+				  }
+				  
 				  request.listener.connectSuccess( request.channel );
 			  }
 		  }else{ 
@@ -582,7 +620,7 @@ public class TCPConnectionManager {
 			  
 			  Debug.out( "finishConnect() failed" );
 			  
-			  request.listener.connectFailure( new Throwable( "finishConnect() failed" ) );
+			  connectFailed( request, new Throwable( "finishConnect() failed" ) );
 
 			  closeConnection( request.channel );
 		  }
@@ -599,12 +637,25 @@ public class TCPConnectionManager {
 					  ", num_connecting="+num_connecting);
 		  }
 
-		  request.listener.connectFailure( t );
+		  connectFailed( request, t );
 
 		  closeConnection( request.channel );
 	  }
   }
   
+  private void
+  connectFailed(
+	ConnectionRequest	request,
+	Throwable			cause )
+  {
+	  if ( scheduler != null ){
+		  
+		  scheduler.connectFailed( request.address, cause );
+	  }
+	  
+	  request.listener.connectFailure( cause );
+  }
+  
 
   
   private void runSelect() {
@@ -642,12 +693,14 @@ public class TCPConnectionManager {
 
     	//run select
     
+    int	select_time = scheduler==null?CONNECT_SELECT_LOOP_TIME:Math.min( CONNECT_SELECT_LOOP_TIME, ADAPTIVE_SELECT_LOOP_TIME );
+    
     try{
 		if ( CONNECT_SELECT_LOOP_MIN_TIME > 0 ){
 			
 			long	start = SystemTime.getHighPrecisionCounter();
 			
-			connect_selector.select( CONNECT_SELECT_LOOP_TIME );
+			connect_selector.select( select_time );
 			
 			long duration = SystemTime.getHighPrecisionCounter() - start;
 			
@@ -664,7 +717,7 @@ public class TCPConnectionManager {
 				}
 			}
 		}else{
-			connect_selector.select( CONNECT_SELECT_LOOP_TIME );
+			connect_selector.select( select_time );
 		}
     }
     catch( Throwable t ) {
@@ -736,7 +789,7 @@ public class TCPConnectionManager {
 	        	target = sock_address.toString();
 	        }
 	               
-	        request.listener.connectFailure( new SocketTimeoutException( "Connection attempt to " + target + " aborted: timed out after " + request.connect_timeout/1000+ "sec" ) );
+	        connectFailed( request, new SocketTimeoutException( "Connection attempt to " + target + " aborted: timed out after " + request.connect_timeout/1000+ "sec" ) );
     	}
     }
     
@@ -764,6 +817,11 @@ public class TCPConnectionManager {
     		addNewRequest( cr );
     	}
     }
+    
+    if ( scheduler != null ){
+    	
+    	scheduler.update( MIN_SIMULTANIOUS_CONNECT_ATTEMPTS, new_requests.size(), pending_attempts.size());
+    }
   }
   
   
@@ -845,6 +903,27 @@ public class TCPConnectionManager {
 		  return;
 	  }
 	  
+	  if ( scheduler != null && address.isUnresolved() && HostNameToIPResolver.isDNSName( address.getHostName())){
+		  
+		  	// race the resolved addresses rather than failing on the unresolved one
+		  
+		  addressRace race = new addressRace( address, listener, connect_timeout, priority );
+		  
+		  try{
+			  new_canceled_mon.enter();
+			  
+			  races.put( listener, race );
+			  
+		  }finally{
+			  
+			  new_canceled_mon.exit();
+		  }
+		  
+		  race.start();
+		  
+		  return;
+	  }
+	  
 	  List<ConnectionRequest>	kicked 		= null;
 	  boolean					duplicate	= false;
 	  
@@ -976,23 +1055,360 @@ public class TCPConnectionManager {
    * @param listener_key used in the initial connect request
    */
   public void cancelRequest( ConnectListener listener_key ) {
+    addressRace race;
+    
     try{
       new_canceled_mon.enter();
     
-      //check if we can cancel it right away
-      for( Iterator<ConnectionRequest> i = new_requests.iterator(); i.hasNext(); ) {
-        ConnectionRequest request = i.next();
-        if( request.listener == listener_key ) {
-          i.remove();
-          return;
-        }
-      }
+      race = races.remove( listener_key );
       
-      canceled_requests.add( listener_key ); //else add for later removal during select
+      if ( race == null ){
+    	  
+	      //check if we can cancel it right away
+	      for( Iterator<ConnectionRequest> i = new_requests.iterator(); i.hasNext(); ) {
+	        ConnectionRequest request = i.next();
+	        if( request.listener == listener_key ) {
+	          i.remove();
+	          return;
+	        }
+	      }
+	      
+	      canceled_requests.add( listener_key ); //else add for later removal during select
+      }
     }
     finally{
       new_canceled_mon.exit();
     }
+    
+    if ( race != null ){
+    	
+    	race.cancel();
+    }
+  }
+  
+  /**
+   * Notification from the transport that the first inbound bytes have arrived on a channel,
+   * used for time-to-first-byte stats of outbound connections in adaptive mode.
+   * @param channel the connection's channel
+   */
+  public void
+  firstByteReceived(
+	SocketChannel	channel )
+  {
+	  if ( scheduler != null ){
+		  
+		  scheduler.firstByteReceived( channel );
+	  }
+  }
+  
+  	/**
+  	 * Happy-eyeballs style connect for an unresolved host: the resolved addresses are
+  	 * interleaved by family (the resolver's preferred family first) and each candidate is
+  	 * queued HAPPY_EYEBALLS_DELAY after the previous one, or straight away if the previous
+  	 * one fails. First success wins and the remaining candidates are cancelled.
+  	 */
+  
+  private class
+  addressRace
+  {
+	  private final InetSocketAddress	address;
+	  private final ConnectListener		listener;
+	  private final int					connect_timeout;
+	  private final int					priority;
+	  
+	  private InetSocketAddress[]		candidates;
+	  private final List<candidate>		started	= new ArrayList<candidate>( MAX_RACE_CANDIDATES );
+	  private int						failed;
+	  private boolean					done;
+	  private TimerEvent				next_event;
+	  
+	  private boolean					attempt_reported;
+	  private int						adjusted_timeout;
+	  
+	  private
+	  addressRace(
+		InetSocketAddress	_address,
+		ConnectListener		_listener,
+		int					_connect_timeout,
+		int					_priority )
+	  {
+		  address			= _address;
+		  listener			= _listener;
+		  connect_timeout	= _connect_timeout;
+		  priority			= _priority;
+	  }
+	  
+	  private void
+	  start()
+	  {
+		  new AEThread2( "TCPConnectionManager:resolve", true )
+		  {
+			  public void
+			  run()
+			  {
+				  InetAddress[]	addresses 	= null;
+				  Throwable		error		= null;
+				  
+				  try{
+					  addresses = InetAddress.getAllByName( address.getHostName());
+					  
+				  }catch( Throwable e ){
+					  
+					  error = e;
+				  }
+				  
+				  resolved( addresses, error );
+			  }
+		  }.start();
+	  }
+	  
+	  private void
+	  resolved(
+		InetAddress[]	addresses,
+		Throwable		error )
+	  {
+		  synchronized( this ){
+			  
+			  if ( done ){
+				  
+				  return;
+			  }
+			  
+			  if ( addresses == null || addresses.length == 0 ){
+				  
+				  done = true;
+				  
+			  }else{
+				  
+				  List<InetAddress>	preferred 	= new ArrayList<InetAddress>();
+				  List<InetAddress>	other		= new ArrayList<InetAddress>();
+				  
+				  boolean	v6_first = addresses[0] instanceof Inet6Address;
+				  
+				  for ( InetAddress a: addresses ){
+					  
+					  (( a instanceof Inet6Address ) == v6_first?preferred:other ).add( a );
+				  }
+				  
+				  List<InetSocketAddress>	list = new ArrayList<InetSocketAddress>();
+				  
+				  for ( int i=0;list.size() < MAX_RACE_CANDIDATES && ( i < preferred.size() || i < other.size());i++){
+					  
+					  if ( i < preferred.size()){
+						  
+						  list.add( new InetSocketAddress( preferred.get(i), address.getPort()));
+					  }
+					  
+					  if ( i < other.size() && list.size() < MAX_RACE_CANDIDATES ){
+						  
+						  list.add( new InetSocketAddress( other.get(i), address.getPort()));
+					  }
+				  }
+				  
+				  candidates = list.toArray( new InetSocketAddress[ list.size()]);
+			  }
+		  }
+		  
+		  if ( addresses == null || addresses.length == 0 ){
+			  
+			  finished();
+			  
+			  listener.connectFailure( error==null?new UnknownHostException( address.getHostName()):error );
+			  
+		  }else{
+			  
+			  startNext();
+		  }
+	  }
+	  
+	  private void
+	  startNext()
+	  {
+		  candidate			next;
+		  InetSocketAddress	target;
+		  
+		  synchronized( this ){
+			  
+			  if ( done || started.size() >= candidates.length ){
+				  
+				  return;
+			  }
+			  
+			  if ( next_event != null ){
+				  
+				  next_event.cancel();
+				  
+				  next_event = null;
+			  }
+			  
+			  target 	= candidates[ started.size()];
+			  next		= new candidate();
+			  
+			  started.add( next );
+			  
+			  if ( started.size() < candidates.length ){
+				  
+				  next_event = 
+					  SimpleTimer.addEvent(
+						"TCPConnectionManager:race",
+						SystemTime.getOffsetTime( HAPPY_EYEBALLS_DELAY ),
+						new TimerEventPerformer()
+						{
+							public void 
+							perform(
+								TimerEvent event )
+							{
+								startNext();
+							}
+						});
+			  }
+		  }
+		  
+		  requestNewConnection( target, next, connect_timeout, priority );
+	  }
+	  
+	  private void
+	  cancel()
+	  {
+		  List<candidate>	to_cancel;
+		  
+		  synchronized( this ){
+			  
+			  done = true;
+			  
+			  if ( next_event != null ){
+				  
+				  next_event.cancel();
+				  
+				  next_event = null;
+			  }
+			  
+			  to_cancel = new ArrayList<candidate>( started );
+		  }
+		  
+		  for ( candidate c: to_cancel ){
+			  
+			  cancelRequest( c );
+		  }
+	  }
+	  
+	  private void
+	  finished()
+	  {
+		  try{
+			  new_canceled_mon.enter();
+			  
+			  if ( races.get( listener ) == this ){
+				  
+				  races.remove( listener );
+			  }
+		  }finally{
+			  
+			  new_canceled_mon.exit();
+		  }
+	  }
+	  
+	  private class
+	  candidate
+	  	implements ConnectListener
+	  {
+		  public int 
+		  connectAttemptStarted(
+			int default_timeout )
+		  {
+			  synchronized( addressRace.this ){
+				  
+				  if ( !attempt_reported ){
+					  
+					  attempt_reported	= true;
+					  adjusted_timeout	= listener.connectAttemptStarted( default_timeout );
+				  }
+				  
+				  return( adjusted_timeout );
+			  }
+		  }
+		  
+		  public void 
+		  connectSuccess(
+			SocketChannel channel )
+		  {
+			  List<candidate>	losers = null;
+			  
+			  synchronized( addressRace.this ){
+				  
+				  if ( !done ){
+					  
+					  done = true;
+					  
+					  if ( next_event != null ){
+						  
+						  next_event.cancel();
+						  
+						  next_event = null;
+					  }
+					  
+					  losers = new ArrayList<candidate>( started );
+					  
+					  losers.remove( this );
+				  }
+			  }
+			  
+			  if ( losers == null ){
+				  
+				  closeConnection( channel );
+				  
+			  }else{
+				  
+				  finished();
+				  
+				  for ( candidate c: losers ){
+					  
+					  cancelRequest( c );
+				  }
+				  
+				  listener.connectSuccess( channel );
+			  }
+		  }
+		  
+		  public void 
+		  connectFailure(
+			Throwable failure_msg )
+		  {
+			  boolean	more 	= false;
+			  boolean	give_up	= false;
+			  
+			  synchronized( addressRace.this ){
+				  
+				  if ( done ){
+					  
+					  return;
+				  }
+				  
+				  failed++;
+				  
+				  if ( started.size() < candidates.length ){
+					  
+					  more = true;
+					  
+				  }else if ( failed == started.size()){
+					  
+					  done		= true;
+					  give_up	= true;
+				  }
+			  }
+			  
+			  if ( more ){
+				  
+				  startNext();
+				  
+			  }else if ( give_up ){
+				  
+				  finished();
+				  
+				  listener.connectFailure( failure_msg );
+			  }
+		  }
+	  }
   }
   
   
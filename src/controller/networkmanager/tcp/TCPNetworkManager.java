@@ -22,6 +22,7 @@ package controller.networkmanager.tcp;
 
 import java.net.InetAddress;
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SocketChannel;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -32,6 +33,7 @@ import torrentlib.AEThread2;
 import torrentlib.Debug;
 import torrentlib.SystemTime;
 
+import controller.networkmanager.NetworkManager;
 import controller.networkmanager.VirtualChannelSelector;
 import torrentlib.stats.AzureusCoreStats;
 import torrentlib.stats.AzureusCoreStatsProvider;
@@ -116,10 +118,11 @@ TCPNetworkManager
 	    if( tcp_mss_size < 512 )  tcp_mss_size = 512; 
 	}
 	
-	private final VirtualChannelSelector read_selector 	= 
-			new VirtualChannelSelector( "TCP network manager", VirtualChannelSelector.OP_READ, true );
-	private final VirtualChannelSelector write_selector = 
-			new VirtualChannelSelector( "TCP network manager", VirtualChannelSelector.OP_WRITE, true );
+		// one read and one write selector per controller shard, channels are spread across them
+		// by identity so that all operations on a given channel hit the same selector
+	
+	private final VirtualChannelSelector[] read_selectors;
+	private final VirtualChannelSelector[] write_selectors;
 
 	private final TCPConnectionManager connect_disconnect_manager = new TCPConnectionManager();
 
@@ -158,10 +161,30 @@ TCPNetworkManager
 				}
 			});
 		
-		   //start read selector processing
+		int	shards = Math.max( 1, NetworkManager.getControllerShardCount());
+		
+		read_selectors 	= new VirtualChannelSelector[shards];
+		write_selectors	= new VirtualChannelSelector[shards];
 		
+		for (int i=0;i<shards;i++){
+			
+			String	suffix = shards==1?"":( "[" + i + "]" );
+			
+			read_selectors[i] 	= new VirtualChannelSelector( "TCP network manager" + suffix, VirtualChannelSelector.OP_READ, true );
+			write_selectors[i] 	= new VirtualChannelSelector( "TCP network manager" + suffix, VirtualChannelSelector.OP_WRITE, true );
+			
+			startReadSelector( read_selectors[i], suffix );
+			startWriteSelector( write_selectors[i], suffix );
+		}
+	}
+	
+	private void
+	startReadSelector(
+		final VirtualChannelSelector	read_selector,
+		String							suffix )
+	{
 		AEThread2 read_selector_thread = 
-	    	new AEThread2( "ReadController:ReadSelector", true ) 
+	    	new AEThread2( "ReadController:ReadSelector" + suffix, true ) 
 	    	{
 		    	public void 
 		    	run() 
@@ -211,11 +234,15 @@ TCPNetworkManager
 	    	
 	    read_selector_thread.setPriority( Thread.MAX_PRIORITY - 2 );
 	    read_selector_thread.start();
-	    
-	    	//start write selector processing
-	    
+	}
+	
+	private void
+	startWriteSelector(
+		final VirtualChannelSelector	write_selector,
+		String							suffix )
+	{
 	    AEThread2 write_selector_thread = 
-	    	new AEThread2( "WriteController:WriteSelector", true )
+	    	new AEThread2( "WriteController:WriteSelector" + suffix, true )
 	    	{
 		    	public void 
 		    	run() 
@@ -296,14 +323,38 @@ TCPNetworkManager
 	 * Get the virtual selector used for socket channel read readiness.
 	 * @return read readiness selector
 	 */
-	public VirtualChannelSelector getReadSelector() {  return read_selector;  }
+	public VirtualChannelSelector getReadSelector() {  return read_selectors[0];  }
+
+	/**
+	 * Get the virtual selector used for read readiness of the given channel.
+	 * @param channel to select on
+	 * @return read readiness selector
+	 */
+	public VirtualChannelSelector 
+	getReadSelector(
+		SocketChannel	channel ) 
+	{  
+		return( read_selectors.length==1?read_selectors[0]:read_selectors[(System.identityHashCode( channel )&0x7fffffff)%read_selectors.length] );  
+	}
 
 
 	/**
 	 * Get the virtual selector used for socket channel write readiness.
 	 * @return write readiness selector
 	 */
-	public VirtualChannelSelector getWriteSelector() {  return write_selector;  }
+	public VirtualChannelSelector getWriteSelector() {  return write_selectors[0];  }
+
+	/**
+	 * Get the virtual selector used for write readiness of the given channel.
+	 * @param channel to select on
+	 * @return write readiness selector
+	 */
+	public VirtualChannelSelector 
+	getWriteSelector(
+		SocketChannel	channel ) 
+	{  
+		return( write_selectors.length==1?write_selectors[0]:write_selectors[(System.identityHashCode( channel )&0x7fffffff)%write_selectors.length] );  
+	}
 
 
 	public boolean
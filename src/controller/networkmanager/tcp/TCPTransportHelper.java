@@ -28,6 +28,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.util.*;
 
@@ -70,6 +71,8 @@ TCPTransportHelper
 	
 	private volatile boolean closed;
 	
+	private boolean	first_byte_seen;
+	
 	public TCPTransportHelper( SocketChannel _channel ) {
 		channel = _channel;
 	}
@@ -369,6 +372,11 @@ TCPTransportHelper
 		
 		int	res = channel.read( buffer );
 		
+		if ( res > 0 && !first_byte_seen ){
+			
+			firstByteReceived();
+		}
+		
 		if ( trace ){
 			TimeFormatter.milliTrace( "tcp: read " + res );
 		}
@@ -436,6 +444,11 @@ TCPTransportHelper
 			throw new IOException( "end of stream on socket read" );
 		}
 
+		if ( bytes_read > 0 && !first_byte_seen ){
+			
+			firstByteReceived();
+		}
+		
 		if ( trace ){
 			TimeFormatter.milliTrace( "tcp: read " + bytes_read );
 		}
@@ -443,12 +456,20 @@ TCPTransportHelper
 		return bytes_read;
 	}
 
+	private void
+	firstByteReceived()
+	{
+		first_byte_seen = true;
+		
+		TCPNetworkManager.getSingleton().getConnectDisconnectManager().firstByteReceived( channel );
+	}
+
 	public void
 	registerForReadSelects(
 		final selectListener		listener,
 		Object						attachment )
 	{
-		TCPNetworkManager.getSingleton().getReadSelector().register(
+		TCPNetworkManager.getSingleton().getReadSelector( channel ).register(
 				channel,
 				new VirtualSelectorListener()
 				{
@@ -479,7 +500,7 @@ TCPTransportHelper
 		final selectListener		listener,
 		Object						attachment )
 	{
-		TCPNetworkManager.getSingleton().getWriteSelector().register(
+		TCPNetworkManager.getSingleton().getWriteSelector( channel ).register(
 				channel,
 				new VirtualSelectorListener()
 				{
@@ -512,7 +533,7 @@ TCPTransportHelper
 	public void
 	cancelReadSelects()
 	{
-		TCPNetworkManager.getSingleton().getReadSelector().cancel( channel );
+		TCPNetworkManager.getSingleton().getReadSelector( channel ).cancel( channel );
 	}
 
 	public void
@@ -522,13 +543,13 @@ TCPTransportHelper
 			TimeFormatter.milliTrace( "tcp: cancel write selects" );
 		}
 		
-		TCPNetworkManager.getSingleton().getWriteSelector().cancel( channel );
+		TCPNetworkManager.getSingleton().getWriteSelector( channel ).cancel( channel );
 	}
 
 	public void
 	resumeReadSelects()
 	{
-		TCPNetworkManager.getSingleton().getReadSelector().resumeSelects( channel );
+		TCPNetworkManager.getSingleton().getReadSelector( channel ).resumeSelects( channel );
 	}
 
 	public void
@@ -538,13 +559,13 @@ TCPTransportHelper
 			TimeFormatter.milliTrace( "tcp: resume write selects" );
 		}
 		
-		TCPNetworkManager.getSingleton().getWriteSelector().resumeSelects( channel );
+		TCPNetworkManager.getSingleton().getWriteSelector( channel ).resumeSelects( channel );
 	}
 
 	public void
 	pauseReadSelects()
 	{
-		TCPNetworkManager.getSingleton().getReadSelector().pauseSelects( channel );
+		TCPNetworkManager.getSingleton().getReadSelector( channel ).pauseSelects( channel );
 	}
 
 	public void
@@ -554,7 +575,7 @@ TCPTransportHelper
 			TimeFormatter.milliTrace( "tcp: pause write selects" );
 		}
 		
-		TCPNetworkManager.getSingleton().getWriteSelector().pauseSelects( channel );
+		TCPNetworkManager.getSingleton().getWriteSelector( channel ).pauseSelects( channel );
 	}
 
 	public boolean
@@ -568,8 +589,8 @@ TCPTransportHelper
 	{
 		closed = true;
 		
-		TCPNetworkManager.getSingleton().getReadSelector().cancel( channel );
-		TCPNetworkManager.getSingleton().getWriteSelector().cancel( channel );
+		TCPNetworkManager.getSingleton().getReadSelector( channel ).cancel( channel );
+		TCPNetworkManager.getSingleton().getWriteSelector( channel ).cancel( channel );
 		TCPNetworkManager.getSingleton().getConnectDisconnectManager().closeConnection( channel );
 	}
 
@@ -580,6 +601,39 @@ TCPTransportHelper
 		close( Debug.getNestedExceptionMessage( reason ));
 	}
 
+		/**
+		 * Direct file to socket transfer bypasses both the delayed (partial) write and
+		 * the write scattering used to obfuscate the start of the stream
+		 */
+	
+	public boolean
+	canTransfer()
+	{
+		return( channel != null && !closed && delayed_write == null && remainingBytesToScatter < 1 );
+	}
+	
+	public long
+	transferFrom(
+		FileChannel		file,
+		long			position,
+		long			count )
+	
+		throws IOException
+	{
+		if ( !canTransfer()){
+			
+			throw( new IOException( "transfer not possible" ));
+		}
+		
+		long	written = file.transferTo( position, count, channel );
+		
+		if ( trace ){
+			TimeFormatter.milliTrace( "tcp: transfer " + written );
+		}
+		
+		return( written );
+	}
+	
 	public SocketChannel getSocketChannel(){  return channel; }
 
 	public synchronized void
@@ -28,7 +28,9 @@ import torrentlib.AddressUtils;
 import controller.networkmanager.TransportStartpoint;
 import controller.networkmanager.NetworkManager;
 import java.net.InetSocketAddress;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.Map;
@@ -37,6 +39,7 @@ import controller.config.COConfigurationManager;
 
 import controller.networkmanager.ProtocolDecoder;
 import controller.networkmanager.TransportHelperFilter;
+import controller.networkmanager.TransportHelperFilterTransparent;
 import controller.networkmanager.TransportCryptoManager;
 import controller.networkmanager.TransportHelper;
 import controller.networkmanager.Transport;
@@ -50,6 +53,8 @@ import controller.networkmanager.Transport;
 public class TCPTransportImpl extends Transport {
 	private static final LogIDs LOGID = LogIDs.NET;
 
+	private static final boolean TRANSFER_ENABLED = System.getProperty( "azureus.net.transferto", "true" ).equals( "true" );
+
   private final  ProtocolEndpointTCP		protocol_endpoint;
 
 
@@ -131,6 +136,48 @@ public class TCPTransportImpl extends Transport {
   	return helper.getSocketChannel();
   }
 
+  /**
+   * Piece data can be sent straight from the file when the stream is neither encrypted nor
+   * obfuscated, otherwise the bytes have to pass through the filter.
+   */
+  public boolean
+  isTransferSupported()
+  {
+	  if ( !TRANSFER_ENABLED ){
+		  
+		  return( false );
+	  }
+	  
+	  TransportHelperFilter filter = getFilter();
+	  
+	  if ( !( filter instanceof TransportHelperFilterTransparent ) || filter.hasBufferedWrite()){
+		  
+		  return( false );
+	  }
+	  
+	  TransportHelper helper = filter.getHelper();
+	  
+	  return( helper instanceof TCPTransportHelper && ((TCPTransportHelper)helper).canTransfer());
+  }
+  
+  protected long
+  transferSupport(
+	  FileChannel	channel,
+	  long			position,
+	  long			count )
+  
+  	throws IOException
+  {
+	  TransportHelperFilter filter = getFilter();
+
+	  if ( !( filter instanceof TransportHelperFilterTransparent )){
+		  
+		  throw( new IOException( "transfer not supported" ));
+	  }
+	  
+	  return(((TCPTransportHelper)filter.getHelper()).transferFrom( channel, position, count ));
+  }
+
   public TransportEndpointTCP
   getTransportEndpoint()
   {
@@ -0,0 +1,316 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package controller.networkmanager.tcp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import controller.networkmanager.VirtualChannelSelector;
+
+/**
+ * Measures read select-loop latency with many registered channels, most of them idle, for the
+ * standard and edge selectors. Each round writes a byte to ACTIVE_PER_ROUND random peers and times 
+ * the select loop until all of them have been dispatched. The read listener resumes the channel
+ * after reading, as the network manager's read path does with a pause-after-select selector.
+ * <p>
+ * Idle channels are connected to listeners that never accept so that each costs one descriptor.
+ * <p>
+ * Usage: VirtualChannelSelectorBenchmark [channels,...] [rounds]
+ */
+
+public class 
+VirtualChannelSelectorBenchmark 
+{
+	private static final int	ACTIVE_CHANNELS		= 256;
+	private static final int	ACTIVE_PER_ROUND	= 32;
+	private static final int	BACKLOG				= 4096;
+	
+	public static void
+	main(
+		String[]	args )
+	
+		throws Exception
+	{
+		String[]	counts	= ( args.length>0?args[0]:"5000,20000" ).split( "," );
+		int			rounds	= args.length>1?Integer.parseInt( args[1] ):5000;
+		
+		for ( String count: counts ){
+			
+			int	channels = Integer.parseInt( count.trim());
+			
+			for ( boolean edge: new boolean[]{ false, true, false, true }){
+				
+				run( edge, channels, rounds );
+			}
+		}
+	}
+	
+	private static void
+	run(
+		boolean		edge,
+		int			num_channels,
+		int			rounds )
+	
+		throws Exception
+	{
+		InetAddress	lh = InetAddress.getByName( "127.0.0.1" );
+		
+		List<ServerSocketChannel>	listeners	= new ArrayList<ServerSocketChannel>();
+		List<SocketChannel>			clients		= new ArrayList<SocketChannel>();
+		List<SocketChannel>			servers		= new ArrayList<SocketChannel>();
+		
+		VirtualChannelSelector		parent	= null;
+		VirtualChannelSelectorImpl	impl	= null;
+		
+		try{
+			ServerSocketChannel	active_listener = ServerSocketChannel.open();
+			
+			active_listener.socket().bind( new InetSocketAddress( lh, 0 ), BACKLOG );
+			
+			listeners.add( active_listener );
+			
+			for ( int i=0;i<ACTIVE_CHANNELS;i++ ){
+				
+				clients.add( SocketChannel.open( active_listener.socket().getLocalSocketAddress()));
+				
+				SocketChannel server = active_listener.accept();
+				
+				server.socket().setTcpNoDelay( true );
+				
+				servers.add( server );
+			}
+			
+			ServerSocketChannel	idle_listener = null;
+			
+			for ( int i=ACTIVE_CHANNELS;i<num_channels;i++ ){
+				
+				if ( i % ( BACKLOG - 96 ) == ACTIVE_CHANNELS ){
+					
+					idle_listener = ServerSocketChannel.open();
+					
+					idle_listener.socket().bind( new InetSocketAddress( lh, 0 ), BACKLOG );
+					
+					listeners.add( idle_listener );
+				}
+				
+				clients.add( SocketChannel.open( idle_listener.socket().getLocalSocketAddress()));
+			}
+		}catch( Throwable e ){
+			
+			System.out.println( (edge?"edge":"standard") + ", channels=" + num_channels + ": setup failed after " + clients.size() + " channels - " + e );
+			
+			close( listeners, clients, servers );
+			
+			return;
+		}
+		
+		try{
+				// the parent only routes dispatches to the listener, the impl under test is driven directly
+			
+			parent = new VirtualChannelSelector( "benchmark", VirtualChannelSelector.OP_READ, true );
+			
+			if ( edge ){
+				
+				impl = new VirtualChannelSelectorEdgeImpl( parent, VirtualChannelSelector.OP_READ, true, false );
+				
+			}else{
+				
+				impl = new VirtualChannelSelectorImpl( parent, VirtualChannelSelector.OP_READ, true, false );
+			}
+			
+			final VirtualChannelSelectorImpl	selector = impl;
+			
+			final ByteBuffer	buffer 		= ByteBuffer.allocate( 1024 );
+			final int[]			dispatched	= { 0 };
+			
+			VirtualChannelSelector.VirtualSelectorListener listener =
+				new VirtualChannelSelector.VirtualSelectorListener()
+				{
+					public boolean 
+					selectSuccess(
+						VirtualChannelSelector 	parent, 
+						SocketChannel 			sc, 
+						Object 					attachment )
+					{
+						try{
+							buffer.clear();
+							
+							int	read = sc.read( buffer );
+							
+							dispatched[0]++;
+							
+							selector.resumeSelects( sc );
+							
+							return( read > 0 );
+							
+						}catch( Throwable e ){
+							
+							selector.cancel( sc );
+							
+							return( false );
+						}
+					}
+					
+					public void 
+					selectFailure(
+						VirtualChannelSelector 	parent, 
+						SocketChannel 			sc, 
+						Object 					attachment, 
+						Throwable 				msg )
+					{
+							// expected for every channel when the selector is destroyed at the end of the run
+					}
+				};
+				
+			for ( SocketChannel client: clients ){
+				
+				client.configureBlocking( false );
+				
+				selector.register( client, listener, null );
+			}
+			
+			selector.select( 10 );
+			
+			Random			random	= new Random( 0 );
+			ByteBuffer		one		= ByteBuffer.allocate( 1 );
+			long[]			latency	= new long[ rounds ];
+			long			loops	= 0;
+			ThreadMXBean	mx 		= ManagementFactory.getThreadMXBean();
+			
+			int	warmup = rounds/5;
+			
+			long	cpu_start	= 0;
+			long	ops_start	= 0;
+			
+			for ( int r=-warmup;r<rounds;r++ ){
+				
+				if ( r == 0 ){
+					
+					cpu_start	= mx.getCurrentThreadCpuTime();
+					ops_start	= getInterestOpChanges( selector );
+					loops		= 0;
+				}
+				
+				int	target = dispatched[0] + ACTIVE_PER_ROUND;
+				
+				int	base = random.nextInt( ACTIVE_CHANNELS );
+				
+				for ( int i=0;i<ACTIVE_PER_ROUND;i++ ){
+					
+					one.clear();
+					
+					servers.get(( base + i ) % ACTIVE_CHANNELS ).write( one );
+				}
+				
+				long	start = System.nanoTime();
+				
+				while( dispatched[0] < target ){
+					
+					selector.select( 25 );
+					
+					loops++;
+				}
+				
+				if ( r >= 0 ){
+					
+					latency[r] = System.nanoTime() - start;
+				}
+			}
+			
+			long	cpu = mx.getCurrentThreadCpuTime() - cpu_start;
+			long	ops	= getInterestOpChanges( selector ) - ops_start;
+			
+			Arrays.sort( latency );
+			
+			long	total = 0;
+			
+			for ( long l: latency ){
+				
+				total += l;
+			}
+			
+			System.out.println( 
+				(edge?"edge    ":"standard") + ", channels=" + clients.size() + 
+				": avg=" + ( total/rounds/1000 ) + "us, p50=" + ( latency[rounds/2]/1000 ) + 
+				"us, p99=" + ( latency[rounds*99/100]/1000 ) + "us, select loops/round=" + ((float)loops/rounds) +
+				", cpu/round=" + ( cpu/rounds/1000 ) + "us" +
+				(edge?(", interest op changes=" + ops ):"" ));
+			
+		}finally{
+			
+			if ( impl != null ){
+				
+				impl.destroy();
+				
+				impl.select( 10 );
+			}
+			
+			if ( parent != null ){
+				
+				parent.destroy();
+				
+				parent.select( 10 );
+			}
+			
+			close( listeners, clients, servers );
+		}
+	}
+	
+	private static long
+	getInterestOpChanges(
+		VirtualChannelSelectorImpl	selector )
+	{
+		if ( selector instanceof VirtualChannelSelectorEdgeImpl ){
+			
+			return(((VirtualChannelSelectorEdgeImpl)selector).getInterestOpChanges());
+		}
+		
+		return( 0 );
+	}
+	
+	private static void
+	close(
+		List<ServerSocketChannel>	listeners,
+		List<SocketChannel>			clients,
+		List<SocketChannel>			servers )
+	{
+		List<java.nio.channels.Channel>	all = new ArrayList<java.nio.channels.Channel>();
+		
+		all.addAll( clients );
+		all.addAll( servers );
+		all.addAll( listeners );
+		
+		for ( java.nio.channels.Channel c: all ){
+			
+			try{
+				c.close();
+				
+			}catch( Throwable e ){
+			}
+		}
+	}
+}
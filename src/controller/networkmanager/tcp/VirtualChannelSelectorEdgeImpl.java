@@ -0,0 +1,709 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package controller.networkmanager.tcp;
+
+import java.net.InetAddress;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import controller.networkmanager.VirtualChannelSelector;
+import torrentlib.AEDiagnostics;
+import torrentlib.Debug;
+import torrentlib.SystemTime;
+
+/**
+ * Selector for high channel counts. A channel is registered with the underlying selector once and
+ * keeps its interest op; pauseSelects/resumeSelects just flip a flag on the registration, so the
+ * usual pause-after-select and resume-when-done cycle doesn't touch SelectionKey.interestOps (and
+ * so doesn't cost an epoll_ctl) unless the channel is reported ready while paused. Such a channel
+ * is disarmed at that point and re-armed when it is next resumed, one interestOps pair, giving
+ * edge-style notification on top of the JDK's level-triggered selector.
+ * <p>
+ * Registrations, cancels and re-arms are handed to the select thread through lock-free queues rather
+ * than a monitor-protected list.
+ */
+
+public class 
+VirtualChannelSelectorEdgeImpl 
+	extends VirtualChannelSelectorImpl
+{
+	private final int		INTEREST_OP;
+	private final boolean	pause_after_select;
+	
+	private final ConcurrentHashMap<AbstractSelectableChannel,registration>	registrations = new ConcurrentHashMap<AbstractSelectableChannel,registration>();
+
+		// entries are either a registration (register) or a channel (cancel)
+	
+	private final ConcurrentLinkedQueue<Object>			pending_ops	= new ConcurrentLinkedQueue<Object>();
+	private final ConcurrentLinkedQueue<registration>	rearm_queue	= new ConcurrentLinkedQueue<registration>();
+	
+	private volatile boolean	destroyed;
+	private volatile boolean	randomise_keys;
+	
+	private int		next_select_loop_pos;
+	
+	private int		consec_select_fails;
+	private long	consec_select_fails_start;
+	private long	last_select_debug;
+	private long	last_reopen_attempt = SystemTime.getMonotonousTime();
+	
+	private volatile long	interest_op_changes;
+	
+	public 
+	VirtualChannelSelectorEdgeImpl(
+		VirtualChannelSelector		_parent,
+		int							_interest_op,
+		boolean						_pause_after_select,
+		boolean						_randomise_keys )
+	{
+		super( _parent, _interest_op, _pause_after_select, _randomise_keys );
+		
+		INTEREST_OP			= _interest_op;
+		pause_after_select	= _pause_after_select;
+		randomise_keys		= _randomise_keys;
+	}
+	
+	public void
+	setRandomiseKeys(
+		boolean		r )
+	{
+		randomise_keys = r;
+	}
+	
+	public void 
+	pauseSelects(
+		AbstractSelectableChannel	channel )
+	{
+		if ( channel == null ){
+			
+			return;
+		}
+		
+		registration reg = registrations.get( channel );
+		
+		if ( reg != null ){
+			
+			reg.paused = true;
+		}
+	}
+	
+	public void 
+	resumeSelects(
+		AbstractSelectableChannel	channel )
+	{
+		if ( channel == null ){
+			
+			Debug.printStackTrace( new Exception( "resumeSelects():: channel == null" ));
+			
+			return;
+		}
+		
+		registration reg = registrations.get( channel );
+		
+		if ( reg == null ){
+			
+			return;
+		}
+		
+		if ( reg.paused ){
+			
+				// resuming a non-interested channel, reset the metrics
+			
+			reg.last_select_success_time	= SystemTime.getCurrentTime();
+			reg.non_progress_count			= 0;
+			
+			reg.paused = false;
+		}
+		
+			// 'armed' must be read after 'paused' is cleared - the select thread clears 'armed' 
+			// before re-checking 'paused' so one side or the other will always re-arm
+		
+		if ( !reg.armed && reg.rearm_queued.compareAndSet( false, true )){
+			
+			rearm_queue.add( reg );
+		}
+	}
+	
+	public void 
+	cancel(
+		AbstractSelectableChannel	channel )
+	{
+		if ( channel == null ){
+			
+			Debug.out( "Attempt to cancel selects for null channel" );
+			
+			return;
+		}
+		
+		registration reg = registrations.remove( channel );
+		
+		if ( reg != null ){
+			
+			reg.cancelled = true;
+		}
+		
+		pending_ops.add( channel );
+	}
+	
+	public void 
+	register(
+		AbstractSelectableChannel 								channel, 
+		VirtualChannelSelector.VirtualAbstractSelectorListener 	listener, 
+		Object 													attachment ) 
+	{
+		if ( destroyed ){
+			
+			Debug.out( "register called after selector destroyed" );
+		}
+		
+		if ( channel == null ){
+			
+			Debug.out( "Attempt to register selects for null channel" );
+			
+			return;
+		}
+		
+		registration reg = new registration( channel, listener, attachment );
+		
+		registration old = registrations.put( channel, reg );
+		
+		if ( old != null ){
+			
+			old.cancelled = true;
+		}
+		
+		pending_ops.add( reg );
+	}
+	
+	protected long
+	getInterestOpChanges()
+	{
+		return( interest_op_changes );
+	}
+	
+	public int 
+	select(
+		long	timeout )
+	{
+		long select_start_time = SystemTime.getCurrentTime();
+		
+		if ( selector == null ){
+			
+			long mono_now = SystemTime.getMonotonousTime();
+			
+			if (( mono_now - last_reopen_attempt > 60*1000 ) && !destroyed ){
+				
+				last_reopen_attempt = mono_now;
+				
+				selector = openNewSelector();
+			}
+			
+			if ( selector == null ){
+				
+				Debug.out( "VirtualChannelSelector.select() op called with null selector" );
+				
+				try{  Thread.sleep( 3000 );  }catch( Throwable x ){ x.printStackTrace(); }
+				
+				return( 0 );
+			}
+		}
+		
+		if ( !selector.isOpen()){
+			
+			Debug.out( "VirtualChannelSelector.select() op called with closed selector" );
+			
+			try{  Thread.sleep( 3000 );  }catch( Throwable x ){ x.printStackTrace(); }
+			
+			return( 0 );
+		}
+		
+		processPendingOps();
+		
+		processRearms();
+		
+		int count = 0;
+		
+		try{
+			count = selector.select( timeout );
+			
+			consec_select_fails = 0;
+			
+		}catch( Throwable t ){
+			
+			long now = SystemTime.getMonotonousTime();
+			
+			consec_select_fails++;
+			
+			if ( consec_select_fails == 1 ){
+				
+				consec_select_fails_start = now;
+			}
+			
+			if ( consec_select_fails > 20 && now - consec_select_fails_start > 16*1000 ){
+				
+				Debug.out( "Consecutive fail exceeded (" + consec_select_fails + ") - recreating selector" );
+
+				consec_select_fails = 0;
+				
+				closeExistingSelector();
+				
+				try{  Thread.sleep( 1000 );  }catch( Throwable x ){ x.printStackTrace(); }
+				
+				selector = openNewSelector();
+				
+				return( 0 );
+			}
+			
+			if ( now - last_select_debug > 5000 ){
+				
+				last_select_debug = now;
+				
+				String msg = t.getMessage();
+				
+				if ( msg == null || !msg.equalsIgnoreCase( "bad file descriptor" )){
+					
+					Debug.out( "Caught exception on selector.select() op: " + msg, t );
+				}
+			}
+			
+			try{  Thread.sleep( timeout );  }catch( Throwable e ){ e.printStackTrace(); }
+		}
+		
+			// do this after the select so that any pending cancels (prior to destroy) are processed
+			// by the selector before we kill it
+		
+		if ( destroyed ){
+			
+			closeExistingSelector();
+			
+			return( 0 );
+		}
+		
+		if ( !selector.isOpen()){
+			
+			return( count );
+		}
+		
+		Set<SelectionKey> selected = selector.selectedKeys();
+		
+		List<SelectionKey> ready_keys;
+		
+		if ( selected.size() == 0 ){
+			
+			ready_keys = Collections.emptyList();
+			
+		}else{
+			
+			ready_keys = new ArrayList<SelectionKey>( selected );
+			
+			selected.clear();
+			
+			if ( randomise_keys ){
+				
+				Collections.shuffle( ready_keys );
+			}
+		}
+		
+		int	progress_made_key_count	= 0;
+		int	total_key_count			= 0;
+		
+		long now = SystemTime.getCurrentTime();
+		
+		final int ready_key_size	= ready_keys.size();
+		final int start_pos			= next_select_loop_pos++;
+		final int end_pos			= start_pos + ready_key_size;
+		
+		for ( int i=start_pos; i<end_pos; i++ ){
+			
+			SelectionKey key = ready_keys.get( i % ready_key_size );
+			
+			registration reg = (registration)key.attachment();
+			
+			if ( reg.cancelled ){
+				
+				continue;
+			}
+			
+			reg.last_select_success_time = now;
+			
+			if ( !key.isValid()){
+				
+					// can get this if socket has been closed between select and here
+				
+				total_key_count++;
+				
+				registrations.remove( reg.channel, reg );
+				
+				reg.cancelled = true;
+				
+				key.cancel();
+				
+				parent.selectFailure( reg.listener, reg.channel, reg.attachment, new Throwable( "key is invalid" ));
+				
+				continue;
+			}
+			
+			if ( reg.paused ){
+				
+					// paused since it was last armed and still ready - stop the selector reporting it 
+					// until it is resumed
+				
+				disarm( reg, key );
+				
+				continue;
+			}
+			
+				// only keys actually dispatched count towards the anti-spin check below, a paused
+				// key (typically writable on the write selector) isn't a lack of progress
+			
+			total_key_count++;
+			
+			if ( pause_after_select ){
+				
+				reg.paused = true;
+			}
+			
+			if ( parent.selectSuccess( reg.listener, reg.channel, reg.attachment )){
+				
+				progress_made_key_count++;
+				
+				reg.non_progress_count = 0;
+				
+			}else{
+				
+				nonProgress( reg );
+			}
+		}
+		
+			// if any of the ready keys hasn't made any progress then enforce minimum sleep period to avoid
+			// spinning
+		
+		if ( total_key_count == 0 || progress_made_key_count != total_key_count ){
+			
+			long time_diff = SystemTime.getCurrentTime() - select_start_time;
+			
+			if ( time_diff < timeout && time_diff >= 0 ){
+				
+				try{  Thread.sleep( timeout - time_diff );  }catch( Throwable e ){ e.printStackTrace(); }
+			}
+		}
+		
+		return( count );
+	}
+	
+	private void
+	processPendingOps()
+	{
+		List<registration>	deferred = null;
+		
+		Object obj;
+		
+		while(( obj = pending_ops.poll()) != null ){
+			
+			if ( obj instanceof registration ){
+				
+				registration reg = (registration)obj;
+				
+				if ( reg.cancelled ){
+					
+					continue;
+				}
+				
+				Throwable failure;
+				
+				if ( reg.channel.isOpen()){
+				
+					try{
+						SelectionKey key = reg.channel.keyFor( selector );
+						
+						if ( key != null && !key.isValid()){
+							
+								// cancelled key still awaiting deregistration by the next select
+							
+							if ( deferred == null ){
+								
+								deferred = new ArrayList<registration>();
+							}
+							
+							deferred.add( reg );
+							
+							continue;
+						}
+						
+						reg.armed = true;
+						
+						if ( key == null ){
+							
+							key = reg.channel.register( selector, INTEREST_OP, reg );
+							
+						}else{
+							
+							key.attach( reg );
+							
+							if ( key.interestOps() != INTEREST_OP ){
+								
+								key.interestOps( INTEREST_OP );
+								
+								interest_op_changes++;
+							}
+						}
+						
+						reg.key = key;
+						
+						continue;
+						
+					}catch( Throwable e ){
+						
+						Debug.printStackTrace( e );
+						
+						failure = e;
+					}
+				}else{
+					
+					failure = new Throwable( "select registration: channel is closed" );
+				}
+				
+				registrations.remove( reg.channel, reg );
+				
+				reg.cancelled = true;
+				
+				try{
+					parent.selectFailure( reg.listener, reg.channel, reg.attachment, failure );
+					
+				}catch( Throwable e ){
+					
+					Debug.printStackTrace( e );
+				}
+			}else{
+				
+				AbstractSelectableChannel channel = (AbstractSelectableChannel)obj;
+				
+					// re-registered since the cancel, the registration will re-use the key
+				
+				if ( registrations.containsKey( channel )){
+					
+					continue;
+				}
+				
+				try{
+					SelectionKey key = channel.keyFor( selector );
+					
+					if ( key != null ){
+						
+						key.cancel();
+					}
+				}catch( Throwable e ){
+					
+					Debug.printStackTrace( e );
+				}
+			}
+		}
+		
+		if ( deferred != null ){
+			
+			pending_ops.addAll( deferred );
+		}
+	}
+	
+	private void
+	processRearms()
+	{
+		registration reg;
+		
+		while(( reg = rearm_queue.poll()) != null ){
+			
+			reg.rearm_queued.set( false );
+			
+				// a registration that hasn't been applied yet is armed when it is
+			
+			if ( reg.cancelled || reg.armed || reg.paused || reg.key == null ){
+				
+				continue;
+			}
+			
+			reg.armed = true;
+			
+			try{
+				reg.key.interestOps( INTEREST_OP );
+				
+				interest_op_changes++;
+				
+			}catch( CancelledKeyException e ){
+			}
+		}
+	}
+	
+	private void
+	disarm(
+		registration	reg,
+		SelectionKey	key )
+	{
+		reg.armed = false;
+		
+		try{
+			key.interestOps( 0 );
+			
+			interest_op_changes++;
+			
+		}catch( CancelledKeyException e ){
+			
+			return;
+		}
+		
+			// resumed while we were disarming and saw us still armed
+		
+		if ( !reg.paused && reg.rearm_queued.compareAndSet( false, true )){
+			
+			rearm_queue.add( reg );
+		}
+	}
+	
+	private void
+	nonProgress(
+		registration	reg )
+	{
+		reg.non_progress_count++;
+		
+		boolean	loopback_connection = false;
+		
+		if ( INTEREST_OP != VirtualChannelSelector.OP_ACCEPT ){
+			
+			InetAddress address = ((SocketChannel)reg.channel).socket().getInetAddress();
+			
+			if ( address != null ){
+				
+				loopback_connection = address.isLoopbackAddress();
+			}
+		}
+		
+		int	limit;
+		
+		if ( loopback_connection ){
+			
+			limit = 10000;
+			
+		}else{
+			
+			limit = 1000;
+			
+			if ( 	reg.non_progress_count %100 == 0 || 
+					( reg.non_progress_count == 10 && INTEREST_OP != VirtualChannelSelector.OP_WRITE )){
+				
+				Debug.out( 
+					"VirtualChannelSelector: No progress for op " + INTEREST_OP + 
+					": listener = " + reg.listener.getClass() + 
+					", count = " + reg.non_progress_count +
+					", socket: open = " + reg.channel.isOpen() + 
+					(INTEREST_OP==VirtualChannelSelector.OP_ACCEPT?"":
+						(", connected = " + ((SocketChannel)reg.channel).isConnected())));
+			}
+		}
+		
+		if ( reg.non_progress_count == limit ){
+			
+			Debug.out( "No progress for " + reg.non_progress_count + ", closing connection" );
+			
+			try{
+				reg.channel.close();
+				
+			}catch( Throwable e ){
+				
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	public void
+	destroy()
+	{
+		destroyed = true;
+		
+		super.destroy();
+	}
+	
+	protected void 
+	closeExistingSelector() 
+	{
+		for ( SelectionKey key: selector.keys()){
+			
+			registration reg = (registration)key.attachment();
+			
+			if ( reg != null && !reg.cancelled ){
+				
+				reg.cancelled = true;
+				
+				parent.selectFailure( reg.listener, reg.channel, reg.attachment, new Throwable( "selector destroyed" ));
+			}
+		}
+		
+		registrations.clear();
+		
+		try{
+			selector.close();
+			
+			AEDiagnostics.log( "seltrace", "Edge selector destroyed for '" + parent.getName() + "'" );
+			
+		}catch( Throwable t ){
+			
+			t.printStackTrace();
+		}
+	}
+	
+	private static class
+	registration
+	{
+		private final AbstractSelectableChannel								channel;
+		private final VirtualChannelSelector.VirtualAbstractSelectorListener	listener;
+		private final Object												attachment;
+		
+		private final AtomicBoolean	rearm_queued = new AtomicBoolean();
+		
+			// paused/armed: logical interest as requested by the owner vs the op actually set on the key
+		
+		private volatile boolean	paused;
+		private volatile boolean	armed;
+		private volatile boolean	cancelled;
+		
+		private SelectionKey	key;
+		
+		private int		non_progress_count;
+		private long	last_select_success_time;
+		
+		private
+		registration(
+			AbstractSelectableChannel								_channel,
+			VirtualChannelSelector.VirtualAbstractSelectorListener	_listener,
+			Object													_attachment )
+		{
+			channel		= _channel;
+			listener	= _listener;
+			attachment	= _attachment;
+			
+			last_select_success_time	= SystemTime.getCurrentTime();
+		}
+	}
+}
@@ -564,7 +564,9 @@ ResourceDownloaderURLImpl
 					
 				}
 			};
-					
+		
+		t.setVirtual( true );
+		
 		t.start();
 	}
 
@@ -26,7 +26,7 @@ import java.nio.ByteBuffer;
 /**
  * SHA-1 message digest class.
  */
-public final class SHA1 {
+public final class SHA1 implements SHA1Engine {
 
 	private int h0,h1,h2,h3,h4;
 	private ByteBuffer finalBuffer;
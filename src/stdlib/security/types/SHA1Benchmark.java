@@ -0,0 +1,110 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package stdlib.security.types;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+
+/**
+ * Throughput comparison of the SHA-1 engines over heap and direct buffers
+ * for piece sizes from 16 KiB to 16 MiB.
+ * <p>
+ * Usage: SHA1Benchmark [seconds per case]
+ */
+public class SHA1Benchmark {
+
+	private static final int	MIN_SIZE	= 16*1024;
+	private static final int	MAX_SIZE	= 16*1024*1024;
+
+	public static void
+	main(
+		String[]	args )
+	{
+		long	millis_per_case = args.length>0?Long.parseLong( args[0] )*1000:2000;
+
+		String[]	engines = { SHA1EngineFactory.ENGINE_JAVA, SHA1EngineFactory.ENGINE_JDK };
+
+		System.out.println( "selected engine: " + SHA1EngineFactory.getEngineName());
+		System.out.println( "engine\tbuffer\tsize\tMB/sec" );
+
+		Random	r = new Random();
+
+		byte[]	data = new byte[MAX_SIZE];
+
+		r.nextBytes( data );
+
+		ByteBuffer	heap 	= ByteBuffer.wrap( data );
+		ByteBuffer	direct	= ByteBuffer.allocateDirect( MAX_SIZE );
+
+		direct.put( data );
+		direct.clear();
+
+		for ( String name : engines ){
+
+			SHA1Hasher	hasher = new SHA1Hasher( SHA1EngineFactory.create( name ));
+
+				// warm up so the JIT has compiled (or intrinsified) the compression function
+
+			run( hasher, heap, MIN_SIZE, 500 );
+			run( hasher, direct, MIN_SIZE, 500 );
+
+			for ( int size=MIN_SIZE;size<=MAX_SIZE;size*=2 ){
+
+				for ( ByteBuffer buffer: new ByteBuffer[]{ heap, direct }){
+
+					double	rate = run( hasher, buffer, size, millis_per_case );
+
+					System.out.println( 
+							name + "\t" + (buffer.isDirect()?"direct":"heap") + "\t" + 
+							(size/1024) + "K\t" + String.format( "%.1f", rate ));
+				}
+			}
+		}
+	}
+
+	private static double
+	run(
+		SHA1Hasher		hasher,
+		ByteBuffer		buffer,
+		int				size,
+		long			millis )
+	{
+		buffer.limit( size );
+		buffer.position( 0 );
+
+		long	bytes	= 0;
+		long	start	= System.nanoTime();
+		long	end		= start + millis*1000000L;
+		long	now;
+
+		do{
+			hasher.calculateHash( buffer );
+
+			bytes += size;
+
+			now = System.nanoTime();
+
+		}while( now < end );
+
+		buffer.clear();
+
+		return((double)bytes*1000000000L/(now-start)/(1024*1024));
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package stdlib.security.types;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * SHA-1 message digest backend used by SHA1Hasher.
+ * Implementations must leave the position of buffers passed to update() unchanged.
+ */
+public interface SHA1Engine {
+
+  /**
+   * Resets the engine to initial state for a new message digest calculation.
+   */
+  public void reset();
+
+  /**
+   * Starts or continues a SHA-1 message digest calculation.
+   * Only the remaining bytes of the given ByteBuffer are used.
+   * @param buffer input data
+   */
+  public void update( ByteBuffer buffer );
+
+  /**
+   * Finishes the SHA-1 message digest calculation.
+   * @return 20-byte hash result
+   */
+  public byte[] digest();
+
+  /**
+   * Performs a final update from the given buffer, then completes the calculation.
+   * @param buffer input data
+   * @return 20-byte hash result
+   */
+  public byte[] digest( ByteBuffer buffer );
+
+  /**
+   * Save the current digest state.
+   */
+  public void saveState();
+
+  /**
+   * Restore the digest to its previously-saved state.
+   */
+  public void restoreState();
+}
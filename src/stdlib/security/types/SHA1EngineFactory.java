@@ -0,0 +1,201 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package stdlib.security.types;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * Chooses the SHA-1 backend used by SHA1Hasher.
+ * <p>
+ * The choice is made once, on first use, by verifying the JDK MessageDigest
+ * against the pure-Java SHA1 and then timing both over a piece-sized buffer.
+ * It can be forced with -Dazureus.sha1.engine=jdk|java.
+ */
+public final class SHA1EngineFactory {
+
+	public static final String	ENGINE_JDK	= "jdk";
+	public static final String	ENGINE_JAVA	= "java";
+
+	private static final int	BENCH_SIZE		= 256*1024;
+	private static final int	BENCH_ROUNDS	= 8;
+
+	private static final boolean	use_jdk;
+
+	static{
+		String	forced = System.getProperty( "azureus.sha1.engine", "auto" );
+
+		if ( forced.equals( ENGINE_JAVA )){
+
+			use_jdk	= false;
+
+		}else if ( forced.equals( ENGINE_JDK )){
+
+			use_jdk = jdkUsable();
+
+		}else{
+
+			use_jdk = jdkUsable() && jdkFaster();
+		}
+	}
+
+
+	/**
+	 * @return a new engine of the selected type
+	 */
+	public static SHA1Engine create() {
+		if ( use_jdk ){
+
+			try{
+				return( new SHA1JDK());
+
+			}catch( Throwable e ){
+			}
+		}
+
+		return( new SHA1());
+	}
+
+
+	/**
+	 * Create an engine of a specific type, regardless of the startup selection.
+	 * @param name ENGINE_JDK or ENGINE_JAVA
+	 * @return new engine
+	 */
+	public static SHA1Engine create( String name ) {
+		if ( name.equals( ENGINE_JDK )){
+
+			try{
+				return( new SHA1JDK());
+
+			}catch( Throwable e ){
+
+				throw( new UnsupportedOperationException( "JDK SHA-1 unavailable", e ));
+			}
+		}
+
+		return( new SHA1());
+	}
+
+
+	/**
+	 * @return name of the engine that create() returns
+	 */
+	public static String getEngineName() {
+		return( use_jdk?ENGINE_JDK:ENGINE_JAVA );
+	}
+
+
+	private static boolean jdkUsable() {
+		try{
+			SHA1Engine	jdk 	= new SHA1JDK();
+			SHA1Engine	java	= new SHA1();
+
+			Random	r = new Random();
+
+			for ( int len : new int[]{ 0, 1, 55, 56, 63, 64, 65, 1000, 16*1024 + 7 }){
+
+				byte[]	data = new byte[len];
+
+				r.nextBytes( data );
+
+				ByteBuffer	direct = ByteBuffer.allocateDirect( len );
+
+				direct.put( data );
+				direct.flip();
+
+				jdk.reset();
+				java.reset();
+
+				if ( 	!Arrays.equals( jdk.digest( direct ), java.digest( ByteBuffer.wrap( data ))) ||
+						direct.position() != 0 ){
+
+					return( false );
+				}
+			}
+
+				// save/restore is used for incremental piece hashing so must work too
+
+			byte[]	data = new byte[100];
+
+			r.nextBytes( data );
+
+			jdk.reset();
+			java.reset();
+
+			jdk.update( ByteBuffer.wrap( data, 0, 50 ));
+			java.update( ByteBuffer.wrap( data, 0, 50 ));
+
+			jdk.saveState();
+			java.saveState();
+
+			jdk.digest( ByteBuffer.wrap( data, 50, 10 ));
+			java.digest( ByteBuffer.wrap( data, 50, 10 ));
+
+			jdk.restoreState();
+			java.restoreState();
+
+			return( Arrays.equals( jdk.digest( ByteBuffer.wrap( data, 50, 50 )), java.digest( ByteBuffer.wrap( data, 50, 50 ))));
+
+		}catch( Throwable e ){
+
+			return( false );
+		}
+	}
+
+
+	private static boolean jdkFaster() {
+		try{
+			ByteBuffer	buffer = ByteBuffer.allocateDirect( BENCH_SIZE );
+
+			SHA1Engine	jdk		= new SHA1JDK();
+			SHA1Engine	java	= new SHA1();
+
+			long	jdk_best	= Long.MAX_VALUE;
+			long	java_best	= Long.MAX_VALUE;
+
+				// interleave the runs and take the best of each so that a single
+				// GC or scheduling hiccup doesn't decide the result
+
+			for ( int i=0;i<BENCH_ROUNDS;i++){
+
+				jdk_best	= Math.min( jdk_best, time( jdk, buffer ));
+				java_best	= Math.min( java_best, time( java, buffer ));
+			}
+
+			return( jdk_best <= java_best );
+
+		}catch( Throwable e ){
+
+			return( false );
+		}
+	}
+
+
+	static long time( SHA1Engine engine, ByteBuffer buffer ) {
+		long	start = System.nanoTime();
+
+		engine.reset();
+		engine.digest( buffer );
+
+		return( System.nanoTime() - start );
+	}
+}
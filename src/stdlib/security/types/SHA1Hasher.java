@@ -27,14 +27,23 @@ import java.nio.ByteBuffer;
  * SHA-1 hasher utility frontend.
  */
 public final class SHA1Hasher {
-  private final SHA1 sha1;
+  private final SHA1Engine sha1;
 
 
   /**
-   * Create a new SHA1Hasher instance
+   * Create a new SHA1Hasher instance using the engine selected by SHA1EngineFactory
    */
   public SHA1Hasher() {
-    sha1 = new SHA1();
+    sha1 = SHA1EngineFactory.create();
+  }
+
+
+  /**
+   * Create a new SHA1Hasher instance over a specific engine
+   * @param engine SHA-1 backend
+   */
+  public SHA1Hasher( SHA1Engine engine ) {
+    sha1 = engine;
   }
 
   
@@ -0,0 +1,95 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package stdlib.security.types;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * SHA-1 engine backed by the JDK's MessageDigest. On recent JVMs the digest
+ * compression function is intrinsified (SHA-NI/ARMv8 crypto where available).
+ */
+public final class SHA1JDK implements SHA1Engine {
+
+	private MessageDigest	digest;
+	private MessageDigest	saved;
+
+
+	/**
+	 * Create a new JDK backed SHA-1 engine.
+	 * @throws NoSuchAlgorithmException if the runtime provides no SHA-1 digest
+	 */
+	public SHA1JDK() throws NoSuchAlgorithmException {
+		digest = MessageDigest.getInstance( "SHA-1" );
+	}
+
+	public void reset() {
+		digest.reset();
+	}
+
+	public void update(ByteBuffer buffer) {
+			// MessageDigest consumes the buffer, callers expect it to be left unchanged
+
+		int position = buffer.position();
+
+		digest.update( buffer );
+
+		buffer.position( position );
+	}
+
+	public byte[] digest() {
+		return digest.digest();
+	}
+
+	public byte[] digest(ByteBuffer buffer) {
+		update( buffer );
+		return digest();
+	}
+
+	public void saveState() {
+		try{
+			saved = (MessageDigest)digest.clone();
+
+		}catch( CloneNotSupportedException e ){
+
+			throw( new UnsupportedOperationException( "SHA-1 digest state can't be saved", e ));
+		}
+	}
+
+	public void restoreState() {
+		if ( saved == null ){
+
+			digest.reset();
+
+			return;
+		}
+
+		try{
+				// keep the saved copy intact so the state can be restored more than once
+
+			digest = (MessageDigest)saved.clone();
+
+		}catch( CloneNotSupportedException e ){
+
+			throw( new UnsupportedOperationException( "SHA-1 digest state can't be restored", e ));
+		}
+	}
+}
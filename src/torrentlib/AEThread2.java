@@ -48,9 +48,11 @@ AEThread2
 	
 	
 	private threadWrapper	wrapper;
+	private Thread			virtual_thread;
 	
 	private String				name;
 	private boolean				daemon;
+	private boolean				virtual;
 	private int					priority	= Thread.NORM_PRIORITY;
 	private volatile JoinLock	lock		= new JoinLock();
 	
@@ -70,6 +72,20 @@ AEThread2
 		daemon		= _daemon;
 	}
 	
+	/**
+	 * Hint that this thread spends most of its time blocked on I/O. If virtual threads are available
+	 * and enabled (see AEVirtualThreads) a daemon thread is then run on a virtual thread rather than
+	 * a pooled platform one. Must be set before start(); priority and debug are not supported on
+	 * virtual threads
+	 */
+	
+	public void
+	setVirtual(
+		boolean		_virtual )
+	{
+		virtual	= _virtual;
+	}
+	
 	/**
 	 * multiple invocations of start() are possible, but discouraged if combined
 	 * with other thread operations such as interrupt() or join()
@@ -89,6 +105,55 @@ AEThread2
 				newLock = currentLock;
 		}
 		
+		if ( virtual && daemon ){
+			
+			final JoinLock	run_lock = newLock;
+			
+			Thread t = 
+				AEVirtualThreads.newThread(
+					name,
+					new Runnable()
+					{
+						public void
+						run()
+						{
+								// unlike threadWrapper don't hold the lock while running as that would
+								// pin the virtual thread to its carrier
+							
+							try{
+								AEThread2.this.run();
+								
+							}catch( Throwable e ){
+								
+								DebugLight.printStackTrace(e);
+								
+							}finally{
+								
+								synchronized( run_lock ){
+									
+									run_lock.released = true;
+									
+									run_lock.notifyAll();
+								}
+							}
+						}
+					});
+			
+			if ( t != null ){
+				
+				wrapper			= null;
+				virtual_thread	= t;
+				
+				AEThread.setOurThread( t );
+				
+				t.start();
+				
+				return;
+			}
+		}
+		
+		virtual_thread = null;
+		
 		if ( daemon ){
 			
 			synchronized( daemon_threads ){
@@ -143,6 +208,10 @@ AEThread2
 		if ( wrapper != null ){
 			
 			wrapper.setName( name );
+			
+		}else if ( virtual_thread != null ){
+			
+			virtual_thread.setName( name );
 		}
 	}
 	
@@ -155,7 +224,11 @@ AEThread2
 	public void
 	interrupt()
 	{
-		if ( wrapper == null ){
+		if ( virtual_thread != null ){
+			
+			virtual_thread.interrupt();
+			
+		}else if ( wrapper == null ){
 			
 			throw new IllegalStateException( "Interrupted before started!" );
 			
@@ -167,19 +240,31 @@ AEThread2
 	
 	public boolean
 	isAlive() {
+		if ( virtual_thread != null ){
+			return virtual_thread.isAlive();
+		}
 		return wrapper == null ? false : wrapper.isAlive();
 	}
 	
 	public boolean
 	isCurrentThread()
 	{
+		if ( virtual_thread != null ){
+			
+			return( virtual_thread == Thread.currentThread());
+		}
+		
 		return( wrapper == Thread.currentThread());
 	}
 	
 	public String
 	toString()
 	{
-		if ( wrapper == null ){
+		if ( virtual_thread != null ){
+			
+			return( virtual_thread.toString());
+			
+		}else if ( wrapper == null ){
 			
 			return( name + " [daemon=" + daemon + ",priority=" + priority + "]" );
 			
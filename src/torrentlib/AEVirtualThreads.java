@@ -0,0 +1,107 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package torrentlib;
+
+import java.lang.reflect.Method;
+
+/**
+ * Access to JDK virtual threads (Java 21+) via reflection so that we still build and run on older JVMs.
+ * Use is opt-in via the "az.thread.virtual.enable" system property and is intended for threads that 
+ * spend their lives blocked on network I/O (tracker announces and scrapes, URL downloads) - see 
+ * AEThread2.setVirtual and ThreadPool.setVirtualThreads
+ */
+
+public class 
+AEVirtualThreads 
+{
+	private static final Method	of_virtual;
+	private static final Method	builder_name;
+	private static final Method	builder_unstarted;
+	
+	private static final boolean	AVAILABLE;
+	private static final boolean	ENABLED;
+	
+	static{
+		Method	ov	= null;
+		Method	bn	= null;
+		Method	bu	= null;
+		
+		try{
+			ov = Thread.class.getMethod( "ofVirtual" );
+			
+			Class<?> builder = Class.forName( "java.lang.Thread$Builder" );
+			
+			bn = builder.getMethod( "name", String.class );
+			bu = builder.getMethod( "unstarted", Runnable.class );
+			
+				// 19/20 have the API as a preview feature and throw unless preview is enabled
+			
+			bu.invoke( ov.invoke( null ), new Runnable(){ public void run(){}});
+			
+		}catch( Throwable e ){
+			
+			ov = null;
+		}
+		
+		of_virtual			= ov;
+		builder_name		= bn;
+		builder_unstarted	= bu;
+		
+		AVAILABLE	= ov != null;
+		ENABLED		= AVAILABLE && System.getProperty( "az.thread.virtual.enable", "false" ).equals( "true" );
+	}
+	
+	public static boolean
+	isAvailable()
+	{
+		return( AVAILABLE );
+	}
+	
+	public static boolean
+	isEnabled()
+	{
+		return( ENABLED );
+	}
+	
+		/**
+		 * @return an unstarted virtual thread, null if virtual threads aren't enabled
+		 */
+	
+	public static Thread
+	newThread(
+		String		name,
+		Runnable	target )
+	{
+		if ( !ENABLED ){
+			
+			return( null );
+		}
+		
+		try{
+			Object builder = builder_name.invoke( of_virtual.invoke( null ), name );
+			
+			return((Thread)builder_unstarted.invoke( builder, target ));
+			
+		}catch( Throwable e ){
+			
+			DebugLight.printStackTrace( e );
+			
+			return( null );
+		}
+	}
+}
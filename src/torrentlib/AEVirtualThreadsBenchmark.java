@@ -0,0 +1,255 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package torrentlib;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates announces for many active torrents: each one runs a blocking HTTP GET on its own 
+ * AEThread2 (marked virtual) against a local tracker that holds every request for HOLD_MILLIS.
+ * Reports peak live platform threads, RSS and heap, so run it twice to compare
+ * <pre>
+ *   java AEVirtualThreadsBenchmark [torrents]
+ *   java -Daz.thread.virtual.enable=true AEVirtualThreadsBenchmark [torrents]	(needs Java 21+)
+ * </pre>
+ */
+
+public class 
+AEVirtualThreadsBenchmark 
+{
+	private static final int	HOLD_MILLIS	= 3000;
+	
+	private static final byte[]	RESPONSE	= 
+		( "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 27\r\nConnection: close\r\n\r\nd8:intervali1800e5:peers0:e" ).getBytes();
+	
+	public static void
+	main(
+		String[]	args )
+	
+		throws Exception
+	{
+		int	torrents = args.length>0?Integer.parseInt( args[0] ):5000;
+		
+		final ServerSocketChannel	server = ServerSocketChannel.open();
+		
+		server.socket().bind( new InetSocketAddress( InetAddress.getByName( "127.0.0.1" ), 0 ), 4096 );
+		
+		final LinkedList<Object[]>	held = new LinkedList<Object[]>();
+		
+		Thread acceptor = 
+			new Thread( "acceptor" )
+			{
+				public void
+				run()
+				{
+					try{
+						while( true ){
+							
+							SocketChannel sc = server.accept();
+							
+							synchronized( held ){
+								
+								held.add( new Object[]{ sc, System.currentTimeMillis() + HOLD_MILLIS });
+								
+								held.notify();
+							}
+						}
+					}catch( Throwable e ){
+					}
+				}
+			};
+			
+		acceptor.setDaemon( true );
+		
+		acceptor.start();
+		
+		Thread responder = 
+			new Thread( "responder" )
+			{
+				public void
+				run()
+				{
+					ByteBuffer	request = ByteBuffer.allocate( 4096 );
+					
+					try{
+						while( true ){
+							
+							Object[]	entry;
+							
+							synchronized( held ){
+								
+								while( held.isEmpty()){
+									
+									held.wait();
+								}
+								
+								entry = held.removeFirst();
+							}
+							
+							long	wait = (Long)entry[1] - System.currentTimeMillis();
+							
+							if ( wait > 0 ){
+								
+								Thread.sleep( wait );
+							}
+							
+							SocketChannel	sc = (SocketChannel)entry[0];
+							
+							try{
+								sc.configureBlocking( false );
+								
+								request.clear();
+								
+								sc.read( request );
+								
+								sc.configureBlocking( true );
+								
+								sc.write( ByteBuffer.wrap( RESPONSE ));
+								
+								sc.socket().shutdownOutput();
+								
+							}catch( Throwable e ){
+								
+							}finally{
+								
+								sc.close();
+							}
+						}
+					}catch( Throwable e ){
+					}
+				}
+			};
+			
+		responder.setDaemon( true );
+		
+		responder.start();
+		
+		final URL url = new URL( "http://127.0.0.1:" + server.socket().getLocalPort() + "/announce?info_hash=x&port=6881&compact=1" );
+		
+		final AtomicInteger	ok		= new AtomicInteger();
+		final AtomicInteger	failed	= new AtomicInteger();
+		
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		
+		mx.resetPeakThreadCount();
+		
+		long	start = System.currentTimeMillis();
+		
+		AEThread2[]	announcers = new AEThread2[ torrents ];
+		
+		for ( int i=0;i<torrents;i++ ){
+			
+			announcers[i] = 
+				new AEThread2( "announce " + i, true )
+				{
+					public void
+					run()
+					{
+						try{
+							HttpURLConnection	con = (HttpURLConnection)url.openConnection();
+							
+							con.setConnectTimeout( 60*1000 );
+							con.setReadTimeout( 60*1000 );
+							
+							InputStream	is = con.getInputStream();
+							
+							try{
+								while( is.read() != -1 );
+								
+							}finally{
+								
+								is.close();
+							}
+							
+							ok.incrementAndGet();
+							
+						}catch( Throwable e ){
+							
+							failed.incrementAndGet();
+						}
+					}
+				};
+				
+			announcers[i].setVirtual( true );
+			
+			announcers[i].start();
+		}
+		
+			// sample while all requests are being held by the tracker
+		
+		Thread.sleep( HOLD_MILLIS/2 );
+		
+		long	rss		= getProcStatus( "VmRSS" );
+		long	heap	= Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		
+		for ( AEThread2 a: announcers ){
+			
+			a.join();
+		}
+		
+		long	elapsed = System.currentTimeMillis() - start;
+		
+		System.out.println( 
+			"java=" + System.getProperty( "java.version" ) + ", virtual=" + AEVirtualThreads.isEnabled() + 
+			", torrents=" + torrents + ": ok=" + ok.get() + ", failed=" + failed.get() + ", elapsed=" + elapsed + "ms" +
+			", peak platform threads=" + mx.getPeakThreadCount() + 
+			", rss=" + ( rss/1024 ) + "MB, peak rss=" + ( getProcStatus( "VmHWM" )/1024 ) + "MB, heap used=" + ( heap/(1024*1024)) + "MB" );
+		
+		server.close();
+	}
+	
+	private static long
+	getProcStatus(
+		String		key )
+	{
+		try{
+			BufferedReader	br = new BufferedReader( new FileReader( "/proc/self/status" ));
+			
+			try{
+				String	line;
+				
+				while(( line = br.readLine()) != null ){
+					
+					if ( line.startsWith( key + ":" )){
+						
+						return( Long.parseLong( line.substring( key.length() + 1 ).replace( "kB", "" ).trim()));
+					}
+				}
+			}finally{
+				
+				br.close();
+			}
+		}catch( Throwable e ){
+		}
+		
+		return( -1 );
+	}
+}
@@ -25,28 +25,45 @@ package torrentlib;
  */
 
 import stdlib.security.types.SHA1Hasher;
-import java.util.*;
 import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import controller.config.COConfigurationManager;
 import controller.config.ParameterListener;
 
-public class 
-ConcurrentHasher 
+public class
+ConcurrentHasher
 {
-	
-	protected static ConcurrentHasher		singleton	= new ConcurrentHasher();
-	
-	protected int			processor_num;
-	
-	protected List<ConcurrentHasherRequest>				requests		= new LinkedList<ConcurrentHasherRequest>();
-	
-	protected List<SHA1Hasher>	hashers			= new ArrayList<SHA1Hasher>();
-	
-	protected AESemaphore		request_sem		= new AESemaphore("ConcHashReqQ");
-	protected AESemaphore		scheduler_sem	= new AESemaphore("ConcHashSched");
-		
-	protected AEMonitor			requests_mon	= new AEMonitor( "ConcurrentHasher:R" );
+		/**
+		 * streaming (RTA) pieces, always serviced first
+		 */
+
+	public static final int	PRIORITY_HIGH		= 0;
+
+		/**
+		 * downloaded pieces and complete rechecks
+		 */
+
+	public static final int	PRIORITY_NORMAL		= 1;
+
+		/**
+		 * background scans, subject to the "friendly hashing" setting
+		 */
+
+	public static final int	PRIORITY_LOW		= 2;
+
+	private static final int	PRIORITY_COUNT	= 3;
+
+	private static final Object	DEFAULT_OWNER	= new Object();
+
+	private static final long	CPU_CHECK_PERIOD	= 60*1000;
 
 	private static boolean friendly_hashing;
 
@@ -55,154 +72,191 @@ ConcurrentHasher
 
 		COConfigurationManager.addParameterListener( "diskmanager.friendly.hashchecking", new ParameterListener() {
 			public void parameterChanged( String  str ) {
-				friendly_hashing = COConfigurationManager.getBooleanParameter( "diskmanager.friendly.hashchecking" );        
+				friendly_hashing = COConfigurationManager.getBooleanParameter( "diskmanager.friendly.hashchecking" );
+
+				singleton.resize();
 			}
 		});
+
+		SimpleTimer.addPeriodicEvent(
+			"ConcurrentHasher:cpucheck",
+			CPU_CHECK_PERIOD,
+			new TimerEventPerformer()
+			{
+				public void
+				perform(
+					TimerEvent event )
+				{
+					singleton.resize();
+				}
+			});
 	}
 
+	protected static ConcurrentHasher		singleton	= new ConcurrentHasher();
+
+	protected volatile int			processor_num;
+
+		// per-download queues, one ring of downloads with work per priority. Workers take
+		// one request from the download at the head of the ring and re-queue it at the tail
+		// so that a multi-terabyte recheck can't starve other downloads
+
+	private final ConcurrentHashMap<Object,OwnerQueue>	owners	= new ConcurrentHashMap<Object,OwnerQueue>();
+
+	private final Queue<OwnerQueue>[]	rings;
+
+	private final AtomicInteger[]	pending			= new AtomicInteger[PRIORITY_COUNT];
+	private final AtomicInteger		active_workers	= new AtomicInteger();
+	private final AtomicInteger		active_low		= new AtomicInteger();
+
+		// limits the number of buffers queued for hashing, as before callers block
+		// in addRequest when the hasher is saturated. high priority (RTA) requests don't
+		// take a permit so they are never held up behind queued normal/low ones - they are
+		// few and the caller needs them promptly
+
+	private final ResizableSemaphore	request_permits	= new ResizableSemaphore();
+
+	private volatile ForkJoinPool	pool;
+	private volatile int			parallelism;
+	private volatile int			low_limit;
+
+	private final ThreadLocal<SHA1Hasher>	hashers	=
+		new ThreadLocal<SHA1Hasher>()
+		{
+			protected SHA1Hasher
+			initialValue()
+			{
+				return( new SHA1Hasher());
+			}
+		};
+
+	private final Runnable	worker	=
+		new Runnable()
+		{
+			public void
+			run()
+			{
+				runWorker();
+			}
+		};
 
-	
 	public static ConcurrentHasher
 	getSingleton()
 	{
 		return( singleton );
 	}
-	
+
 	public static boolean
 	concurrentHashingAvailable()
 	{
 		return( getSingleton().processor_num > 1 );
 	}
-	
+
+	@SuppressWarnings("unchecked")
 	protected
 	ConcurrentHasher()
 	{
-			// TODO: number of processors can apparently change....
-			// so periodically grab num + reserve/release as necessary
-		
-		processor_num = Runtime.getRuntime().availableProcessors();
-		
+		rings = new Queue[PRIORITY_COUNT];
+
+		for (int i=0;i<PRIORITY_COUNT;i++){
+
+			rings[i] 	= new ConcurrentLinkedQueue<OwnerQueue>();
+			pending[i]	= new AtomicInteger();
+		}
+
+		resize();
+	}
+
+		/**
+		 * re-reads the processor count and friendly hashing setting and adjusts the
+		 * worker pool to suit. Work already submitted to a replaced pool completes there.
+		 */
+
+	protected synchronized void
+	resize()
+	{
+		int	cpus = Runtime.getRuntime().availableProcessors();
+
 			// just in case :P
-		
-		if ( processor_num <= 0 ){
-			
-			processor_num	= 1;
+
+		if ( cpus <= 0 ){
+
+			cpus = 1;
 		}
-			
+
 			// one more that proc num seems to improve performance ;)
-		
-		for (int i=0;i<processor_num + 1;i++){
-			
-			scheduler_sem.release();
+
+		int	new_parallelism = cpus + 1;
+
+			// friendly hashing leaves half of the cores for everything else when
+			// only background scans are running
+
+		low_limit = friendly_hashing?Math.max( 1, cpus/2 ):new_parallelism;
+
+		if ( pool != null && cpus == processor_num ){
+
+			startWorkers();
+
+			return;
 		}
-	
-		final ThreadPool pool	= new ThreadPool( "ConcurrentHasher", 64 );
-		
-		new AEThread2("ConcurrentHasher:scheduler", true )
-		{
-			public void
-			run()
-			{
-				while(true){
-					
-						// get a request to run
-					
-					request_sem.reserve();
-					
-						// now extract the request
-					
-					final ConcurrentHasherRequest	req;
-					final SHA1Hasher				hasher;
-					
-					try{
-						requests_mon.enter();
-						
-						req	= requests.remove(0);
-						
-						if ( hashers.size() == 0 ){
-							
-							hasher = new SHA1Hasher();
-							
-						}else{
-							
-							hasher	= hashers.remove( hashers.size()-1 );
-						}
-					}finally{
-						
-						requests_mon.exit();
+
+		processor_num = cpus;
+
+		int	permit_delta = new_parallelism - parallelism;
+
+		parallelism = new_parallelism;
+
+		if ( permit_delta > 0 ){
+
+			request_permits.release( permit_delta );
+
+		}else if ( permit_delta < 0 ){
+
+			request_permits.reducePermits( -permit_delta );
+		}
+
+		ForkJoinPool	old_pool = pool;
+
+		pool = new ForkJoinPool(
+				new_parallelism,
+				new ForkJoinPool.ForkJoinWorkerThreadFactory()
+				{
+					public ForkJoinWorkerThread
+					newThread(
+						ForkJoinPool p )
+					{
+						ForkJoinWorkerThread	thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( p );
+
+						thread.setName( "ConcurrentHasher:" + thread.getPoolIndex());
+
+						thread.setDaemon( true );
+
+						return( thread );
 					}
-					
-					pool.run( 
-							new AERunnable()
-							{
-								public void
-								runSupport()
-								{
-									try{											
-										req.run( hasher );
-										
-									}finally{
-										try{
-											requests_mon.enter();
-
-											hashers.add( hasher );
-										
-										}finally{
-											
-											requests_mon.exit();
-										}
-
-										if ( friendly_hashing && req.isLowPriority()){
-				
-											try{  
-												int	size = req.getSize();
-												
-													// pieces can be several MB so delay based on size
-												
-												final int max = 250;
-												final int min = 50;
-												
-												size = size/1024;	// in K
-												
-												size = size/8;
-												
-													// 4MB -> 500
-													// 1MB -> 125
-												
-												size = Math.min( size, max );
-												size = Math.max( size, min );
-												
-												Thread.sleep( size );
-					
-											}catch( Throwable e ){ 
-					
-												Debug.printStackTrace( e ); 
-											}
-										}
-									       		
-										scheduler_sem.release();
-									}
-								}
-							});
-												
-				}
-			}
-		}.start();
+				},
+				null,
+				true );
+
+		if ( old_pool != null ){
+
+			old_pool.shutdown();
+		}
+
+		startWorkers();
 	}
-	
+
 		/**
 		 * add a synchronous request - on return it will have run (or been cancelled)
 	     */
-	
+
 	public ConcurrentHasherRequest
 	addRequest(
 		ByteBuffer		buffer )
 	{
 		return( addRequest( buffer, null, false ));
 	}
-	
+
 		/**
-		 * Add an asynchronous request if listener supplied, sync otherwise 
+		 * Add an asynchronous request if listener supplied, sync otherwise
 		 * @param buffer
 		 * @param priority
 		 * @param listener
@@ -210,78 +264,444 @@ ConcurrentHasher
 		 * taken into account
 		 * @return
 		 */
-	
+
 	public ConcurrentHasherRequest
 	addRequest(
 		ByteBuffer							buffer,
 		ConcurrentHasherRequestListener		listener,
 		boolean								low_priorty )
 	{
-		final ConcurrentHasherRequest	req = new ConcurrentHasherRequest( this, buffer, listener, low_priorty );
-			
+		return( addRequest( buffer, listener, low_priorty?PRIORITY_LOW:PRIORITY_NORMAL, null ));
+	}
+
+		/**
+		 * Add a request on behalf of an owner (typically a download). Requests of equal priority
+		 * from different owners are serviced round-robin.
+		 * @param buffer
+		 * @param listener
+		 * @param priority one of the PRIORITY_ constants
+		 * @param owner null for the shared default queue
+		 * @return
+		 */
+
+	public ConcurrentHasherRequest
+	addRequest(
+		ByteBuffer							buffer,
+		ConcurrentHasherRequestListener		listener,
+		int									priority,
+		Object								owner )
+	{
+		if ( priority < PRIORITY_HIGH || priority > PRIORITY_LOW ){
+
+			priority = PRIORITY_NORMAL;
+		}
+
+		final ConcurrentHasherRequest	req = new ConcurrentHasherRequest( this, buffer, listener, priority );
+
 			// get permission to run a request
-		
-
-		// test code to force synchronous checking
-		//SHA1Hasher	hasher = new SHA1Hasher();
-		//req.run( hasher );
-		
-		scheduler_sem.reserve();
-		
+
+		if ( priority != PRIORITY_HIGH ){
+
+			request_permits.acquireUninterruptibly();
+		}
+
+		if ( owner == null ){
+
+			owner = DEFAULT_OWNER;
+		}
+
+		OwnerQueue	queue = owners.get( owner );
+
+		if ( queue == null ){
+
+			OwnerQueue	new_queue	= new OwnerQueue( owner );
+
+			queue = owners.putIfAbsent( owner, new_queue );
+
+			if ( queue == null ){
+
+				queue = new_queue;
+			}
+		}
+
+			// an OwnerQueue that has just been dropped from the map as idle still works,
+			// the next request for its owner simply gets a fresh one
+
+		pending[priority].incrementAndGet();
+
+		queue.add( req, priority );
+
+		startWorkers();
+
+		return( req );
+	}
+
+	public int
+	getParallelism()
+	{
+		return( parallelism );
+	}
+
+	public int
+	getQueueSize()
+	{
+		int	total = 0;
+
+		for ( AtomicInteger p: pending ){
+
+			total += p.get();
+		}
+
+		return( total );
+	}
+
+		/**
+		 * true if there is queued work that a new worker would be allowed to take
+		 */
+
+	private boolean
+	hasRunnableWork()
+	{
+		return( pending[PRIORITY_HIGH].get() > 0 ||
+				pending[PRIORITY_NORMAL].get() > 0 ||
+				( pending[PRIORITY_LOW].get() > 0 && active_low.get() < low_limit ));
+	}
+
+		/**
+		 * claims a worker slot if one is free and there is work for it
+		 */
+
+	private boolean
+	claimWorker()
+	{
+		while( hasRunnableWork()){
+
+			int	active = active_workers.get();
+
+			if ( active >= parallelism ){
+
+				return( false );
+			}
+
+			if ( active_workers.compareAndSet( active, active+1 )){
+
+				return( true );
+			}
+		}
+
+		return( false );
+	}
+
+	private void
+	startWorkers()
+	{
+		if ( claimWorker()){
+
+			try{
+				pool.execute( worker );
+
+			}catch( Throwable e ){
+
+					// pool replaced under us, the resize will restart workers
+
+				active_workers.decrementAndGet();
+			}
+		}
+	}
+
+	private void
+	runWorker()
+	{
+		SHA1Hasher	hasher = hashers.get();
+
+		while( true ){
+
+			while( true ){
+
+				ConcurrentHasherRequest	req = next();
+
+				if ( req == null ){
+
+					break;
+				}
+
+				runRequest( req, hasher );
+			}
+
+			active_workers.decrementAndGet();
+
+				// re-check for work added between our last poll and the decrement,
+				// otherwise it could sit there with no worker to pick it up
+
+			if ( !claimWorker()){
+
+				return;
+			}
+		}
+	}
+
+	private ConcurrentHasherRequest
+	next()
+	{
+		for (int priority=PRIORITY_HIGH;priority<PRIORITY_COUNT;priority++){
+
+			if ( priority == PRIORITY_LOW ){
+
+				int	low = active_low.incrementAndGet();
+
+				if ( low > low_limit ){
+
+					active_low.decrementAndGet();
+
+					return( null );
+				}
+			}
+
+			Queue<OwnerQueue>	ring = rings[priority];
+
+			OwnerQueue	queue;
+
+			while(( queue = ring.poll()) != null ){
+
+				ConcurrentHasherRequest	req = queue.poll( priority );
+
+				if ( req != null ){
+
+					pending[priority].decrementAndGet();
+
+					return( req );
+				}
+			}
+
+			if ( priority == PRIORITY_LOW ){
+
+				active_low.decrementAndGet();
+			}
+		}
+
+		return( null );
+	}
+
+	private void
+	runRequest(
+		ConcurrentHasherRequest		req,
+		SHA1Hasher					hasher )
+	{
 		try{
-			requests_mon.enter();
-			
-			requests.add( req );
-		
+			req.run( hasher );
+
+		}catch( Throwable e ){
+
+			Debug.printStackTrace( e );
+
 		}finally{
-			
-			requests_mon.exit();
+
+			int	priority = req.getPriority();
+
+			if ( priority == PRIORITY_LOW ){
+
+				try{
+					if ( friendly_hashing ){
+
+						int	size = req.getSize();
+
+							// pieces can be several MB so delay based on size
+
+						final int max = 250;
+						final int min = 50;
+
+						size = size/1024;	// in K
+
+						size = size/8;
+
+							// 4MB -> 500
+							// 1MB -> 125
+
+						size = Math.min( size, max );
+						size = Math.max( size, min );
+
+						Thread.sleep( size );
+					}
+				}catch( Throwable e ){
+
+					Debug.printStackTrace( e );
+
+				}finally{
+
+					active_low.decrementAndGet();
+				}
+			}
+
+				// as before, the permit is only given back once any friendly hashing
+				// delay is over
+
+			if ( priority != PRIORITY_HIGH ){
+
+				request_permits.release();
+			}
+		}
+	}
+
+	private class
+	OwnerQueue
+	{
+		private final Object	owner;
+
+		@SuppressWarnings("unchecked")
+		private final Queue<ConcurrentHasherRequest>[]	queues	= new Queue[PRIORITY_COUNT];
+
+		private final AtomicBoolean[]	queued	= new AtomicBoolean[PRIORITY_COUNT];
+
+		private
+		OwnerQueue(
+			Object		_owner )
+		{
+			owner	= _owner;
+
+			for (int i=0;i<PRIORITY_COUNT;i++){
+
+				queues[i]	= new ConcurrentLinkedQueue<ConcurrentHasherRequest>();
+				queued[i]	= new AtomicBoolean();
+			}
+		}
+
+		private void
+		add(
+			ConcurrentHasherRequest		req,
+			int							priority )
+		{
+			queues[priority].add( req );
+
+			if ( queued[priority].compareAndSet( false, true )){
+
+				rings[priority].add( this );
+			}
+		}
+
+		private ConcurrentHasherRequest
+		poll(
+			int		priority )
+		{
+			Queue<ConcurrentHasherRequest>	queue = queues[priority];
+
+			queued[priority].set( false );
+
+			ConcurrentHasherRequest	req = queue.poll();
+
+			if ( !queue.isEmpty()){
+
+				if ( queued[priority].compareAndSet( false, true )){
+
+					rings[priority].add( this );
+				}
+			}else if ( req != null ){
+
+				boolean	idle = true;
+
+				for ( Queue<ConcurrentHasherRequest> q: queues ){
+
+					if ( !q.isEmpty()){
+
+						idle = false;
+
+						break;
+					}
+				}
+
+				if ( idle ){
+
+					owners.remove( owner, this );
+				}
+			}
+
+			return( req );
+		}
+	}
+
+	private static class
+	ResizableSemaphore
+		extends Semaphore
+	{
+		private static final long serialVersionUID = 1L;
+
+		private
+		ResizableSemaphore()
+		{
+			super( 0 );
+		}
+
+		protected void
+		reducePermits(
+			int reduction )
+		{
+			super.reducePermits( reduction );
 		}
-		
-		request_sem.release();
-		
-		return( req );
 	}
-	
+
 	public static void
 	main(
 		String[]	args )
 	{
-		/*
 		final ConcurrentHasher	hasher = ConcurrentHasher.getSingleton();
-		
-		int		threads			= 1;
-		
-		final long	buffer_size		= 128*1024;
-		final long	loop			= 1024;
-		
-		for (int i=0;i<threads;i++){
-						
-			new Thread()
+
+		int		owners			= 4;
+
+		final int	buffer_size		= 1024*1024;
+		final int	loop			= 256;
+
+		final AESemaphore	sem = new AESemaphore( "ConcurrentHasher:test" );
+
+		long	start = SystemTime.getMonotonousTime();
+
+		for (int i=0;i<owners;i++){
+
+			final Object	owner = new Object();
+
+			new AEThread2( "ConcurrentHasher:test", true )
 			{
 				public void
 				run()
 				{
-					// SHA1Hasher sha1_hasher = new SHA1Hasher();
-					
-					long	start = System.currentTimeMillis();
-					//ByteBuffer	buffer = ByteBuffer.allocate((int)buffer_size);
-					
+					ByteBuffer	buffer = ByteBuffer.allocateDirect( buffer_size );
+
+					final AESemaphore	done = new AESemaphore( "ConcurrentHasher:test:done" );
+
 					for (int j=0;j<loop;j++){
-						
-												
-						//sha1_hasher.calculateHash( buffer );
-						//ConcurrentHasherRequest req = hasher.addRequest( buffer );
+
+						hasher.addRequest(
+							buffer.duplicate(),
+							new ConcurrentHasherRequestListener()
+							{
+								public void
+								complete(
+									ConcurrentHasherRequest request )
+								{
+									done.release();
+								}
+							},
+							PRIORITY_NORMAL,
+							owner );
 					}
-					
-					long	elapsed = System.currentTimeMillis() - start;
-					
-					System.out.println( 
-							"elapsed = " + elapsed + ", " + 
-							((loop*buffer_size*1000)/elapsed) + " B/sec" );
+
+					for (int j=0;j<loop;j++){
+
+						done.reserve();
+					}
+
+					sem.release();
 				}
 			}.start();
 		}
-		*/
+
+		for (int i=0;i<owners;i++){
+
+			sem.reserve();
+		}
+
+		long	elapsed = Math.max( 1, SystemTime.getMonotonousTime() - start );
+
+		System.out.println(
+				"parallelism = " + hasher.getParallelism() + ", elapsed = " + elapsed + ", " +
+				(((long)owners*loop*buffer_size*1000)/elapsed/(1024*1024)) + " MB/sec" );
 	}
 }
@@ -39,7 +39,7 @@ ConcurrentHasherRequest
 	private int									size;
 	private byte[]								result;
 	private boolean								cancelled;
-	private boolean								low_priority;
+	private int									priority;
 	
 	private AESemaphore	sem = new AESemaphore("ConcHashRequest");
 	
@@ -48,12 +48,12 @@ ConcurrentHasherRequest
 		ConcurrentHasher					_concurrent_hasher,
 		ByteBuffer							_buffer,
 		ConcurrentHasherRequestListener		_listener,
-		boolean								_low_priorty )
+		int									_priority )
 	{
 		concurrent_hasher	= _concurrent_hasher;
 		buffer				= _buffer;
 		listener			= _listener;
-		low_priority		= _low_priorty;
+		priority			= _priority;
 		
 		size				= buffer.limit() - buffer.position();
 	}
@@ -121,7 +121,13 @@ ConcurrentHasherRequest
 	public boolean
 	isLowPriority()
 	{
-		return( low_priority );
+		return( priority == ConcurrentHasher.PRIORITY_LOW );
+	}
+	
+	public int
+	getPriority()
+	{
+		return( priority );
 	}
 	
 	protected void
@@ -0,0 +1,80 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package torrentlib;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A buffer whose contents are also available as a region of a file. Transports that
+ * can move bytes straight from the file to the socket (FileChannel.transferTo) use the
+ * region and advance the buffer's position to match, others just use the buffer. 
+ */
+
+public class 
+DirectByteBufferFileRegion
+	extends DirectByteBuffer
+{
+	private final FileChannel	channel;
+	private final long			base_offset;
+	
+	public
+	DirectByteBufferFileRegion(
+		byte			_allocator,
+		ByteBuffer		_buffer,
+		FileChannel		_channel,
+		long			_offset )
+	{
+		super( _allocator, _buffer, null );
+		
+		channel		= _channel;
+		
+			// file offset of buffer position 0
+		
+		base_offset	= _offset - _buffer.position();
+	}
+	
+	public FileChannel
+	getFileChannel()
+	{
+		return( channel );
+	}
+	
+		/**
+		 * @return offset within the file of the buffer's current position
+		 */
+	
+	public long
+	getFileOffset(
+		byte		subsystem )
+	{
+		return( base_offset + position( subsystem ));
+	}
+	
+		/**
+		 * The file may be closed while the buffer is still queued, in which case the
+		 * buffer's (mapped) contents must be used instead
+		 */
+	
+	public boolean
+	isTransferable()
+	{
+		return( channel.isOpen());
+	}
+}
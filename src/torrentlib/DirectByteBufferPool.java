@@ -37,7 +37,14 @@ DirectByteBufferPool
 			Debug.outNoStack( "******** USE_HEAP_BUFFERS MODE DEPRECATED ********" );
 		}
 			
-		impl = new DirectByteBufferPoolReal();
+		if ( System.getProperty( "az.dbb.pool.slab", "0" ).equals( "1" )){
+			
+			impl = new DirectByteBufferPoolSlab();
+			
+		}else{
+			
+			impl = new DirectByteBufferPoolReal();
+		}
 	}
 	
 
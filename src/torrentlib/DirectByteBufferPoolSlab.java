@@ -0,0 +1,680 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package torrentlib;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import torrentlib.disk.DiskManager;
+import torrentlib.util.logging.LogAlert;
+import torrentlib.util.logging.Logger;
+
+/**
+ * Slab allocator alternative to DirectByteBufferPoolReal, enabled with -Daz.dbb.pool.slab=1.
+ * <p>
+ * Buffers up to SLAB_MAX_CLASS are carved out of a few large direct arenas and are never handed back
+ * to the VM, so steady state traffic (16K block buffers in particular) never depends on the garbage
+ * collector to reclaim direct memory. Free buffers sit in lock-free per size-class lists fronted by
+ * small per-thread caches. Larger buffers are allocated individually and a bounded number kept.
+ */
+
+public class 
+DirectByteBufferPoolSlab 
+	extends DirectByteBufferPool
+	implements AEDiagnosticsEvidenceGenerator
+{
+	private static final int	ARENA_SIZE		= 1024*1024*Integer.getInteger( "az.dbb.slab.arena.mb", 16 ).intValue();
+	private static final int	MAX_ARENAS		= Integer.getInteger( "az.dbb.slab.arenas", 8 ).intValue();
+	
+	private static final int	MIN_CLASS		= 16;
+	private static final int	SLAB_MAX_CLASS	= 1024*1024;
+	private static final int	MIN_SLAB_SIZE	= 16*1024;
+	private static final int	MAX_SLAB_SIZE	= 1024*1024;
+	private static final int	SLAB_ENTRIES	= 16;
+	
+	private static final int	THREAD_CACHE_MAX_CLASS	= 64*1024;
+	private static final int	THREAD_CACHE_BYTES		= 256*1024;
+	private static final int	THREAD_CACHE_MAX_ENTRIES	= 32;
+	
+	private static final long	LARGE_FREE_BYTES	= 32*1024*1024;
+	
+	private static final int	STATS_PERIOD		= 10*1000;
+	
+	private static final int[]	SIZES;
+	
+	static{
+		List	sizes = new ArrayList();
+		
+		for ( int size=MIN_CLASS;size<=DirectByteBufferPoolReal.MAX_SIZE;size<<=1 ){
+			
+			sizes.add( new Integer( size ));
+			
+				// protocol header + block, see DirectByteBufferPoolReal
+			
+			if ( size == DiskManager.BLOCK_SIZE ){
+				
+				sizes.add( new Integer( size + 128 ));
+			}
+		}
+		
+		SIZES = new int[sizes.size()];
+		
+		for (int i=0;i<SIZES.length;i++){
+			
+			SIZES[i] = ((Integer)sizes.get(i)).intValue();
+		}
+	}
+	
+	private final sizeClass[]	classes = new sizeClass[ SIZES.length ];
+	
+	private final Object		arena_lock	= new Object();
+	
+	private ByteBuffer			current_arena;
+	private int					arena_count;
+	private long				arena_bytes;
+	private long				overflow_bytes;
+	private long				arena_waste;
+	
+	private final ConcurrentLinkedQueue	thread_caches	= new ConcurrentLinkedQueue();
+	
+	private final ThreadLocal	thread_cache = 
+		new ThreadLocal()
+		{
+			protected Object
+			initialValue()
+			{
+				threadCache	cache = new threadCache( Thread.currentThread());
+				
+				thread_caches.add( cache );
+				
+				return( cache );
+			}
+		};
+		
+	protected
+	DirectByteBufferPoolSlab()
+	{
+		for (int i=0;i<classes.length;i++){
+			
+			classes[i] = new sizeClass( i, SIZES[i] );
+		}
+		
+		SimpleTimer.addPeriodicEvent(
+			"DirectBB:slabStats",
+			STATS_PERIOD,
+			new TimerEventPerformer()
+			{
+				public void 
+				perform( 
+					TimerEvent ev ) 
+				{
+					reapThreadCaches();
+					
+					for (int i=0;i<classes.length;i++){
+						
+						classes[i].updateRate( STATS_PERIOD );
+					}
+				}
+			});
+		
+		AEDiagnostics.addEvidenceGenerator( this );
+	}
+	
+	protected DirectByteBuffer 
+	getBufferSupport(
+		byte	allocator,
+		int 	length )
+	{
+		if ( length < 1 ){
+			
+			Debug.out("requested length [" +length+ "] < 1");
+			
+			return( null );
+		}
+		
+		if ( length > DirectByteBufferPoolReal.MAX_SIZE ){
+			
+			Debug.out("requested length [" +length+ "] > MAX_SIZE [" +DirectByteBufferPoolReal.MAX_SIZE+ "]");
+			
+			return( null );
+		}
+		
+		sizeClass	sc = classes[ getClassIndex( length )];
+		
+		ByteBuffer	buffer = null;
+		
+		threadCache	cache = null;
+		
+		if ( sc.thread_cache_max > 0 ){
+			
+			cache = (threadCache)thread_cache.get();
+			
+			buffer = cache.get( sc.index );
+		}
+		
+		if ( buffer == null ){
+			
+			buffer = (ByteBuffer)sc.free.pollFirst();
+			
+			if ( buffer != null ){
+				
+				sc.free_count.decrementAndGet();
+				
+			}else{
+				
+				buffer = sc.allocate();
+			}
+		}
+		
+		if ( cache != null ){
+			
+			cache.allocs[ sc.index ]++;
+			
+		}else{
+			
+			sc.shared_allocs.incrementAndGet();
+		}
+		
+		buffer.clear();
+		
+		buffer.limit( length );
+		
+		return( new slabDBB( allocator, buffer, this, sc.index ));
+	}
+	
+	protected void 
+	returnBufferSupport(
+		DirectByteBuffer	dbb )
+	{
+		if ( !( dbb instanceof slabDBB )){
+			
+			Debug.out( "Invalid buffer given; not from slab pool" );
+			
+			return;
+		}
+		
+		ByteBuffer	buffer = dbb.getBufferInternal();
+		
+		if ( buffer == null ){
+			
+			Debug.out( "Returned dbb has null delegate" );
+			
+			throw( new RuntimeException( "Returned dbb has null delegate" ));
+		}
+		
+		sizeClass	sc = classes[((slabDBB)dbb).getClassIndex()];
+		
+		if ( sc.thread_cache_max > 0 ){
+			
+			threadCache	cache = (threadCache)thread_cache.get();
+			
+			if ( cache.put( sc.index, buffer )){
+				
+				return;
+			}
+		}
+		
+		sc.release( buffer );
+	}
+	
+	private int
+	getClassIndex(
+		int		length )
+	{
+		for (int i=0;i<SIZES.length;i++){
+			
+			if ( length <= SIZES[i] ){
+				
+				return( i );
+			}
+		}
+		
+		return( SIZES.length - 1 );
+	}
+	
+		/**
+		 * carves a slab for the class from the current arena, opening a new arena if there's room and
+		 * allocating the slab on its own once the arenas are exhausted
+		 */
+	
+	private ByteBuffer
+	allocateSlab(
+		int		slab_size )
+	{
+		synchronized( arena_lock ){
+			
+			if ( current_arena == null || current_arena.remaining() < slab_size ){
+				
+				if ( arena_count < MAX_ARENAS && slab_size <= ARENA_SIZE ){
+					
+					if ( current_arena != null ){
+						
+						arena_waste += current_arena.remaining();
+					}
+					
+					current_arena = allocateDirect( ARENA_SIZE );
+					
+					arena_count++;
+					
+					arena_bytes += ARENA_SIZE;
+					
+				}else{
+				
+					overflow_bytes += slab_size;
+					
+					return( allocateDirect( slab_size ));
+				}
+			}
+			
+			int	pos = current_arena.position();
+			
+			current_arena.limit( pos + slab_size );
+			
+			ByteBuffer	slab = current_arena.slice();
+			
+			current_arena.limit( current_arena.capacity());
+			
+			current_arena.position( pos + slab_size );
+			
+			return( slab );
+		}
+	}
+	
+	private ByteBuffer
+	allocateDirect(
+		int		size )
+	{
+		try{
+			return( ByteBuffer.allocateDirect( size ));
+			
+		}catch( OutOfMemoryError e ){
+			
+				// nothing we hold can be given back, it is all either in use or cached for reuse
+			
+			String msg = "Memory allocation failed: Out of direct memory space.\n"
+		             + "To fix: Use the -XX:MaxDirectMemorySize=512m command line option.";
+			
+			Debug.out( msg );
+			
+			Logger.log(new LogAlert(LogAlert.UNREPEATABLE, LogAlert.AT_ERROR, msg));
+			
+			throw( e );
+		}
+	}
+	
+	private void
+	reapThreadCaches()
+	{
+		Iterator	it = thread_caches.iterator();
+		
+		while( it.hasNext()){
+			
+			threadCache	cache = (threadCache)it.next();
+			
+			Thread	owner = (Thread)cache.owner.get();
+			
+				// isAlive returning false guarantees visibility of the dead thread's updates
+			
+			if ( owner == null || !owner.isAlive()){
+				
+				it.remove();
+				
+				cache.drain();
+			}
+		}
+	}
+	
+		/**
+		 * @return per class { size, allocated buffers, live, free, allocations/sec }
+		 */
+	
+	public long[][]
+	getClassStats()
+	{
+		long[][]	result = new long[classes.length][];
+		
+		long[]	cached	= new long[classes.length];
+		long[]	allocs	= new long[classes.length];
+		
+		Iterator	it = thread_caches.iterator();
+		
+		while( it.hasNext()){
+			
+			threadCache	cache = (threadCache)it.next();
+			
+			for (int i=0;i<classes.length;i++){
+				
+				cached[i]	+= cache.counts[i];
+				allocs[i]	+= cache.allocs[i];
+			}
+		}
+		
+		for (int i=0;i<classes.length;i++){
+			
+			sizeClass	sc = classes[i];
+			
+			long	total	= sc.total.get();
+			long	free	= sc.free_count.get() + cached[i];
+			
+			result[i] = new long[]{ sc.size, total, total - free, free, sc.rate };
+		}
+		
+		return( result );
+	}
+	
+	public void
+	generate(
+		IndentWriter		writer )
+	{
+		writer.println( "DirectByteBuffer slab pool" );
+			
+		try{
+			writer.indent();
+			
+			synchronized( arena_lock ){
+				
+				writer.println( 
+					"arenas=" + arena_count + ", arena_bytes=" + arena_bytes + 
+					", overflow_bytes=" + overflow_bytes + ", waste=" + arena_waste +
+					", thread_caches=" + thread_caches.size());
+			}
+			
+			long[][]	stats = getClassStats();
+			
+			for (int i=0;i<stats.length;i++){
+				
+				long[]	s = stats[i];
+				
+				if ( s[1] == 0 ){
+					
+					continue;
+				}
+				
+				writer.println( "[" + s[0] + "] total=" + s[1] + ", live=" + s[2] + ", free=" + s[3] + ", alloc/sec=" + s[4] );
+			}
+		}finally{
+			
+			writer.exdent();
+		}
+	}
+	
+	private class
+	sizeClass
+	{
+		private final int		index;
+		private final int		size;
+		private final int		slab_size;
+		private final int		thread_cache_max;
+		
+		private final ConcurrentLinkedDeque	free	= new ConcurrentLinkedDeque();
+		
+		private final AtomicInteger	free_count		= new AtomicInteger();
+		private final AtomicLong	total			= new AtomicLong();
+		private final AtomicLong	shared_allocs	= new AtomicLong();
+		
+			// allocations from threads that have since died
+		
+		private final AtomicLong	retired_allocs	= new AtomicLong();
+		
+		private long	last_allocs;
+		private long	rate;
+		
+		protected
+		sizeClass(
+			int		_index,
+			int		_size )
+		{
+			index	= _index;
+			size	= _size;
+			
+			if ( size <= SLAB_MAX_CLASS ){
+				
+				slab_size = Math.max( size, Math.min( MAX_SLAB_SIZE, Math.max( MIN_SLAB_SIZE, size*SLAB_ENTRIES )) / size * size );
+				
+			}else{
+				
+				slab_size = 0;
+			}
+			
+			if ( size <= THREAD_CACHE_MAX_CLASS ){
+				
+				thread_cache_max = Math.max( 2, Math.min( THREAD_CACHE_MAX_ENTRIES, THREAD_CACHE_BYTES/size ));
+				
+			}else{
+				
+				thread_cache_max = 0;
+			}
+		}
+		
+		protected ByteBuffer
+		allocate()
+		{
+			if ( slab_size == 0 ){
+				
+				total.incrementAndGet();
+				
+				return( allocateDirect( size ));
+			}
+			
+			ByteBuffer	slab = allocateSlab( slab_size );
+			
+			int	entries = slab_size / size;
+			
+			total.addAndGet( entries );
+			
+			ByteBuffer	result = null;
+			
+			for (int i=0;i<entries;i++){
+				
+				slab.limit((i+1)*size );
+				slab.position( i*size );
+				
+				ByteBuffer	buffer = slab.slice();
+				
+				if ( result == null ){
+					
+					result = buffer;
+					
+				}else{
+					
+					free_count.incrementAndGet();
+					
+					free.addFirst( buffer );
+				}
+			}
+			
+			return( result );
+		}
+		
+		protected void
+		release(
+			ByteBuffer	buffer )
+		{
+			if ( slab_size == 0 && ( free_count.get() + 1 ) * (long)size > LARGE_FREE_BYTES ){
+				
+					// large buffers aren't slab backed so excess ones can be left to the GC
+				
+				total.decrementAndGet();
+				
+				return;
+			}
+			
+			free_count.incrementAndGet();
+			
+			free.addFirst( buffer );
+		}
+		
+		protected void
+		updateRate(
+			int		period )
+		{
+			long	allocs = shared_allocs.get() + retired_allocs.get();
+			
+			Iterator	it = thread_caches.iterator();
+			
+			while( it.hasNext()){
+				
+				allocs += ((threadCache)it.next()).allocs[index];
+			}
+			
+			rate = Math.max( 0, allocs - last_allocs ) * 1000 / period;
+			
+			last_allocs = allocs;
+		}
+	}
+	
+		/**
+		 * only ever touched by its owning thread, other than racy stats reads and the final drain
+		 * once the owner has died
+		 */
+	
+	private class
+	threadCache
+	{
+		private final WeakReference	owner;
+		
+		private final ByteBuffer[][]	stacks	= new ByteBuffer[ classes.length ][];
+		private final int[]				counts	= new int[ classes.length ];
+		private final long[]			allocs	= new long[ classes.length ];
+		
+		protected
+		threadCache(
+			Thread		_owner )
+		{
+			owner = new WeakReference( _owner );
+			
+			for (int i=0;i<classes.length;i++){
+				
+				stacks[i] = new ByteBuffer[ classes[i].thread_cache_max ];
+			}
+		}
+		
+		protected ByteBuffer
+		get(
+			int		index )
+		{
+			int	count = counts[index];
+			
+			if ( count == 0 ){
+				
+				return( null );
+			}
+			
+			ByteBuffer[]	stack = stacks[index];
+			
+			ByteBuffer	result = stack[--count];
+			
+			stack[count] = null;
+			
+			counts[index] = count;
+			
+			return( result );
+		}
+		
+		protected boolean
+		put(
+			int			index,
+			ByteBuffer	buffer )
+		{
+			ByteBuffer[]	stack = stacks[index];
+			
+			int	count = counts[index];
+			
+			if ( count == stack.length ){
+				
+					// full, hand half back so a thread that only frees doesn't bounce on every call
+				
+				sizeClass	sc = classes[index];
+				
+				int	keep = stack.length / 2;
+				
+				for (int i=keep;i<count;i++){
+					
+					sc.release( stack[i] );
+					
+					stack[i] = null;
+				}
+				
+				count = keep;
+			}
+			
+			stack[count++] = buffer;
+			
+			counts[index] = count;
+			
+			return( true );
+		}
+		
+		protected void
+		drain()
+		{
+			for (int i=0;i<classes.length;i++){
+				
+				sizeClass	sc = classes[i];
+				
+				ByteBuffer[]	stack = stacks[i];
+				
+				for (int j=0;j<counts[i];j++){
+					
+					sc.release( stack[j] );
+					
+					stack[j] = null;
+				}
+				
+				counts[i] = 0;
+				
+				sc.retired_allocs.addAndGet( allocs[i] );
+				
+				allocs[i] = 0;
+			}
+		}
+	}
+	
+	private static class
+	slabDBB
+		extends DirectByteBuffer
+	{
+		private final int	class_index;
+		
+		protected
+		slabDBB(
+			byte					_allocator,
+			ByteBuffer				_buffer,
+			DirectByteBufferPool	_pool,
+			int						_class_index )
+		{
+			super( _allocator, _buffer, _pool );
+			
+			class_index	= _class_index;
+		}
+		
+		protected int
+		getClassIndex()
+		{
+			return( class_index );
+		}
+	}
+}
@@ -141,6 +141,7 @@ ThreadPool
 	
 	private int			thread_priority	= Thread.NORM_PRIORITY;
 	private boolean		warn_when_full;
+	private boolean		virtual_threads;
 
 	private long		task_total;
 	private long		task_total_last;
@@ -175,7 +176,7 @@ ThreadPool
 	generateEvidence(
 		IndentWriter		writer )
 	{
-		writer.println( name + ": max=" + max_size +",qwf=" + queue_when_full + ",queue=" + task_queue.size() + ",busy=" + busy.size() + ",total=" + task_total + ":" + DisplayFormatters.formatDecimal(task_average.getDoubleAverage(),2) + "/sec");
+		writer.println( name + ": max=" + max_size +",qwf=" + queue_when_full + ",queue=" + task_queue.size() + ",busy=" + busy.size() + (virtual_threads&&AEVirtualThreads.isEnabled()?",virtual":"") + ",total=" + task_total + ":" + DisplayFormatters.formatDecimal(task_average.getDoubleAverage(),2) + "/sec");
 	}
 	
 	public void
@@ -190,6 +191,17 @@ ThreadPool
 		log_cpu	= true;
 	}
 	
+		/**
+		 * Workers will run on virtual threads if enabled, see AEVirtualThreads. For pools whose tasks
+		 * mostly block on network I/O
+		 */
+	
+	public void
+	setVirtualThreads()
+	{
+		virtual_threads	= true;
+	}
+	
 	public int
 	getMaxThreads()
 	{
@@ -653,6 +665,7 @@ ThreadPool
 			super(NAME_THREADS?(name + " " + (thread_name_index)):name,true);
 			thread_name_index++;
 			setPriority(thread_priority);
+			setVirtual(virtual_threads);
 			worker_name = this.getName();
 			start();
 		}
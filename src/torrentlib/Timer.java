@@ -45,7 +45,7 @@ public class Timer
 	
 	private ThreadPool	thread_pool;
 		
-	private Set<TimerEvent>	events = new TreeSet<TimerEvent>();
+	private final TimerWheel	events = new TimerWheel( SystemTime.getCurrentTime());
 		
 	private long	unique_id_next	= 0;
 	
@@ -112,8 +112,25 @@ public class Timer
 	public synchronized List<TimerEvent>
 	getEvents()
 	{
-		return( new ArrayList<TimerEvent>( events ));
+		List<TimerEvent>	res = events.getEvents();
+		
+		Collections.sort( res );
+		
+		return( res );
+	}
+	
+	public synchronized int
+	getEventCount()
+	{
+		return( events.size());
 	}
+	
+	public synchronized int
+	getPeakEventCount()
+	{
+		return( events.getPeakSize());
+	}
+	
 	public void
 	setLogging(
 		boolean	_log )
@@ -125,6 +142,12 @@ public class Timer
 		return log;
 	}
 	
+	public void
+	setVirtualThreads()
+	{
+		thread_pool.setVirtualThreads();
+	}
+	
 	public void
 	setWarnWhenFull()
 	{
@@ -143,7 +166,7 @@ public class Timer
 		while( true ){
 			
 			try{
-				TimerEvent	event_to_run = null;
+				List<TimerEvent>	events_to_run;
 				
 				synchronized(this){
 					
@@ -152,7 +175,7 @@ public class Timer
 						break;
 					}
 					
-					if ( events.isEmpty()){
+					if ( events.size() == 0 ){
 						
 						// System.out.println( "waiting forever" );
 						
@@ -169,9 +192,7 @@ public class Timer
 						
 						long	now = SystemTime.getCurrentTime();
 						
-						TimerEvent	next_event = (TimerEvent)events.iterator().next();
-						
-						long	when = next_event.getWhen();
+						long	when = events.getNextExpiry();
 						
 						long	delay = when - now;
 						
@@ -196,45 +217,37 @@ public class Timer
 						break;
 					}
 					
-					if ( events.isEmpty()){
+					if ( events.size() == 0 ){
 						
 						continue;
 					}
 					
-					long	now = SystemTime.getCurrentTime();
+						// everything that's due is taken in one go and dispatched outside of the monitor
 					
-					Iterator<TimerEvent>	it = events.iterator();
+					events_to_run = events.expire( SystemTime.getCurrentTime());
+					
+					// System.out.println( getName() +": events=" + events.size() + ", to_run=" +  (events_to_run==null?"null":events_to_run.size()));
+				}
+				
+				if ( events_to_run != null ){
 					
-					TimerEvent	next_event = it.next();
+					for ( TimerEvent event_to_run: events_to_run ){
 						
-					long rem = next_event.getWhen() - now;
-																			
-					if ( rem <= SystemTime.TIME_GRANULARITY_MILLIS ){
+						if ( event_to_run.isCancelled()){
 							
-						event_to_run = next_event;
+								// cancelled after being taken from the wheel
 							
-						it.remove();
+							continue;
+						}
 						
-						/*
-						if ( rem < -100 ){
-							
-							System.out.println( "Late scheduling [" + (-rem) + "] of " + event_to_run.getString());
+						event_to_run.setHasRun();
+						
+						if (log) {
+							System.out.println( "running: " + event_to_run.getString() );
 						}
-						*/
-					}
-					
-					// System.out.println( getName() +": events=" + events.size() + ", to_run=" +  (event_to_run==null?"null":event_to_run.getString()));
-				}
-				
-				if ( event_to_run != null ){
-					
-					event_to_run.setHasRun();
-					
-					if (log) {
-						System.out.println( "running: " + event_to_run.getString() );
+						
+						thread_pool.run(event_to_run.getRunnable());
 					}
-					
-					thread_pool.run(event_to_run.getRunnable());
 				}
 				
 			}catch( Throwable e ){
@@ -255,9 +268,7 @@ public class Timer
 			
 			synchronized( this ){
 										
-				Iterator<TimerEvent>	it = events.iterator();
-				
-				List<TimerEvent>	updated_events = new ArrayList<TimerEvent>( events.size());
+				Iterator<TimerEvent>	it = events.getEvents().iterator();
 				
 				while (it.hasNext()){
 					
@@ -303,15 +314,11 @@ public class Timer
 							event.setWhen( new_when );
 						}
 					}
-					
-					updated_events.add( event );
 				}
 														
-					// resort - we have to use an alternative list of events as input because if we just throw the
-					// treeset in the constructor optimises things under the assumption that the original set
-					// was correctly sorted...
+					// re-slot against the new time
 				
-				events = new TreeSet<TimerEvent>( updated_events );
+				events.rebuild( current_time );
 			}
 		}
 	}
@@ -330,7 +337,7 @@ public class Timer
 			
 			synchronized( this ){
 				
-				Iterator<TimerEvent>	it = events.iterator();
+				Iterator<TimerEvent>	it = events.getEvents().iterator();
 				
 				boolean	updated = false;
 								
@@ -370,7 +377,7 @@ public class Timer
 														
 				if ( updated ){
 					
-					events = new TreeSet<TimerEvent>( new ArrayList<TimerEvent>( events ));
+					events.rebuild( current_time );
 				}
 				
 				// must have this notify here as the scheduling code uses the current time to calculate
@@ -389,11 +396,7 @@ public class Timer
 
 		synchronized (this) {
 			
-				// as we're adjusting all events by the same amount the ordering remains valid
-
-			Iterator<TimerEvent> it = events.iterator();
-
-			boolean resort = false;
+			Iterator<TimerEvent> it = events.getEvents().iterator();
 			
 			while (it.hasNext()) {
 
@@ -408,8 +411,6 @@ public class Timer
 
 					// Debug.out( "Ignoring wrap around for " + event.getName());
 					
-					resort = true;
-					
 				}else{
 					
 					// System.out.println( "    adjusted: " + old_when + " -> " + new_when );
@@ -418,10 +419,7 @@ public class Timer
 				}
 			}
 			
-			if ( resort ){
-
-				events = new TreeSet<TimerEvent>( new ArrayList<TimerEvent>( events ));
-			}
+			events.rebuild( SystemTime.getCurrentTime());
 						
 			notify();
 		}
@@ -563,14 +561,11 @@ public class Timer
 	cancelEvent(
 		TimerEvent	event )
 	{
-		if ( events.contains( event )){
-			
-			events.remove( event );
+			// no need to wake the timer thread, if it was waiting for this event it'll just find nothing to do
 		
-			// System.out.println( "event cancelled (" + event.getWhen() + ") - queue = " + events.size());
-	
-			notify();
-		}
+		events.remove( event );
+		
+		// System.out.println( "event cancelled (" + event.getWhen() + ") - queue = " + events.size());
 	}
 	
 	public synchronized void
@@ -612,12 +607,18 @@ public class Timer
 		return( thread_pool.getName());
 	}
 	
+	protected synchronized String
+	getStats()
+	{
+		return( events.getStats());
+	}
+	
 	public synchronized void
 	dump()
 	{
 		System.out.println( "Timer '" + thread_pool.getName() + "': dump" );
 
-		Iterator	it = events.iterator();
+		Iterator	it = getEvents().iterator();
 		
 		while(it.hasNext()){
 			
@@ -652,7 +653,7 @@ public class Timer
 							List	events = timer.getEvents();
 							
 							lines.add(timer.thread_pool.getName() + ", "
-									+ events.size() + " events:");
+									+ events.size() + " events (" + timer.getStats() + "):");
 
 							Iterator it = events.iterator();
 							while (it.hasNext()) {
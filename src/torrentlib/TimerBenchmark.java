@@ -0,0 +1,256 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package torrentlib;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timer benchmarks: add/cancel cost with a large number of pending events against the previous
+ * TreeSet based queue, contended add/cancel from several threads and firing accuracy.
+ * <p>
+ * Usage: TimerBenchmark [pending events] [threads]
+ */
+
+public class 
+TimerBenchmark 
+{
+	public static void
+	main(
+		String[]	args )
+	
+		throws Exception
+	{
+		int	pending = args.length>0?Integer.parseInt( args[0] ):200000;
+		int	threads	= args.length>1?Integer.parseInt( args[1] ):8;
+		
+		for ( int i=0;i<3;i++ ){
+		
+			addCancel( pending );
+		}
+		
+		contended( pending, threads );
+		
+		accuracy( 20000 );
+	}
+	
+	private static final TimerEventPerformer	NULL_PERFORMER = 
+		new TimerEventPerformer()
+		{
+			public void 
+			perform(
+				TimerEvent event ) 
+			{
+			}
+		};
+	
+		/**
+		 * pending events spread over 1s..30min (peer, tracker and DHT timeouts) with churn of
+		 * add + cancel on top, old queue vs wheel
+		 */
+	
+	private static void
+	addCancel(
+		int		pending )
+	{
+		Random	random = new Random( 0 );
+		
+		long	now = SystemTime.getCurrentTime();
+		
+		Timer	timer = new Timer( "bench" );
+		
+		TimerWheel			wheel	= new TimerWheel( now );
+		TreeSet<TimerEvent>	tree	= new TreeSet<TimerEvent>();
+		
+		TimerEvent[]	events = new TimerEvent[ pending ];
+		
+		for ( int i=0;i<pending;i++ ){
+			
+			events[i] = new TimerEvent( timer, i, now, now + 1000 + random.nextInt( 30*60*1000 ), false, NULL_PERFORMER );
+		}
+		
+		long	start = System.nanoTime();
+		
+		for ( TimerEvent e: events ){
+			
+			tree.add( e );
+		}
+		
+		for ( TimerEvent e: events ){
+			
+			tree.remove( e );
+			
+			tree.add( e );
+		}
+		
+		long	tree_ns = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		
+		for ( TimerEvent e: events ){
+			
+			wheel.add( e );
+		}
+		
+		for ( TimerEvent e: events ){
+			
+			wheel.remove( e );
+			
+			wheel.add( e );
+		}
+		
+		long	wheel_ns = System.nanoTime() - start;
+		
+			// clock change handling: old code built a new TreeSet, wheel re-slots in place
+		
+		start = System.nanoTime();
+		
+		tree = new TreeSet<TimerEvent>( new java.util.ArrayList<TimerEvent>( tree ));
+		
+		long	tree_rebuild_ns = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		
+		wheel.rebuild( now );
+		
+		long	wheel_rebuild_ns = System.nanoTime() - start;
+		
+		System.out.println( 
+			"pending=" + pending + ": add+cancel+add ns/event treeset=" + ( tree_ns/pending ) + ", wheel=" + ( wheel_ns/pending ) +
+			"; rebuild ms treeset=" + ( tree_rebuild_ns/1000000 ) + ", wheel=" + ( wheel_rebuild_ns/1000000 ));
+		
+		timer.destroy();
+	}
+	
+	private static void
+	contended(
+		final int	pending,
+		int			num_threads )
+	
+		throws Exception
+	{
+		final Timer	timer = new Timer( "bench", 4 );
+		
+		final Random	random = new Random( 0 );
+		
+		for ( int i=0;i<pending;i++ ){
+			
+			timer.addEvent( SystemTime.getCurrentTime() + 60*1000 + random.nextInt( 30*60*1000 ), NULL_PERFORMER );
+		}
+		
+		final int	ops = 200000;
+		
+		Thread[]	threads = new Thread[ num_threads ];
+		
+		long	start = System.nanoTime();
+		
+		for ( int i=0;i<num_threads;i++ ){
+			
+			final int	seed = i;
+			
+			threads[i] = 
+				new Thread()
+				{
+					public void
+					run()
+					{
+						Random r = new Random( seed );
+						
+						for ( int j=0;j<ops;j++ ){
+							
+							TimerEvent event = timer.addEvent( SystemTime.getCurrentTime() + 1000 + r.nextInt( 60*1000 ), NULL_PERFORMER );
+							
+							event.cancel();
+						}
+					}
+				};
+				
+			threads[i].start();
+		}
+		
+		for ( Thread t: threads ){
+			
+			t.join();
+		}
+		
+		long	elapsed = System.nanoTime() - start;
+		
+		System.out.println( 
+			"contended: threads=" + num_threads + ", pending=" + pending + ": add+cancel ns/op=" + ( elapsed/((long)ops*num_threads)) + 
+			" (" + timer.getStats() + ")" );
+		
+		timer.destroy();
+	}
+	
+	private static void
+	accuracy(
+		int		num )
+	
+		throws Exception
+	{
+		Timer	timer = new Timer( "bench", 4 );
+		
+		final AtomicInteger	fired	= new AtomicInteger();
+		final AtomicInteger	early	= new AtomicInteger();
+		final AtomicLong	late	= new AtomicLong();
+		final AtomicLong	max_late= new AtomicLong();
+		
+		Random	random = new Random( 0 );
+		
+		for ( int i=0;i<num;i++ ){
+			
+			timer.addEvent( 
+				SystemTime.getCurrentTime() + random.nextInt( 5000 ), 
+				new TimerEventPerformer()
+				{
+					public void 
+					perform(
+						TimerEvent event ) 
+					{
+						long	diff = SystemTime.getCurrentTime() - event.getWhen();
+						
+						if ( diff < -SystemTime.TIME_GRANULARITY_MILLIS ){
+							
+							early.incrementAndGet();
+							
+						}else if ( diff > 0 ){
+							
+							late.addAndGet( diff );
+							
+							synchronized( max_late ){
+							
+								max_late.set( Math.max( max_late.get(), diff ));
+							}
+						}
+						
+						fired.incrementAndGet();
+					}
+				});
+		}
+		
+		Thread.sleep( 6000 );
+		
+		System.out.println( 
+			"accuracy: events=" + num + ", fired=" + fired.get() + ", early=" + early.get() + 
+			", mean late=" + ( late.get()/Math.max(1,fired.get())) + "ms, max late=" + max_late.get() + "ms (" + timer.getStats() + ")" );
+		
+		timer.destroy();
+	}
+}
@@ -48,6 +48,13 @@ TimerEvent
 	
 	private long			unique_id	= 1;
 	
+		// owned by TimerWheel under the Timer's monitor, wheel_level is -1 when not scheduled
+	
+	TimerEvent		wheel_prev;
+	TimerEvent		wheel_next;
+	int				wheel_level	= -1;
+	int				wheel_index;
+	
 	protected
 	TimerEvent(
 		Timer					_timer,
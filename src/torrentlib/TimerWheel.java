@@ -0,0 +1,461 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package torrentlib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel holding a Timer's pending events. Adding and cancelling are O(1) (events
+ * are linked into their slot via fields on TimerEvent), expiry hands back everything due in one batch.
+ * Level 0 has 256 slots of TICK_MILLIS, each further level 64 slots covering the whole of the level 
+ * below; events cascade down a level when the level below wraps. Not thread safe, the owning Timer
+ * synchronizes access
+ */
+
+class 
+TimerWheel 
+{
+	protected static final long	TICK_MILLIS	= 10;
+	
+	private static final int	LEVEL0_BITS	= 8;
+	private static final int	LEVELN_BITS	= 6;
+	private static final int	LEVELS		= 5;
+	
+	private static final int	LEVEL0_MASK	= ( 1 << LEVEL0_BITS ) - 1;
+	private static final int	LEVELN_MASK	= ( 1 << LEVELN_BITS ) - 1;
+	
+	private static final long	MAX_DELTA	= 1L << ( LEVEL0_BITS + LEVELN_BITS*( LEVELS-1 ));
+	
+	private final TimerEvent[][]	slots		= new TimerEvent[LEVELS][];
+	private final long[][]			occupied	= new long[LEVELS][];
+	private final int[]				level_count	= new int[LEVELS];
+	
+		// next tick to be processed
+	
+	private long	base_tick;
+	
+	private int		size;
+	
+	private int		peak_size;
+	private long	total_added;
+	private long	total_cancelled;
+	private long	total_expired;
+	private long	total_batches;
+	private int		max_batch;
+	private long	total_cascaded;
+	private long	total_rebuilds;
+	
+	protected
+	TimerWheel(
+		long	now )
+	{
+		for ( int i=0;i<LEVELS;i++ ){
+			
+			int	num = i==0?(1<<LEVEL0_BITS):(1<<LEVELN_BITS);
+			
+			slots[i]	= new TimerEvent[num];
+			occupied[i]	= new long[(num+63)/64];
+		}
+		
+		base_tick = toTick( now );
+	}
+	
+	private static long
+	toTick(
+		long	time )
+	{
+		return( time<0?0:time/TICK_MILLIS );
+	}
+	
+	protected int
+	size()
+	{
+		return( size );
+	}
+	
+	protected void
+	add(
+		TimerEvent	event )
+	{
+		insert( event );
+		
+		size++;
+		
+		total_added++;
+		
+		if ( size > peak_size ){
+			
+			peak_size = size;
+		}
+	}
+	
+	protected boolean
+	remove(
+		TimerEvent	event )
+	{
+		if ( event.wheel_level < 0 ){
+			
+			return( false );
+		}
+		
+		unlink( event );
+		
+		size--;
+		
+		total_cancelled++;
+		
+		return( true );
+	}
+	
+		/**
+		 * Advances the wheel to 'now' and returns the events that are due, in schedule order, or null
+		 * if there are none
+		 */
+	
+	protected List<TimerEvent>
+	expire(
+		long	now )
+	{
+		long	now_tick = toTick( now );
+		
+		if ( now_tick < base_tick - 1 ){
+			
+				// time has gone backwards without a clock change being signalled, re-base so we don't
+				// fire early
+			
+			rebuild( now );
+		}
+		
+		List<TimerEvent>	batch = null;
+		
+		while( base_tick <= now_tick ){
+			
+			int	index = (int)( base_tick & LEVEL0_MASK );
+			
+			if ( index == 0 ){
+				
+				for ( int level=1;level<LEVELS;level++ ){
+					
+					int	level_index = (int)(( base_tick >> ( LEVEL0_BITS + LEVELN_BITS*(level-1))) & LEVELN_MASK );
+					
+					cascade( level, level_index );
+					
+					if ( level_index != 0 ){
+						
+						break;
+					}
+				}
+			}else if ( level_count[0] == 0 ){
+				
+					// nothing can expire before level 0 next wraps and cascades
+				
+				base_tick = Math.min( now_tick + 1, ( base_tick | LEVEL0_MASK ) + 1 );
+				
+				continue;
+			}
+			
+			TimerEvent	event = slots[0][index];
+			
+			while( event != null ){
+				
+				TimerEvent	next = event.wheel_next;
+				
+				unlink( event );
+				
+				size--;
+				
+				if ( batch == null ){
+					
+					batch = new ArrayList<TimerEvent>();
+				}
+				
+				batch.add( event );
+				
+				event = next;
+			}
+			
+			base_tick++;
+		}
+		
+		if ( batch != null ){
+			
+			if ( batch.size() > 1 ){
+			
+				Collections.sort( batch );
+			}
+			
+			total_expired += batch.size();
+			
+			total_batches++;
+			
+			if ( batch.size() > max_batch ){
+				
+				max_batch = batch.size();
+			}
+		}
+		
+		return( batch );
+	}
+	
+		/**
+		 * @return the earliest time at which expire() may have something to do, Long.MAX_VALUE if
+		 * the wheel is empty
+		 */
+	
+	protected long
+	getNextExpiry()
+	{
+		if ( size == 0 ){
+			
+			return( Long.MAX_VALUE );
+		}
+		
+		int	index = (int)( base_tick & LEVEL0_MASK );
+		
+		long	next = Long.MAX_VALUE;
+		
+		if ( level_count[0] > 0 ){
+			
+			int	offset = nextOccupied( occupied[0], index, LEVEL0_MASK + 1 );
+			
+			next = base_tick + offset;
+		}
+		
+		if ( size > level_count[0] ){
+			
+			long	cascade_tick = index==0?base_tick:(( base_tick | LEVEL0_MASK ) + 1 );
+			
+			next = Math.min( next, cascade_tick );
+		}
+		
+		return( next * TICK_MILLIS );
+	}
+	
+	protected List<TimerEvent>
+	getEvents()
+	{
+		List<TimerEvent>	result = new ArrayList<TimerEvent>( size );
+		
+		for ( int level=0;level<LEVELS;level++ ){
+			
+			TimerEvent[]	level_slots = slots[level];
+			
+			for ( int i=0;i<level_slots.length;i++ ){
+				
+				for ( TimerEvent event = level_slots[i]; event != null; event = event.wheel_next ){
+					
+					result.add( event );
+				}
+			}
+		}
+		
+		return( result );
+	}
+	
+		/**
+		 * Re-slots every event, required after event times have been changed
+		 */
+	
+	protected void
+	rebuild(
+		long	now )
+	{
+		List<TimerEvent>	events = getEvents();
+		
+		for ( TimerEvent event: events ){
+			
+			unlink( event );
+		}
+		
+		base_tick = toTick( now );
+		
+		for ( TimerEvent event: events ){
+			
+			insert( event );
+		}
+		
+		total_rebuilds++;
+	}
+	
+	protected String
+	getStats()
+	{
+		return( 
+			"events=" + size + ",peak=" + peak_size + ",added=" + total_added + ",cancelled=" + total_cancelled + 
+			",expired=" + total_expired + ",batches=" + total_batches + ",max_batch=" + max_batch + 
+			",cascaded=" + total_cascaded + ",rebuilds=" + total_rebuilds );
+	}
+	
+	protected int
+	getPeakSize()
+	{
+		return( peak_size );
+	}
+	
+	private void
+	insert(
+		TimerEvent	event )
+	{
+		long	expires = toTick( event.getWhen());
+		
+		long	delta	= expires - base_tick;
+		
+		int	level;
+		int	index;
+		
+		if ( delta < 0 ){
+			
+				// overdue, goes in the slot about to be processed
+			
+			level	= 0;
+			index	= (int)( base_tick & LEVEL0_MASK );
+			
+		}else if ( delta <= LEVEL0_MASK ){
+			
+			level	= 0;
+			index	= (int)( expires & LEVEL0_MASK );
+			
+		}else{
+			
+			if ( delta >= MAX_DELTA ){
+				
+					// beyond the top level, park in the furthest slot and re-evaluate when it cascades
+				
+				delta	= MAX_DELTA - 1;
+				expires	= base_tick + delta;
+			}
+			
+			level = 1;
+			
+			int	shift = LEVEL0_BITS;
+			
+			while( delta >= 1L << ( shift + LEVELN_BITS )){
+				
+				level++;
+				
+				shift += LEVELN_BITS;
+			}
+			
+			index = (int)(( expires >> shift ) & LEVELN_MASK );
+		}
+		
+		TimerEvent	head = slots[level][index];
+		
+		event.wheel_level	= level;
+		event.wheel_index	= index;
+		event.wheel_prev	= null;
+		event.wheel_next	= head;
+		
+		if ( head == null ){
+			
+			occupied[level][index>>6] |= 1L << ( index & 63 );
+			
+		}else{
+			
+			head.wheel_prev = event;
+		}
+		
+		slots[level][index] = event;
+		
+		level_count[level]++;
+	}
+	
+	private void
+	unlink(
+		TimerEvent	event )
+	{
+		int	level	= event.wheel_level;
+		int	index	= event.wheel_index;
+		
+		TimerEvent	prev = event.wheel_prev;
+		TimerEvent	next = event.wheel_next;
+		
+		if ( prev == null ){
+			
+			slots[level][index] = next;
+			
+			if ( next == null ){
+				
+				occupied[level][index>>6] &= ~( 1L << ( index & 63 ));
+			}
+		}else{
+			
+			prev.wheel_next = next;
+		}
+		
+		if ( next != null ){
+			
+			next.wheel_prev = prev;
+		}
+		
+		event.wheel_level	= -1;
+		event.wheel_prev	= null;
+		event.wheel_next	= null;
+		
+		level_count[level]--;
+	}
+	
+	private void
+	cascade(
+		int		level,
+		int		index )
+	{
+		TimerEvent	event = slots[level][index];
+		
+		while( event != null ){
+			
+			TimerEvent	next = event.wheel_next;
+			
+			unlink( event );
+			
+			insert( event );
+			
+			total_cascaded++;
+			
+			event = next;
+		}
+	}
+	
+		/**
+		 * @return distance (0..num-1) from 'from', wrapping, to the next occupied slot
+		 */
+	
+	private static int
+	nextOccupied(
+		long[]	bits,
+		int		from,
+		int		num )
+	{
+		for ( int i=0;i<num;){
+			
+			int	pos		= ( from + i ) % num;
+			long	word	= bits[pos>>6] >>> ( pos & 63 );
+			
+			if ( word != 0 ){
+				
+				return( i + Long.numberOfTrailingZeros( word ));
+			}
+			
+			i += 64 - ( pos & 63 );
+		}
+		
+		return( num );
+	}
+}
@@ -36,6 +36,18 @@ DiskManagerCheckRequest
 	public boolean
 	isLowPriority();
 	
+		/**
+		 * high priority checks (e.g. pieces needed for streaming) are hashed ahead of
+		 * all other pending checks
+		 */
+	
+	public void
+	setHighPriority(
+		boolean	high );
+	
+	public boolean
+	isHighPriority();
+	
 	public void
 	setAdHoc(
 		boolean	adhoc );
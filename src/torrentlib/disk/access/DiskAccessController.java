@@ -34,6 +34,18 @@ DiskAccessController
 		short						cache_policy,
 		DiskAccessRequestListener	listener );
 	
+		/**
+		 * Queues a memory mapped read (see CacheFile.readMapped). On completion the request's 
+		 * getBuffer() is the mapped buffer, or null if a normal read is required
+		 */
+	
+	public DiskAccessRequest
+	queueMappedReadRequest(
+		CacheFile					file,
+		long						offset,
+		int							length,
+		DiskAccessRequestListener	listener );
+	
 	public DiskAccessRequest
 	queueWriteRequest(
 		CacheFile					file,
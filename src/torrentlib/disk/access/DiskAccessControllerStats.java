@@ -28,4 +28,25 @@ DiskAccessControllerStats
 	
 	public long
 	getTotalReadBytes();
+	
+		/**
+		 * current number of queued (not yet completed) requests
+		 */
+	
+	public long
+	getReadQueueDepth();
+	
+	public long
+	getWriteQueueDepth();
+	
+		/**
+		 * Request latency, from being queued to completion, as counts per bucket. Bucket 0 is
+		 * under 1ms, bucket n (n>0) is [2^(n-1),2^n) ms and the last bucket is everything above
+		 */
+	
+	public long[]
+	getReadLatencyHistogram();
+	
+	public long[]
+	getWriteLatencyHistogram();
 }
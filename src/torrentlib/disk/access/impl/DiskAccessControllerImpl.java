@@ -233,6 +233,25 @@ DiskAccessControllerImpl
 		return( request );
 	}
 	
+	public DiskAccessRequest
+	queueMappedReadRequest(
+		CacheFile					file,
+		long						offset,
+		int							length,
+		DiskAccessRequestListener	listener )
+	{
+		DiskAccessRequestImpl	request = 
+			new DiskAccessRequestImpl( 
+					file, 
+					offset, 
+					length, 
+					listener );
+
+		read_dispatcher.queueRequest( request );
+		
+		return( request );
+	}
+	
 	public DiskAccessRequest
 	queueWriteRequest(
 		CacheFile					file,
@@ -265,6 +284,10 @@ DiskAccessControllerImpl
 			{
 				long	read_total_req 		= read_dispatcher.getTotalRequests();
 				long	read_total_bytes 	= read_dispatcher.getTotalBytes();
+				long	read_queue_depth	= read_dispatcher.getQueueSize();
+				long	write_queue_depth	= write_dispatcher.getQueueSize();
+				long[]	read_latency		= read_dispatcher.getLatencyHistogram();
+				long[]	write_latency		= write_dispatcher.getLatencyHistogram();
 				
 				public long 
 				getTotalReadRequests() 
@@ -277,6 +300,30 @@ DiskAccessControllerImpl
 				{
 					return( read_total_bytes );
 				}
+				
+				public long 
+				getReadQueueDepth() 
+				{
+					return( read_queue_depth );
+				}
+				
+				public long 
+				getWriteQueueDepth() 
+				{
+					return( write_queue_depth );
+				}
+				
+				public long[]
+				getReadLatencyHistogram() 
+				{
+					return( read_latency );
+				}
+				
+				public long[]
+				getWriteLatencyHistogram() 
+				{
+					return( write_latency );
+				}
 			});
 	}
 	
@@ -20,11 +20,14 @@
 package torrentlib.disk.access.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import controller.config.COConfigurationManager;
 import torrentlib.data.torrent.TOTorrent;
@@ -48,6 +51,14 @@ DiskAccessControllerInstance
 	
 	private boolean		invert_threads	= !COConfigurationManager.getBooleanParameter( "diskmanager.perf.queue.torrent.bias" );
 	
+		// elevator mode: a worker takes all queued non-priority requests for the file at the head
+		// of the queue, runs them in offset order continuing from where the last batch for the file
+		// finished and merges adjacent ones into single vectored reads/writes
+	
+	private final boolean	elevator				= COConfigurationManager.getBooleanParameter( "diskmanager.perf.queue.elevator" );
+	private final int		elevator_batch_limit	= Math.max( 1, COConfigurationManager.getIntParameter( "diskmanager.perf.queue.elevator.batch.requests", 64 ));
+	private final int		elevator_merge_limit	= Math.max( 1, COConfigurationManager.getIntParameter( "diskmanager.perf.queue.elevator.merge.bytes", 1024*1024 ));
+	
 	private int	max_threads;
 	private int	max_mb_queued;
 		
@@ -67,6 +78,11 @@ DiskAccessControllerInstance
 	private long			io_time;
 	private long			io_count;
 
+	private long			total_batches;
+	private long			total_batched_requests;
+	
+	private latencyHistogram	latency	= new latencyHistogram();
+
 	private requestDispatcher[]	dispatchers;
 	
 	private long		last_check		= 0;	
@@ -188,6 +204,12 @@ DiskAccessControllerInstance
 		return( io_count );
 	}
 	
+	protected long[]
+	getLatencyHistogram()
+	{
+		return( latency.getCounts());
+	}
+	
 	protected void
 	queueRequest(
 		DiskAccessRequestImpl	request )
@@ -358,7 +380,9 @@ DiskAccessControllerInstance
 			",q_req=" + requests_queued +
 			",t_req=" + total_requests +
 			",t_byte=" + DisplayFormatters.formatByteCountToKiBEtc( total_bytes ) +
-			",io=" + io_count );
+			",io=" + io_count +
+			(elevator?(",batches=" + total_batches + ",b_req=" + total_batched_requests ):"") +
+			",lat=" + latency.getString());
 	}
 	
 	protected class
@@ -373,6 +397,8 @@ DiskAccessControllerInstance
 		private Map			request_map	= new HashMap();
 		private long		last_request_map_tidy;
 		
+		private Map			elevator_positions	= new WeakHashMap();
+		
 		private AESemaphore	request_sem		= new AESemaphore("DiskAccessControllerInstance:requestDispatcher:request" );
 		private AESemaphore	schedule_sem	= new AESemaphore("DiskAccessControllerInstance:requestDispatcher:schedule", 1 );
 		
@@ -430,6 +456,8 @@ DiskAccessControllerInstance
 												
 				getSpaceAllowance( request );
 				
+				request.setQueueTime( SystemTime.getHighPrecisionCounter());
+				
 				synchronized( requests ){
 					
 					total_requests++;
@@ -466,7 +494,7 @@ DiskAccessControllerInstance
 						requests.add( request );
 					}
 					
-					if ( enable_aggregation ){
+					if ( enable_aggregation && !elevator ){
 						
 						Map	m = (Map)request_map.get( request.getFile());
 						
@@ -533,6 +561,116 @@ DiskAccessControllerInstance
 			return( requests.size());
 		}
 		
+		protected List
+		takeBatch(
+			DiskAccessRequestImpl	head )
+		{
+				// requests monitor held, head already removed from the queue
+			
+			List	batch = new ArrayList();
+			
+			batch.add( head );
+			
+			if ( head.getPriority() >= 0 ){
+				
+					// prioritised requests keep their queue order
+				
+				return( batch );
+			}
+			
+			CacheFile	file = head.getFile();
+			
+			for ( Iterator it = requests.iterator(); it.hasNext() && batch.size() < elevator_batch_limit; ){
+				
+				DiskAccessRequestImpl	r = (DiskAccessRequestImpl)it.next();
+				
+				if ( r.getFile() == file && r.getPriority() < 0 ){
+					
+					it.remove();
+					
+					if ( !request_sem.reserveIfAvailable()){
+						
+						Debug.out( "shouldn't happen" );
+					}
+					
+					batch.add( r );
+				}
+			}
+			
+			if ( batch.size() == 1 ){
+				
+				return( batch );
+			}
+			
+			List	sorted = new ArrayList( batch );
+			
+			Collections.sort(
+				sorted,
+				new Comparator()
+				{
+					public int 
+					compare(
+						Object o1, 
+						Object o2 )
+					{
+						long	l1 = ((DiskAccessRequestImpl)o1).getOffset();
+						long	l2 = ((DiskAccessRequestImpl)o2).getOffset();
+						
+						return( l1<l2?-1:(l1==l2?0:1));
+					}
+				});
+			
+			int	head_op = head.getOperation();
+			
+			if ( head_op != DiskAccessRequestImpl.OP_READ && head_op != DiskAccessRequestImpl.OP_READ_MAPPED ){
+				
+					// overlapping writes have to stay in the order they were queued
+				
+				long	last_end = -1;
+				
+				for (int i=0;i<sorted.size();i++){
+					
+					DiskAccessRequestImpl	r = (DiskAccessRequestImpl)sorted.get(i);
+					
+					if ( r.getOffset() < last_end ){
+						
+						return( batch );
+					}
+					
+					last_end = r.getOffset() + r.getSize();
+				}
+			}
+						
+				// one-way sweep, start from where the last batch for this file ended and wrap
+			
+			Long	l_pos = (Long)elevator_positions.get( file );
+			
+			long	pos = l_pos==null?0:l_pos.longValue();
+			
+			int	start = 0;
+			
+			while( start < sorted.size() && ((DiskAccessRequestImpl)sorted.get( start )).getOffset() < pos ){
+				
+				start++;
+			}
+			
+			if ( start > 0 && start < sorted.size()){
+				
+				List	swept = new ArrayList( sorted.size());
+				
+				swept.addAll( sorted.subList( start, sorted.size()));
+				swept.addAll( sorted.subList( 0, start ));
+				
+				sorted = swept;
+			}
+			
+			DiskAccessRequestImpl	last = (DiskAccessRequestImpl)sorted.get( sorted.size()-1 );
+			
+			elevator_positions.put( file, new Long( last.getOffset() + last.getSize()));
+			
+			return( sorted );
+		}
+		
 		protected void
 		requestQueued()
 		{	
@@ -560,6 +698,7 @@ DiskAccessControllerInstance
 										
 										DiskAccessRequestImpl	request		= null;		
 										List					aggregated 	= null;
+										List					batch		= null;
 										
 										try{
 											if ( invert_threads ){
@@ -573,7 +712,11 @@ DiskAccessControllerInstance
 			
 													request = (DiskAccessRequestImpl)requests.remove(0);
 													
-													if ( enable_aggregation ){
+													if ( elevator ){
+														
+														batch = takeBatch( request );
+														
+													}else if ( enable_aggregation ){
 														
 														CacheFile	file = request.getFile();
 														
@@ -679,7 +822,11 @@ DiskAccessControllerInstance
 											
 											long	io_start = SystemTime.getHighPrecisionCounter();
 											
-											if ( aggregated != null ){
+											if ( batch != null ){
+												
+												runBatch( batch );
+												
+											}else if ( aggregated != null ){
 												
 												DiskAccessRequestImpl[]	requests = (DiskAccessRequestImpl[])aggregated.toArray( new DiskAccessRequestImpl[ aggregated.size()]);
 												
@@ -701,6 +848,8 @@ DiskAccessControllerInstance
 														
 														total_aggregated_bytes += r.getSize();
 														
+														latency.record( io_end - r.getQueueTime());
+														
 														releaseSpaceAllowance( r );
 													}
 												}
@@ -719,6 +868,8 @@ DiskAccessControllerInstance
 													
 													total_single_bytes += request.getSize();
 													
+													latency.record( io_end - request.getQueueTime());
+													
 													releaseSpaceAllowance( request );
 												}		
 
@@ -754,6 +905,164 @@ DiskAccessControllerInstance
 		}
 	}
 	
+	protected void
+	runBatch(
+		List		batch )
+	{
+		total_batches++;
+		
+		total_batched_requests += batch.size();
+		
+		int	pos = 0;
+		
+		while( pos < batch.size()){
+			
+			DiskAccessRequestImpl	first = (DiskAccessRequestImpl)batch.get( pos++ );
+			
+			List	run = null;
+			
+			if ( !first.isCancelled()){
+				
+				long	run_end		= first.getOffset() + first.getSize();
+				long	run_bytes	= first.getSize();
+				
+				while( pos < batch.size() && run_bytes < elevator_merge_limit ){
+					
+					DiskAccessRequestImpl	next = (DiskAccessRequestImpl)batch.get( pos );
+					
+					if ( 	next.getOffset() != run_end || next.isCancelled() || 
+							!next.canBeAggregatedWith( first )){
+						
+						break;
+					}
+					
+					if ( run == null ){
+						
+						run = new ArrayList();
+						
+						run.add( first );
+					}
+					
+					run.add( next );
+					
+					run_end 	+= next.getSize();
+					run_bytes	+= next.getSize();
+					
+					pos++;
+				}
+			}
+			
+			long	io_start = SystemTime.getHighPrecisionCounter();
+
+			try{
+				if ( run == null ){
+					
+					try{
+						first.runRequest();
+						
+					}finally{
+						
+						long	io_end = SystemTime.getHighPrecisionCounter();
+
+						io_time += ( io_end - io_start );
+
+						io_count++;
+						
+						total_single_requests_made++;
+						
+						total_single_bytes += first.getSize();
+						
+						latency.record( io_end - first.getQueueTime());
+						
+						releaseSpaceAllowance( first );
+					}
+				}else{
+					
+					DiskAccessRequestImpl[]	run_requests = (DiskAccessRequestImpl[])run.toArray( new DiskAccessRequestImpl[ run.size()]);
+					
+					try{
+						DiskAccessRequestImpl.runAggregated( first, run_requests );
+						
+					}finally{
+						
+						long	io_end = SystemTime.getHighPrecisionCounter();
+
+						io_time += ( io_end - io_start );
+						
+						io_count++;
+						
+						total_aggregated_requests_made++;
+						
+						for (int i=0;i<run_requests.length;i++){
+							
+							DiskAccessRequestImpl	r = run_requests[i];
+							
+							total_aggregated_bytes += r.getSize();
+							
+							latency.record( io_end - r.getQueueTime());
+							
+							releaseSpaceAllowance( r );
+						}
+					}
+				}
+			}catch( Throwable e ){
+				
+				Debug.printStackTrace(e);
+			}
+		}
+	}
+	
+	protected static class
+	latencyHistogram
+	{
+		private static final int	BUCKETS	= 12;
+		
+		private final long[]	counts = new long[BUCKETS];
+		
+		protected void
+		record(
+			long	nanos )
+		{
+			long	millis = nanos/1000000;
+			
+			int	bucket = millis<=0?0:(64 - Long.numberOfLeadingZeros( millis ));
+			
+			if ( bucket >= BUCKETS ){
+				
+				bucket = BUCKETS - 1;
+			}
+			
+			synchronized( counts ){
+				
+				counts[bucket]++;
+			}
+		}
+		
+		protected long[]
+		getCounts()
+		{
+			synchronized( counts ){
+				
+				return((long[])counts.clone());
+			}
+		}
+		
+		protected String
+		getString()
+		{
+			long[]	c = getCounts();
+			
+			String	str = "";
+			
+			for (int i=0;i<c.length;i++){
+				
+				str += (i==0?"":"/") + c[i];
+			}
+			
+			return( str );
+		}
+	}
+	
 	protected static class
 	groupSemaphore
 	{
@@ -35,6 +35,7 @@ DiskAccessRequestImpl
 	protected static final short	OP_READ				= 1;
 	protected static final short	OP_WRITE			= 2;
 	protected static final short	OP_WRITE_AND_FREE	= 3;
+	protected static final short	OP_READ_MAPPED		= 4;
 	
 	
 	private CacheFile					file;
@@ -46,6 +47,8 @@ DiskAccessRequestImpl
 	
 	private int							size;
 	
+	private long						queue_time;
+	
 	private volatile boolean	cancelled;
 	
 	protected
@@ -67,6 +70,25 @@ DiskAccessRequestImpl
 		size = buffer.remaining( DirectByteBuffer.SS_FILE );
 	}
 	
+		/**
+		 * mapped read, the buffer is set when the request runs
+		 */
+	
+	protected
+	DiskAccessRequestImpl(
+		CacheFile					_file,
+		long						_offset,
+		int							_length,
+		DiskAccessRequestListener	_listener )
+	{
+		file			= _file;
+		offset			= _offset;
+		size			= _length;
+		listener		= _listener;
+		op				= OP_READ_MAPPED;
+		cache_policy	= CacheFile.CP_NONE;
+	}
+	
 	public int
 	getSize()
 	{
@@ -90,6 +112,10 @@ DiskAccessRequestImpl
 				
 				file.read( buffer, offset, cache_policy );
 				
+			}else if ( op == OP_READ_MAPPED ){
+				
+				buffer = file.readMapped( offset, size );
+				
 			}else if ( op == OP_WRITE ){
 				
 				file.write( buffer, offset );
@@ -113,7 +139,7 @@ DiskAccessRequestImpl
 	canBeAggregatedWith(
 		DiskAccessRequestImpl	other )
 	{
-		return( op == other.getOperation() && cache_policy == other.getCachePolicy());
+		return( op != OP_READ_MAPPED && op == other.getOperation() && cache_policy == other.getCachePolicy());
 	}
 	
 	protected static void
@@ -208,6 +234,19 @@ DiskAccessRequestImpl
 		}
 	}
 	
+	protected void
+	setQueueTime(
+		long		time )
+	{
+		queue_time	= time;
+	}
+	
+	protected long
+	getQueueTime()
+	{
+		return( queue_time );
+	}
+	
 	public CacheFile
 	getFile()
 	{
@@ -119,6 +119,20 @@ CacheFile
 	
 		throws CacheFileManagerException;
 
+		/**
+		 * Gets a buffer backed by a memory mapping of the file when memory mapped reads are
+		 * enabled and the file is complete. The buffer isn't pooled.
+		 * @return null if the caller should perform a normal read
+		 * @throws CacheFileManagerException
+		 */
+	
+	public DirectByteBuffer
+	readMapped(
+		long				offset,
+		int					length )
+	
+		throws CacheFileManagerException;
+	
 	public void
 	write(
 		DirectByteBuffer	buffer,
@@ -165,6 +179,18 @@ CacheFile
 	
 		throws CacheFileManagerException;
 	
+		/**
+		 * indicates that the given range has passed its hash check. Depending on the write-back
+		 * policy dirty data covering it may be written out, merged with adjacent dirty data
+		 * @param position
+		 * @param length
+		 */
+	
+	public void
+	dataVerified(
+		long		position,
+		long		length );
+	
 		/**
 		 * flushes the cache and discards entries
 		 * @throws CacheFileManagerException
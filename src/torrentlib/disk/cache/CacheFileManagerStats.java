@@ -29,6 +29,13 @@ import torrentlib.data.torrent.TOTorrent;
 public interface 
 CacheFileManagerStats 
 {
+		// eviction policy segments, see getSegmentHitCount
+	
+	public static final int	SEGMENT_LRU			= 0;
+	public static final int	SEGMENT_PROBATION	= 1;
+	public static final int	SEGMENT_PROTECTED	= 2;
+	public static final int	SEGMENT_GHOST		= 3;		// re-admissions of recently evicted entries
+	
 	public long
 	getSize();
 	
@@ -71,6 +78,37 @@ CacheFileManagerStats
 	public long
 	getFileWriteCount();
 	
+		// write-back: number of file writes made when flushing dirty cache entries and the number
+		// of entries they covered
+	
+	public long
+	getFlushWriteCount();
+	
+	public long
+	getFlushedEntryCount();
+	
+		// cache entries written per flush write
+	
+	public float
+	getCoalesceRatio();
+	
+	public long
+	getAverageBytesPerFileWrite();
+	
+		// smoothed time taken by flush writes, in milliseconds per MB written
+	
+	public long
+	getFileWriteLatency();
+	
+	public String
+	getEvictionPolicyName();
+	
+		// cache hits attributed to the given eviction policy segment
+	
+	public long
+	getSegmentHitCount(
+		int		segment );
+	
 		// returns the number of bytes in the requested range that are in cache
 	
 	public boolean[] getBytesInCache(TOTorrent torrent, long[] absoluteOffsets, long[] lengths);
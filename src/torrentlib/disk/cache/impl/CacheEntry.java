@@ -42,6 +42,7 @@ CacheEntry
 	protected int				buffer_limit;
 	
 	protected boolean			dirty;
+	protected boolean			verified;		// covered by a piece that has passed its hash check
 	
 	protected long				last_used;
 	
@@ -119,6 +120,18 @@ CacheEntry
 		dirty	= false;
 	}
 	
+	protected boolean
+	isVerified()
+	{
+		return( verified );
+	}
+	
+	protected void
+	setVerified()
+	{
+		verified	= true;
+	}
+	
 	protected void
 	resetBufferPosition()
 	{
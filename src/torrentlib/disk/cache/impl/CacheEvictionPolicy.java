@@ -0,0 +1,72 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package torrentlib.disk.cache.impl;
+
+/**
+ * Decides which cache entry is evicted next. All methods are called with the
+ * manager's monitor held.
+ */
+
+public interface 
+CacheEvictionPolicy 
+{
+	public String
+	getName();
+	
+	public void
+	entryAdded(
+		CacheEntry	entry );
+	
+		/**
+		 * @return false if the entry isn't known to the policy
+		 */
+	
+	public boolean
+	entryUsed(
+		CacheEntry	entry );
+	
+	public void
+	entryRemoved(
+		CacheEntry	entry );
+	
+		/**
+		 * @return next entry to evict, null if empty
+		 */
+	
+	public CacheEntry
+	getVictim();
+	
+		/**
+		 * whether eviction should release just the victim rather than a chunk of the victim's file
+		 */
+	
+	public boolean
+	isEntrySpecific();
+	
+		/**
+		 * @param segment one of CacheFileManagerStats.SEGMENT_*
+		 */
+	
+	public long
+	getHitCount(
+		int		segment );
+	
+	public String
+	getString();
+}
@@ -0,0 +1,201 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package torrentlib.disk.cache.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import torrentlib.disk.cache.CacheFileManagerStats;
+
+/**
+ * Scan resistant "full" 2Q eviction. New entries go into a FIFO probation queue (A1in) and
+ * further hits there are ignored as they are usually correlated (e.g. one peer reading a
+ * read-ahead entry block by block). Entries evicted from probation leave a ghost key behind
+ * (A1out) and an entry re-added while its ghost is present is regarded as genuinely hot and goes
+ * into the protected LRU (Am). Probation is evicted from first while it holds more than its
+ * share of the cache so a sequential scan only ever cycles through that share.
+ */
+
+public class 
+CacheEvictionPolicy2Q
+	implements CacheEvictionPolicy
+{
+	public static final int	PROBATION_PERCENT	= 25;
+	public static final int	GHOST_ENTRY_SIZE	= 16*1024;
+	
+	private final long		probation_limit;
+	private final int		ghost_limit;
+	
+		// insertion order
+	
+	private LinkedHashMap	probation	= new LinkedHashMap();
+	private long			probation_bytes;
+	
+		// access order
+	
+	private LinkedHashMap	protect		= new LinkedHashMap( 1024, 0.75f, true );
+	
+		// ghost keys, insertion order
+	
+	private LinkedHashMap	ghosts		= new LinkedHashMap();
+	
+	private long	probation_hits;
+	private long	protected_hits;
+	private long	ghost_hits;
+	
+	public
+	CacheEvictionPolicy2Q(
+		long		cache_size )
+	{
+		probation_limit	= cache_size * PROBATION_PERCENT / 100;
+		
+			// remember about half a cache's worth of evicted blocks
+		
+		ghost_limit		= (int)Math.max( 256, cache_size / GHOST_ENTRY_SIZE / 2 );
+	}
+	
+	public String
+	getName()
+	{
+		return( "2q" );
+	}
+	
+	protected Long
+	getKey(
+		CacheEntry	entry )
+	{
+			// the key mustn't hold on to the file, collisions just misclassify an entry
+		
+		return( new Long((((long)System.identityHashCode( entry.getFile())) << 40 ) ^ entry.getFilePosition()));
+	}
+	
+	public void
+	entryAdded(
+		CacheEntry	entry )
+	{
+		if ( ghosts.remove( getKey( entry )) != null ){
+			
+			ghost_hits++;
+			
+			protect.put( entry, entry );
+			
+		}else{
+			
+			probation.put( entry, entry );
+			
+			probation_bytes += entry.getLength();
+		}
+	}
+	
+	public boolean
+	entryUsed(
+		CacheEntry	entry )
+	{
+		if ( protect.get( entry ) != null ){
+			
+			protected_hits++;
+			
+			return( true );
+			
+		}else if ( probation.containsKey( entry )){
+			
+			probation_hits++;
+			
+			return( true );
+		}
+		
+		return( false );
+	}
+	
+	public void
+	entryRemoved(
+		CacheEntry	entry )
+	{
+		if ( probation.remove( entry ) != null ){
+			
+			probation_bytes -= entry.getLength();
+			
+			ghosts.put( getKey( entry ), "" );
+			
+			if ( ghosts.size() > ghost_limit ){
+				
+				Iterator	it = ghosts.keySet().iterator();
+				
+				it.next();
+				
+				it.remove();
+			}
+		}else{
+			
+			protect.remove( entry );
+		}
+	}
+	
+	public CacheEntry
+	getVictim()
+	{
+		if ( probation.size() > 0 && ( probation_bytes > probation_limit || protect.size() == 0 )){
+			
+			return((CacheEntry)probation.keySet().iterator().next());
+		}
+		
+		if ( protect.size() > 0 ){
+			
+			return((CacheEntry)protect.keySet().iterator().next());
+		}
+		
+		return( null );
+	}
+	
+	public boolean
+	isEntrySpecific()
+	{
+		return( true );
+	}
+	
+	public long
+	getHitCount(
+		int		segment )
+	{
+		if ( segment == CacheFileManagerStats.SEGMENT_PROBATION ){
+			
+			return( probation_hits );
+			
+		}else if ( segment == CacheFileManagerStats.SEGMENT_PROTECTED ){
+			
+			return( protected_hits );
+			
+		}else if ( segment == CacheFileManagerStats.SEGMENT_GHOST ){
+			
+			return( ghost_hits );
+		}
+		
+		return( 0 );
+	}
+	
+	public String
+	getString()
+	{
+		return( 
+			"2q: probation=" + probation.size() + "/" + probation_bytes + 
+			",protected=" + protect.size() + 
+			",ghosts=" + ghosts.size() +
+			",hits=" + probation_hits + "/" + protected_hits + "/" + ghost_hits );
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package torrentlib.disk.cache.impl;
+
+import java.util.LinkedHashMap;
+
+import torrentlib.disk.cache.CacheFileManagerStats;
+
+/**
+ * The original policy, least recently used entry first. Works directly off the
+ * manager's access ordered cache_entries so there is no extra bookkeeping
+ */
+
+public class 
+CacheEvictionPolicyLRU
+	implements CacheEvictionPolicy
+{
+	private final LinkedHashMap	entries;
+	
+	private long	hits;
+	
+	protected
+	CacheEvictionPolicyLRU(
+		LinkedHashMap	_entries )
+	{
+		entries	= _entries;
+	}
+	
+	public String
+	getName()
+	{
+		return( "lru" );
+	}
+	
+	public void
+	entryAdded(
+		CacheEntry	entry )
+	{
+	}
+	
+	public boolean
+	entryUsed(
+		CacheEntry	entry )
+	{
+			// the manager's lookup has already moved it to the MRU end
+		
+		hits++;
+		
+		return( true );
+	}
+	
+	public void
+	entryRemoved(
+		CacheEntry	entry )
+	{
+	}
+	
+	public CacheEntry
+	getVictim()
+	{
+		if ( entries.size() == 0 ){
+			
+			return( null );
+		}
+		
+		return((CacheEntry)entries.keySet().iterator().next());
+	}
+	
+	public boolean
+	isEntrySpecific()
+	{
+		return( false );
+	}
+	
+	public long
+	getHitCount(
+		int		segment )
+	{
+		return( segment==CacheFileManagerStats.SEGMENT_LRU?hits:0 );
+	}
+	
+	public String
+	getString()
+	{
+		return( "lru: entries=" + entries.size() + ",hits=" + hits );
+	}
+}
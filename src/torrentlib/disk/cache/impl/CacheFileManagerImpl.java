@@ -33,6 +33,8 @@ import torrentlib.TimerEventPerformer;
 import torrentlib.AEDiagnostics;
 import torrentlib.AEDiagnosticsEvidenceGenerator;
 import torrentlib.AEMonitor;
+import torrentlib.AERunnable;
+import torrentlib.AsyncDispatcher;
 import torrentlib.DirectByteBuffer;
 import torrentlib.ByteFormatter;
 import torrentlib.LightHashMap;
@@ -70,6 +72,13 @@ CacheFileManagerImpl
 	
 	public static final int		STATS_UPDATE_FREQUENCY		= 1*1000;	// 1 sec
 	public static final long	DIRTY_CACHE_WRITE_MAX_AGE	= 120*1000;	// 2 mins
+	
+		// write-back (coalescing) policy
+	
+	public static final int		WRITE_BACK_TICKS			= 5;			// every 5 seconds
+	public static final long	WRITE_BACK_MIN_AGE			= 5*1000;
+	public static final long	WRITE_BACK_BASE_AGE			= 10*1000;
+	public static final int		WRITE_BACK_MAX_SPAN_FACTOR	= 8;			// of the coalesce target
 		
 	static{
 		if ( DEBUG ){
@@ -145,6 +154,11 @@ CacheFileManagerImpl
 	
 	protected LinkedHashMap		cache_entries = new LinkedHashMap(1024, 0.75f, true );
 	
+		// decides eviction order. the default lru policy uses cache_entries directly, others
+		// keep their own structures and cache_entries is still maintained for diagnostics and dirty scans
+	
+	protected CacheEvictionPolicy	eviction_policy;
+	
 	protected CacheFileManagerStatsImpl	stats;
 	
 
@@ -160,9 +174,25 @@ CacheFileManagerImpl
 	protected long				file_read_count;
 	protected long				file_write_count;
 	
+	protected boolean			write_coalesce;
+	protected long				write_coalesce_min;
+	
+	protected String			eviction_policy_name	= "lru";
+	
+	protected long				flush_write_count;
+	protected long				flush_entry_count;
+	protected long				write_back_deferred;
+	
+		// smoothed flush write latency, microseconds per MB
+	
+	protected long				write_latency_per_mb	= -1;
+	
+	protected AsyncDispatcher	write_back_dispatcher	= new AsyncDispatcher( "CacheFile:writeBack" );
+	
 	protected AEMonitor			this_mon	= new AEMonitor( "CacheFileManager" );
 	
 	private long	cleaner_ticks	= CACHE_CLEANER_TICKS;
+	private long	write_back_ticks	= WRITE_BACK_TICKS;
 	
 	
 	
@@ -187,6 +217,20 @@ CacheFileManagerImpl
 		
 		int		not_smaller_than	= 1024*COConfigurationManager.getIntParameter( "notsmallerthan" );
 		
+			// write-back: hold dirty data until it can be written in large sequential chunks,
+			// units are KB
+		
+		write_coalesce		= COConfigurationManager.getBooleanParameter( "diskmanager.perf.cache.write.coalesce" );
+		
+		write_coalesce_min	= 1024L*COConfigurationManager.getIntParameter( "diskmanager.perf.cache.write.coalesce.min" );
+		
+		eviction_policy_name	= COConfigurationManager.getStringParameter( "diskmanager.perf.cache.eviction" );
+		
+		if ( write_coalesce_min <= 0 ){
+			
+			write_coalesce_min = 1024*1024;
+		}
+		
 		if ( size <= 0 ){
 		
 			Debug.out( "Invalid cache size parameter (" + size + "), caching disabled" );
@@ -219,6 +263,15 @@ CacheFileManagerImpl
 		
 		cache_space_free		= cache_size;
 		
+		if ( eviction_policy_name != null && eviction_policy_name.trim().equalsIgnoreCase( "2q" )){
+			
+			eviction_policy	= new CacheEvictionPolicy2Q( cache_size );
+			
+		}else{
+			
+			eviction_policy	= new CacheEvictionPolicyLRU( cache_entries );
+		}
+		
 		stats = new CacheFileManagerStatsImpl( this );
 		
 
@@ -228,7 +281,9 @@ CacheFileManagerImpl
 		if (Logger.isEnabled())
 			Logger.log(new LogEvent(LOGID, "DiskCache: enabled = " + cache_enabled
 					+ ", read = " + cache_read_enabled + ", write = "
-					+ cache_write_enabled + ", size = " + cache_size + " B"));
+					+ cache_write_enabled + ", size = " + cache_size + " B"
+					+ ", coalesce = " + write_coalesce
+					+ ", eviction = " + eviction_policy.getName()));
 	}
 	
 	protected boolean
@@ -243,6 +298,78 @@ CacheFileManagerImpl
 		return( cache_read_enabled );
 	}
 	
+	protected boolean
+	isWriteCoalesceEnabled()
+	{
+		return( cache_write_enabled && write_coalesce );
+	}
+	
+		/**
+		 * The contiguous dirty run size at which verified data is written out. Slow writes
+		 * (high latency per MB) mean seeks are expensive so we hold out for larger writes, but
+		 * never for more than a fraction of the cache
+		 */
+	
+	protected long
+	getWriteCoalesceTarget()
+	{
+		long	target = write_coalesce_min * getWriteLatencyFactor();
+		
+		return( Math.max( 64*1024, Math.min( target, cache_size/8 )));
+	}
+	
+	protected int
+	getWriteLatencyFactor()
+	{
+		long	latency = write_latency_per_mb;
+		
+		if ( latency < 10*1000 ){
+			
+			return( 1 );
+			
+		}else if ( latency < 40*1000 ){
+			
+			return( 2 );
+			
+		}else{
+			
+			return( 4 );
+		}
+	}
+	
+	protected void
+	queueWriteBack(
+		final CacheFileWithCache	file,
+		final long					position,
+		final long					length )
+	{
+		write_back_dispatcher.dispatch(
+			new AERunnable()
+			{
+				public void
+				runSupport()
+				{
+					try{
+						file.writeBack( position, length, getWriteCoalesceTarget());
+						
+					}catch( CacheFileManagerException e ){
+						
+							// as with the cleaner, the error will be reported on the next "proper" access
+						
+						file.setPendingException( e );
+						
+						Debug.printStackTrace( e );
+					}
+				}
+			});
+	}
+	
+	protected void
+	writeBackDeferred()
+	{
+		write_back_deferred++;
+	}
+	
 	public CacheFile
 	createFile(
 		final CacheFileOwner	owner,
@@ -386,6 +513,7 @@ CacheFileManagerImpl
 				// can cause deadlocks (as CacheFile calls manager methods with locks)
 			
 			CacheEntry	oldest_entry	= null;
+			long		to_release		= cache_minimum_free_size;
 			
 			try{
 				this_mon.enter();
@@ -396,7 +524,15 @@ CacheFileManagerImpl
 					
 				}else{
 					
-					oldest_entry = (CacheEntry)cache_entries.keySet().iterator().next();
+					oldest_entry = eviction_policy.getVictim();
+					
+						// entry specific policies only release the victim, unless it is dirty in which
+						// case we write out a decent sized chunk while we're at it
+					
+					if ( eviction_policy.isEntrySpecific() && !oldest_entry.isDirty()){
+						
+						to_release	= 0;
+					}
 				}
 			}finally{
 				
@@ -413,7 +549,7 @@ CacheFileManagerImpl
 				
 				try{
 					
-					oldest_file.flushCache( oldest_entry.getFilePosition(), true, cache_minimum_free_size );
+					oldest_file.flushCache( oldest_entry.getFilePosition(), true, to_release );
 					
 				}catch( CacheFileManagerException e ){
 					
@@ -446,8 +582,7 @@ CacheFileManagerImpl
 					try{
 						this_mon.enter();
 						
-						if (	cache_entries.size() > 0 &&
-								(CacheEntry)cache_entries.keySet().iterator().next() == oldest_entry ){
+						if ( eviction_policy.getVictim() == oldest_entry ){
 							
 								// hmm, something wrong with cache as the flush should have got rid
 								// of at least the oldest entry
@@ -499,6 +634,13 @@ CacheFileManagerImpl
 						((CacheFileWithCache)cf_it.next()).updateStats();
 					}
 
+					if ( isWriteCoalesceEnabled() && --write_back_ticks == 0 ){
+						
+						write_back_ticks = WRITE_BACK_TICKS;
+						
+						writeBackTick();
+					}
+					
 					if ( --cleaner_ticks == 0 ){
 
 						cleaner_ticks	= CACHE_CLEANER_TICKS;
@@ -581,6 +723,87 @@ CacheFileManagerImpl
 			}
 		);
 		
+	}
+	
+		/**
+		 * Periodic write-back of dirty data. How old data has to be before it is written and the
+		 * minimum contiguous size written depend on cache pressure and measured write latency
+		 */
+	
+	protected void
+	writeBackTick()
+	{
+		final Set	dirty_files	= new HashSet();
+
+		long	used = getCacheUsed();
+		
+		long	max_age;
+		long	min_chunk;
+		
+		if ( used > cache_size*3/4 ){
+			
+				// under pressure, get it all out before writers block on allocation
+			
+			max_age		= 0;
+			min_chunk	= -1;
+			
+		}else if ( used > cache_size/2 ){
+			
+			max_age		= WRITE_BACK_MIN_AGE;
+			min_chunk	= getWriteCoalesceTarget();
+			
+		}else{
+			
+			max_age		= WRITE_BACK_BASE_AGE * getWriteLatencyFactor();
+			min_chunk	= getWriteCoalesceTarget();
+		}
+		
+		try{
+			this_mon.enter();
+
+			Iterator it = cache_entries.keySet().iterator();
+
+			while( it.hasNext()){
+
+				CacheEntry	entry = (CacheEntry)it.next();
+
+				if ( entry.isDirty()){
+
+					dirty_files.add( entry.getFile());
+				}
+			}
+		}finally{
+
+			this_mon.exit();
+		}
+		
+		if ( dirty_files.size() == 0 ){
+			
+			return;
+		}
+		
+		long	oldest = SystemTime.getCurrentTime() - max_age;
+
+		Iterator	it = dirty_files.iterator();
+
+		while( it.hasNext()){
+
+			CacheFileWithCache	file = (CacheFileWithCache)it.next();
+
+			try{
+				file.flushOldDirtyData( oldest, min_chunk );
+
+			}catch( CacheFileManagerException e ){
+
+				file.setPendingException( e );
+
+				Debug.printStackTrace( e );
+
+			}catch( Throwable e ){
+
+				Debug.printStackTrace( e );
+			}
+		}
 	}
 	
 		// must be called when the cachefileimpl is synchronised to ensure that the file's
@@ -601,6 +824,8 @@ CacheFileManagerImpl
 		
 			cache_entries.put( new_entry, new_entry );
 			
+			eviction_policy.entryAdded( new_entry );
+			
 			if ( DEBUG ){
 				
 				CacheFileWithCache	file	= new_entry.getFile();
@@ -662,7 +887,7 @@ CacheFileManagerImpl
 		
 				// note that the "get" operation update the MRU in cache_entries
 			
-			if ( cache_entries.get( entry ) == null ){
+			if ( cache_entries.get( entry ) == null || !eviction_policy.entryUsed( entry )){
 				
 				Debug.out( "Cache inconsistency: entry missing on usage" );
 				
@@ -691,6 +916,8 @@ CacheFileManagerImpl
 			
 			cache_space_free	+= entry.getLength();
 			
+			eviction_policy.entryRemoved( entry );
+			
 			if ( cache_entries.remove( entry ) == null ){
 				
 				Debug.out( "Cache inconsistency: entry missing on removal" );
@@ -789,6 +1016,38 @@ CacheFileManagerImpl
 		}
 	}
 	
+	protected void
+	fileBlocksFlushed(
+		int		entries,
+		long	bytes,
+		long	elapsed_nanos )
+	{
+		try{
+			this_mon.enter();
+			
+			flush_write_count++;
+			
+			flush_entry_count += entries;
+			
+			if ( bytes > 0 ){
+				
+				long	sample = ( elapsed_nanos / 1000 ) * 1024 * 1024 / bytes;
+				
+				if ( write_latency_per_mb < 0 ){
+					
+					write_latency_per_mb = sample;
+					
+				}else{
+					
+					write_latency_per_mb = ( write_latency_per_mb * 7 + sample ) / 8;
+				}
+			}
+		}finally{
+			
+			this_mon.exit();
+		}
+	}
+	
 	protected void
 	fileBytesRead(
 		int		num )
@@ -853,6 +1112,39 @@ CacheFileManagerImpl
 		return( file_write_count );
 	}
 	
+	protected long
+	getFlushWriteCount()
+	{
+		return( flush_write_count );
+	}
+	
+	protected long
+	getFlushedEntryCount()
+	{
+		return( flush_entry_count );
+	}
+	
+	protected long
+	getFileWriteLatency()
+	{
+		long	latency = write_latency_per_mb;
+		
+		return( latency<0?0:latency/1000 );
+	}
+	
+	protected String
+	getEvictionPolicyName()
+	{
+		return( eviction_policy.getName());
+	}
+	
+	protected long
+	getSegmentHitCount(
+		int		segment )
+	{
+		return( eviction_policy.getHitCount( segment ));
+	}
+	
 	protected void
 	closeFile(
 		CacheFileWithCache	file )
@@ -984,6 +1276,8 @@ CacheFileManagerImpl
 			
 			Iterator it;
 			
+			String	policy_str;
+			
 				// grab a copy to avoid potential deadlock as we never take the manager monitor
 				// and then the file's own monitor, always the other way around
 			
@@ -991,6 +1285,8 @@ CacheFileManagerImpl
 				this_mon.enter();
 
 				it = new ArrayList( cache_entries.keySet()).iterator();
+				
+				policy_str = eviction_policy.getString();
 
 			}finally{
 				
@@ -998,6 +1294,16 @@ CacheFileManagerImpl
 			}
 			
 			writer.println( "Entries = " + cache_entries.size());
+			
+			writer.println( 
+				"Write back: coalesce=" + write_coalesce + 
+				", flush_writes=" + flush_write_count + 
+				", flushed_entries=" + flush_entry_count + 
+				", deferred=" + write_back_deferred +
+				", latency_ms_per_mb=" + getFileWriteLatency() + 
+				", target=" + getWriteCoalesceTarget());
+			
+			writer.println( "Eviction: " + policy_str );
 							
 			Set	files = new HashSet();
 			
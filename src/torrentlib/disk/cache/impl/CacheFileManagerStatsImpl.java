@@ -191,6 +191,63 @@ CacheFileManagerStatsImpl
 		return( manager.getFileWriteCount());
 	}
 	
+	public long
+	getFlushWriteCount()
+	{
+		return( manager.getFlushWriteCount());
+	}
+	
+	public long
+	getFlushedEntryCount()
+	{
+		return( manager.getFlushedEntryCount());
+	}
+	
+	public float
+	getCoalesceRatio()
+	{
+		long	writes = manager.getFlushWriteCount();
+		
+		if ( writes == 0 ){
+			
+			return( 0 );
+		}
+		
+		return((float)manager.getFlushedEntryCount()/writes );
+	}
+	
+	public long
+	getAverageBytesPerFileWrite()
+	{
+		long	writes = manager.getFileWriteCount();
+		
+		if ( writes == 0 ){
+			
+			return( 0 );
+		}
+		
+		return( manager.getBytesWrittenToFile()/writes );
+	}
+	
+	public long
+	getFileWriteLatency()
+	{
+		return( manager.getFileWriteLatency());
+	}
+	
+	public String
+	getEvictionPolicyName()
+	{
+		return( manager.getEvictionPolicyName());
+	}
+	
+	public long
+	getSegmentHitCount(
+		int		segment )
+	{
+		return( manager.getSegmentHitCount( segment ));
+	}
+	
 	public boolean[] getBytesInCache(TOTorrent torrent, long[] absoluteOffsets, long[] lengths)
 	{
 		return manager.getBytesInCache( torrent, absoluteOffsets, lengths);
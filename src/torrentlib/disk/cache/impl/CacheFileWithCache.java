@@ -30,6 +30,7 @@ import torrentlib.AEMonitor;
 import torrentlib.AEDiagnostics;
 import torrentlib.DirectByteBuffer;
 import torrentlib.DirectByteBufferPool;
+import torrentlib.SystemTime;
 import java.io.File;
 import java.util.*;
 
@@ -1103,10 +1104,14 @@ CacheFileWithCache
 				
 			}
 			
+			long	write_start = SystemTime.getHighPrecisionCounter();
+			
 			getFMFile().write( buffers, multi_block_start );
 									
 			manager.fileBytesWritten( expected_overall_write );
 			
+			manager.fileBlocksFlushed( buffers.length, expected_overall_write, SystemTime.getHighPrecisionCounter() - write_start );
+			
 			// bytes_written += expected_overall_write;
 			
 			write_ok	= true;
@@ -1190,6 +1195,121 @@ CacheFileWithCache
 		}
 	}
 	
+		/**
+		 * Writes out dirty data in the given range once the contiguous dirty run it belongs to
+		 * (which can extend across piece boundaries) has reached the target size. Smaller runs
+		 * are left to grow and are picked up by the periodic write-back if they don't. The run
+		 * only extends over entries that are verified at this point, so blocks of neighbouring
+		 * pieces that haven't been checked yet (or have since failed) aren't swept up with it
+		 */
+	
+	protected void
+	writeBack(
+		long	position,
+		long	length,
+		long	target )
+	
+		throws CacheFileManagerException
+	{
+		if ( !manager.isCacheEnabled()){
+			
+			return;
+		}
+		
+		try{
+			this_mon.enter();
+
+			if ( cache.size() == 0 ){
+				
+				return;
+			}
+			
+			long	max_span	= target * CacheFileManagerImpl.WRITE_BACK_MAX_SPAN_FACTOR;
+			
+			long	start	= position;
+			long	end		= position + length;
+			
+			boolean	dirty	= false;
+			
+				// the comparator never returns 0 so probe entries have to be placed just before
+				// the position of interest and the boundary entries checked explicitly
+			
+			Iterator	it = cache.subSet( new CacheEntry( start-1 ), new CacheEntry( end )).iterator();
+			
+			while( it.hasNext()){
+				
+				CacheEntry	entry = (CacheEntry)it.next();
+				
+				if ( entry.getFilePosition() >= start && entry.isDirty() && entry.isVerified()){
+					
+					dirty = true;
+					
+					break;
+				}
+			}
+			
+			if ( !dirty ){
+				
+				return;
+			}
+			
+			it = cache.headSet( new CacheEntry( start-1 ), true ).descendingIterator();
+			
+			while( it.hasNext() && end - start < max_span ){
+				
+				CacheEntry	entry = (CacheEntry)it.next();
+				
+				if ( entry.getFilePosition() >= start ){
+					
+					continue;
+				}
+				
+				if ( !entry.isDirty() || !entry.isVerified() || entry.getFilePosition() + entry.getLength() != start ){
+					
+					break;
+				}
+				
+				start = entry.getFilePosition();
+			}
+			
+			it = cache.tailSet( new CacheEntry( end-1 ), true ).iterator();
+			
+			while( it.hasNext() && end - start < max_span ){
+				
+				CacheEntry	entry = (CacheEntry)it.next();
+				
+				if ( entry.getFilePosition() < end ){
+					
+					continue;
+				}
+				
+				if ( !entry.isDirty() || !entry.isVerified() || entry.getFilePosition() != end ){
+					
+					break;
+				}
+				
+				end += entry.getLength();
+			}
+			
+			if ( end - start < target ){
+				
+				manager.writeBackDeferred();
+				
+				return;
+			}
+			
+			if (TRACE)
+				Logger.log(new LogEvent(torrent, LOGID, "writeBack: " + getName()
+						+ ", " + start + " - " + (end-1) + " for " + position + "/" + length ));
+
+			flushCache( start, end - start, false, -1, 0, -1 );
+			
+		}finally{
+			
+			this_mon.exit();
+		}
+	}
+	
 	protected void
 	flushOldDirtyData(
 		long	oldest_dirty_time )
@@ -1608,6 +1728,74 @@ CacheFileWithCache
 		readCache( buffer, position, false, !read_cache );
 	}
 		
+	public void
+	dataVerified(
+		long		position,
+		long		length )
+	{
+		if ( manager.isWriteCoalesceEnabled() && access_mode == CF_WRITE ){
+			
+				// mark what has passed now, the write-back itself runs later and must not
+				// pick up anything that hadn't
+			
+			try{
+				this_mon.enter();
+				
+				Iterator	it = cache.subSet( new CacheEntry( position-1 ), new CacheEntry( position + length )).iterator();
+				
+				while( it.hasNext()){
+					
+					CacheEntry	entry = (CacheEntry)it.next();
+					
+					if ( entry.getFilePosition() >= position ){
+						
+						entry.setVerified();
+					}
+				}
+			}finally{
+				
+				this_mon.exit();
+			}
+			
+			manager.queueWriteBack( this, position, length );
+		}
+	}
+	
+	public DirectByteBuffer
+	readMapped(
+		long				position,
+		int					length )
+	
+		throws CacheFileManagerException
+	{
+			// the cache is flushed when switching to read mode so there's no dirty data
+			// that the mapping could miss
+		
+		if ( access_mode != CF_READ ){
+			
+			return( null );
+		}
+		
+		try{
+			DirectByteBuffer	buffer = getFMFile().readMapped( position, length );
+			
+			if ( buffer != null ){
+				
+				manager.fileBytesRead( length );
+
+				bytes_read += length;
+			}
+			
+			return( buffer );
+			
+		}catch( FMFileManagerException e ){
+			
+			manager.rethrow(this,e);
+			
+			return( null );
+		}
+	}
+	
 	public void
 	write(
 		DirectByteBuffer	buffer,
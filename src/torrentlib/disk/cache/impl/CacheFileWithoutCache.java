@@ -252,6 +252,33 @@ CacheFileWithoutCache
 		}
 	}
 	
+	public DirectByteBuffer
+	readMapped(
+		long				position,
+		int					length )
+	
+		throws CacheFileManagerException
+	{
+		try{
+			DirectByteBuffer	buffer = file.readMapped( position, length );
+			
+			if ( buffer != null ){
+				
+				manager.fileBytesRead( length );
+
+				bytes_read += length;
+			}
+			
+			return( buffer );
+			
+		}catch( FMFileManagerException e ){
+				
+			manager.rethrow(this,e);
+			
+			return( null );
+		}
+	}
+	
 	public void
 	write(
 		DirectByteBuffer	buffer,
@@ -375,6 +402,14 @@ CacheFileWithoutCache
 		}
 	}
 	
+	public void
+	dataVerified(
+		long		position,
+		long		length )
+	{
+			// nothing cached, data is already written
+	}
+	
 	public void
 	flushCache()
 	
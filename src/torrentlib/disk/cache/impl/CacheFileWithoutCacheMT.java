@@ -513,6 +513,41 @@ CacheFileWithoutCacheMT
 		}
 	}
 	
+	public DirectByteBuffer
+	readMapped(
+		long				position,
+		int					length )
+	
+		throws CacheFileManagerException
+	{
+		FMFile file = null;
+		
+		try{	
+			file	= getFile();
+			
+			DirectByteBuffer	buffer = file.readMapped( position, length );
+			
+			if ( buffer != null ){
+				
+				manager.fileBytesRead( length );
+
+				bytes_read += length;
+			}
+			
+			return( buffer );
+			
+		}catch( FMFileManagerException e ){
+				
+			manager.rethrow(this,e);
+			
+			return( null );
+			
+		}finally{
+			
+			releaseFile( file );
+		}
+	}
+	
 	public void
 	write(
 		DirectByteBuffer	buffer,
@@ -636,6 +671,14 @@ CacheFileWithoutCacheMT
 		}
 	}
 	
+	public void
+	dataVerified(
+		long		position,
+		long		length )
+	{
+			// nothing cached, data is already written
+	}
+	
 	public void
 	flushCache()
 	
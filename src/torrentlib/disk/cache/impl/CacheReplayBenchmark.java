@@ -0,0 +1,234 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package torrentlib.disk.cache.impl;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import torrentlib.disk.cache.CacheFileManagerStats;
+
+/**
+ * Replays a block read trace against the cache eviction policies and reports hit rates. Traces
+ * are recorded by running with -Dazureus.dmreader.trace=&lt;file&gt;; without one a synthetic
+ * workload of popular pieces mixed with a sequential scan (e.g. a peer fetching the whole
+ * torrent) is generated.
+ * <p>
+ * Usage: CacheReplayBenchmark [cache MB] [trace file]
+ */
+
+public class 
+CacheReplayBenchmark 
+{
+	private static final int	BLOCK_SIZE	= 16*1024;
+	
+	public static void
+	main(
+		String[]	args )
+	
+		throws Exception
+	{
+		long	cache_size = 1024L*1024*(args.length>0?Integer.parseInt( args[0] ):4);
+		
+		List	trace = args.length>1?readTrace( args[1] ):syntheticTrace();
+		
+		System.out.println( "requests=" + trace.size() + ", cache=" + (cache_size/1024) + "K" );
+		
+			// stands in for the manager's access ordered cache_entries, maintained the same way
+		
+		LinkedHashMap	lru_entries = new LinkedHashMap( 1024, 0.75f, true );
+		
+		CacheEvictionPolicy[]	policies 		= { new CacheEvictionPolicyLRU( lru_entries ), new CacheEvictionPolicy2Q( cache_size ) };
+		LinkedHashMap[]			cache_entries	= { lru_entries, new LinkedHashMap( 1024, 0.75f, true ) };
+		
+		for (int i=0;i<policies.length;i++){
+			
+			replay( policies[i], cache_entries[i], cache_size, trace );
+		}
+	}
+	
+	private static void
+	replay(
+		CacheEvictionPolicy		policy,
+		LinkedHashMap			cache_entries,
+		long					cache_size,
+		List					trace )
+	{
+		Map		entries	= new HashMap();
+		long	used	= 0;
+		
+		long	hits	= 0;
+		long	misses	= 0;
+		
+		long	start = System.nanoTime();
+		
+		for (int i=0;i<trace.size();i++){
+			
+			long[]	request = (long[])trace.get(i);
+			
+			long	offset	= request[0];
+			long	end		= offset + request[1];
+			
+			for ( long block=offset/BLOCK_SIZE*BLOCK_SIZE;block<end;block+=BLOCK_SIZE ){
+				
+				Long	key = new Long( block );
+				
+				CacheEntry	entry = (CacheEntry)entries.get( key );
+				
+				if ( entry != null ){
+					
+					cache_entries.get( entry );
+					
+					policy.entryUsed( entry );
+					
+					hits++;
+					
+					continue;
+				}
+				
+				misses++;
+				
+					// both policies evict entry by entry here, the real LRU releases a chunk of the
+					// victim's file but that affects hit rates little
+				
+				while( used + BLOCK_SIZE > cache_size ){
+					
+					CacheEntry	victim = policy.getVictim();
+					
+					policy.entryRemoved( victim );
+					
+					cache_entries.remove( victim );
+					
+					entries.remove( new Long( victim.getFilePosition()));
+					
+					used -= victim.getLength();
+				}
+				
+				entry = new CacheEntry( block );
+				
+				entry.size	= BLOCK_SIZE;
+				
+				cache_entries.put( entry, entry );
+				
+				policy.entryAdded( entry );
+				
+				entries.put( key, entry );
+				
+				used += BLOCK_SIZE;
+			}
+		}
+		
+		long	elapsed = System.nanoTime() - start;
+		
+		System.out.println( 
+			policy.getName() + ": hit rate=" + String.format( "%.2f%%", 100.0*hits/(hits+misses)) +
+			", hits=" + hits + ", misses=" + misses +
+			", lru=" + policy.getHitCount( CacheFileManagerStats.SEGMENT_LRU ) +
+			", probation=" + policy.getHitCount( CacheFileManagerStats.SEGMENT_PROBATION ) +
+			", protected=" + policy.getHitCount( CacheFileManagerStats.SEGMENT_PROTECTED ) +
+			", ghost=" + policy.getHitCount( CacheFileManagerStats.SEGMENT_GHOST ) +
+			", ns/block=" + (elapsed/Math.max( 1, hits+misses )));
+	}
+	
+	private static List
+	readTrace(
+		String		file )
+	
+		throws Exception
+	{
+		List	result = new ArrayList();
+		
+		BufferedReader	br = new BufferedReader( new FileReader( file ));
+		
+		try{
+			while( true ){
+				
+				String	line = br.readLine();
+				
+				if ( line == null ){
+					
+					break;
+				}
+				
+				String[]	bits = line.trim().split( "," );
+				
+				if ( bits.length != 4 ){
+					
+					continue;
+				}
+				
+					// fold the disk manager into the offset so torrents don't share blocks
+				
+				long	dm		= Long.parseLong( bits[1] );
+				long	offset	= Long.parseLong( bits[2] );
+				long	length	= Long.parseLong( bits[3] );
+				
+				result.add( new long[]{ ( dm << 40 ) ^ offset, length });
+			}
+		}finally{
+			
+			br.close();
+		}
+		
+		return( result );
+	}
+	
+	private static List
+	syntheticTrace()
+	{
+		final int	piece_size	= 256*1024;
+		final int	pieces		= 4096;			// 1GB torrent
+		final int	requests	= 400000;
+		
+		Random	r = new Random( 1 );
+		
+		List	result = new ArrayList( requests );
+		
+		long	scan_pos = 0;
+		
+		for (int i=0;i<requests;i++){
+			
+			if ( r.nextInt( 100 ) < 30 ){
+				
+					// sequential scanner
+				
+				result.add( new long[]{ scan_pos, BLOCK_SIZE });
+				
+				scan_pos = ( scan_pos + BLOCK_SIZE ) % ((long)pieces*piece_size );
+				
+			}else{
+				
+					// skewed popularity, roughly zipf
+				
+				int	piece = (int)Math.floor( Math.pow( pieces, r.nextDouble())) - 1;
+				
+				int	block = r.nextInt( piece_size/BLOCK_SIZE );
+				
+				result.add( new long[]{ (long)piece*piece_size + block*BLOCK_SIZE, BLOCK_SIZE });
+			}
+		}
+		
+		return( result );
+	}
+}
@@ -120,6 +120,19 @@ FMFile
 	
 		throws FMFileManagerException;
 	
+		/**
+		 * Gets a buffer backed by a memory mapping of the file region, if memory mapped reads
+		 * are enabled and the file is complete (read mode)
+		 * @return null if the caller should perform a normal read
+		 */
+	
+	public DirectByteBuffer
+	readMapped(
+		long		offset,
+		int			length )
+	
+		throws FMFileManagerException;
+	
 	public void
 	write(
 		DirectByteBuffer	buffer,
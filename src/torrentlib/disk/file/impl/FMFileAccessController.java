@@ -462,6 +462,24 @@ FMFileAccessController
 		file_access.write( raf, buffers, position );
 	}
 	
+		/**
+		 * only linear files can be served directly from a mapping
+		 */
+	
+	public DirectByteBuffer
+	readMapped(
+		RandomAccessFile	raf,
+		long				offset,
+		int					length )
+	{
+		if ( file_access instanceof FMFileAccessLinear ){
+			
+			return(((FMFileAccessLinear)file_access).readMapped( raf, offset, length ));
+		}
+		
+		return( null );
+	}
+	
 	public void
 	flush()
 	
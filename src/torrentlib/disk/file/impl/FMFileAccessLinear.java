@@ -22,18 +22,18 @@ package torrentlib.disk.file.impl;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
 import java.util.Locale;
 
 import torrentlib.AEThread2;
 import torrentlib.Constants;
 import torrentlib.Debug;
 import torrentlib.DirectByteBuffer;
+import torrentlib.DirectByteBufferFileRegion;
 import torrentlib.util.FileUtil;
 import torrentlib.SystemTime;
 
+import torrentlib.disk.file.FMFile;
 import torrentlib.disk.file.FMFileManagerException;
 
 public class 
@@ -49,8 +49,6 @@ FMFileAccessLinear
 	private static final boolean	DEBUG			= true;
 	private static final boolean	DEBUG_VERBOSE	= false;
 	
-	private static final boolean USE_MMAP = System.getProperty("azureus.io.usemmap","false") == "true";
-
 	private FMFileImpl		owner;
 	
 	protected
@@ -91,6 +89,8 @@ FMFileAccessLinear
 	
 		throws FMFileManagerException
 	{
+		FMFileMappedRegionCache.invalidate( owner );
+		
 		try{
 			AEThread2.setDebug( owner );
 			
@@ -208,19 +208,12 @@ FMFileAccessLinear
 		AEThread2.setDebug( owner );
 		
 		try{
-			if(USE_MMAP)
-			{
-				long remainingInFile = fc.size()-offset;
-				long remainingInTargetBuffer = buffer.remaining(DirectByteBuffer.SS_FILE);
-				MappedByteBuffer buf = fc.map(MapMode.READ_ONLY, offset, Math.min(remainingInFile,remainingInTargetBuffer));
-				buffer.put(DirectByteBuffer.SS_FILE, buf);
-			} else {
+			if ( !readMapped( fc, new DirectByteBuffer[]{ buffer }, offset )){
+				
 				fc.position(offset);
 				while (fc.position() < fc.size() && buffer.hasRemaining(DirectByteBuffer.SS_FILE))
 					buffer.read(DirectByteBuffer.SS_FILE,fc);				
 			}
-
-			
 			
 		}catch ( Exception e ){
 			
@@ -259,26 +252,15 @@ FMFileAccessLinear
 		long read_start = SystemTime.getHighPrecisionCounter();
 		
 		try{
-			if(USE_MMAP)
-			{
+			for (int i=0;i<buffers.length;i++){
+				original_positions[i] = buffers[i].position( DirectByteBuffer.SS_FILE );
+			}
+			
+			if ( readMapped( fc, buffers, offset )){
 				
-				long size = 0;
-				for(int i=0;i<buffers.length;i++)
-				{
-					size += buffers[i].remaining(DirectByteBuffer.SS_FILE);
-					original_positions[i] = buffers[i].position(DirectByteBuffer.SS_FILE);
-				}
-					
-				size = Math.min(size, fc.size()-offset);
-				MappedByteBuffer buf = fc.map(MapMode.READ_ONLY, offset, size);
-				for(DirectByteBuffer b : buffers)
-				{
-					buf.limit(buf.position()+b.remaining(DirectByteBuffer.SS_FILE));
-					b.put(DirectByteBuffer.SS_FILE, buf);
-				}
-					
+				// served from the mapped region
 				
-			} else {
+			}else{
 				
 				fc.position(offset);
 				ByteBuffer[]	bbs = new ByteBuffer[buffers.length];
@@ -434,96 +416,75 @@ FMFileAccessLinear
 
 		try{
 			
-			if(USE_MMAP) {
-				long size = 0;
-				for(int i=0;i<buffers.length;i++)
-				{
-					size += buffers[i].remaining(DirectByteBuffer.SS_FILE);
-					original_positions[i] = buffers[i].position(DirectByteBuffer.SS_FILE);
-				}
-				
-				if(position+size > fc.size())
-				{
-					fc.position(position+size-1);
-					fc.write(ByteBuffer.allocate(1));
-					fc.force(true);
-				}
-					
-				MappedByteBuffer buf = fc.map(MapMode.READ_WRITE, position, size);
-				for(DirectByteBuffer b : buffers)
-					buf.put(b.getBuffer(DirectByteBuffer.SS_FILE));
-				buf.force();
-			} else {
-				long	expected_write 	= 0;
-				long	actual_write	= 0;
-				boolean	partial_write	= false;
-				
-				if ( DEBUG ){
-					for (int i=0;i<buffers.length;i++){
-						expected_write += buffers[i].limit(DirectByteBuffer.SS_FILE) - buffers[i].position(DirectByteBuffer.SS_FILE);
-					}
+			long	expected_write 	= 0;
+			long	actual_write	= 0;
+			boolean	partial_write	= false;
+			
+			if ( DEBUG ){
+				for (int i=0;i<buffers.length;i++){
+					expected_write += buffers[i].limit(DirectByteBuffer.SS_FILE) - buffers[i].position(DirectByteBuffer.SS_FILE);
 				}
-				
-				fc.position( position );
-				ByteBuffer[]	bbs = new ByteBuffer[buffers.length];
+			}
+			
+			fc.position( position );
+			ByteBuffer[]	bbs = new ByteBuffer[buffers.length];
 
 
-				ByteBuffer	last_bb	= null;
-				for (int i=0;i<bbs.length;i++){
-					ByteBuffer bb = bbs[i] = buffers[i].getBuffer(DirectByteBuffer.SS_FILE);
-					int	pos = original_positions[i] = bb.position();
-					if ( pos != bb.limit()){
-						last_bb	= bbs[i];
-					}
+			ByteBuffer	last_bb	= null;
+			for (int i=0;i<bbs.length;i++){
+				ByteBuffer bb = bbs[i] = buffers[i].getBuffer(DirectByteBuffer.SS_FILE);
+				int	pos = original_positions[i] = bb.position();
+				if ( pos != bb.limit()){
+					last_bb	= bbs[i];
 				}
+			}
+			
+			if ( last_bb != null ){
+				int loop = 0;
 				
-				if ( last_bb != null ){
-					int loop = 0;
+				while( last_bb.position() != last_bb.limit()){
+					long written = fc.write( bbs );
+					actual_write += written;
 					
-					while( last_bb.position() != last_bb.limit()){
-						long written = fc.write( bbs );
-						actual_write += written;
-						
-						if ( written > 0 ){
-							loop	= 0;
-							if ( DEBUG ){
-								if ( last_bb.position() != last_bb.limit()){
-									partial_write	= true;
-									if ( DEBUG_VERBOSE ){
-										Debug.out( "FMFile::write: **** partial write **** this = " + written + ", total = " + actual_write + ", target = " + expected_write );
-									}
+					if ( written > 0 ){
+						loop	= 0;
+						if ( DEBUG ){
+							if ( last_bb.position() != last_bb.limit()){
+								partial_write	= true;
+								if ( DEBUG_VERBOSE ){
+									Debug.out( "FMFile::write: **** partial write **** this = " + written + ", total = " + actual_write + ", target = " + expected_write );
 								}
 							}
+						}
+						
+					}else{
+						loop++;
+						if ( loop == WRITE_RETRY_LIMIT ){
+							Debug.out( "FMFile::write: zero length write - abandoning" );
+							throw( new FMFileManagerException( "write fails: retry limit exceeded"));
+						}
 							
-						}else{
-							loop++;
-							if ( loop == WRITE_RETRY_LIMIT ){
-								Debug.out( "FMFile::write: zero length write - abandoning" );
-								throw( new FMFileManagerException( "write fails: retry limit exceeded"));
-							}
-								
-							if ( DEBUG_VERBOSE )
-								Debug.out( "FMFile::write: zero length write - retrying" );
-							
-							try{
-								Thread.sleep( WRITE_RETRY_DELAY*loop );
-							}catch( InterruptedException e ){
-								throw( new FMFileManagerException( "write fails: interrupted" ));
-							}
-						}						
-					}
+						if ( DEBUG_VERBOSE )
+							Debug.out( "FMFile::write: zero length write - retrying" );
+						
+						try{
+							Thread.sleep( WRITE_RETRY_DELAY*loop );
+						}catch( InterruptedException e ){
+							throw( new FMFileManagerException( "write fails: interrupted" ));
+						}
+					}						
 				}
-				
-				if ( DEBUG ){
-					if ( expected_write != actual_write ){
-						Debug.out( "FMFile::write: **** partial write **** failed: expected = " + expected_write + ", actual = " + actual_write );
-						throw( new FMFileManagerException( "write fails: expected write/actual write mismatch" ));
-					}
-					if ( partial_write && DEBUG_VERBOSE )
-						Debug.out( "FMFile::write: **** partial write **** completed ok" );
+			}
+			
+			if ( DEBUG ){
+				if ( expected_write != actual_write ){
+					Debug.out( "FMFile::write: **** partial write **** failed: expected = " + expected_write + ", actual = " + actual_write );
+					throw( new FMFileManagerException( "write fails: expected write/actual write mismatch" ));
 				}
-				
+				if ( partial_write && DEBUG_VERBOSE )
+					Debug.out( "FMFile::write: **** partial write **** completed ok" );
 			}
+			
 
 			
 		}catch ( Throwable e ){
@@ -546,6 +507,108 @@ FMFileAccessLinear
 		}		
 	}
 	
+		/**
+		 * Memory mapped reads are only used once a file is in read mode (complete) as mappings
+		 * of files still being written would need to track length changes
+		 */
+	
+	private boolean
+	canMap()
+	{
+		return( FMFileMappedRegionCache.isEnabled() && owner.getAccessMode() == FMFile.FM_READ );
+	}
+	
+	private boolean
+	readMapped(
+		FileChannel			fc,
+		DirectByteBuffer[]	buffers,
+		long				offset )
+	{
+		if ( !canMap()){
+			
+			return( false );
+		}
+		
+		int	length = 0;
+		
+		for ( DirectByteBuffer b: buffers ){
+			
+			length += b.remaining( DirectByteBuffer.SS_FILE );
+		}
+		
+		FMFileMappedRegionCache.MappedRegion	mapped = FMFileMappedRegionCache.getRegion( owner, fc, offset, length );
+		
+		if ( mapped == null ){
+			
+			return( false );
+		}
+		
+		try{
+			ByteBuffer	region = mapped.getBuffer();
+			
+			for ( DirectByteBuffer b: buffers ){
+				
+				region.limit( region.position() + b.remaining( DirectByteBuffer.SS_FILE ));
+				
+				b.put( DirectByteBuffer.SS_FILE, region );
+			}
+		}finally{
+			
+			mapped.release();
+		}
+		
+		return( true );
+	}
+	
+		/**
+		 * Gets a buffer backed directly by a read-only mapping of the file, avoiding the copy
+		 * into a pooled buffer. The result is not pooled, returnToPool() releases the mapping. It 
+		 * also carries the file region so that uploads can be sent with FileChannel.transferTo
+		 * @return null if the region can't be mapped and a normal read is required
+		 */
+	
+	public DirectByteBuffer
+	readMapped(
+		RandomAccessFile	raf,
+		long				offset,
+		int					length )
+	{
+		if ( raf == null || !canMap()){
+			
+			return( null );
+		}
+		
+		FileChannel fc = raf.getChannel();
+		
+		if ( !fc.isOpen()){
+			
+			return( null );
+		}
+		
+		final FMFileMappedRegionCache.MappedRegion	mapped = FMFileMappedRegionCache.getRegion( owner, fc, offset, length );
+		
+		if ( mapped == null ){
+			
+			return( null );
+		}
+		
+		return( 
+			new DirectByteBufferFileRegion( DirectByteBuffer.AL_DM_READ, mapped.getBuffer(), fc, offset )
+			{
+				public void
+				returnToPool()
+				{
+					mapped.release();
+				}
+				
+				public void
+				returnToPoolIfNotFree()
+				{
+					mapped.release();
+				}
+			});
+	}
+	
 	public void
 	flush()
 	
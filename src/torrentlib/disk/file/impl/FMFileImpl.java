@@ -278,6 +278,11 @@ FMFileImpl
 	setAccessModeSupport(
 		int		mode )
 	{		
+		if ( mode != access_mode ){
+			
+			FMFileMappedRegionCache.invalidate( this );
+		}
+		
 		access_mode	= mode;
 	}
 	
@@ -642,6 +647,8 @@ FMFileImpl
 			flush_exception = e;
 		}
 		
+		FMFileMappedRegionCache.invalidate( this );
+		
 		if ( raf == null ){
 			
 				// may have previously been implicitly closed, tidy up if required
@@ -758,6 +765,31 @@ FMFileImpl
 		}
 	}
 	
+	public DirectByteBuffer
+	readMapped(
+		long		offset,
+		int			length )
+	
+		throws FMFileManagerException
+	{
+		if ( access_mode != FM_READ || !FMFileMappedRegionCache.isEnabled()){
+			
+			return( null );
+		}
+		
+		try{
+			this_mon.enter();
+		
+			ensureOpen( "FMFile:readMapped" );
+			
+			return( file_access.readMapped( raf, offset, length ));
+			
+		}finally{
+			
+			this_mon.exit();
+		}
+	}
+	
 	protected void
 	writeSupport(
 		DirectByteBuffer		buffer,
@@ -0,0 +1,490 @@
+/*
+ * Created on Oct 18, 2026
+ * Copyright (C) Azureus Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package torrentlib.disk.file.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import torrentlib.AEMonitor;
+import torrentlib.Constants;
+import torrentlib.Debug;
+
+/**
+ * Bounded LRU of read-only memory mappings over completed (read-mode) linear files.
+ * Files are mapped in fixed-size, window-aligned regions so that a block read only ever
+ * needs a single mapping. Enabled with -Dazureus.io.usemmap=true on 64-bit JVMs only as the
+ * mappings would exhaust a 32-bit address space.
+ * <p>
+ * Regions handed out are counted against their window and must be released. Windows that are
+ * evicted or invalidated are unmapped explicitly once no regions of them remain in use, rather
+ * than waiting for the garbage collector, as a file with live mappings can't be moved, renamed
+ * or deleted on Windows. If the JVM doesn't allow this the collector releases them as before.
+ */
+
+public class
+FMFileMappedRegionCache
+{
+	private static final boolean	ENABLED;
+
+	private static final long		WINDOW_SIZE;
+	private static final int		MAX_WINDOWS;
+
+	static{
+		boolean	enabled = System.getProperty( "azureus.io.usemmap", "false" ).equals( "true" );
+
+		if ( enabled && !Constants.isJava64Bit ){
+
+			Debug.outNoStack( "Memory mapped reads disabled: 32-bit JVM" );
+
+			enabled = false;
+		}
+
+		ENABLED	= enabled;
+
+		WINDOW_SIZE = Math.max( 1, Integer.getInteger( "azureus.io.mmap.window.mb", 64 ).intValue()) * 1024L*1024L;
+		MAX_WINDOWS	= Math.max( 1, Integer.getInteger( "azureus.io.mmap.windows", 64 ).intValue());
+	}
+
+		// explicit unmapping: Unsafe.invokeCleaner from Java 9, DirectBuffer.cleaner().clean() before
+
+	private static Object	unsafe;
+	private static Method	invoke_cleaner;
+	private static Method	get_cleaner;
+	private static Method	clean;
+
+	private static volatile boolean	unmap_failed;
+
+	static{
+		if ( ENABLED ){
+
+			try{
+				Class<?>	unsafe_class = Class.forName( "sun.misc.Unsafe" );
+
+				invoke_cleaner = unsafe_class.getMethod( "invokeCleaner", ByteBuffer.class );
+
+				Field	f = unsafe_class.getDeclaredField( "theUnsafe" );
+
+				f.setAccessible( true );
+
+				unsafe = f.get( null );
+
+			}catch( Throwable e ){
+
+				invoke_cleaner = null;
+
+				try{
+					get_cleaner = Class.forName( "sun.nio.ch.DirectBuffer" ).getMethod( "cleaner" );
+
+					clean		= Class.forName( "sun.misc.Cleaner" ).getMethod( "clean" );
+
+				}catch( Throwable f ){
+
+					unmap_failed = true;
+				}
+			}
+		}
+	}
+
+	private static final AEMonitor	class_mon	= new AEMonitor( "FMFileMappedRegionCache" );
+
+	private static final Map<WindowKey,mappedWindow>	windows =
+		new LinkedHashMap<WindowKey,mappedWindow>( MAX_WINDOWS, 0.75f, true )
+		{
+			protected boolean
+			removeEldestEntry(
+				Map.Entry<WindowKey,mappedWindow> eldest )
+			{
+				if ( size() > MAX_WINDOWS ){
+
+					evictions++;
+
+					eldest.getValue().discard();
+
+					return( true );
+				}
+
+				return( false );
+			}
+		};
+
+	private static long	hits;
+	private static long	misses;
+	private static long	evictions;
+	private static long	unmaps;
+
+	public static boolean
+	isEnabled()
+	{
+		return( ENABLED );
+	}
+
+		/**
+		 * Gets a read-only buffer over [offset, offset+length) of the file. The region must be
+		 * released once its buffer is no longer used, after which the buffer mustn't be touched
+		 * @return null if the region isn't mappable (crosses a window boundary, beyond end of file, mapping failed)
+		 */
+
+	public static MappedRegion
+	getRegion(
+		Object			file,
+		FileChannel		channel,
+		long			offset,
+		int				length )
+	{
+		if ( !ENABLED || length <= 0 ){
+
+			return( null );
+		}
+
+		long	window_index 	= offset / WINDOW_SIZE;
+		long	window_start	= window_index * WINDOW_SIZE;
+
+		if ( offset + length > window_start + WINDOW_SIZE ){
+
+			return( null );
+		}
+
+		WindowKey	key = new WindowKey( file, window_index );
+
+		mappedWindow	window;
+
+		try{
+			class_mon.enter();
+
+			window = windows.get( key );
+
+			if ( window != null && window.getCapacity() >= offset + length - window_start ){
+
+				hits++;
+
+				window.acquire();
+
+			}else{
+
+				window = null;
+			}
+		}finally{
+
+			class_mon.exit();
+		}
+
+		try{
+			if ( window == null ){
+
+					// the last window of a file is mapped to the file's length, which should
+					// be final in read mode, but remap if a read goes beyond it
+
+				long	file_size = channel.size();
+
+				if ( offset + length > file_size ){
+
+					return( null );
+				}
+
+				window = new mappedWindow( channel.map( MapMode.READ_ONLY, window_start, Math.min( WINDOW_SIZE, file_size - window_start )));
+
+				try{
+					class_mon.enter();
+
+					misses++;
+
+					window.acquire();
+
+					mappedWindow	old = windows.put( key, window );
+
+					if ( old != null ){
+
+						old.discard();
+					}
+				}finally{
+
+					class_mon.exit();
+				}
+			}
+
+			ByteBuffer	region = window.getBuffer().duplicate();
+
+			int	start = (int)( offset - window_start );
+
+			region.limit( start + length );
+			region.position( start );
+
+			return( new MappedRegion( window, region.slice()));
+
+		}catch( Throwable e ){
+
+				// out of address space or similar, the caller falls back to a normal read
+
+			Debug.outNoStack( "Memory mapped read failed: " + Debug.getNestedExceptionMessage( e ));
+
+			if ( window != null ){
+
+				window.release();
+			}
+
+			return( null );
+		}
+	}
+
+		/**
+		 * Drops the mappings of a file, must be called before it's written to, truncated or moved.
+		 * Mappings not in use are unmapped immediately, others as soon as they're released
+		 */
+
+	public static void
+	invalidate(
+		Object		file )
+	{
+		if ( !ENABLED ){
+
+			return;
+		}
+
+		try{
+			class_mon.enter();
+
+			Iterator<Map.Entry<WindowKey,mappedWindow>>	it = windows.entrySet().iterator();
+
+			while( it.hasNext()){
+
+				Map.Entry<WindowKey,mappedWindow>	entry = it.next();
+
+				if ( entry.getKey().file == file ){
+
+					it.remove();
+
+					entry.getValue().discard();
+				}
+			}
+		}finally{
+
+			class_mon.exit();
+		}
+	}
+
+	public static String
+	getString()
+	{
+		try{
+			class_mon.enter();
+
+			return( "enabled=" + ENABLED + ",windows=" + windows.size() + "/" + MAX_WINDOWS + ",hits=" + hits + ",misses=" + misses + ",evictions=" + evictions + ",unmaps=" + unmaps + (unmap_failed?"(unavailable)":"") );
+
+		}finally{
+
+			class_mon.exit();
+		}
+	}
+
+		/**
+		 * called with class_mon held
+		 */
+
+	private static void
+	unmap(
+		MappedByteBuffer	buffer )
+	{
+		if ( unmap_failed ){
+
+			return;
+		}
+
+		try{
+			if ( invoke_cleaner != null ){
+
+				invoke_cleaner.invoke( unsafe, buffer );
+
+			}else{
+
+				Object	cleaner = get_cleaner.invoke( buffer );
+
+				if ( cleaner != null ){
+
+					clean.invoke( cleaner );
+				}
+			}
+
+			unmaps++;
+
+		}catch( Throwable e ){
+
+				// e.g. Java 9+ without access to the cleaner, leave it to the garbage collector
+
+			unmap_failed = true;
+
+			Debug.outNoStack( "Memory mapped region unmap unavailable: " + Debug.getNestedExceptionMessage( e ));
+		}
+	}
+
+		/**
+		 * A buffer over part of a mapped window, the window stays mapped until it's released
+		 */
+
+	public static class
+	MappedRegion
+	{
+		private final mappedWindow	window;
+		private final ByteBuffer	buffer;
+
+		private boolean	released;
+
+		private
+		MappedRegion(
+			mappedWindow	_window,
+			ByteBuffer		_buffer )
+		{
+			window	= _window;
+			buffer	= _buffer;
+		}
+
+		public ByteBuffer
+		getBuffer()
+		{
+			return( buffer );
+		}
+
+		public void
+		release()
+		{
+			synchronized( this ){
+
+				if ( released ){
+
+					return;
+				}
+
+				released = true;
+			}
+
+			window.release();
+		}
+	}
+
+	private static class
+	mappedWindow
+	{
+		private final MappedByteBuffer	buffer;
+
+			// guarded by class_mon
+
+		private int			users;
+		private boolean		discarded;
+
+		private
+		mappedWindow(
+			MappedByteBuffer	_buffer )
+		{
+			buffer	= _buffer;
+		}
+
+		private MappedByteBuffer
+		getBuffer()
+		{
+			return( buffer );
+		}
+
+		private int
+		getCapacity()
+		{
+			return( buffer.capacity());
+		}
+
+		private void
+		acquire()
+		{
+			users++;
+		}
+
+			/**
+			 * no longer in the cache, unmap once the last user is done
+			 */
+
+		private void
+		discard()
+		{
+			discarded	= true;
+
+			if ( users == 0 ){
+
+				unmap( buffer );
+			}
+		}
+
+		private void
+		release()
+		{
+			try{
+				class_mon.enter();
+
+				users--;
+
+				if ( users == 0 && discarded ){
+
+					unmap( buffer );
+				}
+			}finally{
+
+				class_mon.exit();
+			}
+		}
+	}
+
+	private static class
+	WindowKey
+	{
+		private final Object	file;
+		private final long		index;
+
+		private
+		WindowKey(
+			Object		_file,
+			long		_index )
+		{
+			file	= _file;
+			index	= _index;
+		}
+
+		public int
+		hashCode()
+		{
+			return( System.identityHashCode( file ) ^ (int)( index ^ ( index >>> 32 )));
+		}
+
+		public boolean
+		equals(
+			Object	other )
+		{
+			if ( other instanceof WindowKey ){
+
+				WindowKey	o = (WindowKey)other;
+
+				return( file == o.file && index == o.index );
+			}
+
+			return( false );
+		}
+	}
+}
@@ -90,6 +90,16 @@ FMFileTestImpl
 		}
 	}
 	
+	public DirectByteBuffer
+	readMapped(
+		long		offset,
+		int			length )
+	{
+			// test files have no real data behind them
+		
+		return( null );
+	}
+	
 	protected void
 	writeSupport(
 		DirectByteBuffer[]		buffers,
@@ -19,15 +19,29 @@
 
 package torrentlib.disk.impl;
 
+import java.io.File;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import controller.config.COConfigurationManager;
 import torrentlib.AEMonitor;
 
 public class 
 DiskManagerAllocationScheduler 
 {   
+		// per-download allocation strategies, unset means the "Enable incremental file creation",
+		// "XFS Allocation" and "Zero New" options apply as before
+	
+	public static final String	STRATEGY_SPARSE		= "sparse";		// set the length, let the file system allocate on write
+	public static final String	STRATEGY_EXTEND		= "extend";		// write out the extension in large positional writes
+	public static final String	STRATEGY_ZERO		= "zero";		// zero fill through the disk write queue
+	
 	private List		instances		= new ArrayList();
+	private Map			devices			= new HashMap();
 	private AEMonitor	instance_mon	= new AEMonitor( "DiskManagerAllocationScheduler" );
 	
 	
@@ -46,18 +60,80 @@ DiskManagerAllocationScheduler
 		}
 	}
 	
+	protected static String
+	getStrategy(
+		String		download_strategy )
+	{
+		String	strategy = download_strategy;
+		
+		if ( strategy == null || strategy.length() == 0 ){
+			
+			strategy = COConfigurationManager.getStringParameter( "diskmanager.alloc.strategy" );
+		}
+		
+			// return the constants so callers can compare by reference
+		
+		if ( STRATEGY_SPARSE.equals( strategy )){
+			
+			return( STRATEGY_SPARSE );
+			
+		}else if ( STRATEGY_EXTEND.equals( strategy )){
+			
+			return( STRATEGY_EXTEND );
+			
+		}else if ( STRATEGY_ZERO.equals( strategy )){
+			
+			return( STRATEGY_ZERO );
+		}
+		
+		return( null );
+	}
+	
+		/**
+		 * Allocations proceed in registration order, with up to "diskmanager.alloc.device.concurrency"
+		 * downloads allocating at the same time on each file store
+		 * @param file	the file about to be allocated, used to determine the device
+		 */
+	
 	protected boolean
 	getPermission(
-		DiskManagerHelper	instance )
+		DiskManagerHelper	instance,
+		File				file )
 	{		
+		Object	device = getDevice( file );
+		
+		int	concurrency = Math.max( 1, COConfigurationManager.getIntParameter( "diskmanager.alloc.device.concurrency" ));
+		
 		try{
 			instance_mon.enter();
 
-			if ( instances.get(0) == instance ){
+			devices.put( instance, device );
+			
+			int	ahead = 0;
+			
+			for (int i=0;i<instances.size();i++){
+				
+				Object	o = instances.get(i);
+				
+				if ( o == instance ){
+					
+					if ( ahead < concurrency ){
+					
+						return( true );
+					}
+					
+					break;
+				}
+				
+					// instances that haven't yet asked for permission are assumed to be on the same device
+				
+				Object	other_device = devices.get( o );
+				
+				if ( other_device == null || other_device.equals( device )){
 					
-				return( true );
+					ahead++;
+				}
 			}
-			
 		}finally{
 			
 			instance_mon.exit();
@@ -73,6 +149,33 @@ DiskManagerAllocationScheduler
 		return( false );
 	}
 	
+	protected static Object
+	getDevice(
+		File		file )
+	{
+		File	f = file.getAbsoluteFile();
+		
+			// file doesn't usually exist yet, use the nearest parent that does
+		
+		while( f != null && !f.exists()){
+			
+			f = f.getParentFile();
+		}
+		
+		if ( f != null ){
+		
+			try{
+				FileStore	store = Files.getFileStore( f.toPath());
+				
+				return( store );
+				
+			}catch( Throwable e ){
+			}
+		}
+		
+		return( "" );
+	}
+	
 	protected void
 	unregister(
 		DiskManagerHelper	instance )
@@ -81,6 +184,9 @@ DiskManagerAllocationScheduler
 			instance_mon.enter();
 			
 			instances.remove( instance );
+			
+			devices.remove( instance );
+			
 		}finally{
 			
 			instance_mon.exit();
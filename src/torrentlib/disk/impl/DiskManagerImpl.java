@@ -49,6 +49,7 @@ import torrentlib.RandomUtils;
 import stdlib.security.types.SHA1Simple;
 import torrentlib.util.FileUtil;
 import torrentlib.DirectByteBuffer;
+import torrentlib.DirectByteBufferPool;
 import torrentlib.disk.impl.piecemapper.DMPieceMapperFactory;
 import torrentlib.disk.impl.piecemapper.DMPieceList;
 import torrentlib.disk.impl.piecemapper.DMPieceMapperFile;
@@ -182,6 +183,8 @@ DiskManagerImpl
     private static DiskManagerRecheckScheduler      recheck_scheduler       = new DiskManagerRecheckScheduler();
     private static DiskManagerAllocationScheduler   allocation_scheduler    = new DiskManagerAllocationScheduler();
 
+    private static final int		EXTEND_CHUNK_SIZE		= 1024*1024;	// positional write size for the "extend" allocation strategy
+
     private static ThreadPool	start_pool = new ThreadPool( "DiskManager:start", 64, true );
     
     static{
@@ -1264,7 +1267,7 @@ DiskManagerImpl
     {
         while( started ){
 
-            if ( allocation_scheduler.getPermission( this )){
+            if ( allocation_scheduler.getPermission( this, data_file )){
 
                 break;
             }
@@ -1279,7 +1282,33 @@ DiskManagerImpl
 
         fileInfo.setAccessMode( DiskManagerFileInfo.WRITE );
 
-        if ( COConfigurationManager.getBooleanParameter("Enable incremental file creation" )){
+        String	strategy = DiskManagerAllocationScheduler.getStrategy( download_manager.getDownloadState().getAttribute( DownloadManagerState.AT_FILE_ALLOC_STRATEGY ));
+        
+        if ( strategy != null ){
+        	
+        	boolean	linear = fileInfo.getCacheFile().getStorageType() == CacheFile.CT_LINEAR;
+        	
+        	if ( strategy == DiskManagerAllocationScheduler.STRATEGY_SPARSE || !linear || target_length == 0 ){
+        		
+        		fileInfo.getCacheFile().setLength( target_length );
+        		
+        		allocated += target_length;
+        		
+        	}else if ( strategy == DiskManagerAllocationScheduler.STRATEGY_ZERO && existing_length < 0 ){
+        		
+        		zeroFile( fileInfo, data_file, existing_length, target_length );
+        		
+        	}else{
+        		
+        			// extend, also used to zero the missing part of an existing file as zeroFile
+        			// works from the start
+        		
+        		if ( !extendFile( fileInfo, data_file, existing_length<0?0:existing_length, target_length )){
+        			
+        			return( false );
+        		}
+        	}
+        }else if ( COConfigurationManager.getBooleanParameter("Enable incremental file creation" )){
 
                 //  do incremental stuff
 
@@ -1340,38 +1369,7 @@ DiskManagerImpl
 	            
 	        }else if( COConfigurationManager.getBooleanParameter("Zero New") ) {  //zero fill
 	        	
-	        	boolean successfulAlloc = false;
-	
-	        	try {
-	        		successfulAlloc = writer.zeroFile( fileInfo, target_length );
-	        		
-	        	}catch( Throwable e ){
-	        			// in case an error occured set the error message before we set it to FAULTY in the finally clause, the exception handler further down is too late
-	        		
-	        		fileAllocFailed( data_file, target_length, existing_length==-1, e );
-	                
-	                throw( e );
-	                
-	        	}finally{
-	        		
-	        		if (!successfulAlloc){
-	        			
-						try{
-								// failed to zero it, delete it so it gets done next start
-							
-							fileInfo.getCacheFile().close();
-							
-							fileInfo.getCacheFile().delete();
-							
-						}catch (Throwable e){
-							
-						}
-						
-						setState(FAULTY);
-					}
-	        	}
-	        	
-	        		// the zeroFile method updates allocation as it occurs
+	        	zeroFile( fileInfo, data_file, existing_length, target_length );
 	        	
 	        }else{
 	
@@ -1388,6 +1386,155 @@ DiskManagerImpl
         return( true );
     }
     
+    private void
+    zeroFile(
+    	DiskManagerFileInfoImpl		fileInfo,
+    	File						data_file,
+    	long						existing_length,
+    	long						target_length )
+    
+    	throws Throwable
+    {
+    	boolean successfulAlloc = false;
+    	
+    	try {
+    		successfulAlloc = writer.zeroFile( fileInfo, target_length );
+    		
+    	}catch( Throwable e ){
+    			// in case an error occured set the error message before we set it to FAULTY in the finally clause, the exception handler further down is too late
+    		
+    		fileAllocFailed( data_file, target_length, existing_length==-1, e );
+            
+            throw( e );
+            
+    	}finally{
+    		
+    		if (!successfulAlloc){
+    			
+				try{
+						// failed to zero it, delete it so it gets done next start
+					
+					fileInfo.getCacheFile().close();
+					
+					fileInfo.getCacheFile().delete();
+					
+				}catch (Throwable e){
+					
+				}
+				
+				setState(FAULTY);
+			}
+    	}
+    	
+    		// the zeroFile method updates allocation as it occurs
+    }
+    
+    	/**
+    	 * allocates [start,target_length) by writing zeros in large sequential chunks through the
+    	 * file's own access, bypassing the disk queue; chunks of at least a piece aren't cached
+    	 * so the file system can lay the file out contiguously
+    	 * @return false if interrupted
+    	 */
+    
+    private boolean
+    extendFile(
+    	DiskManagerFileInfoImpl		fileInfo,
+    	File						data_file,
+    	long						start,
+    	long						target_length )
+    
+    	throws Throwable
+    {
+    	CacheFile	cache_file = fileInfo.getCacheFile();
+    	
+    	int	chunk_size = Math.max( EXTEND_CHUNK_SIZE, ((pieceLength+1023)/1024)*1024 );
+    	
+    	DirectByteBuffer	buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_DM_ZERO, chunk_size );
+    	
+    	boolean	successfulAlloc = false;
+    	
+    	try{
+    		byte[]	blanks = new byte[1024];
+    		
+    		for (int i=0;i<chunk_size/1024;i++){
+    			
+    			buffer.put( DirectByteBuffer.SS_DW, blanks );
+    		}
+    		
+    		long	pos = start;
+    		
+    		while( pos < target_length ){
+    			
+    			if ( !started ){
+    				
+    					// interrupted rather than failed, what has been written is kept and
+    					// the allocation picks up from the file's length next time
+    				
+    				successfulAlloc = true;
+    				
+    				return( false );
+    			}
+    			
+    			int	write_size = (int)Math.min( chunk_size, target_length - pos );
+    			
+    			buffer.limit( DirectByteBuffer.SS_DW, write_size );
+    			
+    			buffer.position( DirectByteBuffer.SS_DW, 0 );
+    			
+    			cache_file.write( buffer, pos );
+    			
+    			pos 		+= write_size;
+    			
+    			allocated	+= write_size;
+    			
+    			setPercentDone((int)((allocated * 1000) / totalLength ));
+    		}
+    		
+    		cache_file.flushCache();
+    		
+    		successfulAlloc = true;
+    		
+    	}catch( Throwable e ){
+    			// as for zeroFile, set the error message before the state is set to FAULTY below
+    		
+    		fileAllocFailed( data_file, target_length, start==0, e );
+    		
+    		throw( e );
+    		
+    	}finally{
+    		
+    		buffer.returnToPool();
+    		
+    		if ( !successfulAlloc ){
+    			
+    			try{
+    				if ( start == 0 ){
+    					
+    						// failed to extend a new file, delete it so it gets done next start
+    					
+    					cache_file.close();
+    					
+    					cache_file.delete();
+    					
+    				}else{
+    					
+    						// existing file, just drop the partial extension
+    					
+    					cache_file.setLength( start );
+    					
+    					cache_file.close();
+    				}
+    			}catch( Throwable e ){
+    				
+    			}
+    			
+    			setState( FAULTY );
+    		}
+    	}
+    	
+    	return( true );
+    }
+    
     private void
     fileAllocFailed(
     	File		file,
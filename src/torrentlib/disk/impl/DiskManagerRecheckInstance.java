@@ -58,6 +58,16 @@ DiskManagerRecheckInstance
 		return( low_priority );
 	}
 	
+		/**
+		 * @return number of piece checks that may be outstanding at once
+		 */
+	
+	public int
+	getMaxInFlight()
+	{
+		return( scheduler.getMaxInFlight( this ));
+	}
+	
 	public boolean
 	getPermission()
 	{
@@ -34,6 +34,11 @@ DiskManagerRecheckScheduler
 {
 	private static boolean 	friendly_hashing;
 	private static boolean 	smallest_first;
+	private static boolean	incremental;
+	private static int		read_ahead_mb;
+	
+	private static final int	MIN_IN_FLIGHT	= 2;
+	private static final int	MAX_IN_FLIGHT	= 32;
 
     static{
     	
@@ -44,13 +49,17 @@ DiskManagerRecheckScheduler
     	    {
     	   	      friendly_hashing 	= COConfigurationManager.getBooleanParameter( "diskmanager.friendly.hashchecking" );
     	   	      smallest_first	= COConfigurationManager.getBooleanParameter( "diskmanager.hashchecking.smallestfirst" ); 
+    	   	      incremental		= COConfigurationManager.getBooleanParameter( "diskmanager.hashchecking.incremental" ); 
+    	   	      read_ahead_mb		= COConfigurationManager.getIntParameter( "diskmanager.hashchecking.readahead.mb" ); 
     	    }
     	 };
 
  		COConfigurationManager.addAndFireParameterListeners(
  				new String[]{
  					"diskmanager.friendly.hashchecking",
- 					"diskmanager.hashchecking.smallestfirst" },
+ 					"diskmanager.hashchecking.smallestfirst",
+ 					"diskmanager.hashchecking.incremental",
+ 					"diskmanager.hashchecking.readahead.mb" },
  				param_listener );
     }
     
@@ -111,6 +120,36 @@ DiskManagerRecheckScheduler
 		}
 	}
 	
+		/**
+		 * incremental mode: several pieces in flight, progress checkpointed to the resume data
+		 * and pieces in files unchanged since the last save not rehashed
+		 */
+	
+	public static boolean
+	isIncremental()
+	{
+		return( incremental );
+	}
+	
+	protected int
+	getMaxInFlight(
+		DiskManagerRecheckInstance	instance )
+	{
+		if ( !incremental || friendly_hashing ){
+			
+			return( MIN_IN_FLIGHT );
+		}
+		
+			// keep roughly read-ahead's worth of pieces queued so the disk always has
+			// the next read while the previous piece is being hashed
+		
+		int	piece_length = Math.max( 1, instance.getPieceLength());
+		
+		long	in_flight = ( read_ahead_mb * 1024L * 1024L ) / piece_length;
+		
+		return((int)Math.max( MIN_IN_FLIGHT, Math.min( MAX_IN_FLIGHT, in_flight )));
+	}
+	
 	protected boolean
 	getPermission(
 		DiskManagerRecheckInstance	instance )
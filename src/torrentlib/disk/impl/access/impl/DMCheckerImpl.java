@@ -117,7 +117,11 @@ DMCheckerImpl
 			parameterChanged( 
 				String  str ) 
     	    {
-    	   	    flush_pieces				= COConfigurationManager.getBooleanParameter( "diskmanager.perf.cache.flushpieces" );
+    	   	    	// with write coalescing the piece is read back from the cache for checking and
+    	   	    	// only written out once it has passed
+    	   	    
+    	   	    flush_pieces				= 	COConfigurationManager.getBooleanParameter( "diskmanager.perf.cache.flushpieces" ) &&
+    	   	    								!COConfigurationManager.getBooleanParameter( "diskmanager.perf.cache.write.coalesce" );
        	   	  	checking_read_priority		= COConfigurationManager.getBooleanParameter( "diskmanager.perf.checking.read.priority" );
      	    }
     	 };
@@ -125,6 +129,7 @@ DMCheckerImpl
  		COConfigurationManager.addAndFireParameterListeners( 
  			new String[]{
  				"diskmanager.perf.cache.flushpieces",
+				"diskmanager.perf.cache.write.coalesce",
  				"diskmanager.perf.checking.read.priority" },
  				param_listener );
     }
@@ -318,7 +323,7 @@ DMCheckerImpl
 		  				
 		  				int	checks_submitted	= 0;
 		  				           
-			            final AESemaphore	 run_sem = new AESemaphore( "DMChecker::completeRecheck:runsem", 2 );
+			            final AESemaphore	 run_sem = new AESemaphore( "DMChecker::completeRecheck:runsem", recheck_inst.getMaxInFlight());
 			            
 			            int nbPieces = disk_manager.getNbPieces();
 			            
@@ -538,7 +543,17 @@ DMCheckerImpl
 									
 									DMPieceMapEntry piece_entry = piece_list.get(i);
 										
-									piece_entry.getFile().dataChecked( piece_entry.getOffset(), piece_entry.getLength());
+									DiskManagerFileInfoImpl	file = piece_entry.getFile();
+									
+									try{
+										file.getCacheFile().dataVerified( piece_entry.getOffset(), piece_entry.getLength());
+										
+									}catch( Throwable e ){
+										
+										Debug.printStackTrace(e);
+									}
+									
+									file.dataChecked( piece_entry.getOffset(), piece_entry.getLength());
 								}
 							}
 						}finally{
@@ -865,7 +880,9 @@ DMCheckerImpl
 						    				}
 						    				
 										},
-										request.isLowPriority());
+										request.isHighPriority()?ConcurrentHasher.PRIORITY_HIGH:
+											(request.isLowPriority()?ConcurrentHasher.PRIORITY_LOW:ConcurrentHasher.PRIORITY_NORMAL),
+										disk_manager );
 							
 						    	
 							}catch( Throwable e ){
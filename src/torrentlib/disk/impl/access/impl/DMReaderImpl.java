@@ -32,6 +32,9 @@ import torrentlib.disk.impl.access.DMReader;
 import torrentlib.disk.DiskManagerReadRequest;
 import torrentlib.disk.DiskManagerReadRequestListener;
 import torrentlib.disk.cache.CacheFile;
+import torrentlib.disk.file.impl.FMFileMappedRegionCache;
+import java.io.FileWriter;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -56,6 +59,43 @@ DMReaderImpl
 {
 	private static final LogIDs LOGID = LogIDs.DISK;
 
+		// optional block read trace for offline cache replay, lines of
+		// "time,disk manager,absolute offset,length"
+	
+	private static final String	TRACE_FILE	= System.getProperty( "azureus.dmreader.trace", null );
+	
+	private static PrintWriter	trace_writer;
+	private static boolean		trace_failed;
+	
+	private static synchronized void
+	recordTrace(
+		Object		dm,
+		long		offset,
+		int			length )
+	{
+		if ( trace_failed ){
+			
+			return;
+		}
+		
+		try{
+			if ( trace_writer == null ){
+				
+				trace_writer = new PrintWriter( new FileWriter( TRACE_FILE, true ));
+			}
+			
+			trace_writer.println( SystemTime.getCurrentTime() + "," + System.identityHashCode( dm ) + "," + offset + "," + length );
+			
+			trace_writer.flush();
+			
+		}catch( Throwable e ){
+			
+			trace_failed = true;
+			
+			Debug.printStackTrace( e );
+		}
+	}
+
 	private DiskManagerHelper		disk_manager;
 	private DiskAccessController	disk_access;	
 
@@ -295,20 +335,14 @@ DMReaderImpl
 		try{
 			int	length		= request.getLength();
 	
-			buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_DM_READ,length );
-	
-			if ( buffer == null ) { // Fix for bug #804874
-				
-				Debug.out("DiskManager::readBlock:: ByteBufferPool returned null buffer");
-				
-				listener.readFailed( request, new Exception( "Out of memory" ));
-				
-				return;
-			}
-	
 			int	pieceNumber	= request.getPieceNumber();
 			int	offset		= request.getOffset();
 			
+			if ( TRACE_FILE != null ){
+				
+				recordTrace( disk_manager, (long)pieceNumber * disk_manager.getPieceLength() + offset, length );
+			}
+			
 			DMPieceList pieceList = disk_manager.getPieceList(pieceNumber);
 	
 				// temporary fix for bug 784306
@@ -317,7 +351,13 @@ DMReaderImpl
 				
 				Debug.out("no pieceList entries for " + pieceNumber);
 				
-				listener.readCompleted( request, buffer );
+				buffer = allocateBuffer( request, listener );
+				
+				if ( buffer != null ){
+				
+					listener.readCompleted( request, buffer );
+				}
+				
 				
 				return;
 			}
@@ -376,11 +416,41 @@ DMReaderImpl
 				
 				Debug.out("no chunk reads for " + pieceNumber);
 					
-				listener.readCompleted( request, buffer );
+				buffer = allocateBuffer( request, listener );
+				
+				if ( buffer != null ){
+				
+					listener.readCompleted( request, buffer );
+				}
 				
 				return;
 			}
 			
+				// a block within a single complete file can be handed out straight from a
+				// memory mapping (if enabled) without a copy into a pooled buffer. the mapping
+				// is done on the disk access threads like any other read
+			
+			final CacheFile	mappable_file;
+			
+			if ( 	chunks.size() == 1 && 
+					((Integer)((Object[])chunks.get(0))[2]).intValue() == length &&
+					FMFileMappedRegionCache.isEnabled() &&
+					((CacheFile)((Object[])chunks.get(0))[0]).getAccessMode() == CacheFile.CF_READ ){
+				
+				mappable_file = (CacheFile)((Object[])chunks.get(0))[0];
+				
+			}else{
+				
+				mappable_file = null;
+				
+				buffer = allocateBuffer( request, listener );
+				
+				if ( buffer == null ){
+					
+					return;
+				}
+			}
+			
 				// this is where we go async and need to start counting requests for the sake
 				// of shutting down tidily
 			
@@ -453,7 +523,10 @@ DMReaderImpl
 				
 				if ( stopped ){
 				
-					buffer.returnToPool();
+					if ( buffer != null ){
+						
+						buffer.returnToPool();
+					}
 					
 					listener.readFailed( request, new Exception( "Disk reader has been stopped" ));
 					
@@ -469,8 +542,83 @@ DMReaderImpl
 				this_mon.exit();
 			}
 			
-			new requestDispatcher( request, l, buffer, chunks );
-
+			if ( mappable_file != null ){
+				
+				final List	f_chunks = chunks;
+				
+				disk_access.queueMappedReadRequest(
+					mappable_file,
+					((Long)((Object[])chunks.get(0))[1]).longValue(),
+					length,
+					new DiskAccessRequestListener()
+					{
+						public void
+						requestComplete(
+							DiskAccessRequest	dar )
+						{
+							DirectByteBuffer	mapped = dar.getBuffer();
+							
+							if ( mapped == null ){
+								
+								readUnmapped();
+								
+							}else{
+								
+								total_read_bytes 	+= dar.getSize();
+								total_read_ops		++;
+								
+								l.requestExecuted( dar.getSize());
+								
+								l.readCompleted( request, mapped );
+							}
+						}
+						
+						public void
+						requestCancelled(
+							DiskAccessRequest	dar )
+						{
+								// we never cancel so nothing to do here
+							
+							Debug.out( "shouldn't get here" );
+						}
+						
+						public void
+						requestFailed(
+							DiskAccessRequest	dar,
+							Throwable			cause )
+						{
+								// fall back to a normal read which will report any real problem
+							
+							readUnmapped();
+						}
+						
+						public int
+						getPriority()
+						{
+							return( l.getPriority());
+						}
+						
+						public void 
+						requestExecuted(long bytes) 
+						{
+						}
+						
+						protected void
+						readUnmapped()
+						{
+							DirectByteBuffer	buffer = allocateBuffer( request, l );
+							
+							if ( buffer != null ){
+								
+								new requestDispatcher( request, l, buffer, f_chunks );
+							}
+						}
+					});
+			}else{
+			
+				new requestDispatcher( request, l, buffer, chunks );
+			}
+			
 		}catch( Throwable e ){
 			
 			if ( buffer != null ){
@@ -486,6 +634,23 @@ DMReaderImpl
 		}
 	}
 	
+	private DirectByteBuffer
+	allocateBuffer(
+		DiskManagerReadRequest			request,
+		DiskManagerReadRequestListener	listener )
+	{
+		DirectByteBuffer buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_DM_READ, request.getLength());
+		
+		if ( buffer == null ) { // Fix for bug #804874
+			
+			Debug.out("DiskManager::readBlock:: ByteBufferPool returned null buffer");
+			
+			listener.readFailed( request, new Exception( "Out of memory" ));
+		}
+		
+		return( buffer );
+	}
+	
 	protected class
 	requestDispatcher
 		implements DiskAccessRequestListener
@@ -29,6 +29,7 @@ DiskManagerCheckRequestImpl
 	private int		piece_number;
 	private Object	user_data;
 	private boolean	low_priority;
+	private boolean	high_priority;
 	private boolean	ad_hoc		= true;
 	
 	private byte[]	hash;
@@ -45,7 +46,7 @@ DiskManagerCheckRequestImpl
 	protected String
 	getName()
 	{
-		return( "Check: " + piece_number + ",lp=" + low_priority + ",ah=" + ad_hoc );
+		return( "Check: " + piece_number + ",lp=" + low_priority + ",hp=" + high_priority + ",ah=" + ad_hoc );
 	}
 	
 	public int 
@@ -73,6 +74,19 @@ DiskManagerCheckRequestImpl
 		return( low_priority );
 	}
 	
+	public void
+	setHighPriority(
+		boolean	high )
+	{
+		high_priority	= high;
+	}
+	
+	public boolean
+	isHighPriority()
+	{
+		return( high_priority );
+	}
+	
 	public void
 	setAdHoc(
 		boolean	_ad_hoc )
@@ -19,6 +19,7 @@
 
 package torrentlib.disk.impl.resume;
 
+import java.io.File;
 import java.util.*;
 
 import controller.config.COConfigurationManager;
@@ -34,6 +35,7 @@ import torrentlib.disk.DiskManagerWriteRequestListener;
 import torrentlib.disk.impl.DiskManagerFileInfoImpl;
 import torrentlib.disk.impl.DiskManagerImpl;
 import torrentlib.disk.impl.DiskManagerRecheckInstance;
+import torrentlib.disk.impl.DiskManagerRecheckScheduler;
 import torrentlib.disk.impl.access.DMChecker;
 import torrentlib.disk.impl.piecemapper.DMPieceList;
 import torrentlib.disk.impl.piecemapper.DMPieceMapEntry;
@@ -46,6 +48,7 @@ import torrentlib.AESemaphore;
 import torrentlib.ByteArrayHashMap;
 import torrentlib.Debug;
 import torrentlib.DirectByteBuffer;
+import torrentlib.SystemTime;
 
 import torrentlib.disk.cache.CacheFileManagerException;
 import xfer.download.DownloadManager;
@@ -71,6 +74,13 @@ RDResumeHandler
 	private static final byte		PIECE_DONE				= 1;
 	private static final byte		PIECE_RECHECK_REQUIRED	= 2;
 	private static final byte		PIECE_STARTED			= 3;
+	
+		// incremental recheck: how often progress is persisted and how much older than the save
+		// a file's mtime must be to be trusted (coarse mtime granularity would otherwise hide writes
+		// made just after the save)
+	
+	private static final long		CHECKPOINT_PERIOD		= 30*1000;
+	private static final long		MTIME_SLACK				= 2*1000;
 		
 	private static boolean	use_fast_resume;
 	private static boolean	use_fast_resume_recheck_all;
@@ -105,6 +115,8 @@ RDResumeHandler
 	private volatile boolean	check_interrupted;
 	private volatile int		check_position;
 	
+	private volatile checkProgress	check_progress;
+	
 
 	public 
 	RDResumeHandler(
@@ -148,7 +160,9 @@ RDResumeHandler
 				
 		DiskManagerRecheckInstance	recheck_inst = disk_manager.getRecheckScheduler().register( disk_manager, false );
 
-        final AESemaphore	 run_sem = new AESemaphore( "RDResumeHandler::checkAllPieces:runsem", 2 );
+        final boolean		incremental	= DiskManagerRecheckScheduler.isIncremental();
+        
+        final AESemaphore	 run_sem = new AESemaphore( "RDResumeHandler::checkAllPieces:runsem", recheck_inst.getMaxInFlight());
 
         final List<DiskManagerCheckRequest>	failed_pieces = new ArrayList<DiskManagerCheckRequest>();
         
@@ -197,6 +211,10 @@ RDResumeHandler
 					
 					Map partialPieces = null;
 					
+					int	verified_below	= 0;
+					
+					Set	unchanged_files	= null;
+					
 					Map	resume_data = getResumeData();							
 					
 					if ( resume_data != null ){
@@ -219,6 +237,20 @@ RDResumeHandler
 							
 							resumeValid = ((Long)resume_data.get("valid")).intValue() == 1;
 							
+							if ( incremental && resume_pieces != null ){
+								
+									// pieces below a checkpointed position were verified by an interrupted recheck
+								
+								Long	l_pos = (Long)resume_data.get( "recheck position" );
+								
+								if ( l_pos != null ){
+									
+									verified_below = (int)Math.min( l_pos.longValue(), resume_pieces.length );
+								}
+								
+								unchanged_files = getUnchangedFiles( files, resume_data );
+							}
+							
 								// if the torrent download is complete we don't need to invalidate the
 								// resume data
 							
@@ -305,13 +337,45 @@ RDResumeHandler
 										",started=" + total_started + ",recheck=" + total_recheck + ",rc all=" + recheck_all +
 										",full=" + check_is_full_check;
 						
-						Logger.log(new LogEvent(disk_manager, LOGID, str ));
+						Logger.log(new LogEvent(disk_manager, LOGID, str + ",verified=" + verified_below + ",unchanged files=" + (unchanged_files==null?0:unchanged_files.size())));
 					}
+					
+					final checkProgress	progress;
+					
+						// nothing to checkpoint if the resume data is complete, all pieces are just marked done
+					
+					if ( incremental && !resume_data_complete ){
+						
+						progress = new checkProgress( resume_pieces, partialPieces, resume_data, verified_below );
+						
+						check_progress	= progress;
+						
+					}else{
+						
+						progress = null;
+					}
+					
+					long	last_checkpoint = SystemTime.getMonotonousTime();
 
 					for (int i = 0; i < pieces.length; i++){
 						
 						check_position	= i;
 						
+						if ( progress != null ){
+							
+							long	now = SystemTime.getMonotonousTime();
+							
+							if ( now - last_checkpoint >= CHECKPOINT_PERIOD ){
+								
+								last_checkpoint = now;
+								
+								saveResumeData( progress.getResumeData( pieces ));
+							}
+						}
+						
+						boolean	check_queued = false;
+						boolean	check_failed = false;
+						
 						DiskManagerPiece	dm_piece	= pieces[i];
 						
 						disk_manager.setPercentDone(((i + 1) * 1000) / disk_manager.getNbPieces() );
@@ -321,9 +385,13 @@ RDResumeHandler
 						byte	piece_state = resume_pieces[i];
 						
 							// valid resume data means that the resume array correctly represents
-							// the state of pieces on disk, be they done or not
+							// the state of pieces on disk, be they done or not. In incremental mode
+							// this also holds for pieces verified by an earlier, interrupted, recheck
+							// and those whose files haven't changed since the data was saved
 						
-						if ( piece_state == PIECE_DONE || !resumeValid || recheck_all ){
+						boolean	piece_valid = resumeValid || i < verified_below || isPieceUnchanged( i, unchanged_files );
+						
+						if ( piece_state == PIECE_DONE || !piece_valid || recheck_all ){
 						
 								// at least check that file sizes are OK for this piece to be valid
 							
@@ -382,7 +450,7 @@ RDResumeHandler
 							if(pieceCannotExist)
 							{
 								dm_piece.setDone( false );
-							} else if ( piece_state == PIECE_RECHECK_REQUIRED || !resumeValid ){
+							} else if ( piece_state == PIECE_RECHECK_REQUIRED || !piece_valid ){
 										
 								run_sem.reserve();
 								
@@ -400,8 +468,10 @@ RDResumeHandler
 									
 								}else{
 									
+									DiskManagerCheckRequest	request = null;
+									
 									try{	
-										DiskManagerCheckRequest	request = disk_manager.createCheckRequest( i, null );
+										request = disk_manager.createCheckRequest( i, null );
 										
 										request.setLowPriority( true );
 										
@@ -429,6 +499,11 @@ RDResumeHandler
 														}
 													}
 													
+													if ( progress != null ){
+														
+														progress.setVerified( request.getPieceNumber());
+													}
+													
 													complete();
 												}
 												 
@@ -458,13 +533,37 @@ RDResumeHandler
 										
 										pending_check_num++;
 										
+										check_queued = true;
+										
 									}catch( Throwable e ){
 									
 										Debug.printStackTrace(e);
+										
+											// the check never ran so the listener won't release the run permit, 
+											// and the piece mustn't be recorded as verified
+										
+										run_sem.release();
+										
+										dm_piece.setDone( false );
+										
+										check_failed = true;
+										
+										if ( request != null ){
+											
+											synchronized( failed_pieces ){
+												
+												failed_pieces.add( request );
+											}
+										}
 									}
 								}
 							}
 						}
+						
+						if ( progress != null && !check_queued && !check_failed ){
+							
+							progress.setVerified( i );
+						}
 					}
 					
 					while( pending_check_num > 0 ){
@@ -766,6 +865,11 @@ RDResumeHandler
 			}finally{
 				
 				check_in_progress	= false;
+				
+				if ( !check_interrupted ){
+				
+					check_progress		= null;
+				}
 			}
 			
 				//dump the newly built resume data to the disk/torrent
@@ -841,6 +945,25 @@ RDResumeHandler
 		
 		DiskManagerPiece[] pieces	= disk_manager.getPieces();
 
+		checkProgress	progress = check_progress;
+		
+		if ( check_interrupted && progress != null ){
+			
+				// persist how far the incremental recheck got so a restart carries on from there
+				// rather than starting again
+			
+			Map	resume_data = progress.getResumeData( pieces );
+			
+			for (int i=0;i<files.length;i++){
+				
+				files[i].flushCache();
+			}
+			
+			saveResumeData( resume_data );
+			
+			return;
+		}
+
 			//build the piece byte[]
 		
 		byte[] resume_pieces = new byte[pieces.length];
@@ -951,6 +1074,11 @@ RDResumeHandler
 			files[i].flushCache();
 		}
 		
+		if ( DiskManagerRecheckScheduler.isIncremental()){
+			
+			addFileStats( files, resume_data );
+		}
+		
 	  		// OK, we've got valid resume data and flushed the cache
 	  
 		boolean	is_complete = isTorrentResumeDataComplete( disk_manager.getDownloadManager().getDownloadState(), resume_data );
@@ -965,6 +1093,98 @@ RDResumeHandler
 		}
 	}
 	
+		/**
+		 * records each file's size and modification time once the cache has been flushed so that a later
+		 * recheck can tell which files haven't been touched since
+		 */
+	
+	protected void
+	addFileStats(
+		DiskManagerFileInfo[]	files,
+		Map						resume_data )
+	{
+		List	stats = new ArrayList( files.length );
+		
+		for (int i=0;i<files.length;i++){
+			
+			File	file = files[i].getFile( true );
+			
+			List	stat = new ArrayList( 2 );
+			
+			stat.add( new Long( file.length()));
+			stat.add( new Long( file.lastModified()));
+			
+			stats.add( stat );
+		}
+		
+		resume_data.put( "file stats", stats );
+		resume_data.put( "file stats time", new Long( SystemTime.getCurrentTime()));
+	}
+	
+	protected Set
+	getUnchangedFiles(
+		DiskManagerFileInfo[]	files,
+		Map						resume_data )
+	{
+		Set	result = new HashSet();
+		
+		try{
+			List	stats	= (List)resume_data.get( "file stats" );
+			Long	time	= (Long)resume_data.get( "file stats time" );
+			
+			if ( stats == null || time == null || stats.size() != files.length ){
+				
+				return( result );
+			}
+			
+			for (int i=0;i<files.length;i++){
+				
+				List	stat = (List)stats.get(i);
+				
+				long	length	= ((Long)stat.get(0)).longValue();
+				long	mtime	= ((Long)stat.get(1)).longValue();
+				
+				File	file = files[i].getFile( true );
+				
+				if ( 	mtime > 0 &&
+						mtime < time.longValue() - MTIME_SLACK &&
+						file.length() == length &&
+						file.lastModified() == mtime ){
+					
+					result.add( files[i] );
+				}
+			}
+		}catch( Throwable e ){
+			
+			Debug.printStackTrace( e );
+		}
+		
+		return( result );
+	}
+	
+	protected boolean
+	isPieceUnchanged(
+		int		piece_number,
+		Set		unchanged_files )
+	{
+		if ( unchanged_files == null || unchanged_files.size() == 0 ){
+			
+			return( false );
+		}
+		
+		DMPieceList list = disk_manager.getPieceList( piece_number );
+		
+		for (int i=0;i<list.size();i++){
+			
+			if ( !unchanged_files.contains( list.get(i).getFile())){
+				
+				return( false );
+			}
+		}
+		
+		return( true );
+	}
+	
 	protected Map
 	getResumeData()
 	{
@@ -1320,4 +1540,103 @@ RDResumeHandler
 		
 		return( false );
 	}
+	
+		/**
+		 * Tracks which pieces an incremental recheck has dealt with. Checks complete out of order so
+		 * the persisted position is the first piece not yet dealt with, everything below it has
+		 * a trustworthy state
+		 */
+	
+	private static class
+	checkProgress
+	{
+		private final byte[]	original_pieces;
+		private final Map		original_blocks;
+		private final Map		original_data;
+		
+		private final boolean[]	verified;
+		private int				position;
+		
+		protected
+		checkProgress(
+			byte[]		_pieces,
+			Map			_blocks,
+			Map			_data,
+			int			_verified_below )
+		{
+			original_pieces	= (byte[])_pieces.clone();
+			original_blocks	= _blocks==null?new HashMap():new HashMap( _blocks );
+			original_data	= _data;
+			
+			verified	= new boolean[ original_pieces.length ];
+			
+			Arrays.fill( verified, 0, _verified_below, true );
+			
+			position	= _verified_below;
+		}
+		
+		protected synchronized void
+		setVerified(
+			int		piece_number )
+		{
+			verified[ piece_number ] = true;
+			
+			while( position < verified.length && verified[ position ] ){
+				
+				position++;
+			}
+		}
+		
+		protected synchronized Map
+		getResumeData(
+			DiskManagerPiece[]	pieces )
+		{
+			byte[]	resume_pieces = new byte[ original_pieces.length ];
+			
+			for (int i=0;i<resume_pieces.length;i++){
+				
+				if ( i < position ){
+					
+					if ( pieces[i].isDone()){
+						
+						resume_pieces[i] = PIECE_DONE;
+						
+					}else{
+						
+						resume_pieces[i] = original_pieces[i]==PIECE_STARTED?PIECE_STARTED:PIECE_NOT_DONE;
+					}
+				}else{
+					
+					resume_pieces[i] = original_pieces[i];
+				}
+			}
+			
+			Map	resume_data = new HashMap();
+			
+			resume_data.put( "resume data", resume_pieces );
+			
+				// partial blocks are only re-applied once the check completes so the originals
+				// are still correct
+			
+			resume_data.put( "blocks", new HashMap( original_blocks ));
+			
+			resume_data.put( "valid", new Long( 0 ));
+			
+			resume_data.put( "recheck position", new Long( position ));
+			
+			if ( original_data != null ){
+				
+				Object	stats 	= original_data.get( "file stats" );
+				Object	time	= original_data.get( "file stats time" );
+				
+				if ( stats != null && time != null ){
+					
+					resume_data.put( "file stats", stats );
+					resume_data.put( "file stats time", time );
+				}
+			}
+			
+			return( resume_data );
+		}
+	}
 }
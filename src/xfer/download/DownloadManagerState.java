@@ -76,6 +76,7 @@ DownloadManagerState
 	public static final String AT_FILES_EXPANDED			= "file.expand";	// boolean
 	public static final String AT_MERGED_DATA				= "mergedata";		// long
 	public static final String AT_DND_PREFIX				= "dnd_pfx";		// string
+	public static final String AT_FILE_ALLOC_STRATEGY		= "allocstrategy";	// string, see DiskManagerAllocationScheduler
 
 
 	public static Object[][] ATTRIBUTE_DEFAULTS = {